@@ -15,9 +15,12 @@
  */
 package org.jitsi.xmpp.extensions;
 
-import java.lang.reflect.*;
+import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jivesoftware.smack.packet.*;
@@ -40,26 +43,30 @@ public abstract class AbstractPacketExtension
      * Clones the attributes, namespace and text of a specific
      * <tt>AbstractPacketExtension</tt> into a new
      * <tt>AbstractPacketExtension</tt> instance of the same run-time type.
+     * <p>
+     * The new instance is created by the public no-arg constructor of the
+     * run-time type of <tt>src</tt>, which is resolved once per type. Unless
+     * that constructor sets attributes of its own, the clone shares the
+     * (copy-on-write) attribute storage of <tt>src</tt> instead of copying it.
      *
      * @param src the <tt>AbstractPacketExtension</tt> to be cloned
      * @return a new <tt>AbstractPacketExtension</tt> instance of the run-time
      * type of the specified <tt>src</tt> which has the same attributes,
      * namespace and text
-     * @throws Exception if an error occurs during the cloning of the specified
-     * <tt>src</tt>
+     * @throws IllegalArgumentException if the run-time type of <tt>src</tt>
+     * does not have a public no-arg constructor
      */
     @SuppressWarnings("unchecked")
     public static <T extends AbstractPacketExtension> T clone(T src) {
-        T dst = null;
-        try {
-            dst = (T) src.getClass().getConstructor().newInstance();
-        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            throw new RuntimeException(e);
-        }
+        T dst = DefaultPacketExtensionProvider.getFactory(
+                (Class<T>) src.getClass()).get();
 
-        // attributes
-        for (String name : src.getAttributeNames()) {
-            dst.setAttribute(name, src.getAttribute(name));
+        // attributes (the values are immutable and may be shared)
+        if (dst.attributes.isEmpty()) {
+            ((AttributeMap) dst.attributes).share(
+                    (AttributeMap) src.attributes);
+        } else {
+            src.attributes.forEach(dst.attributes::put);
         }
         // namespace
         dst.setNamespace(src.getNamespace());
@@ -69,6 +76,125 @@ public abstract class AbstractPacketExtension
         return dst;
     }
 
+    /**
+     * Creates a deep copy of a specific <tt>AbstractPacketExtension</tt>: a
+     * {@link #clone(AbstractPacketExtension)} of it to which deep copies of
+     * all of its child extensions have been added in order with
+     * {@link #addChildExtension(ExtensionElement)}. Child extensions which
+     * are not <tt>AbstractPacketExtension</tt>s are added as they are. State
+     * which a subclass keeps other than in attributes, text and child
+     * extensions is not copied.
+     * <p>
+     * Every node of the copy shares the attribute storage of the node that it
+     * was copied from until either of them modifies its attributes, so
+     * copying e.g. a transport with many candidates does not duplicate their
+     * attributes. {@link #freeze() Frozen} descendants are not copied at all
+     * but shared between the original and the copy. The copy itself is never
+     * frozen, even if <tt>src</tt> is, so that it can be modified.
+     *
+     * @param src the <tt>AbstractPacketExtension</tt> to be copied
+     * @return a deep copy of <tt>src</tt> of the same run-time type
+     * @throws IllegalArgumentException if the run-time type of <tt>src</tt> or
+     * of one of its descendants does not have a public no-arg constructor
+     */
+    public static <T extends AbstractPacketExtension> T deepClone(T src) {
+        T dst = clone(src);
+
+        for (ExtensionElement child : src.getChildExtensions()) {
+            if (child instanceof AbstractPacketExtension) {
+                AbstractPacketExtension ext = (AbstractPacketExtension) child;
+
+                dst.addChildExtension(ext.isFrozen() ? ext : deepClone(ext));
+            } else {
+                dst.addChildExtension(child);
+            }
+        }
+
+        return dst;
+    }
+
+    /**
+     * Caches whether a specific <tt>AbstractPacketExtension</tt> subclass
+     * overrides {@link #toXML()}, in which case
+     * {@link #writeTo(XmlStringBuilder)} has to go through that override.
+     */
+    private static final ClassValue<Boolean> overridesToXML
+            = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return overrides(type, "toXML");
+        }
+    };
+
+    /**
+     * Caches whether the XML of a specific <tt>AbstractPacketExtension</tt>
+     * subclass is entirely determined by the state which is tracked by
+     * {@link #invalidateXML()}, i.e. whether the subclass does not override
+     * any of the methods which provide the content of the element. Only such
+     * subclasses may enable {@link #setXMLCachingEnabled(boolean)}.
+     */
+    private static final ClassValue<Boolean> supportsXMLCaching
+            = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return !overrides(type, "toXML")
+                    && !overrides(type, "getChildElementBuilder")
+                    && !overrides(type, "getChildExtensions")
+                    && !overrides(type, "getText");
+        }
+    };
+
+    /**
+     * Caches whether a specific <tt>AbstractPacketExtension</tt> subclass
+     * overrides {@link #getChildExtensions()}, in which case the typed lookups
+     * of child extensions cannot use the index of {@link #children}.
+     */
+    private static final ClassValue<Boolean> overridesGetChildExtensions
+            = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return overrides(type, "getChildExtensions");
+        }
+    };
+
+    /**
+     * Updates {@link #children} atomically.
+     */
+    private static final AtomicReferenceFieldUpdater<
+                AbstractPacketExtension, Children>
+            CHILDREN = AtomicReferenceFieldUpdater.newUpdater(
+                    AbstractPacketExtension.class, Children.class, "children");
+
+    /**
+     * Updates {@link #derivedChildren} atomically.
+     */
+    private static final AtomicReferenceFieldUpdater<
+                AbstractPacketExtension, Children>
+            DERIVED_CHILDREN = AtomicReferenceFieldUpdater.newUpdater(
+                    AbstractPacketExtension.class,
+                    Children.class,
+                    "derivedChildren");
+
+    /**
+     * Updates {@link #modCount} atomically.
+     */
+    private static final AtomicIntegerFieldUpdater<AbstractPacketExtension>
+            MOD_COUNT = AtomicIntegerFieldUpdater.newUpdater(
+                    AbstractPacketExtension.class, "modCount");
+
+    /**
+     * Determines whether a specific <tt>AbstractPacketExtension</tt> subclass
+     * overrides a specific public method without parameters.
+     */
+    private static boolean overrides(Class<?> type, String methodName) {
+        try {
+            return type.getMethod(methodName).getDeclaringClass()
+                    != AbstractPacketExtension.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
     /**
      * The name space of this packet extension. Should remain <tt>null</tt> if
      * there's no namespace associated with this element.
@@ -82,10 +208,11 @@ public abstract class AbstractPacketExtension
     private final String elementName;
 
     /**
-     * A map of all attributes that this extension is currently using.
+     * A map of all attributes that this extension is currently using. It keeps
+     * the insertion order and can be read and modified concurrently without
+     * locking (see {@link AttributeMap}).
      */
-    protected final Map<String, Object> attributes
-            = new LinkedHashMap<String, Object>();
+    protected final Map<String, Object> attributes = new AttributeMap();
 
     /**
      * The text content of this packet extension, if any.
@@ -93,10 +220,63 @@ public abstract class AbstractPacketExtension
     private String textContent;
 
     /**
-     * A list of extensions registered with this element.
+     * The extensions registered with this element, along with an index of
+     * them by type.
+     * <p>
+     * The child extensions are copy-on-write: a <tt>Children</tt> instance is
+     * never modified, and adding or removing a child installs a new one with
+     * a compare-and-set. Readers (including serialization) therefore work on
+     * a consistent snapshot without ever blocking, and concurrent writers
+     * neither block each other nor lose updates. Copying is cheap because
+     * extensions have few children and are modified far less often than they
+     * are read.
+     */
+    private volatile Children children = Children.EMPTY;
+
+    /**
+     * The child extensions returned by an override of
+     * {@link #getChildExtensions()} along with an index of them by type,
+     * stamped with the {@link #modCount} they were read at, or <tt>null</tt>.
+     * Only used if {@link #tracksChildExtensionChanges()}.
      */
-    private final List<ExtensionElement> childExtensions
-            = new ArrayList<>();
+    private volatile Children derivedChildren;
+
+    /**
+     * The <tt>AbstractPacketExtension</tt> to which this extension was last
+     * added as a child through {@link #addChildExtension(ExtensionElement)}
+     * or <tt>null</tt>. Modifications of this extension invalidate the cached
+     * XML of the parent (and its ancestors).
+     */
+    private volatile AbstractPacketExtension parent;
+
+    /**
+     * The number of modifications of this extension and its descendants. It
+     * stamps {@link #cachedXML} so that XML rendered concurrently with a
+     * modification is never used.
+     */
+    private volatile int modCount;
+
+    /**
+     * Whether {@link #toXML()} caches its result.
+     */
+    private volatile boolean xmlCachingEnabled;
+
+    /**
+     * The cached XML of this extension or <tt>null</tt>.
+     */
+    private volatile CachedXML cachedXML;
+
+    /**
+     * Whether this extension and its descendants are immutable.
+     */
+    private volatile boolean frozen;
+
+    /**
+     * The child extensions of a frozen extension whose class overrides
+     * {@link #getChildExtensions()}, captured when it was frozen, or
+     * <tt>null</tt>.
+     */
+    private ChildExtensionList<ExtensionElement> frozenChildExtensions;
 
     /**
      * Creates an {@link AbstractPacketExtension} instance for the specified
@@ -125,7 +305,9 @@ public abstract class AbstractPacketExtension
      * @param namespace the XML namespace for this element.
      */
     public void setNamespace(String namespace) {
+        checkNotFrozen();
         this.namespace = namespace;
+        invalidateXML();
     }
 
     /**
@@ -145,41 +327,298 @@ public abstract class AbstractPacketExtension
      * @return an XML representation of this extension.
      */
     public String toXML() {
+        if (xmlCachingEnabled || frozen) {
+            return getCachedXML();
+        }
+
+        XmlStringBuilder xml = new XmlStringBuilder();
+
+        writeElement(xml);
+        return xml.toString();
+    }
+
+    /**
+     * Enables or disables the caching of the XML representation of this
+     * extension. While enabled, {@link #toXML()} and
+     * {@link #writeTo(XmlStringBuilder)} render this extension once and then
+     * reuse the result until it is invalidated by a modification of this
+     * extension (its attributes, text, namespace or children) or of any of its
+     * descendants. This is meant for extensions which are built once and then
+     * sent many times, e.g. with every presence.
+     * <p>
+     * Modifications are only tracked when they go through the methods of
+     * <tt>AbstractPacketExtension</tt> (including those of the list returned
+     * by {@link #getChildExtensions()}), so each descendant should have a
+     * single parent.
+     *
+     * @param enabled <tt>true</tt> to cache the XML of this extension.
+     * @throws IllegalStateException if <tt>enabled</tt> is <tt>true</tt> and
+     * the XML of this extension depends on state which is not tracked (i.e.
+     * its class overrides <tt>toXML()</tt>, <tt>getChildElementBuilder()</tt>,
+     * <tt>getChildExtensions()</tt> or <tt>getText()</tt>).
+     */
+    public void setXMLCachingEnabled(boolean enabled) {
+        if (enabled && !supportsXMLCaching.get(getClass())) {
+            throw new IllegalStateException(
+                    getClass().getName() + " does not support XML caching");
+        }
+        xmlCachingEnabled = enabled;
+        if (!enabled) {
+            cachedXML = null;
+        }
+    }
+
+    /**
+     * Returns whether the XML representation of this extension is cached.
+     *
+     * @return <tt>true</tt> if the XML representation of this extension is
+     * cached.
+     * @see #setXMLCachingEnabled(boolean)
+     */
+    public boolean isXMLCachingEnabled() {
+        return xmlCachingEnabled;
+    }
+
+    /**
+     * Makes this extension and all of its descendants immutable, so that they
+     * can be shared between threads and stanzas without copying or locking.
+     * Afterwards every attempt to modify the attributes, text, namespace or
+     * child extensions of a frozen extension throws an
+     * <tt>IllegalStateException</tt>, the XML of a frozen extension is
+     * rendered only once, and {@link #deepClone(AbstractPacketExtension)}
+     * shares frozen descendants instead of copying them. Freezing cannot be
+     * undone; {@link #clone(AbstractPacketExtension)} creates a mutable copy
+     * of the attributes of a frozen extension.
+     * <p>
+     * An extension should be frozen by the thread which built it, before it
+     * is published to other threads. Child extensions which are not
+     * <tt>AbstractPacketExtension</tt>s are not frozen and must be immutable
+     * themselves. Subclasses which keep state of their own must reject changes
+     * to it with {@link #checkNotFrozen()}.
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+
+        List<? extends ExtensionElement> childExtensions
+                = readChildExtensions();
+
+        for (ExtensionElement child : childExtensions) {
+            if (child instanceof AbstractPacketExtension) {
+                ((AbstractPacketExtension) child).freeze();
+            }
+        }
+        if (overridesGetChildExtensions.get(getClass())) {
+            frozenChildExtensions = ChildExtensionList.copyOf(childExtensions);
+        }
+        frozen = true;
+    }
+
+    /**
+     * Returns whether this extension has been {@link #freeze() frozen}.
+     *
+     * @return <tt>true</tt> if this extension is immutable.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Throws an <tt>IllegalStateException</tt> if this extension has been
+     * {@link #freeze() frozen}. Called before every modification.
+     *
+     * @throws IllegalStateException if this extension is frozen.
+     */
+    protected void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException(
+                    "Cannot modify a frozen <" + getElementName() + "/>");
+        }
+    }
+
+    /**
+     * Returns the child extensions to serialize or search, i.e. the current
+     * snapshot of {@link #children} unless the class of this extension
+     * overrides {@link #getChildExtensions()}, in which case those captured
+     * by {@link #freeze()} if this extension is frozen and otherwise the
+     * result of <tt>getChildExtensions()</tt>.
+     */
+    private List<? extends ExtensionElement> readChildExtensions() {
+        if (!overridesGetChildExtensions.get(getClass())) {
+            return children.all;
+        }
+
+        // Reading frozen first makes frozenChildExtensions visible.
+        List<? extends ExtensionElement> childExtensions
+                = frozen ? frozenChildExtensions : null;
+
+        return childExtensions == null ? getChildExtensions() : childExtensions;
+    }
+
+    /**
+     * Returns whether every change of the child extensions returned by an
+     * override of {@link #getChildExtensions()} is reported through
+     * {@link #invalidateXML()}, in which case lookups of child extensions by
+     * type are indexed and only read <tt>getChildExtensions()</tt> again
+     * after a change. Otherwise every lookup goes through all of the child
+     * extensions. Subclasses which override <tt>getChildExtensions()</tt> and
+     * keep that promise should override this method to return
+     * <tt>true</tt>.
+     *
+     * @return <tt>true</tt> if the changes of the child extensions of this
+     * extension are tracked.
+     */
+    protected boolean tracksChildExtensionChanges() {
+        return false;
+    }
+
+    /**
+     * Notifies this extension and its ancestors that the content of this
+     * extension has changed, so that any cached XML is rendered again.
+     * Subclasses which keep state of their own that affects their XML and
+     * which enable XML caching in one of their ancestors should call this
+     * method when that state changes.
+     */
+    protected void invalidateXML() {
+        for (AbstractPacketExtension ext = this;
+                ext != null;
+                ext = ext.parent) {
+            MOD_COUNT.incrementAndGet(ext);
+        }
+    }
+
+    /**
+     * Returns a counter which changes with every modification of this
+     * extension or of its descendants which is tracked by
+     * {@link #invalidateXML()}. Subclasses can stamp state which they derive
+     * from their content with it and recompute that state when the counter
+     * no longer matches.
+     *
+     * @return the current modification count of this extension.
+     */
+    protected final int getModificationCount() {
+        return modCount;
+    }
+
+    /**
+     * Returns the cached XML of this extension, rendering it if necessary.
+     */
+    private String getCachedXML() {
+        CachedXML cachedXML = this.cachedXML;
+        int modCount = this.modCount;
+
+        if (cachedXML != null && cachedXML.modCount == modCount) {
+            return cachedXML.xml;
+        }
+
         XmlStringBuilder xml = new XmlStringBuilder();
 
+        writeElement(xml);
+
+        String s = xml.toString();
+
+        // If this extension was modified while it was being rendered, the
+        // stamp will not match the current modCount and the result will not
+        // be used again.
+        this.cachedXML = new CachedXML(modCount, s);
+        return s;
+    }
+
+    /**
+     * Appends the XML representation of this extension, including all of its
+     * children, to a specific <tt>XmlStringBuilder</tt>. Unlike appending the
+     * result of {@link #toXML()}, this does not render every nested extension
+     * into an intermediate <tt>String</tt> of its own, so a whole tree is
+     * emitted into a single builder in one pass.
+     * <p>
+     * Extensions which override {@link #toXML()} are appended using their
+     * override.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to append to.
+     */
+    public void writeTo(XmlStringBuilder xml) {
+        if (overridesToXML.get(getClass())) {
+            xml.append(toXML());
+        } else if (xmlCachingEnabled || frozen) {
+            xml.append(getCachedXML());
+        } else {
+            writeElement(xml);
+        }
+    }
+
+    /**
+     * Writes the XML representation of this extension, including all of its
+     * children, to a specific <tt>Appendable</tt>.
+     *
+     * @param out the <tt>Appendable</tt> to write to.
+     * @throws IOException if <tt>out</tt> fails to append.
+     */
+    public void writeTo(Appendable out)
+            throws IOException {
+        XmlStringBuilder xml = new XmlStringBuilder();
+
+        writeTo(xml);
+        out.append(xml);
+    }
+
+    /**
+     * Appends the XML representation of a specific extension to a specific
+     * <tt>XmlStringBuilder</tt>, streaming it through
+     * {@link #writeTo(XmlStringBuilder)} if it is an
+     * <tt>AbstractPacketExtension</tt>.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to append to.
+     * @param extension the extension to append or <tt>null</tt>.
+     */
+    public static void writeExtension(
+            XmlStringBuilder xml,
+            ExtensionElement extension) {
+        if (extension instanceof AbstractPacketExtension) {
+            ((AbstractPacketExtension) extension).writeTo(xml);
+        } else {
+            xml.optAppend(extension);
+        }
+    }
+
+    /**
+     * Appends the generic XML representation of this extension (i.e. the
+     * one of {@link AbstractPacketExtension#toXML()}) to a specific
+     * <tt>XmlStringBuilder</tt>.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to append to.
+     */
+    private void writeElement(XmlStringBuilder xml) {
         xml.halfOpenElement(getElementName());
         xml.xmlnsAttribute(getNamespace());
 
         //add the rest of the attributes if any
-        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
-            Object value = entry.getValue();
-
+        attributes.forEach((name, value) -> {
             if (value != null) {
-                xml.attribute(entry.getKey(), value.toString());
+                xml.attribute(name, value.toString());
             }
-        }
+        });
 
         //add child elements if any
-        List<? extends ExtensionElement> childElements = getChildExtensions();
+        List<? extends ExtensionElement> childElements = readChildExtensions();
         String text = getText();
         XmlStringBuilder childBuilder = getChildElementBuilder();
 
         if (childElements.isEmpty() && childBuilder.length() == 0) {
             if (StringUtils.isEmpty(text)) {
-                return xml.closeEmptyElement().toString();
+                xml.closeEmptyElement();
+                return;
             } else {
                 xml.rightAngleBracket();
             }
         } else {
-            synchronized (childElements) {
-                xml.rightAngleBracket();
-
-                for (ExtensionElement packExt : childElements) {
-                    xml.optAppend(packExt);
-                }
+            xml.rightAngleBracket();
 
-                xml.append(childBuilder);
+            for (ExtensionElement packExt : childElements) {
+                writeExtension(xml, packExt);
             }
+
+            xml.append(childBuilder);
         }
 
         //text content if any
@@ -188,8 +627,6 @@ public abstract class AbstractPacketExtension
         }
 
         xml.closeElement(getElementName());
-
-        return xml.toString();
     }
 
     /**
@@ -208,11 +645,19 @@ public abstract class AbstractPacketExtension
      * <p>
      * Overriding extensions may need to override this method if they would like
      * to have anything more elaborate than just a list of extensions.
+     * <p>
+     * The returned list is a snapshot which is not affected by later changes
+     * made through other means, so it can be iterated while other threads
+     * modify this extension. It can be modified, and its modifications are
+     * applied to this extension like those of
+     * {@link #removeChildExtension(ExtensionElement)} (though without going
+     * through overrides of {@link #addChildExtension(ExtensionElement)}) and
+     * then reflected in the list.
      *
      * @return the {@link List} of elements that this packet extension contains.
      */
     public List<? extends ExtensionElement> getChildExtensions() {
-        return childExtensions;
+        return new ChildExtensionsView(children.all);
     }
 
     /**
@@ -226,7 +671,78 @@ public abstract class AbstractPacketExtension
      * @param childExtension the extension we'd like to add here.
      */
     public void addChildExtension(ExtensionElement childExtension) {
-        childExtensions.add(childExtension);
+        checkNotFrozen();
+
+        Children oldChildren;
+
+        do {
+            oldChildren = children;
+        } while (!CHILDREN.compareAndSet(
+                this, oldChildren, oldChildren.added(childExtension)));
+        adopt(childExtension);
+        invalidateXML();
+    }
+
+    /**
+     * Makes this extension the parent of a specific child extension which
+     * has just been added to it, so that the changes of the child invalidate
+     * the cached XML of this extension.
+     */
+    private void adopt(ExtensionElement childExtension) {
+        if (childExtension instanceof AbstractPacketExtension) {
+            AbstractPacketExtension child
+                    = (AbstractPacketExtension) childExtension;
+
+            // A frozen child never changes and may have many parents.
+            if (!child.frozen) {
+                child.parent = this;
+            }
+        }
+    }
+
+    /**
+     * Undoes {@link #adopt(ExtensionElement)} for a specific child extension
+     * which has just been removed from this extension, unless it is still a
+     * child of this extension.
+     */
+    private void release(ExtensionElement childExtension) {
+        if (childExtension instanceof AbstractPacketExtension) {
+            AbstractPacketExtension child
+                    = (AbstractPacketExtension) childExtension;
+
+            if (child.parent == this
+                    && !children.all.contains(childExtension)) {
+                child.parent = null;
+            }
+        }
+    }
+
+    /**
+     * Replaces the child extensions of this extension with the result of a
+     * specific function of the current ones. The index of the child
+     * extensions by type is dropped and rebuilt by later lookups.
+     *
+     * @param update the function, which returns its argument if there is
+     * nothing to change. May be called more than once.
+     * @return the child extensions after the update.
+     */
+    private ChildExtensionList<ExtensionElement> updateChildren(
+            UnaryOperator<ChildExtensionList<ExtensionElement>> update) {
+        checkNotFrozen();
+
+        Children oldChildren;
+        ChildExtensionList<ExtensionElement> all;
+
+        do {
+            oldChildren = children;
+            all = update.apply(oldChildren.all);
+            if (all == oldChildren.all) {
+                return all;
+            }
+        } while (!CHILDREN.compareAndSet(
+                this, oldChildren, new Children(all)));
+        invalidateXML();
+        return all;
     }
 
     /**
@@ -266,11 +782,23 @@ public abstract class AbstractPacketExtension
      * otherwise.
      */
     public boolean removeChildExtension(ExtensionElement childExtension) {
+        checkNotFrozen();
+
         boolean removed = false;
         if (childExtension != null) {
-            while (childExtensions.remove(childExtension)) {
-                removed = true;
-            }
+            Children oldChildren;
+            Children newChildren;
+
+            do {
+                oldChildren = children;
+                newChildren = oldChildren.removed(childExtension);
+            } while (newChildren != oldChildren
+                    && !CHILDREN.compareAndSet(this, oldChildren, newChildren));
+            removed = newChildren != oldChildren;
+        }
+        if (removed) {
+            release(childExtension);
+            invalidateXML();
         }
 
         return removed;
@@ -278,6 +806,12 @@ public abstract class AbstractPacketExtension
 
     /**
      * Sets the value of the attribute named <tt>name</tt> to <tt>value</tt>.
+     * <p>
+     * <tt>Integer</tt>, <tt>Long</tt>, <tt>Short</tt> and <tt>Byte</tt> as well
+     * as enum values are kept in their typed form, so that
+     * {@link #getAttributeAsInt(String)}, {@link #getAttributeAsLong(String)}
+     * and {@link #getAttributeAsEnum(String, Class)} do not need to parse
+     * them. Their XML value is still the result of <tt>toString()</tt>.
      *
      * @param name the name of the attribute that we are setting.
      * @param value an {@link Object} whose <tt>toString()</tt> method returns
@@ -285,15 +819,76 @@ public abstract class AbstractPacketExtension
      * like to remove the attribute with the specified <tt>name</tt>.
      */
     public void setAttribute(String name, Object value) {
-        synchronized (attributes) {
-            if (value != null) {
-                this.attributes.put(name, value.toString());
-            } else {
-                this.attributes.remove(name);
-            }
+        checkNotFrozen();
+        setAttributeValue(name, value);
+        invalidateXML();
+    }
+
+    /**
+     * Stores the value of an attribute in {@link #attributes}, keeping it in
+     * its typed form where possible.
+     */
+    private void setAttributeValue(String name, Object value) {
+        if (value == null) {
+            this.attributes.remove(name);
+        } else if (value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte) {
+            this.attributes.put(
+                    name,
+                    TypedAttributeValue.ofNumber(
+                            ((Number) value).longValue(), null));
+        } else if (value instanceof Enum) {
+            this.attributes.put(
+                    name,
+                    TypedAttributeValue.ofEnum((Enum<?>) value, null));
+        } else {
+            this.attributes.put(name, value.toString());
         }
     }
 
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to a specific
+     * <tt>int</tt>, which is stored unboxed and only rendered to text when
+     * needed.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute.
+     */
+    public void setAttribute(String name, int value) {
+        checkNotFrozen();
+        this.attributes.put(name, TypedAttributeValue.ofNumber(value, null));
+        invalidateXML();
+    }
+
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to a specific
+     * <tt>long</tt>, which is stored unboxed and only rendered to text when
+     * needed.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute.
+     */
+    public void setAttribute(String name, long value) {
+        checkNotFrozen();
+        this.attributes.put(name, TypedAttributeValue.ofNumber(value, null));
+        invalidateXML();
+    }
+
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to a value which has
+     * already been converted to its typed form.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the typed value of the attribute.
+     */
+    void setTypedAttribute(String name, TypedAttributeValue value) {
+        checkNotFrozen();
+        this.attributes.put(name, value);
+        invalidateXML();
+    }
+
     /**
      * Removes the attribute with the specified <tt>name</tt> from the list of
      * attributes registered with this packet extension.
@@ -301,8 +896,9 @@ public abstract class AbstractPacketExtension
      * @param name the name of the attribute that we are removing.
      */
     public void removeAttribute(String name) {
-        synchronized (attributes) {
-            attributes.remove(name);
+        checkNotFrozen();
+        if (attributes.remove(name) != null) {
+            invalidateXML();
         }
     }
 
@@ -316,9 +912,12 @@ public abstract class AbstractPacketExtension
      * if no such attribute is currently registered with this extension.
      */
     public Object getAttribute(String attribute) {
-        synchronized (attributes) {
-            return attributes.get(attribute);
-        }
+        Object attributeVal = attributes.get(attribute);
+
+        // Typed values are exposed as their XML text, as they always were.
+        return attributeVal instanceof TypedAttributeValue
+                ? attributeVal.toString()
+                : attributeVal;
     }
 
     /**
@@ -332,11 +931,9 @@ public abstract class AbstractPacketExtension
      * extension.
      */
     public String getAttributeAsString(String attribute) {
-        synchronized (attributes) {
-            Object attributeVal = attributes.get(attribute);
+        Object attributeVal = attributes.get(attribute);
 
-            return attributeVal == null ? null : attributeVal.toString();
-        }
+        return attributeVal == null ? null : attributeVal.toString();
     }
 
     /**
@@ -366,11 +963,116 @@ public abstract class AbstractPacketExtension
      * this extension
      */
     public int getAttributeAsInt(String attribute, int defaultValue) {
-        synchronized (attributes) {
-            String value = getAttributeAsString(attribute);
+        Object value = attributes.get(attribute);
 
-            return (value == null) ? defaultValue : Integer.parseInt(value);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof TypedAttributeValue
+                && ((TypedAttributeValue) value).isInt()) {
+            return (int) ((TypedAttributeValue) value).longValue();
         }
+
+        String text = value.toString();
+        int intValue = Integer.parseInt(text);
+
+        // Parse once: keep the parsed value along with the original text.
+        attributes.replace(
+                attribute,
+                value,
+                TypedAttributeValue.ofNumber(intValue, text));
+        return intValue;
+    }
+
+    /**
+     * Returns the <tt>long</tt> value of the attribute with the specified
+     * <tt>name</tt>.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the <tt>long</tt> value of the specified <tt>attribute</tt> or
+     * <tt>-1</tt> if no such attribute is currently registered with this
+     * extension.
+     */
+    public long getAttributeAsLong(String attribute) {
+        return getAttributeAsLong(attribute, -1);
+    }
+
+    /**
+     * Returns the <tt>long</tt> value of the attribute with the specified
+     * <tt>name</tt>.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve
+     * @param defaultValue the <tt>long</tt> to be returned as the value of the
+     * specified attribute if no such attribute is currently registered with
+     * this extension
+     * @return the <tt>long</tt> value of the specified <tt>attribute</tt> or
+     * <tt>defaultValue</tt> if no such attribute is currently registered with
+     * this extension
+     */
+    public long getAttributeAsLong(String attribute, long defaultValue) {
+        Object value = attributes.get(attribute);
+
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof TypedAttributeValue
+                && ((TypedAttributeValue) value).isNumber()) {
+            return ((TypedAttributeValue) value).longValue();
+        }
+
+        String text = value.toString();
+        long longValue = Long.parseLong(text);
+
+        // Parse once: keep the parsed value along with the original text.
+        attributes.replace(
+                attribute,
+                value,
+                TypedAttributeValue.ofNumber(longValue, text));
+        return longValue;
+    }
+
+    /**
+     * Returns the value of the attribute with the specified <tt>name</tt> as a
+     * constant of a specific enum type. The text of the attribute is expected
+     * to be the name of the constant (as with <tt>Enum.valueOf</tt>) unless
+     * the attribute was set to the constant itself.
+     *
+     * @param <E> the enum type.
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     * @param type the enum type.
+     * @return the enum constant value of the specified <tt>attribute</tt> or
+     * <tt>null</tt> if no such attribute is currently registered with this
+     * extension.
+     * @throws IllegalArgumentException if the value of the attribute is not
+     * the name of a constant of <tt>type</tt>.
+     */
+    public <E extends Enum<E>> E getAttributeAsEnum(
+            String attribute,
+            Class<E> type)
+            throws IllegalArgumentException {
+        Object value = attributes.get(attribute);
+
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof TypedAttributeValue) {
+            Enum<?> constant = ((TypedAttributeValue) value).enumValue();
+
+            if (type.isInstance(constant)) {
+                return type.cast(constant);
+            }
+        }
+
+        String text = value.toString();
+        E constant = Enum.valueOf(type, text);
+
+        // Parse once: keep the parsed value along with the original text.
+        attributes.replace(
+                attribute,
+                value,
+                TypedAttributeValue.ofEnum(constant, text));
+        return constant;
     }
 
     /**
@@ -387,20 +1089,18 @@ public abstract class AbstractPacketExtension
      */
     public URI getAttributeAsURI(String attribute)
             throws IllegalArgumentException {
-        synchronized (attributes) {
-            String attributeVal = getAttributeAsString(attribute);
+        String attributeVal = getAttributeAsString(attribute);
 
-            if (attributeVal == null) {
-                return null;
-            }
+        if (attributeVal == null) {
+            return null;
+        }
 
-            try {
-                URI uri = new URI(attributeVal);
+        try {
+            URI uri = new URI(attributeVal);
 
-                return uri;
-            } catch (URISyntaxException e) {
-                throw new IllegalArgumentException(e);
-            }
+            return uri;
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
         }
     }
 
@@ -412,9 +1112,7 @@ public abstract class AbstractPacketExtension
      * values in this extension
      */
     public List<String> getAttributeNames() {
-        synchronized (attributes) {
-            return new ArrayList<String>(attributes.keySet());
-        }
+        return new ArrayList<String>(attributes.keySet());
     }
 
     /**
@@ -423,7 +1121,9 @@ public abstract class AbstractPacketExtension
      * @param text the text content of this extension.
      */
     public void setText(String text) {
+        checkNotFrozen();
         this.textContent = text;
+        invalidateXML();
     }
 
     /**
@@ -449,19 +1149,9 @@ public abstract class AbstractPacketExtension
      * <tt>type</tt> or <tt>null</tt> if no such child extension was found.
      */
     public <T extends ExtensionElement> T getFirstChildOfType(Class<T> type) {
-        List<? extends ExtensionElement> childExtensions = getChildExtensions();
-
-        synchronized (childExtensions) {
-            for (ExtensionElement extension : childExtensions) {
-                if (type.isInstance(extension)) {
-                    @SuppressWarnings("unchecked")
-                    T extensionAsType = (T) extension;
+        List<T> children = getChildExtensionsOfTypeView(type);
 
-                    return extensionAsType;
-                }
-            }
-        }
-        return null;
+        return children.isEmpty() ? null : children.get(0);
     }
 
     /**
@@ -478,24 +1168,374 @@ public abstract class AbstractPacketExtension
      */
     public <T extends ExtensionElement> List<T> getChildExtensionsOfType(
             Class<T> type) {
-        List<? extends ExtensionElement> childExtensions = getChildExtensions();
+        return new ArrayList<>(getChildExtensionsOfTypeView(type));
+    }
+
+    /**
+     * Returns a read-only snapshot of this packet's direct child extensions
+     * that match the specified <tt>type</tt>. Unlike
+     * {@link #getChildExtensionsOfType(Class)}, repeated lookups of the same
+     * type neither scan all child extensions nor allocate a new list, as long
+     * as the child extensions do not change in between. The returned list is
+     * not affected by later changes of the child extensions.
+     *
+     * @param <T> the specific <tt>ExtensionElement</tt> type of child
+     * extensions to be returned
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     * @return an unmodifiable (possibly empty) list containing all of this
+     * packet's direct child extensions that match the specified <tt>type</tt>
+     */
+    public <T extends ExtensionElement> List<T> getChildExtensionsOfTypeView(
+            Class<T> type) {
+        if (!overridesGetChildExtensions.get(getClass())) {
+            return findChildExtensionsOfType(CHILDREN, children, type);
+        }
+        if (!tracksChildExtensionChanges()) {
+            return Collections.unmodifiableList(
+                    collectChildExtensionsOfType(type));
+        }
+
+        Children derivedChildren = this.derivedChildren;
+        // Read before the child extensions: a concurrent change makes the
+        // stamp outdated rather than the snapshot.
+        int modCount = this.modCount;
+
+        if (derivedChildren == null || derivedChildren.modCount != modCount) {
+            derivedChildren
+                    = new Children(
+                            ChildExtensionList.copyOf(readChildExtensions()),
+                            modCount);
+            this.derivedChildren = derivedChildren;
+        }
+        return findChildExtensionsOfType(
+                DERIVED_CHILDREN, derivedChildren, type);
+    }
+
+    /**
+     * Looks up the child extensions of a specific type in a specific
+     * snapshot, and indexes the type in the snapshot if it is not yet.
+     *
+     * @param field the field which holds <tt>children</tt>.
+     * @param children the snapshot of the child extensions.
+     * @param type the type of the child extensions to look up.
+     */
+    private <T extends ExtensionElement> List<T> findChildExtensionsOfType(
+            AtomicReferenceFieldUpdater<AbstractPacketExtension, Children>
+                field,
+            Children children,
+            Class<T> type) {
+        ChildExtensionList<T> ofType = children.find(type);
+
+        if (ofType == null) {
+            List<T> matches = new ArrayList<>();
+
+            for (ExtensionElement child : children.all) {
+                if (type.isInstance(child)) {
+                    matches.add(type.cast(child));
+                }
+            }
+            ofType = ChildExtensionList.copyOf(matches);
+            // If a child was added or removed concurrently, the result is
+            // still correct for the snapshot that it was computed from and the
+            // type will be indexed by a later lookup.
+            field.compareAndSet(
+                    this, children, children.indexed(type, ofType));
+        }
+        return ofType;
+    }
+
+    /**
+     * Scans the list returned by {@link #getChildExtensions()} for child
+     * extensions of a specific type. Used for subclasses which override
+     * <tt>getChildExtensions()</tt>.
+     */
+    private <T extends ExtensionElement> List<T> collectChildExtensionsOfType(
+            Class<T> type) {
+        List<? extends ExtensionElement> childExtensions
+                = readChildExtensions();
         List<T> result = new ArrayList<T>();
 
         if (childExtensions == null) {
             return result;
         }
 
-        synchronized (childExtensions) {
-            for (ExtensionElement extension : childExtensions) {
-                if (type.isInstance(extension)) {
-                    @SuppressWarnings("unchecked")
-                    T extensionAsType = (T) extension;
+        for (ExtensionElement extension : childExtensions) {
+            if (type.isInstance(extension)) {
+                @SuppressWarnings("unchecked")
+                T extensionAsType = (T) extension;
 
-                    result.add(extensionAsType);
-                }
+                result.add(extensionAsType);
             }
         }
 
         return result;
     }
+
+    /**
+     * An immutable snapshot of the child extensions of an
+     * <tt>AbstractPacketExtension</tt> along with an index of them by the
+     * types which have been looked up, kept as parallel arrays because an
+     * extension is only ever looked up by a few types.
+     */
+    private static class Children {
+        /**
+         * The snapshot without any child extensions or indexed types.
+         */
+        static final Children EMPTY = new Children(ChildExtensionList.empty());
+
+        /**
+         * All child extensions in document order.
+         */
+        final ChildExtensionList<ExtensionElement> all;
+
+        /**
+         * The {@link #modCount} of the extension when {@link #all} was read
+         * from an override of {@link #getChildExtensions()}, otherwise
+         * <tt>0</tt>.
+         */
+        final int modCount;
+
+        /**
+         * The indexed types.
+         */
+        private final Class<?>[] types;
+
+        /**
+         * The child extensions of the respective types, in document order.
+         */
+        private final ChildExtensionList<?>[] ofType;
+
+        /**
+         * Initializes a snapshot of specific child extensions without any
+         * indexed types.
+         */
+        Children(ChildExtensionList<ExtensionElement> all) {
+            this(all, 0);
+        }
+
+        /**
+         * Initializes a snapshot of the child extensions returned by an
+         * override of {@link #getChildExtensions()} without any indexed
+         * types.
+         */
+        Children(ChildExtensionList<ExtensionElement> all, int modCount) {
+            this(all, modCount, new Class<?>[0], new ChildExtensionList<?>[0]);
+        }
+
+        private Children(
+                ChildExtensionList<ExtensionElement> all,
+                int modCount,
+                Class<?>[] types,
+                ChildExtensionList<?>[] ofType) {
+            this.all = all;
+            this.modCount = modCount;
+            this.types = types;
+            this.ofType = ofType;
+        }
+
+        /**
+         * Returns the indexed child extensions of a specific type or
+         * <tt>null</tt> if the type is not indexed.
+         */
+        @SuppressWarnings("unchecked")
+        <T> ChildExtensionList<T> find(Class<T> type) {
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == type) {
+                    return (ChildExtensionList<T>) ofType[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns a copy of this snapshot which also indexes a specific type.
+         */
+        Children indexed(Class<?> type, ChildExtensionList<?> children) {
+            int n = types.length;
+            Class<?>[] newTypes = Arrays.copyOf(types, n + 1);
+            ChildExtensionList<?>[] newOfType = Arrays.copyOf(ofType, n + 1);
+
+            newTypes[n] = type;
+            newOfType[n] = children;
+            return new Children(all, modCount, newTypes, newOfType);
+        }
+
+        /**
+         * Returns a copy of this snapshot with a specific child extension
+         * appended.
+         */
+        @SuppressWarnings("unchecked")
+        Children added(ExtensionElement child) {
+            ChildExtensionList<?>[] newOfType = ofType.clone();
+
+            for (int i = 0; i < types.length; i++) {
+                if (types[i].isInstance(child)) {
+                    newOfType[i]
+                            = ((ChildExtensionList<Object>) newOfType[i])
+                                    .with(child);
+                }
+            }
+            return new Children(all.with(child), modCount, types, newOfType);
+        }
+
+        /**
+         * Returns a copy of this snapshot with all occurrences of a specific
+         * child extension removed, or this snapshot if it does not contain
+         * the child extension.
+         */
+        Children removed(ExtensionElement child) {
+            ChildExtensionList<ExtensionElement> newAll = all.withoutAll(child);
+
+            if (newAll == all) {
+                return this;
+            }
+
+            ChildExtensionList<?>[] newOfType = ofType.clone();
+
+            for (int i = 0; i < types.length; i++) {
+                newOfType[i] = newOfType[i].withoutAll(child);
+            }
+            return new Children(newAll, modCount, types, newOfType);
+        }
+    }
+
+    /**
+     * The list returned by {@link #getChildExtensions()}: a snapshot of the
+     * child extensions through which they can also be modified. A
+     * modification is applied to the current child extensions, which may have
+     * changed since the snapshot was taken, and the snapshot is then replaced
+     * by the result. Positions in the snapshot are mapped to the positions of
+     * the same child extensions in the current ones.
+     */
+    private class ChildExtensionsView
+            extends AbstractList<ExtensionElement>
+            implements RandomAccess {
+        /**
+         * The child extensions as of the creation of this view or its last
+         * modification.
+         */
+        private ChildExtensionList<ExtensionElement> snapshot;
+
+        ChildExtensionsView(ChildExtensionList<ExtensionElement> snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public ExtensionElement get(int index) {
+            return snapshot.get(index);
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size();
+        }
+
+        @Override
+        public Object[] toArray() {
+            return snapshot.toArray();
+        }
+
+        @Override
+        public void forEach(Consumer<? super ExtensionElement> action) {
+            snapshot.forEach(action);
+        }
+
+        @Override
+        public ExtensionElement set(int index, ExtensionElement element) {
+            ExtensionElement oldElement = snapshot.get(index);
+
+            snapshot = updateChildren(all -> {
+                int i = indexIn(all, index);
+
+                return i < 0 ? all.with(element) : all.replacing(i, element);
+            });
+            adopt(element);
+            release(oldElement);
+            return oldElement;
+        }
+
+        @Override
+        public void add(int index, ExtensionElement element) {
+            int size = snapshot.size();
+
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+            snapshot = updateChildren(all -> {
+                int i = index == size ? -1 : indexIn(all, index);
+
+                return i < 0 ? all.with(element) : all.with(i, element);
+            });
+            modCount++;
+            adopt(element);
+        }
+
+        @Override
+        public ExtensionElement remove(int index) {
+            ExtensionElement oldElement = snapshot.get(index);
+
+            snapshot = updateChildren(all -> {
+                int i = indexIn(all, index);
+
+                return i < 0 ? all : all.without(i);
+            });
+            modCount++;
+            release(oldElement);
+            return oldElement;
+        }
+
+        @Override
+        public void clear() {
+            ChildExtensionList<ExtensionElement> oldSnapshot = snapshot;
+
+            snapshot = updateChildren(all -> ChildExtensionList.empty());
+            modCount++;
+            oldSnapshot.forEach(AbstractPacketExtension.this::release);
+        }
+
+        /**
+         * Returns the position in specific child extensions of the child
+         * extension at a specific position in {@link #snapshot}, or
+         * <tt>-1</tt> if it is no longer among them.
+         */
+        private int indexIn(
+                ChildExtensionList<ExtensionElement> all,
+                int index) {
+            if (all == snapshot) {
+                return index;
+            }
+
+            ExtensionElement element = snapshot.get(index);
+
+            for (int i = 0; i < all.size(); i++) {
+                if (all.get(i) == element) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The XML of an extension along with the {@link #modCount} of the
+     * extension when it was rendered.
+     */
+    private static class CachedXML {
+        /**
+         * The {@link #modCount} of the extension when {@link #xml} was
+         * rendered.
+         */
+        final int modCount;
+
+        /**
+         * The rendered XML.
+         */
+        final String xml;
+
+        CachedXML(int modCount, String xml) {
+            this.modCount = modCount;
+            this.xml = xml;
+        }
+    }
 }
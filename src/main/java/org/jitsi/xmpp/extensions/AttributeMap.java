@@ -0,0 +1,290 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * A compact, insertion-ordered <tt>Map</tt> used as the attribute storage of
+ * {@link AbstractPacketExtension}. Extensions rarely have more than a dozen
+ * attributes, so instead of the hash table and per-entry nodes of a
+ * <tt>LinkedHashMap</tt> the keys and values are kept next to each other in a
+ * single array which is scanned linearly.
+ * <p>
+ * The array is never modified once it has been published. Every modification
+ * creates a new array and installs it with a compare-and-set, so readers
+ * (including iteration and serialization) always see a consistent snapshot
+ * without taking a lock, and writers do not block each other. Attribute names
+ * are interned when they are first inserted so that lookups with constant
+ * names usually match on identity.
+ * <p>
+ * As with <tt>LinkedHashMap</tt>, replacing the value of an existing key
+ * does not change its position. <tt>null</tt> keys are not permitted.
+ */
+final class AttributeMap
+        extends AbstractMap<String, Object> {
+
+    /**
+     * The table of a map without any entries.
+     */
+    private static final Object[] EMPTY = new Object[0];
+
+    /**
+     * Updates {@link #table} atomically.
+     */
+    private static final AtomicReferenceFieldUpdater<AttributeMap, Object[]>
+            TABLE = AtomicReferenceFieldUpdater.newUpdater(
+                    AttributeMap.class, Object[].class, "table");
+
+    /**
+     * The keys and values of this map in insertion order, laid out as
+     * <tt>key0, value0, key1, value1, ...</tt>.
+     */
+    private volatile Object[] table = EMPTY;
+
+    /**
+     * Returns the index of a specific key in a specific table or <tt>-1</tt>.
+     */
+    private static int indexOf(Object[] table, Object key) {
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < table.length; i += 2) {
+                if (key.equals(table[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return table.length >> 1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return table.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(table, key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object[] table = this.table;
+        int i = indexOf(table, key);
+
+        return i < 0 ? null : table[i + 1];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Objects.requireNonNull(key, "key");
+
+        String internedKey = null;
+        Object[] oldTable;
+        Object[] newTable;
+        Object oldValue;
+
+        do {
+            oldTable = table;
+
+            int i = indexOf(oldTable, key);
+
+            if (i >= 0) {
+                oldValue = oldTable[i + 1];
+                newTable = oldTable.clone();
+                newTable[i + 1] = value;
+            } else {
+                if (internedKey == null) {
+                    internedKey = key.intern();
+                }
+                oldValue = null;
+                newTable = Arrays.copyOf(oldTable, oldTable.length + 2);
+                newTable[oldTable.length] = internedKey;
+                newTable[oldTable.length + 1] = value;
+            }
+        } while (!TABLE.compareAndSet(this, oldTable, newTable));
+
+        return oldValue;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object[] oldTable;
+        Object[] newTable;
+        Object oldValue;
+
+        do {
+            oldTable = table;
+
+            int i = indexOf(oldTable, key);
+
+            if (i < 0) {
+                return null;
+            }
+            oldValue = oldTable[i + 1];
+            newTable = new Object[oldTable.length - 2];
+            System.arraycopy(oldTable, 0, newTable, 0, i);
+            System.arraycopy(
+                    oldTable, i + 2,
+                    newTable, i,
+                    oldTable.length - i - 2);
+        } while (!TABLE.compareAndSet(this, oldTable, newTable));
+
+        return oldValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The replacement is atomic and keeps the position of the entry. The
+     * current value is compared to <tt>oldValue</tt> by identity.
+     */
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        Object[] oldTable;
+        Object[] newTable;
+
+        do {
+            oldTable = table;
+
+            int i = indexOf(oldTable, key);
+
+            if (i < 0 || oldTable[i + 1] != oldValue) {
+                return false;
+            }
+            newTable = oldTable.clone();
+            newTable[i + 1] = newValue;
+        } while (!TABLE.compareAndSet(this, oldTable, newTable));
+
+        return true;
+    }
+
+    /**
+     * Replaces the contents of this map with those of another map. Both maps
+     * share the same table until either of them is modified, so this takes
+     * constant time regardless of the number of entries.
+     *
+     * @param other the map whose contents are to be shared.
+     */
+    void share(AttributeMap other) {
+        table = other.table;
+    }
+
+    @Override
+    public void clear() {
+        table = EMPTY;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Iterates over a snapshot of this map without allocating entries.
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        Object[] table = this.table;
+
+        for (int i = 0; i < table.length; i += 2) {
+            action.accept((String) table[i], table[i + 1]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned set and its iterators operate on a snapshot of this map
+     * taken when the iteration starts. Removal through an iterator is
+     * supported and removes the entry from this map.
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new SnapshotIterator(table);
+            }
+
+            @Override
+            public int size() {
+                return AttributeMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the entries of a snapshot of the table of this map.
+     */
+    private class SnapshotIterator
+            implements Iterator<Entry<String, Object>> {
+        /**
+         * The snapshot of the table that we iterate over.
+         */
+        private final Object[] snapshot;
+
+        /**
+         * The index in {@link #snapshot} of the next key.
+         */
+        private int next = 0;
+
+        /**
+         * The key returned by the last call to {@link #next()}.
+         */
+        private String lastKey;
+
+        SnapshotIterator(Object[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < snapshot.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastKey = (String) snapshot[next];
+
+            Entry<String, Object> entry
+                    = new SimpleImmutableEntry<>(lastKey, snapshot[next + 1]);
+
+            next += 2;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            AttributeMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+}
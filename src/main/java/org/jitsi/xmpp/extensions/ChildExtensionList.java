@@ -0,0 +1,194 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * An immutable, array-backed list of child extensions. Modifications return a
+ * new list and leave the original one untouched, so an instance can be handed
+ * out to any number of readers as a stable snapshot without copying it.
+ *
+ * @param <E> the type of the elements.
+ */
+final class ChildExtensionList<E>
+        extends AbstractList<E>
+        implements RandomAccess {
+
+    /**
+     * The list without any elements.
+     */
+    private static final ChildExtensionList<?> EMPTY
+            = new ChildExtensionList<>(new Object[0]);
+
+    /**
+     * Returns the list without any elements.
+     */
+    @SuppressWarnings("unchecked")
+    static <E> ChildExtensionList<E> empty() {
+        return (ChildExtensionList<E>) EMPTY;
+    }
+
+    /**
+     * Returns a list with the elements of a specific collection.
+     *
+     * @param c the collection whose elements are to be placed in the list.
+     */
+    static <E> ChildExtensionList<E> copyOf(Collection<? extends E> c) {
+        return c.isEmpty()
+                ? empty()
+                : new ChildExtensionList<>(c.toArray());
+    }
+
+    /**
+     * The elements of this list. Never modified.
+     */
+    private final Object[] elements;
+
+    private ChildExtensionList(Object[] elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return elements.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Iterates without allocating an iterator.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        for (Object element : elements) {
+            action.accept((E) element);
+        }
+    }
+
+    /**
+     * Returns a list with the elements of this list followed by a specific
+     * element.
+     *
+     * @param element the element to append.
+     */
+    ChildExtensionList<E> with(E element) {
+        Object[] elements
+                = Arrays.copyOf(this.elements, this.elements.length + 1);
+
+        elements[this.elements.length] = element;
+        return new ChildExtensionList<>(elements);
+    }
+
+    /**
+     * Returns a list with the elements of this list and a specific element
+     * inserted at a specific position.
+     *
+     * @param index the position of the element in the returned list.
+     * @param element the element to insert.
+     */
+    ChildExtensionList<E> with(int index, E element) {
+        Object[] elements = new Object[this.elements.length + 1];
+
+        System.arraycopy(this.elements, 0, elements, 0, index);
+        elements[index] = element;
+        System.arraycopy(
+                this.elements, index,
+                elements, index + 1,
+                this.elements.length - index);
+        return new ChildExtensionList<>(elements);
+    }
+
+    /**
+     * Returns a list with the elements of this list except for the one at a
+     * specific position, which is replaced by a specific element.
+     *
+     * @param index the position of the element to replace.
+     * @param element the replacement.
+     */
+    ChildExtensionList<E> replacing(int index, E element) {
+        Object[] elements = this.elements.clone();
+
+        elements[index] = element;
+        return new ChildExtensionList<>(elements);
+    }
+
+    /**
+     * Returns a list with the elements of this list except for the one at a
+     * specific position.
+     *
+     * @param index the position of the element to remove.
+     */
+    ChildExtensionList<E> without(int index) {
+        if (elements.length == 1) {
+            return empty();
+        }
+
+        Object[] elements = new Object[this.elements.length - 1];
+
+        System.arraycopy(this.elements, 0, elements, 0, index);
+        System.arraycopy(
+                this.elements, index + 1,
+                elements, index,
+                this.elements.length - index - 1);
+        return new ChildExtensionList<>(elements);
+    }
+
+    /**
+     * Returns a list with the elements of this list except for all those
+     * equal to a specific object, or this list if there are none.
+     *
+     * @param o the object to remove.
+     */
+    ChildExtensionList<E> withoutAll(Object o) {
+        int count = 0;
+
+        for (Object element : elements) {
+            if (Objects.equals(o, element)) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return this;
+        }
+        if (count == elements.length) {
+            return empty();
+        }
+
+        Object[] elements = new Object[this.elements.length - count];
+        int i = 0;
+
+        for (Object element : this.elements) {
+            if (!Objects.equals(o, element)) {
+                elements[i++] = element;
+            }
+        }
+        return new ChildExtensionList<>(elements);
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.jitsi.xmpp.extensions;
 
+import java.lang.invoke.*;
+import java.util.function.*;
 import java.util.logging.*;
 
 import org.jivesoftware.smack.packet.*;
@@ -39,17 +41,125 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
             .getLogger(DefaultPacketExtensionProvider.class.getName());
 
     /**
-     * The {@link Class} that the packets we will be parsing here belong to.
+     * Caches, per extension class, the factory which invokes its public no-arg
+     * constructor. The constructor is resolved once per class rather than once
+     * per parsed element, and the cache does not keep classes from being
+     * unloaded.
      */
-    private final Class<C> packetClass;
+    private static final ClassValue<Supplier<?>> factories
+            = new ClassValue<Supplier<?>>() {
+        @Override
+        protected Supplier<?> computeValue(Class<?> type) {
+            return createFactory(type);
+        }
+    };
+
+    /**
+     * Returns the cached factory which invokes the public no-arg constructor
+     * of a specific class.
+     *
+     * @param type the class to get the factory of.
+     * @return a {@link Supplier} of new instances of <tt>type</tt>.
+     * @throws IllegalArgumentException if <tt>type</tt> does not have an
+     * accessible no-arg constructor.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> getFactory(Class<T> type) {
+        return (Supplier<T>) factories.get(type);
+    }
+
+    /**
+     * Creates a {@link Supplier} which invokes the public no-arg constructor of
+     * a specific class without going through reflection for every instance.
+     * A {@link LambdaMetafactory} generated supplier is preferred because the
+     * JIT treats it like a plain {@code new}. If the class is not visible
+     * from our class loader (e.g. in an OSGi container) we fall back to
+     * invoking the constructor {@link MethodHandle} directly.
+     *
+     * @param type the class to create a factory for.
+     * @return a {@link Supplier} of new instances of <tt>type</tt>.
+     * @throws IllegalArgumentException if <tt>type</tt> does not have an
+     * accessible no-arg constructor.
+     */
+    private static Supplier<?> createFactory(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle constructor;
+
+        try {
+            constructor = lookup.findConstructor(
+                    type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(
+                    "No public no-arg constructor for " + type.getName(), e);
+        }
+
+        try {
+            CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(type));
+
+            return (Supplier<?>) site.getTarget().invoke();
+        } catch (Throwable t) {
+            logger.log(
+                    Level.FINE,
+                    "Falling back to MethodHandle for " + type.getName(),
+                    t);
+        }
+
+        MethodHandle generic
+                = constructor.asType(MethodType.methodType(Object.class));
+
+        return () -> {
+            try {
+                return generic.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        };
+    }
+
+    /**
+     * The factory which creates the instances of the packets that we will be
+     * parsing here.
+     */
+    private final Supplier<C> packetFactory;
+
+    /**
+     * The providers of the child elements that we have encountered so far.
+     */
+    private final ExtensionProviderCache childProviders
+            = new ExtensionProviderCache();
 
     /**
      * Creates a new packet provider for the specified packet extensions.
      *
      * @param c the {@link Class} that the packets we will be parsing belong to.
+     * Its public no-arg constructor is resolved once and cached.
      */
+    @SuppressWarnings("unchecked")
     public DefaultPacketExtensionProvider(Class<C> c) {
-        this.packetClass = c;
+        this(getFactory(c));
+    }
+
+    /**
+     * Creates a new packet provider which uses a specific factory to create the
+     * packet extensions that it parses (e.g.
+     * <tt>CandidatePacketExtension::new</tt>).
+     *
+     * @param factory the {@link Supplier} of the instances of the packets that
+     * we will be parsing.
+     */
+    public DefaultPacketExtensionProvider(Supplier<C> factory) {
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+        this.packetFactory = factory;
     }
 
     /**
@@ -66,13 +176,14 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
      */
     @Override
     public C parse(XmlPullParser parser, int depth) throws Exception {
-        C packetExtension = packetClass.getConstructor().newInstance();
+        C packetExtension = packetFactory.get();
 
         //first, set all attributes
         int attrCount = parser.getAttributeCount();
 
         for (int i = 0; i < attrCount; i++) {
-            packetExtension.setAttribute(
+            parseAttribute(
+                    packetExtension,
                     parser.getAttributeName(i),
                     parser.getAttributeValue(i));
         }
@@ -95,8 +206,8 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
             }
 
             if (eventType == XmlPullParser.START_TAG) {
-                ExtensionElementProvider<ExtensionElement> provider = ProviderManager
-                        .getExtensionProvider(elementName, namespace);
+                ExtensionElementProvider<ExtensionElement> provider
+                        = childProviders.get(elementName, namespace);
 
                 if (provider == null) {
                     //we don't know how to handle this kind of extensions.
@@ -108,7 +219,9 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
                     if (namespace != null) {
                         if (childExtension instanceof AbstractPacketExtension) {
                             ((AbstractPacketExtension) childExtension).
-                                    setNamespace(namespace);
+                                    setNamespace(
+                                        StringCanonicalizer.canonicalize(
+                                                namespace));
                         }
                     }
                     packetExtension.addChildExtension(childExtension);
@@ -131,4 +244,99 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
 
         return packetExtension;
     }
+
+    /**
+     * Sets an attribute of a packet extension that is being parsed. The
+     * default implementation stores the value as it appears in the XML,
+     * canonicalized through {@link StringCanonicalizer} so that the values
+     * which repeat across elements are retained only once. (The names are
+     * interned by the attribute storage itself.)
+     * Providers for specific extensions override this method to switch on the
+     * attribute names they know and store numeric and enum values in their
+     * typed form right away (see {@link #setNumberAttribute} and
+     * {@link #setEnumAttribute}), so that the getters of the extension do not
+     * have to parse them later on. The text of the value is preserved, so the
+     * extension serializes to exactly the same XML either way.
+     *
+     * @param packetExtension the packet extension that is being parsed.
+     * @param name the name of the attribute.
+     * @param value the value of the attribute as it appears in the XML.
+     */
+    protected void parseAttribute(
+            C packetExtension,
+            String name,
+            String value) {
+        packetExtension.setAttribute(
+                name,
+                StringCanonicalizer.canonicalizeValue(value));
+    }
+
+    /**
+     * Sets an attribute of a packet extension to a numeric value given in its
+     * XML form. If the value is not a valid number, it is stored as text just
+     * like {@link AbstractPacketExtension#setAttribute(String, Object)} would.
+     *
+     * @param packetExtension the packet extension.
+     * @param name the name of the attribute.
+     * @param value the value of the attribute as it appears in the XML.
+     */
+    protected static void setNumberAttribute(
+            AbstractPacketExtension packetExtension,
+            String name,
+            String value) {
+        long number;
+
+        try {
+            number = Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            packetExtension.setAttribute(name, value);
+            return;
+        }
+        // Numbers written the way Long.toString() writes them (i.e. all but
+        // the most unusual ones) do not need their text to be retained. The
+        // rest keep it so that they serialize exactly as they were parsed.
+        char first = value.charAt(0);
+        boolean canonical
+                = first != '+'
+                    && !(value.length() > 1
+                            && (first == '0'
+                                || (first == '-' && value.charAt(1) == '0')));
+
+        packetExtension.setTypedAttribute(
+                name,
+                TypedAttributeValue.ofNumber(
+                        number,
+                        canonical ? null : value));
+    }
+
+    /**
+     * Sets an attribute of a packet extension to an enum value given in its
+     * XML form. If the value is not the name of a constant of <tt>type</tt>,
+     * it is stored as text just like
+     * {@link AbstractPacketExtension#setAttribute(String, Object)} would.
+     *
+     * @param packetExtension the packet extension.
+     * @param name the name of the attribute.
+     * @param value the value of the attribute as it appears in the XML.
+     * @param type the enum type of the attribute.
+     */
+    protected static <E extends Enum<E>> void setEnumAttribute(
+            AbstractPacketExtension packetExtension,
+            String name,
+            String value,
+            Class<E> type) {
+        E constant;
+
+        try {
+            constant = Enum.valueOf(type, value);
+        } catch (IllegalArgumentException iae) {
+            packetExtension.setAttribute(name, value);
+            return;
+        }
+        packetExtension.setTypedAttribute(
+                name,
+                TypedAttributeValue.ofEnum(
+                        constant,
+                        StringCanonicalizer.canonicalizeValue(value)));
+    }
 }
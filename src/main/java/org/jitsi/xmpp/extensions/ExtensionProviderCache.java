@@ -0,0 +1,275 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
+
+/**
+ * A small cache of the extension providers that a parser has resolved through
+ * {@link ProviderManager} for the child elements it encounters. A parser only
+ * ever sees a handful of distinct (element name, namespace) pairs, so looking
+ * them up here saves both the construction of the key string and the global
+ * map lookup that {@link ProviderManager#getExtensionProvider(String, String)}
+ * performs for every child element.
+ * <p>
+ * The cache is lock-free: lookups read an immutable array of entries and new
+ * entries are published by replacing it. {@link ProviderManager} does not
+ * tell anyone when its registrations change, so only the providers which
+ * this library registers through
+ * {@link #addExtensionProvider(String, String, Object)} are cached, and only
+ * while {@link ProviderManager} still returns them. Those methods and
+ * {@link #removeExtensionProvider(String, String)} invalidate all caches.
+ * Every other element, including those whose providers Smack or third-party
+ * code registers with {@link ProviderManager} directly, is looked up in
+ * {@link ProviderManager} every time, so such registrations are always
+ * picked up. Code which replaces one of the providers of this library
+ * directly in {@link ProviderManager} must call {@link #invalidateAll()}
+ * afterwards.
+ */
+public final class ExtensionProviderCache {
+
+    /**
+     * The maximum number of entries that a single cache holds. Parsers which
+     * see more distinct child elements than this fall back to
+     * {@link ProviderManager} for the excess ones.
+     */
+    private static final int MAX_ENTRIES = 16;
+
+    /**
+     * The current generation of the {@link ProviderManager} registrations as
+     * far as the caches are concerned.
+     */
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * The providers registered through
+     * {@link #addExtensionProvider(String, String, Object)}, keyed by
+     * {@link #key(String, String)}. Only these may be cached.
+     */
+    private static final Map<String, ExtensionElementProvider<ExtensionElement>>
+            ownProviders = new ConcurrentHashMap<>();
+
+    /**
+     * Invalidates the contents of all <tt>ExtensionProviderCache</tt>
+     * instances. Must be called after replacing or removing one of the
+     * extension providers registered through
+     * {@link #addExtensionProvider(String, String, Object)} in
+     * {@link ProviderManager} directly.
+     */
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Registers an extension provider with {@link ProviderManager}, allows
+     * the caches to keep it and invalidates them, so that parsers do not keep
+     * using a provider which has been replaced.
+     *
+     * @param elementName the name of the element.
+     * @param namespace the namespace of the element.
+     * @param provider the provider to register.
+     * @see ProviderManager#addExtensionProvider(String, String, Object)
+     */
+    public static void addExtensionProvider(
+            String elementName,
+            String namespace,
+            Object provider) {
+        ProviderManager.addExtensionProvider(elementName, namespace, provider);
+
+        // ProviderManager may wrap or instantiate what it is given, so keep
+        // what it returns.
+        ExtensionElementProvider<ExtensionElement> registered
+                = ProviderManager.getExtensionProvider(elementName, namespace);
+        String key = key(elementName, namespace);
+
+        if (registered == null) {
+            ownProviders.remove(key);
+        } else {
+            ownProviders.put(key, registered);
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Removes an extension provider from {@link ProviderManager} and
+     * invalidates all caches, so that parsers stop using it.
+     *
+     * @param elementName the name of the element.
+     * @param namespace the namespace of the element.
+     * @return the provider which was removed or <tt>null</tt>.
+     * @see ProviderManager#removeExtensionProvider(String, String)
+     */
+    public static ExtensionElementProvider<ExtensionElement>
+        removeExtensionProvider(String elementName, String namespace) {
+        ExtensionElementProvider<ExtensionElement> provider
+                = ProviderManager.removeExtensionProvider(
+                        elementName, namespace);
+
+        ownProviders.remove(key(elementName, namespace));
+        invalidateAll();
+        return provider;
+    }
+
+    /**
+     * Returns the key of {@link #ownProviders} for a specific element name and
+     * namespace. Element names cannot contain <tt>'#'</tt>, so the key is
+     * unambiguous.
+     */
+    private static String key(String elementName, String namespace) {
+        return elementName + '#' + namespace;
+    }
+
+    /**
+     * The entries currently cached by this instance and the generation they
+     * were resolved in.
+     */
+    private volatile Entries entries = new Entries(generation.get());
+
+    /**
+     * Returns the extension provider registered with {@link ProviderManager}
+     * for a specific element name and namespace.
+     *
+     * @param elementName the name of the element.
+     * @param namespace the namespace of the element.
+     * @return the provider registered for <tt>elementName</tt> and
+     * <tt>namespace</tt> or <tt>null</tt> if there is no such provider.
+     */
+    public ExtensionElementProvider<ExtensionElement> get(
+            String elementName,
+            String namespace) {
+        Entries entries = this.entries;
+        int currentGeneration = generation.get();
+
+        if (entries.generation != currentGeneration) {
+            entries = new Entries(currentGeneration);
+            this.entries = entries;
+        } else {
+            ExtensionElementProvider<ExtensionElement> provider
+                    = entries.find(elementName, namespace);
+
+            if (provider != null) {
+                return provider;
+            }
+        }
+
+        ExtensionElementProvider<ExtensionElement> provider
+                = ProviderManager.getExtensionProvider(elementName, namespace);
+
+        if (provider != null
+                && entries.elementNames.length < MAX_ENTRIES
+                && provider == ownProviders.get(key(elementName, namespace))) {
+            // Racing threads may overwrite each other's additions, which only
+            // costs another lookup later on.
+            this.entries
+                    = entries.with(elementName, namespace, provider);
+        }
+        return provider;
+    }
+
+    /**
+     * An immutable set of cached providers in parallel arrays.
+     */
+    private static class Entries {
+        /**
+         * The {@link ProviderManager} generation in which these entries were
+         * resolved.
+         */
+        final int generation;
+
+        /**
+         * The interned element names of the entries.
+         */
+        final String[] elementNames;
+
+        /**
+         * The interned namespaces of the entries.
+         */
+        final String[] namespaces;
+
+        /**
+         * The cached providers.
+         */
+        final ExtensionElementProvider<ExtensionElement>[] providers;
+
+        /**
+         * Initializes an empty set of entries.
+         *
+         * @param generation the {@link ProviderManager} generation.
+         */
+        @SuppressWarnings("unchecked")
+        Entries(int generation) {
+            this(generation,
+                 new String[0],
+                 new String[0],
+                 new ExtensionElementProvider[0]);
+        }
+
+        private Entries(
+                int generation,
+                String[] elementNames,
+                String[] namespaces,
+                ExtensionElementProvider<ExtensionElement>[] providers) {
+            this.generation = generation;
+            this.elementNames = elementNames;
+            this.namespaces = namespaces;
+            this.providers = providers;
+        }
+
+        /**
+         * Finds the cached provider for an element name and namespace. The
+         * cached keys are interned so names coming from an interning parser
+         * match on identity.
+         */
+        ExtensionElementProvider<ExtensionElement> find(
+                String elementName,
+                String namespace) {
+            for (int i = 0; i < elementNames.length; i++) {
+                String cachedName = elementNames[i];
+
+                if ((cachedName == elementName
+                            || cachedName.equals(elementName))
+                        && Objects.equals(namespaces[i], namespace)) {
+                    return providers[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns a copy of these entries with one more entry appended.
+         */
+        Entries with(
+                String elementName,
+                String namespace,
+                ExtensionElementProvider<ExtensionElement> provider) {
+            int n = elementNames.length;
+            String[] elementNames = Arrays.copyOf(this.elementNames, n + 1);
+            String[] namespaces = Arrays.copyOf(this.namespaces, n + 1);
+            ExtensionElementProvider<ExtensionElement>[] providers
+                    = Arrays.copyOf(this.providers, n + 1);
+
+            elementNames[n] = elementName.intern();
+            namespaces[n] = namespace == null ? null : namespace.intern();
+            providers[n] = provider;
+            return new Entries(generation, elementNames, namespaces, providers);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A bounded table of canonical <tt>String</tt> instances which the providers
+ * use for the names, namespaces and low-cardinality values they parse.
+ * Stanzas repeat a small vocabulary (e.g. <tt>ssrc</tt>, <tt>sendrecv</tt>,
+ * <tt>opus</tt>, <tt>SIM</tt> or the namespaces of the extensions) over and
+ * over again, while the parser returns a new <tt>String</tt> for every
+ * occurrence. Routing the parsed strings through this table lets long-lived
+ * state (e.g. a conference with hundreds of participants) retain a single copy
+ * of each of them.
+ * <p>
+ * Unlike {@link String#intern()} the table has a fixed size and never grows:
+ * it is direct-mapped, i.e. each string may only live in the slot selected by
+ * its hash code, and a string which hashes to an occupied slot replaces the
+ * previous occupant. Frequent strings therefore stay in the table while rare
+ * ones come and go without ever increasing its footprint. Lookups and updates
+ * are lock-free; a racing update may lose an entry, which only costs sharing
+ * and never correctness since canonicalized strings are always equal to the
+ * strings they were requested for.
+ */
+public final class StringCanonicalizer {
+
+    /**
+     * The number of slots in {@link #table}. A power of two.
+     */
+    private static final int TABLE_SIZE = 4096;
+
+    /**
+     * The maximum length of the strings that are canonicalized. Longer
+     * strings (e.g. fingerprints or UUIDs) are unlikely to repeat and are
+     * returned as they are so that they do not evict useful entries.
+     */
+    private static final int MAX_LENGTH = 64;
+
+    /**
+     * The maximum length of the attribute values that
+     * {@link #canonicalizeValue(String)} canonicalizes. Values which repeat
+     * across elements (e.g. directions, codec names, transport protocols,
+     * group semantics or small numbers) are short.
+     */
+    private static final int MAX_VALUE_LENGTH = 16;
+
+    /**
+     * The canonical strings.
+     */
+    private static final AtomicReferenceArray<String> table
+            = new AtomicReferenceArray<>(TABLE_SIZE);
+
+    /**
+     * Returns the canonical instance of a specific string, i.e. a string
+     * equal to it which was returned by a previous call if it is still in the
+     * table, or the string itself otherwise.
+     *
+     * @param s the string to canonicalize. May be <tt>null</tt>.
+     * @return a string equal to <tt>s</tt>.
+     */
+    public static String canonicalize(String s) {
+        return canonicalize(s, MAX_LENGTH);
+    }
+
+    /**
+     * Returns the canonical instance of a specific attribute value. Only
+     * short values, which are the ones likely to repeat, are canonicalized.
+     *
+     * @param s the value to canonicalize. May be <tt>null</tt>.
+     * @return a string equal to <tt>s</tt>.
+     */
+    public static String canonicalizeValue(String s) {
+        return canonicalize(s, MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * Returns the canonical instance of a specific string if it is no longer
+     * than a specific length.
+     */
+    private static String canonicalize(String s, int maxLength) {
+        if (s == null || s.length() > maxLength) {
+            return s;
+        }
+
+        int h = s.hashCode();
+        int slot = (h ^ (h >>> 16)) & (TABLE_SIZE - 1);
+        String canonical = table.get(slot);
+
+        if (canonical != null
+                && (canonical == s || canonical.equals(s))) {
+            return canonical;
+        }
+        table.lazySet(slot, s);
+        return s;
+    }
+
+    /**
+     * Prevents the initialization of <tt>StringCanonicalizer</tt> instances.
+     */
+    private StringCanonicalizer() {
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+/**
+ * The value of an attribute of an {@link AbstractPacketExtension} which is
+ * kept in its typed form: either an integral number (stored unboxed) or an
+ * enum constant. The XML text of the value is only rendered when it is first
+ * needed (e.g. when the extension is serialized), while the typed getters of
+ * <tt>AbstractPacketExtension</tt> read the value directly instead of parsing
+ * the text on every call.
+ * <p>
+ * Instances are immutable apart from the lazily rendered text, which is always
+ * the same for a given instance and may therefore be computed by racing
+ * threads.
+ */
+final class TypedAttributeValue {
+
+    /**
+     * The numeric value. Meaningful only if {@link #constant} is
+     * <tt>null</tt>.
+     */
+    private final long number;
+
+    /**
+     * The enum constant or <tt>null</tt> if this is a numeric value.
+     */
+    private final Enum<?> constant;
+
+    /**
+     * The XML text of this value, rendered lazily.
+     */
+    private String text;
+
+    /**
+     * Creates a numeric value.
+     *
+     * @param number the value.
+     * @param text the XML text of the value if it is already known (i.e. it
+     * was parsed), or <tt>null</tt> to render it from <tt>number</tt>.
+     */
+    static TypedAttributeValue ofNumber(long number, String text) {
+        return new TypedAttributeValue(number, null, text);
+    }
+
+    /**
+     * Creates an enum value.
+     *
+     * @param constant the value.
+     * @param text the XML text of the value if it is already known (i.e. it
+     * was parsed), or <tt>null</tt> to use <tt>constant.toString()</tt>.
+     */
+    static TypedAttributeValue ofEnum(Enum<?> constant, String text) {
+        return new TypedAttributeValue(0, constant, text);
+    }
+
+    private TypedAttributeValue(long number, Enum<?> constant, String text) {
+        this.number = number;
+        this.constant = constant;
+        this.text = text;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this is a numeric value.
+     */
+    boolean isNumber() {
+        return constant == null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this is a numeric value which fits in an
+     * <tt>int</tt>.
+     */
+    boolean isInt() {
+        return constant == null && number == (int) number;
+    }
+
+    /**
+     * Returns the numeric value.
+     */
+    long longValue() {
+        return number;
+    }
+
+    /**
+     * Returns the enum constant or <tt>null</tt> if this is a numeric value.
+     */
+    Enum<?> enumValue() {
+        return constant;
+    }
+
+    /**
+     * Returns the XML text of this value.
+     */
+    @Override
+    public String toString() {
+        String text = this.text;
+
+        if (text == null) {
+            text = constant == null
+                    ? Long.toString(number)
+                    : constant.toString();
+            this.text = text;
+        }
+        return text;
+    }
+
+    /**
+     * Two values are equal if their XML text is equal, as was the case when
+     * all values were stored as strings.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TypedAttributeValue
+                && toString().equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -61,32 +61,32 @@ public class CoinIQProvider
      * Constructor.
      */
     public CoinIQProvider() {
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 UserRolesPacketExtension.ELEMENT_NAME,
                 UserRolesPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(UserRolesPacketExtension.class));
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 URIPacketExtension.ELEMENT_NAME,
                 URIPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(URIPacketExtension.class));
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 SIPDialogIDPacketExtension.ELEMENT_NAME,
                 SIPDialogIDPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(SIPDialogIDPacketExtension.class));
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ConferenceMediumPacketExtension.ELEMENT_NAME,
                 ConferenceMediumPacketExtension.NAMESPACE,
                 new ConferenceMediumProvider());
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ConferenceMediaPacketExtension.ELEMENT_NAME,
                 ConferenceMediaPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(ConferenceMediaPacketExtension.class));
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 CallInfoPacketExtension.ELEMENT_NAME,
                 CallInfoPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(CallInfoPacketExtension.class));
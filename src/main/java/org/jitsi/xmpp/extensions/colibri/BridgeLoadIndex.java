@@ -0,0 +1,285 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps bridges ordered by load, per region and for the whole fleet, so that
+ * the least loaded bridge can be picked without going through the stats of
+ * every bridge. The load of a bridge is a score computed by a pluggable
+ * {@link LoadScore} from each {@link ColibriStatsExtension} it reports; lower
+ * scores are preferred. Bridges which report
+ * {@link ColibriStatsExtension#SHUTDOWN_IN_PROGRESS} are not selected.
+ * <p>
+ * The bridges are kept in concurrent skip lists, so an update takes
+ * <tt>O(log n)</tt> and finding the best bridge takes constant time. Updates
+ * of different bridges do not block each other, and selection never blocks.
+ */
+public final class BridgeLoadIndex {
+
+    /**
+     * Scores bridges by the number of participants.
+     */
+    public static final LoadScore PARTICIPANTS_SCORE
+            = stats -> stats.getDouble(ColibriStatsExtension.PARTICIPANTS, 0);
+
+    /**
+     * Computes the load of a bridge from its stats.
+     */
+    @FunctionalInterface
+    public interface LoadScore {
+        /**
+         * Computes the load of a bridge.
+         *
+         * @param stats the stats reported by the bridge.
+         * @return the load of the bridge. Bridges with lower loads are
+         * preferred, and <tt>NaN</tt> is the highest load.
+         */
+        double score(ColibriStatsExtension stats);
+    }
+
+    /**
+     * The score function.
+     */
+    private final LoadScore loadScore;
+
+    /**
+     * The current entry of each bridge, by ID.
+     */
+    private final ConcurrentMap<String, Entry> bridges
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The selectable bridges of the fleet, ordered by load.
+     */
+    private final ConcurrentSkipListSet<Entry> fleet
+            = new ConcurrentSkipListSet<>();
+
+    /**
+     * The selectable bridges of each region, ordered by load.
+     */
+    private final ConcurrentMap<String, ConcurrentSkipListSet<Entry>> regions
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a new <tt>BridgeLoadIndex</tt> which scores bridges with
+     * {@link #PARTICIPANTS_SCORE}.
+     */
+    public BridgeLoadIndex() {
+        this(PARTICIPANTS_SCORE);
+    }
+
+    /**
+     * Initializes a new <tt>BridgeLoadIndex</tt>.
+     *
+     * @param loadScore the function which computes the load of a bridge.
+     */
+    public BridgeLoadIndex(LoadScore loadScore) {
+        this.loadScore = Objects.requireNonNull(loadScore, "loadScore");
+    }
+
+    /**
+     * Updates the load of a bridge from the stats that it reported.
+     *
+     * @param bridgeId the ID of the bridge.
+     * @param stats the stats reported by the bridge. Only read during the
+     * call.
+     */
+    public void update(String bridgeId, ColibriStatsExtension stats) {
+        Entry entry
+                = new Entry(
+                        bridgeId,
+                        stats.getValueAsString(ColibriStatsExtension.REGION),
+                        loadScore.score(stats),
+                        Boolean.parseBoolean(
+                                stats.getValueAsString(
+                                        ColibriStatsExtension
+                                                .SHUTDOWN_IN_PROGRESS)));
+
+        // The updates of a bridge are serialized by the map, so its old entry
+        // is always removed before the new one is added.
+        bridges.compute(bridgeId, (id, old) -> {
+            if (old != null) {
+                unlink(old);
+            }
+            link(entry);
+            return entry;
+        });
+    }
+
+    /**
+     * Removes a bridge, e.g. because it went offline.
+     *
+     * @param bridgeId the ID of the bridge.
+     * @return <tt>true</tt> if the bridge was known.
+     */
+    public boolean remove(String bridgeId) {
+        boolean[] removed = new boolean[1];
+
+        bridges.computeIfPresent(bridgeId, (id, old) -> {
+            unlink(old);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Gets the least loaded bridge of the fleet.
+     *
+     * @return the ID of the selectable bridge with the lowest load, or
+     * <tt>null</tt> if there is none.
+     */
+    public String getBest() {
+        return first(fleet);
+    }
+
+    /**
+     * Gets the least loaded bridge of a region.
+     *
+     * @param region the region.
+     * @return the ID of the selectable bridge of the region with the lowest
+     * load, or <tt>null</tt> if there is none.
+     */
+    public String getBest(String region) {
+        ConcurrentSkipListSet<Entry> entries = regions.get(region);
+
+        return entries == null ? null : first(entries);
+    }
+
+    /**
+     * Gets the selectable bridges of a region, from the least to the most
+     * loaded.
+     *
+     * @param region the region.
+     * @return a new list of bridge IDs.
+     */
+    public List<String> getBridges(String region) {
+        ConcurrentSkipListSet<Entry> entries = regions.get(region);
+        List<String> bridgeIds = new ArrayList<>();
+
+        if (entries != null) {
+            entries.forEach(entry -> bridgeIds.add(entry.bridgeId));
+        }
+        return bridgeIds;
+    }
+
+    /**
+     * Gets the load of a bridge.
+     *
+     * @param bridgeId the ID of the bridge.
+     * @return the last load computed for the bridge, or <tt>NaN</tt> if the
+     * bridge is not known.
+     */
+    public double getScore(String bridgeId) {
+        Entry entry = bridges.get(bridgeId);
+
+        return entry == null ? Double.NaN : entry.score;
+    }
+
+    /**
+     * Checks whether a bridge is in graceful shutdown.
+     *
+     * @param bridgeId the ID of the bridge.
+     * @return <tt>true</tt> if the last stats of the bridge reported that it
+     * is shutting down.
+     */
+    public boolean isShuttingDown(String bridgeId) {
+        Entry entry = bridges.get(bridgeId);
+
+        return entry != null && entry.shuttingDown;
+    }
+
+    /**
+     * Makes a bridge selectable unless it is shutting down.
+     */
+    private void link(Entry entry) {
+        if (entry.shuttingDown) {
+            return;
+        }
+        fleet.add(entry);
+        if (entry.region != null) {
+            regions.computeIfAbsent(
+                        entry.region, r -> new ConcurrentSkipListSet<>())
+                    .add(entry);
+        }
+    }
+
+    /**
+     * Makes a bridge no longer selectable. Empty regions are kept, as
+     * bridges seldom leave them for good.
+     */
+    private void unlink(Entry entry) {
+        if (entry.shuttingDown) {
+            return;
+        }
+        fleet.remove(entry);
+        if (entry.region != null) {
+            ConcurrentSkipListSet<Entry> entries = regions.get(entry.region);
+
+            if (entries != null) {
+                entries.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Returns the ID of the first bridge of a set or <tt>null</tt>.
+     */
+    private static String first(ConcurrentSkipListSet<Entry> entries) {
+        try {
+            return entries.first().bridgeId;
+        } catch (NoSuchElementException e) {
+            // Emptied concurrently.
+            return null;
+        }
+    }
+
+    /**
+     * The load of a bridge when it last reported its stats. Ordered by score
+     * and then by bridge ID.
+     */
+    private static final class Entry
+            implements Comparable<Entry> {
+        final String bridgeId;
+
+        final String region;
+
+        final double score;
+
+        final boolean shuttingDown;
+
+        Entry(
+                String bridgeId,
+                String region,
+                double score,
+                boolean shuttingDown) {
+            this.bridgeId = bridgeId;
+            this.region = region;
+            this.score = score;
+            this.shuttingDown = shuttingDown;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = Double.compare(score, other.score);
+
+            return c != 0 ? c : bridgeId.compareTo(other.bridgeId);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * The channels (or SCTP connections) of a
+ * {@link ColibriConferenceIQ.Content}, kept in insertion order and indexed by
+ * identity, by ID and by endpoint so that adding them and looking them up
+ * takes constant time. Removing a channel takes linear time, like removing it
+ * from the list this index replaces.
+ * <p>
+ * A channel may be in any number of indexes (e.g. the same channel instance
+ * is copied from a response into a new <tt>conference</tt> IQ). Since the ID
+ * and the endpoint of a channel may change after it has been added, the
+ * channel refers weakly to the indexes which include it and notifies them of
+ * such changes. A notification only counts the change, which is safe from
+ * any thread, and the maps by ID and by endpoint of the notified index are
+ * rebuilt lazily on its next lookup. The changes of channels in other indexes
+ * do not affect this one.
+ * <p>
+ * Like the lists it replaces, an index is not thread-safe until it is
+ * {@link #freeze() frozen}. The maps are published as a whole, so the lookups
+ * of a frozen index may be performed concurrently.
+ *
+ * @param <T> the type of the channels.
+ */
+final class ChannelIndex<T extends ColibriConferenceIQ.ChannelCommon> {
+
+    /**
+     * The channels in the order they were added.
+     */
+    private final List<T> channels = new ArrayList<>();
+
+    /**
+     * An unmodifiable view of {@link #channels}.
+     */
+    private final List<T> channelsView
+            = Collections.unmodifiableList(channels);
+
+    /**
+     * The channels of {@link #channels} by identity.
+     */
+    private final Set<T> members
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The maps by ID and by endpoint or <tt>null</tt> if they have not been
+     * built since the last removal.
+     */
+    private volatile Lookup<T> lookup;
+
+    /**
+     * The index of the SSRCs of the conference which includes the channels
+     * or <tt>null</tt>.
+     */
+    private volatile SSRCIndex ssrcIndex;
+
+    /**
+     * Whether this index has been {@link #freeze() frozen}.
+     */
+    private volatile boolean frozen;
+
+    /**
+     * The number of times the ID or the endpoint of a channel of this index
+     * has changed.
+     */
+    private final AtomicInteger keyChanges = new AtomicInteger();
+
+    /**
+     * Adds a channel unless it is already in this index.
+     *
+     * @return <tt>true</tt> if the channel was added.
+     */
+    boolean add(T channel) {
+        checkNotFrozen();
+        if (!members.add(channel)) {
+            return false;
+        }
+        channels.add(channel);
+        channel.attach(this);
+
+        Lookup<T> lookup = this.lookup;
+
+        if (lookup != null && lookup.keyChanges == keyChanges.get()) {
+            lookup.add(channel);
+        } else {
+            this.lookup = null;
+        }
+
+        SSRCIndex ssrcIndex = this.ssrcIndex;
+
+        if (ssrcIndex != null
+                && channel instanceof ColibriConferenceIQ.Channel) {
+            ssrcIndex.addChannel((ColibriConferenceIQ.Channel) channel);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a channel.
+     *
+     * @return <tt>true</tt> if the channel was in this index.
+     */
+    boolean remove(Object o) {
+        checkNotFrozen();
+        if (!members.remove(o)) {
+            return false;
+        }
+        for (int i = 0; i < channels.size(); i++) {
+            if (channels.get(i) == o) {
+                channels.remove(i).detach(this);
+                break;
+            }
+        }
+        lookup = null;
+
+        SSRCIndex ssrcIndex = this.ssrcIndex;
+
+        if (ssrcIndex != null && o instanceof ColibriConferenceIQ.Channel) {
+            ssrcIndex.removeChannel((ColibriConferenceIQ.Channel) o);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the first channel with a specific ID or <tt>null</tt>.
+     */
+    T get(String id) {
+        return getLookup().byId.get(id);
+    }
+
+    /**
+     * Returns the channel at a specific position.
+     */
+    T get(int index) {
+        return channels.get(index);
+    }
+
+    /**
+     * Returns an unmodifiable list of the channels in the order they were
+     * added.
+     */
+    List<T> list() {
+        return channelsView;
+    }
+
+    /**
+     * Returns the channels of a specific endpoint in the order they were
+     * added, or an empty list.
+     */
+    List<T> getByEndpoint(String endpoint) {
+        List<T> channels = getLookup().byEndpoint.get(endpoint);
+
+        return (channels == null)
+                ? Collections.<T>emptyList()
+                : Collections.unmodifiableList(channels);
+    }
+
+    /**
+     * Records that the ID or the endpoint of a channel of this index has
+     * changed. Called by the channel, possibly from another thread.
+     */
+    void keyChanged() {
+        keyChanges.incrementAndGet();
+    }
+
+    /**
+     * Returns the maps by ID and by endpoint, rebuilding them if the ID or
+     * the endpoint of a channel has changed since they were built.
+     */
+    private Lookup<T> getLookup() {
+        int keyChanges = this.keyChanges.get();
+        Lookup<T> lookup = this.lookup;
+
+        if (lookup == null || lookup.keyChanges != keyChanges) {
+            lookup = new Lookup<>(keyChanges);
+            for (T channel : channels) {
+                lookup.add(channel);
+            }
+            this.lookup = lookup;
+        }
+        return lookup;
+    }
+
+    /**
+     * Returns the index of the SSRCs of the conference which includes the
+     * channels or <tt>null</tt>.
+     */
+    SSRCIndex getSSRCIndex() {
+        return ssrcIndex;
+    }
+
+    /**
+     * Sets the index of the SSRCs of the conference which includes the
+     * channels and moves their SSRCs from the previous one (if any) to it.
+     *
+     * @param ssrcIndex the new index or <tt>null</tt>.
+     */
+    void setSSRCIndex(SSRCIndex ssrcIndex) {
+        checkNotFrozen();
+
+        SSRCIndex oldSSRCIndex = this.ssrcIndex;
+
+        if (oldSSRCIndex == ssrcIndex) {
+            return;
+        }
+        this.ssrcIndex = ssrcIndex;
+        for (T channel : channels) {
+            if (channel instanceof ColibriConferenceIQ.Channel) {
+                ColibriConferenceIQ.Channel c
+                        = (ColibriConferenceIQ.Channel) channel;
+
+                if (oldSSRCIndex != null) {
+                    oldSSRCIndex.removeChannel(c);
+                }
+                if (ssrcIndex != null) {
+                    ssrcIndex.addChannel(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes this index immutable. The channels are detached from this index
+     * and from the <tt>SSRCIndex</tt> (if any), so nothing reachable from
+     * them refers to this index.
+     */
+    void freeze() {
+        if (frozen) {
+            return;
+        }
+        setSSRCIndex(null);
+        for (T channel : channels) {
+            channel.detach(this);
+        }
+        frozen = true;
+    }
+
+    /**
+     * Returns whether this index has been {@link #freeze() frozen}.
+     */
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Throws an <tt>IllegalStateException</tt> if this index has been
+     * {@link #freeze() frozen}.
+     */
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException(
+                    "Cannot modify the channels of a frozen <content/>");
+        }
+    }
+
+    /**
+     * The maps by ID and by endpoint of the channels of an index, valid as
+     * long as the number of key changes of the index is
+     * {@link #keyChanges}.
+     */
+    private static final class Lookup<T
+            extends ColibriConferenceIQ.ChannelCommon> {
+
+        /**
+         * The number of changes of IDs and endpoints of the channels of the
+         * index when the maps were built.
+         */
+        final int keyChanges;
+
+        /**
+         * The channels by their IDs. If several channels have the same ID,
+         * the first one added is mapped.
+         */
+        final Map<String, T> byId = new HashMap<>();
+
+        /**
+         * The channels of each endpoint in the order they were added.
+         */
+        final Map<String, List<T>> byEndpoint = new HashMap<>();
+
+        Lookup(int keyChanges) {
+            this.keyChanges = keyChanges;
+        }
+
+        void add(T channel) {
+            String id = channel.getID();
+            String endpoint = channel.getEndpoint();
+
+            if (id != null) {
+                byId.putIfAbsent(id, channel);
+            }
+            if (endpoint != null) {
+                byEndpoint.computeIfAbsent(endpoint, k -> new ArrayList<>(2))
+                        .add(channel);
+            }
+        }
+    }
+}
@@ -118,14 +118,22 @@ public class ColibriBuilder {
             RtpDescriptionPacketExtension description,
             ColibriConferenceIQ.Channel channel) {
         boolean added = false;
+        // Frozen payload types and header extensions (e.g. a codec list
+        // shared by all participants) are immutable and are reused as they
+        // are.
         for (PayloadTypePacketExtension payloadType : description.getPayloadTypes()) {
-            channel.addPayloadType(PayloadTypePacketExtension.clone(payloadType));
+            channel.addPayloadType(
+                    payloadType.isFrozen()
+                        ? payloadType
+                        : PayloadTypePacketExtension.clone(payloadType));
             added = true;
         }
 
         for (RTPHdrExtPacketExtension rtpHdrExt : description.getExtmapList()) {
-            channel
-                    .addRtpHeaderExtension(RTPHdrExtPacketExtension.clone(rtpHdrExt));
+            channel.addRtpHeaderExtension(
+                    rtpHdrExt.isFrozen()
+                        ? rtpHdrExt
+                        : RTPHdrExtPacketExtension.clone(rtpHdrExt));
             added = true;
         }
 
@@ -15,8 +15,11 @@
  */
 package org.jitsi.xmpp.extensions.colibri;
 
+import java.lang.ref.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 
 import org.jitsi.xmpp.extensions.*;
 import org.jitsi.xmpp.extensions.jingle.*;
@@ -97,7 +100,15 @@ public class ColibriConferenceIQ
     /**
      * The list of {@link Content}s included into this <tt>conference</tt> IQ.
      */
-    private final List<Content> contents = new LinkedList<>();
+    private final List<Content> contents = new ArrayList<>();
+
+    /**
+     * The {@link Content}s included into this <tt>conference</tt> IQ mapped by
+     * their names. Since the name of a <tt>Content</tt> may change after it
+     * has been included, entries are verified when they are looked up and the
+     * map is rebuilt from {@link #contents} when they turn out to be stale.
+     */
+    private final Map<String, Content> contentsByName = new HashMap<>();
 
     /**
      * The {@link Endpoint}s included in this {@link ColibriConferenceIQ},
@@ -123,6 +134,17 @@ public class ColibriConferenceIQ
 
     private RTCPTerminationStrategy rtcpTerminationStrategy;
 
+    /**
+     * The index of the SSRCs of the channels of this conference or
+     * <tt>null</tt> if it has not been enabled.
+     */
+    private volatile SSRCIndex ssrcIndex;
+
+    /**
+     * Whether this IQ has been {@link #freeze() frozen}.
+     */
+    private volatile boolean frozen;
+
     /**
      * Indicates if the information about graceful shutdown status is being
      * carried by this IQ.
@@ -178,6 +200,7 @@ public class ColibriConferenceIQ
      * {@code channelBundle}, or {@code null} if one did not exist.
      */
     public ChannelBundle addChannelBundle(ChannelBundle channelBundle) {
+        checkNotFrozen();
         Objects.requireNonNull(channelBundle, "channelBundle");
         String id
                 = Objects.requireNonNull(channelBundle.getId(), "channelBundle ID");
@@ -196,9 +219,23 @@ public class ColibriConferenceIQ
      * method call; otherwise, <tt>false</tt>
      */
     public boolean addContent(Content content) {
+        checkNotFrozen();
         Objects.requireNonNull(content, "content");
 
-        return contents.contains(content) ? false : contents.add(content);
+        for (Content c : contents) {
+            if (c == content) {
+                return false;
+            }
+        }
+        contents.add(content);
+        contentsByName.putIfAbsent(content.getName(), content);
+
+        SSRCIndex ssrcIndex = this.ssrcIndex;
+
+        if (ssrcIndex != null) {
+            content.setSSRCIndex(ssrcIndex);
+        }
+        return true;
     }
 
     /**
@@ -226,6 +263,7 @@ public class ColibriConferenceIQ
      * @return The previous {@link Endpoint} with the same ID, or {@code null}.
      */
     public Endpoint addEndpoint(Endpoint endpoint) {
+        checkNotFrozen();
         Objects.requireNonNull(endpoint, "endpoint");
         String id = Objects.requireNonNull(endpoint.getId(), "endpoint ID");
 
@@ -308,7 +346,7 @@ public class ColibriConferenceIQ
                 rtcpTerminationStrategy.toXML(xml);
             }
             if (gracefulShutdown) {
-                xml.append(new GracefulShutdown().toXML());
+                new GracefulShutdown().writeTo(xml);
             }
         }
 
@@ -326,12 +364,23 @@ public class ColibriConferenceIQ
      * such a <tt>Content</tt> exists; otherwise, <tt>null</tt>
      */
     public Content getContent(String contentName) {
-        for (Content content : getContents()) {
-            if (contentName.equals(content.getName())) {
-                return content;
+        Content content = contentsByName.get(contentName);
+
+        if (content != null && contentName.equals(content.getName())) {
+            return content;
+        }
+
+        // The name of a content may have changed since it was indexed.
+        // There are only a few contents, so rebuilding the index is cheap.
+        contentsByName.clear();
+        content = null;
+        for (Content c : contents) {
+            contentsByName.putIfAbsent(c.getName(), c);
+            if (content == null && contentName.equals(c.getName())) {
+                content = c;
             }
         }
-        return null;
+        return content;
     }
 
     /**
@@ -362,6 +411,92 @@ public class ColibriConferenceIQ
         return id;
     }
 
+    /**
+     * Returns the index which maps the SSRCs of the channels of this
+     * conference to their owners, or <tt>null</tt> if
+     * {@link #enableSSRCIndex()} has not been called.
+     *
+     * @return the <tt>SSRCIndex</tt> of this conference or <tt>null</tt>
+     */
+    public SSRCIndex getSSRCIndex() {
+        return ssrcIndex;
+    }
+
+    /**
+     * Enables the index which maps the SSRCs of the channels of this
+     * conference to their owners. From then on, the index is kept up to date
+     * as contents and channels are added and removed and as the SSRCs and
+     * sources of the channels change. Maintaining the index has a cost, so
+     * it is not enabled by default.
+     * <p>
+     * A <tt>Content</tt> is indexed by at most one conference. Including it
+     * into another conference which has an index as well moves its SSRCs to
+     * the index of the latter.
+     *
+     * @return the <tt>SSRCIndex</tt> of this conference
+     */
+    public SSRCIndex enableSSRCIndex() {
+        checkNotFrozen();
+        SSRCIndex ssrcIndex = this.ssrcIndex;
+
+        if (ssrcIndex == null) {
+            this.ssrcIndex = ssrcIndex = new SSRCIndex();
+            for (Content content : contents) {
+                content.setSSRCIndex(ssrcIndex);
+            }
+        }
+        return ssrcIndex;
+    }
+
+    /**
+     * Makes this IQ, its contents, channels, channel bundles and endpoints
+     * immutable, so that it can be shared as a snapshot by any number of
+     * threads. Modifying any of them afterwards throws an
+     * <tt>IllegalStateException</tt>.
+     * <p>
+     * The channels, channel bundles and endpoints are frozen in place, since
+     * the same instances are usually shared with newer versions of the
+     * conference state. A newer version which needs to change one of them
+     * replaces it with a modified copy (e.g. {@link Channel#copy()}). The
+     * {@link SSRCIndex} of this IQ (if any) is disabled.
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        frozen = true;
+        ssrcIndex = null;
+        for (Content content : contents) {
+            content.freeze();
+        }
+        for (ChannelBundle bundle : getChannelBundles()) {
+            bundle.freeze();
+        }
+        for (Endpoint endpoint : getEndpoints()) {
+            endpoint.freeze();
+        }
+    }
+
+    /**
+     * Returns whether this IQ has been {@link #freeze() frozen}.
+     *
+     * @return <tt>true</tt> if this IQ is immutable.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Throws an <tt>IllegalStateException</tt> if this IQ has been
+     * {@link #freeze() frozen}.
+     */
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException(
+                    "Cannot modify a frozen <" + ELEMENT_NAME + "/>");
+        }
+    }
+
     /**
      * @return the "global" ID of the conference represented by this IQ.
      */
@@ -414,7 +549,15 @@ public class ColibriConferenceIQ
      * method call; otherwise, <tt>false</tt>
      */
     public boolean removeContent(Content content) {
-        return contents.remove(content);
+        checkNotFrozen();
+        if (!contents.remove(content)) {
+            return false;
+        }
+        contentsByName.remove(content.getName(), content);
+        if (ssrcIndex != null && content.getSSRCIndex() == ssrcIndex) {
+            content.setSSRCIndex(null);
+        }
+        return true;
     }
 
     /**
@@ -423,6 +566,7 @@ public class ColibriConferenceIQ
      * @param id the value to set.
      */
     public void setID(String id) {
+        checkNotFrozen();
         this.id = id;
     }
 
@@ -432,6 +576,7 @@ public class ColibriConferenceIQ
      * @param gid the value to set.
      */
     public void setGID(String gid) {
+        checkNotFrozen();
         this.gid = gid;
     }
 
@@ -441,11 +586,13 @@ public class ColibriConferenceIQ
      * @param recording the value to set.
      */
     public void setRecording(Recording recording) {
+        checkNotFrozen();
         this.recording = recording;
     }
 
     public void setRTCPTerminationStrategy(
             RTCPTerminationStrategy rtcpTerminationStrategy) {
+        checkNotFrozen();
         this.rtcpTerminationStrategy = rtcpTerminationStrategy;
     }
 
@@ -457,6 +604,7 @@ public class ColibriConferenceIQ
      * should be indicated in this IQ.
      */
     public void setGracefulShutdown(boolean isGracefulShutdown) {
+        checkNotFrozen();
         this.gracefulShutdown = isGracefulShutdown;
     }
 
@@ -483,6 +631,7 @@ public class ColibriConferenceIQ
      * @param name the name to set.
      */
     public void setName(Localpart name) {
+        checkNotFrozen();
         this.name = name;
     }
 
@@ -671,22 +820,40 @@ public class ColibriConferenceIQ
         private int rtpPort;
 
         /**
-         * The <tt>SourceGroupPacketExtension</tt>s of this channel.
+         * The <tt>SourcePacketExtension</tt>s and
+         * <tt>SourceGroupPacketExtension</tt>s of this channel.
          */
-        private List<SourceGroupPacketExtension> sourceGroups;
+        private final SourceStore sources = new SourceStore();
 
         /**
-         * The <tt>SourcePacketExtension</tt>s of this channel.
+         * The set of (RTP) SSRCs which have been seen/received on this
+         * <tt>Channel</tt> by now. These may exclude SSRCs which are no longer
+         * active. Set by the Jitsi Videobridge server, not its clients.
          */
-        private final List<SourcePacketExtension> sources
-                = new LinkedList<>();
+        private final SSRCSet ssrcs = new SSRCSet();
 
         /**
-         * The list of (RTP) SSRCs which have been seen/received on this
-         * <tt>Channel</tt> by now. These may exclude SSRCs which are no longer
-         * active. Set by the Jitsi Videobridge server, not its clients.
+         * The <tt>SSRCIndex</tt>es which index the SSRCs of this
+         * <tt>Channel</tt>, once for every content with an index which
+         * includes it. Empty unless this <tt>Channel</tt> is in a conference
+         * which has {@link ColibriConferenceIQ#enableSSRCIndex() enabled} its
+         * index.
+         */
+        private volatile SSRCIndex[] ssrcIndexes = NO_SSRC_INDEXES;
+
+        /**
+         * The <tt>SSRCIndex</tt>es of a <tt>Channel</tt> which is not
+         * attached to any.
          */
-        private int[] ssrcs = NO_SSRCS;
+        private static final SSRCIndex[] NO_SSRC_INDEXES = new SSRCIndex[0];
+
+        /**
+         * Updates {@link #ssrcIndexes} atomically.
+         */
+        private static final AtomicReferenceFieldUpdater<
+                    Channel, SSRCIndex[]>
+                SSRC_INDEXES = AtomicReferenceFieldUpdater.newUpdater(
+                        Channel.class, SSRCIndex[].class, "ssrcIndexes");
 
         /**
          * Initializes a new <tt>Channel</tt> instance.
@@ -695,6 +862,95 @@ public class ColibriConferenceIQ
             super(Channel.ELEMENT_NAME);
         }
 
+        /**
+         * Returns a mutable copy of this <tt>Channel</tt> which is not
+         * included into any content, e.g. to replace a frozen one in a newer
+         * version of the state of a conference. The frozen payload types,
+         * header extensions, sources and transport of this <tt>Channel</tt>
+         * are shared and the mutable ones are copied.
+         *
+         * @return a mutable copy of this <tt>Channel</tt>.
+         */
+        public Channel copy() {
+            Channel copy = new Channel();
+
+            copyTo(copy);
+            return copy;
+        }
+
+        @Override
+        void copyTo(ChannelCommon copy) {
+            super.copyTo(copy);
+
+            Channel c = (Channel) copy;
+
+            c.direction = direction;
+            c.host = host;
+            c.lastN = lastN;
+            c.simulcastMode = simulcastMode;
+            c.packetDelay = packetDelay;
+            for (PayloadTypePacketExtension payloadType : payloadTypes) {
+                c.payloadTypes.add(share(payloadType));
+            }
+            for (Map.Entry<Integer, RTPHdrExtPacketExtension> e
+                    : rtpHeaderExtensions.entrySet()) {
+                c.rtpHeaderExtensions.put(e.getKey(), share(e.getValue()));
+            }
+            c.receivingSimulcastLayer = receivingSimulcastLayer;
+            c.rtcpPort = rtcpPort;
+            c.rtpLevelRelayType = rtpLevelRelayType;
+            c.rtpPort = rtpPort;
+            synchronized (this) {
+                for (SourcePacketExtension source : sources.getSources()) {
+                    c.sources.addSource(share(source));
+                }
+
+                List<SourceGroupPacketExtension> sourceGroups
+                        = sources.getSourceGroups();
+
+                if (sourceGroups != null) {
+                    for (SourceGroupPacketExtension sourceGroup
+                            : sourceGroups) {
+                        c.sources.addSourceGroup(share(sourceGroup));
+                    }
+                }
+            }
+            c.ssrcs.set(ssrcs.snapshot());
+        }
+
+        /**
+         * Makes this <tt>Channel</tt>, its payload types, header extensions,
+         * sources, source groups and transport immutable.
+         */
+        @Override
+        public void freeze() {
+            if (isFrozen()) {
+                return;
+            }
+            for (PayloadTypePacketExtension payloadType : payloadTypes) {
+                payloadType.freeze();
+            }
+            for (RTPHdrExtPacketExtension ext : rtpHeaderExtensions.values()) {
+                ext.freeze();
+            }
+            synchronized (this) {
+                for (SourcePacketExtension source : sources.getSources()) {
+                    source.freeze();
+                }
+
+                List<SourceGroupPacketExtension> sourceGroups
+                        = sources.getSourceGroups();
+
+                if (sourceGroups != null) {
+                    for (SourceGroupPacketExtension sourceGroup
+                            : sourceGroups) {
+                        sourceGroup.freeze();
+                    }
+                }
+            }
+            super.freeze();
+        }
+
         /**
          * Adds a <tt>payload-type</tt> element defined by XEP-0167: Jingle RTP
          * Sessions to this <tt>channel</tt>.
@@ -706,12 +962,21 @@ public class ColibriConferenceIQ
          * the method call; otherwise, <tt>false</tt>
          */
         public boolean addPayloadType(PayloadTypePacketExtension payloadType) {
+            checkNotFrozen();
             Objects.requireNonNull(payloadType, "payloadType");
 
-            // Make sure that the COLIBRI namespace is used.
-            payloadType.setNamespace(null);
-            for (ParameterPacketExtension p : payloadType.getParameters()) {
-                p.setNamespace(null);
+            // A frozen payload type is shared as it is if it already uses the
+            // COLIBRI namespace and is copied otherwise.
+            if (payloadType.isFrozen()
+                    && !usesParentNamespace(payloadType)) {
+                payloadType = PayloadTypePacketExtension.clone(payloadType);
+            }
+            if (!payloadType.isFrozen()) {
+                // Make sure that the COLIBRI namespace is used.
+                payloadType.setNamespace(null);
+                for (ParameterPacketExtension p : payloadType.getParameters()) {
+                    p.setNamespace(null);
+                }
             }
 
             return payloadTypes.contains(payloadType)
@@ -719,6 +984,23 @@ public class ColibriConferenceIQ
                     : payloadTypes.add(payloadType);
         }
 
+        /**
+         * Determines whether a specific <tt>payload-type</tt> and its
+         * parameters use the namespace of their parent (i.e. COLIBRI).
+         */
+        private static boolean usesParentNamespace(
+                PayloadTypePacketExtension payloadType) {
+            if (payloadType.getNamespace() != null) {
+                return false;
+            }
+            for (ParameterPacketExtension p : payloadType.getParameters()) {
+                if (p.getNamespace() != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          * Adds an <tt>rtp-hdrext</tt> element defined by XEP-0294: Jingle RTP
          * Header Extensions Negotiation to this <tt>Channel</tt>.
@@ -730,14 +1012,21 @@ public class ColibriConferenceIQ
          * the method call; otherwise, <tt>false</tt>
          */
         public void addRtpHeaderExtension(RTPHdrExtPacketExtension ext) {
+            checkNotFrozen();
             Objects.requireNonNull(ext, "ext");
 
-            // Create a new instance, because we are going to modify the NS
-            RTPHdrExtPacketExtension newExt
-                    = RTPHdrExtPacketExtension.clone(ext);
+            RTPHdrExtPacketExtension newExt;
+
+            if (ext.isFrozen() && ext.getNamespace() == null) {
+                // Immutable and already in the parent namespace.
+                newExt = ext;
+            } else {
+                // Create a new instance, because we are going to modify the NS
+                newExt = RTPHdrExtPacketExtension.clone(ext);
 
-            // Make sure that the parent namespace (COLIBRI) is used.
-            newExt.setNamespace(null);
+                // Make sure that the parent namespace (COLIBRI) is used.
+                newExt.setNamespace(null);
+            }
 
             int id = -1;
             try {
@@ -757,7 +1046,8 @@ public class ColibriConferenceIQ
 
         /**
          * Adds a <tt>SourcePacketExtension</tt> to the list of sources of this
-         * channel.
+         * channel unless the channel already has a source with the same SSRC
+         * (or RID, if the source does not have an SSRC).
          *
          * @param source the <tt>SourcePacketExtension</tt> to add to the list
          * of sources of this channel
@@ -765,14 +1055,25 @@ public class ColibriConferenceIQ
          * as a result of the execution of the method; otherwise, <tt>false</tt>
          */
         public synchronized boolean addSource(SourcePacketExtension source) {
+            checkNotFrozen();
             Objects.requireNonNull(source, "source");
 
-            return sources.contains(source) ? false : sources.add(source);
+            if (!sources.addSource(source)) {
+                return false;
+            }
+
+            long ssrc = SourceStore.getSSRC(source);
+
+            if (ssrc != -1) {
+                ssrcChanged(ssrc);
+            }
+            return true;
         }
 
         /**
          * Adds a <tt>SourceGroupPacketExtension</tt> to the list of source
-         * groups of this channel.
+         * groups of this channel unless the channel already has a source group
+         * with the same semantics and sources.
          *
          * @param sourceGroup the <tt>SourcePacketExtension</tt> to add to the
          * list of sources of this channel
@@ -782,15 +1083,10 @@ public class ColibriConferenceIQ
          */
         public synchronized boolean addSourceGroup(
                 SourceGroupPacketExtension sourceGroup) {
+            checkNotFrozen();
             Objects.requireNonNull(sourceGroup, "sourceGroup");
 
-            if (sourceGroups == null) {
-                sourceGroups = new LinkedList<>();
-            }
-
-            return sourceGroups.contains(sourceGroup)
-                    ? false
-                    : sourceGroups.add(sourceGroup);
+            return sources.addSourceGroup(sourceGroup);
         }
 
         /**
@@ -804,20 +1100,32 @@ public class ColibriConferenceIQ
          * <tt>Channel</tt> has been modified as part of the method call;
          * otherwise, <tt>false</tt>
          */
-        public synchronized boolean addSSRC(int ssrc) {
-            // contains
-            for (int i = 0; i < ssrcs.length; i++) {
-                if (ssrcs[i] == ssrc) {
-                    return false;
-                }
+        public boolean addSSRC(int ssrc) {
+            checkNotFrozen();
+            if (!ssrcs.add(ssrc)) {
+                return false;
             }
+            ssrcChanged(ssrc & 0xffffffffL);
+            return true;
+        }
 
-            // add
-            int[] newSSRCs = new int[ssrcs.length + 1];
-
-            System.arraycopy(ssrcs, 0, newSSRCs, 0, ssrcs.length);
-            newSSRCs[ssrcs.length] = ssrc;
-            ssrcs = newSSRCs;
+        /**
+         * Adds specific (RTP) SSRCs to the list of SSRCs seen/received on this
+         * <tt>Channel</tt>. Invoked by the Jitsi Videobridge server, not its
+         * clients.
+         *
+         * @param ssrcs the (RTP) SSRCs to be added to the list of SSRCs
+         * seen/received on this <tt>Channel</tt>
+         * @return <tt>true</tt> if the list of SSRCs seen/received on this
+         * <tt>Channel</tt> has been modified as part of the method call;
+         * otherwise, <tt>false</tt>
+         */
+        public boolean addSSRCs(int[] ssrcs) {
+            checkNotFrozen();
+            if (!this.ssrcs.addAll(ssrcs)) {
+                return false;
+            }
+            ssrcsChanged(ssrcs);
             return true;
         }
 
@@ -968,9 +1276,30 @@ public class ColibriConferenceIQ
          * represent the source groups of this channel
          */
         public synchronized List<SourceGroupPacketExtension> getSourceGroups() {
-            return (sourceGroups == null)
-                    ? null
-                    : new ArrayList<SourceGroupPacketExtension>(sourceGroups);
+            return sources.getSourceGroups();
+        }
+
+        /**
+         * Gets the source of this channel with a specific SSRC.
+         *
+         * @param ssrc the SSRC of the source.
+         * @return the <tt>SourcePacketExtension</tt> with the given SSRC or
+         * <tt>null</tt> if this channel does not have such a source.
+         */
+        public synchronized SourcePacketExtension getSource(long ssrc) {
+            return sources.getSource(ssrc);
+        }
+
+        /**
+         * Gets the source of this channel with a specific RID and without an
+         * SSRC.
+         *
+         * @param rid the RID of the source.
+         * @return the <tt>SourcePacketExtension</tt> with the given RID or
+         * <tt>null</tt> if this channel does not have such a source.
+         */
+        public synchronized SourcePacketExtension getSourceByRid(String rid) {
+            return sources.getSourceByRid(rid);
         }
 
         /**
@@ -981,17 +1310,19 @@ public class ColibriConferenceIQ
          * represent the sources of this channel
          */
         public synchronized List<SourcePacketExtension> getSources() {
-            return new ArrayList<SourcePacketExtension>(sources);
+            return sources.getSources();
         }
 
         /**
          * Gets (a copy of) the list of (RTP) SSRCs seen/received on this
-         * <tt>Channel</tt>.
+         * <tt>Channel</tt> in ascending (unsigned) order.
          *
          * @return an array of <tt>int</tt>s which represents (a copy of) the
          * list of (RTP) SSRCs seen/received on this <tt>Channel</tt>
          */
-        public synchronized int[] getSSRCs() {
+        public int[] getSSRCs() {
+            int[] ssrcs = this.ssrcs.snapshot();
+
             return (ssrcs.length == 0) ? NO_SSRCS : ssrcs.clone();
         }
 
@@ -1003,19 +1334,13 @@ public class ColibriConferenceIQ
                 return true;
             }
 
-            List<SourceGroupPacketExtension> sourceGroups = getSourceGroups();
-            if (sourceGroups != null && !getSourceGroups().isEmpty()) {
-                return true;
-            }
-
-            List<SourcePacketExtension> sources = getSources();
-            if (!sources.isEmpty()) {
-                return true;
+            synchronized (this) {
+                if (sources.hasSourceGroups() || sources.hasSources()) {
+                    return true;
+                }
             }
 
-            int[] ssrcs = getSSRCs();
-
-            return (ssrcs.length != 0);
+            return ssrcs.size() != 0;
         }
 
         @Override
@@ -1075,23 +1400,23 @@ public class ColibriConferenceIQ
                     = getRtpHeaderExtensions();
             List<SourcePacketExtension> sources = getSources();
             List<SourceGroupPacketExtension> sourceGroups = getSourceGroups();
-            int[] ssrcs = getSSRCs();
+            int[] ssrcs = this.ssrcs.snapshot();
 
             for (PayloadTypePacketExtension payloadType : payloadTypes) {
-                xml.append(payloadType.toXML());
+                payloadType.writeTo(xml);
             }
 
             for (RTPHdrExtPacketExtension ext : rtpHdrExtPacketExtensions) {
-                xml.append(ext.toXML());
+                ext.writeTo(xml);
             }
 
             for (SourcePacketExtension source : sources) {
-                xml.append(source.toXML());
+                source.writeTo(xml);
             }
 
             if (sourceGroups != null && sourceGroups.size() != 0) {
                 for (SourceGroupPacketExtension sourceGroup : sourceGroups) {
-                    xml.append(sourceGroup.toXML());
+                    sourceGroup.writeTo(xml);
                 }
             }
 
@@ -1114,6 +1439,7 @@ public class ColibriConferenceIQ
          * the method call; otherwise, <tt>false</tt>
          */
         public boolean removePayloadType(PayloadTypePacketExtension payloadType) {
+            checkNotFrozen();
             return payloadTypes.remove(payloadType);
         }
 
@@ -1128,6 +1454,7 @@ public class ColibriConferenceIQ
          * the method call; otherwise, <tt>false</tt>
          */
         public void removeRtpHeaderExtension(RTPHdrExtPacketExtension ext) {
+            checkNotFrozen();
             int id = -1;
             try {
                 id = Integer.valueOf(ext.getID());
@@ -1140,8 +1467,9 @@ public class ColibriConferenceIQ
         }
 
         /**
-         * Removes a <tt>SourcePacketExtension</tt> from the list of sources of
-         * this channel.
+         * Removes the <tt>SourcePacketExtension</tt> with the same SSRC (or RID,
+         * if it does not have an SSRC) as a specific one from the list of
+         * sources of this channel.
          *
          * @param source the <tt>SourcePacketExtension</tt> to remove from the
          * list of sources of this channel
@@ -1149,7 +1477,53 @@ public class ColibriConferenceIQ
          * as a result of the execution of the method; otherwise, <tt>false</tt>
          */
         public synchronized boolean removeSource(SourcePacketExtension source) {
-            return sources.remove(source);
+            checkNotFrozen();
+            if (!sources.removeSource(source)) {
+                return false;
+            }
+
+            long ssrc = SourceStore.getSSRC(source);
+
+            if (ssrc != -1) {
+                ssrcChanged(ssrc);
+            }
+            return true;
+        }
+
+        /**
+         * Removes a <tt>SourceGroupPacketExtension</tt> from the list of source
+         * groups of this channel.
+         *
+         * @param sourceGroup the <tt>SourceGroupPacketExtension</tt> to remove
+         * from the list of source groups of this channel
+         * @return <tt>true</tt> if the list of source groups of this channel
+         * changed as a result of the execution of the method; otherwise,
+         * <tt>false</tt>
+         */
+        public synchronized boolean removeSourceGroup(
+                SourceGroupPacketExtension sourceGroup) {
+            checkNotFrozen();
+            return sources.removeSourceGroup(sourceGroup);
+        }
+
+        /**
+         * Replaces the sources and the source groups of this channel.
+         * Duplicate sources and source groups are ignored.
+         *
+         * @param sources the new <tt>SourcePacketExtension</tt>s of this
+         * channel
+         * @param sourceGroups the new <tt>SourceGroupPacketExtension</tt>s of
+         * this channel
+         */
+        public synchronized void replaceSources(
+                Collection<SourcePacketExtension> sources,
+                Collection<SourceGroupPacketExtension> sourceGroups) {
+            checkNotFrozen();
+            int[] oldSSRCs = this.sources.replaceSources(sources);
+
+            ssrcsChanged(oldSSRCs);
+            ssrcsChanged(this.sources.getSSRCs().snapshot());
+            this.sources.replaceSourceGroups(sourceGroups);
         }
 
         /**
@@ -1163,34 +1537,33 @@ public class ColibriConferenceIQ
          * <tt>Channel</tt> has been modified as part of the method call;
          * otherwise, <tt>false</tt>
          */
-        public synchronized boolean removeSSRC(int ssrc) {
-            if (ssrcs.length == 1) {
-                if (ssrcs[0] == ssrc) {
-                    ssrcs = NO_SSRCS;
-                    return true;
-                } else {
-                    return false;
-                }
-            } else {
-                for (int i = 0; i < ssrcs.length; i++) {
-                    if (ssrcs[i] == ssrc) {
-                        int[] newSSRCs = new int[ssrcs.length - 1];
-
-                        if (i != 0) {
-                            System.arraycopy(ssrcs, 0, newSSRCs, 0, i);
-                        }
-                        if (i != newSSRCs.length) {
-                            System.arraycopy(
-                                    ssrcs, i + 1,
-                                    newSSRCs, i,
-                                    newSSRCs.length - i);
-                        }
-                        ssrcs = newSSRCs;
-                        return true;
-                    }
-                }
+        public boolean removeSSRC(int ssrc) {
+            checkNotFrozen();
+            if (!ssrcs.remove(ssrc)) {
+                return false;
+            }
+            ssrcChanged(ssrc & 0xffffffffL);
+            return true;
+        }
+
+        /**
+         * Removes specific (RTP) SSRCs from the list of SSRCs seen/received on
+         * this <tt>Channel</tt>. Invoked by the Jitsi Videobridge server, not
+         * its clients.
+         *
+         * @param ssrcs the (RTP) SSRCs to be removed from the list of SSRCs
+         * seen/received on this <tt>Channel</tt>
+         * @return <tt>true</tt> if the list of SSRCs seen/received on this
+         * <tt>Channel</tt> has been modified as part of the method call;
+         * otherwise, <tt>false</tt>
+         */
+        public boolean removeSSRCs(int[] ssrcs) {
+            checkNotFrozen();
+            if (!this.ssrcs.removeAll(ssrcs)) {
                 return false;
             }
+            ssrcsChanged(ssrcs);
+            return true;
         }
 
         /**
@@ -1200,6 +1573,7 @@ public class ColibriConferenceIQ
          * <tt>direction</tt> of this <tt>Channel</tt> to.
          */
         public void setDirection(String direction) {
+            checkNotFrozen();
             this.direction = direction;
         }
 
@@ -1216,6 +1590,7 @@ public class ColibriConferenceIQ
          */
         @Deprecated
         public void setHost(String host) {
+            checkNotFrozen();
             this.host = host;
         }
 
@@ -1229,6 +1604,7 @@ public class ColibriConferenceIQ
          * <tt>Channel</tt>
          */
         public void setLastN(Integer lastN) {
+            checkNotFrozen();
             this.lastN = lastN;
         }
 
@@ -1240,6 +1616,7 @@ public class ColibriConferenceIQ
          * packet delay that will be set or <tt>null</tt> to leave undefined
          */
         public void setPacketDelay(Integer packetDelay) {
+            checkNotFrozen();
             this.packetDelay = packetDelay;
         }
 
@@ -1249,6 +1626,7 @@ public class ColibriConferenceIQ
          * @param simulcastMode the value to set.
          */
         public void setSimulcastMode(SimulcastMode simulcastMode) {
+            checkNotFrozen();
             this.simulcastMode = simulcastMode;
         }
 
@@ -1262,6 +1640,7 @@ public class ColibriConferenceIQ
          * this video <tt>Channel</tt>.
          */
         public void setReceivingSimulcastLayer(Integer simulcastLayer) {
+            checkNotFrozen();
             this.receivingSimulcastLayer = simulcastLayer;
         }
 
@@ -1277,6 +1656,7 @@ public class ColibriConferenceIQ
          */
         @Deprecated
         public void setRTCPPort(int rtcpPort) {
+            checkNotFrozen();
             this.rtcpPort = rtcpPort;
         }
 
@@ -1290,6 +1670,7 @@ public class ColibriConferenceIQ
          * <tt>Channel</tt>
          */
         public void setRTPLevelRelayType(RTPLevelRelayType rtpLevelRelayType) {
+            checkNotFrozen();
             this.rtpLevelRelayType = rtpLevelRelayType;
         }
 
@@ -1317,24 +1698,134 @@ public class ColibriConferenceIQ
          */
         @Deprecated
         public void setRTPPort(int rtpPort) {
+            checkNotFrozen();
             this.rtpPort = rtpPort;
         }
 
         /**
          * Sets the list of (RTP) SSRCs seen/received on this <tt>Channel</tt>.
+         * Duplicates are ignored.
          *
          * @param ssrcs the list of (RTP) SSRCs to be set as seen/received on
          * this <tt>Channel</tt>
          */
         public void setSSRCs(int[] ssrcs) {
-            /*
-             * TODO Make sure that the SSRCs set on this instance do not contain
-             * duplicates.
-             */
-            this.ssrcs
-                    = ((ssrcs == null) || (ssrcs.length == 0))
-                            ? NO_SSRCS
-                            : ssrcs.clone();
+            checkNotFrozen();
+            int[] oldSSRCs = this.ssrcs.set(ssrcs);
+
+            ssrcsChanged(oldSSRCs);
+            if (ssrcs != null) {
+                ssrcsChanged(ssrcs);
+            }
+        }
+
+        /**
+         * Passes the SSRCs of this <tt>Channel</tt> and of its sources to a
+         * specific consumer. An SSRC which is in both is passed twice.
+         */
+        void forEachSSRC(LongConsumer action) {
+            for (int ssrc : ssrcs.snapshot()) {
+                action.accept(ssrc & 0xffffffffL);
+            }
+            for (int ssrc : sources.getSSRCs().snapshot()) {
+                action.accept(ssrc & 0xffffffffL);
+            }
+        }
+
+        /**
+         * Determines whether this <tt>Channel</tt> or one of its sources has a
+         * specific SSRC. Does not need the monitor of this <tt>Channel</tt>.
+         */
+        boolean hasSSRC(long ssrc) {
+            return ssrcs.contains((int) ssrc)
+                    || sources.getSSRCs().contains((int) ssrc);
+        }
+
+        /**
+         * Records that the SSRCs of this <tt>Channel</tt> are indexed by a
+         * specific <tt>SSRCIndex</tt>, once for every content which includes
+         * this <tt>Channel</tt> and maintains the index.
+         */
+        void attach(SSRCIndex ssrcIndex) {
+            SSRCIndex[] ssrcIndexes;
+            SSRCIndex[] newSSRCIndexes;
+
+            do {
+                ssrcIndexes = this.ssrcIndexes;
+                newSSRCIndexes
+                        = Arrays.copyOf(ssrcIndexes, ssrcIndexes.length + 1);
+                newSSRCIndexes[ssrcIndexes.length] = ssrcIndex;
+            } while (!SSRC_INDEXES.compareAndSet(
+                    this, ssrcIndexes, newSSRCIndexes));
+        }
+
+        /**
+         * Undoes one {@link #attach(SSRCIndex)} of a specific
+         * <tt>SSRCIndex</tt>.
+         *
+         * @return <tt>true</tt> if the SSRCs of this <tt>Channel</tt> were
+         * indexed by <tt>ssrcIndex</tt> and no longer are.
+         */
+        boolean detach(SSRCIndex ssrcIndex) {
+            SSRCIndex[] ssrcIndexes;
+            SSRCIndex[] newSSRCIndexes;
+
+            do {
+                ssrcIndexes = this.ssrcIndexes;
+
+                int i = ssrcIndexes.length - 1;
+
+                while (i >= 0 && ssrcIndexes[i] != ssrcIndex) {
+                    i--;
+                }
+                if (i < 0) {
+                    return false;
+                }
+                newSSRCIndexes = new SSRCIndex[ssrcIndexes.length - 1];
+                System.arraycopy(ssrcIndexes, 0, newSSRCIndexes, 0, i);
+                System.arraycopy(
+                        ssrcIndexes, i + 1,
+                        newSSRCIndexes, i,
+                        newSSRCIndexes.length - i);
+            } while (!SSRC_INDEXES.compareAndSet(
+                    this, ssrcIndexes, newSSRCIndexes));
+            return !isAttachedTo(ssrcIndex);
+        }
+
+        /**
+         * Determines whether the SSRCs of this <tt>Channel</tt> are indexed by
+         * a specific <tt>SSRCIndex</tt>.
+         */
+        boolean isAttachedTo(SSRCIndex ssrcIndex) {
+            for (SSRCIndex i : ssrcIndexes) {
+                if (i == ssrcIndex) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Brings the <tt>SSRCIndex</tt>es of this <tt>Channel</tt> up to date
+         * with a specific SSRC which it has acquired or given up. Must be
+         * called after the SSRCs of this <tt>Channel</tt> have been modified.
+         */
+        private void ssrcChanged(long ssrc) {
+            for (SSRCIndex ssrcIndex : ssrcIndexes) {
+                ssrcIndex.update(ssrc, this);
+            }
+        }
+
+        /**
+         * Brings the <tt>SSRCIndex</tt>es of this <tt>Channel</tt> up to date
+         * with specific SSRCs which it has acquired or given up.
+         */
+        private void ssrcsChanged(int[] ssrcs) {
+            if (ssrcIndexes.length != 0) {
+                for (int ssrc : ssrcs) {
+                    ssrcChanged(ssrc & 0xffffffffL);
+                }
+            }
         }
     }
 
@@ -1371,12 +1862,42 @@ public class ColibriConferenceIQ
             setType(TYPE);
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public OctoChannel copy() {
+            OctoChannel copy = new OctoChannel();
+
+            copyTo(copy);
+            return copy;
+        }
+
+        @Override
+        void copyTo(ChannelCommon copy) {
+            super.copyTo(copy);
+            ((OctoChannel) copy).relays = new LinkedList<>(relays);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void freeze() {
+            if (isFrozen()) {
+                return;
+            }
+            relays = Collections.unmodifiableList(relays);
+            super.freeze();
+        }
+
         /**
          * Sets the list of relays of this {@link OctoChannel}.
          *
          * @param relays the ids of the relays to set.
          */
         public void setRelays(List<String> relays) {
+            checkNotFrozen();
             this.relays = new LinkedList<>(relays);
         }
 
@@ -1393,6 +1914,7 @@ public class ColibriConferenceIQ
          * @param relay the id of the relay to add.
          */
         public void addRelay(String relay) {
+            checkNotFrozen();
             if (!relays.contains(relay)) {
                 relays.add(relay);
             }
@@ -1404,6 +1926,7 @@ public class ColibriConferenceIQ
          * @param relay the id of the relay to remove.
          */
         public void removeRelay(String relay) {
+            checkNotFrozen();
             relays.remove(relay);
         }
 
@@ -1456,6 +1979,12 @@ public class ColibriConferenceIQ
          */
         private IceUdpTransportPacketExtension transport;
 
+        /**
+         * Whether this <tt>ChannelBundle</tt> has been
+         * {@link #freeze() frozen}.
+         */
+        private volatile boolean frozen;
+
         /**
          * Initializes a new <tt>ChannelBundle</tt> with the given ID.
          *
@@ -1489,6 +2018,7 @@ public class ColibriConferenceIQ
          * @param id the ID to set.
          */
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -1498,9 +2028,53 @@ public class ColibriConferenceIQ
          * @param transport the transport to set.
          */
         public void setTransport(IceUdpTransportPacketExtension transport) {
+            checkNotFrozen();
             this.transport = transport;
         }
 
+        /**
+         * Returns a mutable copy of this <tt>ChannelBundle</tt>. Its transport
+         * is shared if it is frozen and copied otherwise.
+         *
+         * @return a mutable copy of this <tt>ChannelBundle</tt>.
+         */
+        public ChannelBundle copy() {
+            ChannelBundle copy = new ChannelBundle(id);
+
+            if (transport != null) {
+                copy.transport = ChannelCommon.share(transport);
+            }
+            return copy;
+        }
+
+        /**
+         * Makes this <tt>ChannelBundle</tt> and its transport immutable.
+         * Modifying it afterwards throws an <tt>IllegalStateException</tt>.
+         */
+        public void freeze() {
+            if (transport != null) {
+                transport.freeze();
+            }
+            frozen = true;
+        }
+
+        /**
+         * Returns whether this <tt>ChannelBundle</tt> has been
+         * {@link #freeze() frozen}.
+         *
+         * @return <tt>true</tt> if this <tt>ChannelBundle</tt> is immutable.
+         */
+        public boolean isFrozen() {
+            return frozen;
+        }
+
+        private void checkNotFrozen() {
+            if (frozen) {
+                throw new IllegalStateException(
+                        "Cannot modify a frozen <" + ELEMENT_NAME + "/>");
+            }
+        }
+
         /**
          * Appends an XML representation of this <tt>ChannelBundle</tt> to
          * <tt>xml</tt>.
@@ -1514,7 +2088,7 @@ public class ColibriConferenceIQ
 
             if (transport != null) {
                 xml.rightAngleBracket();
-                xml.append(transport.toXML());
+                transport.writeTo(xml);
                 xml.closeElement(ELEMENT_NAME);
             } else {
                 xml.closeEmptyElement();
@@ -1532,6 +2106,22 @@ public class ColibriConferenceIQ
      */
     public static abstract class ChannelCommon {
 
+        /**
+         * The indexes of a <tt>ChannelCommon</tt> which is not in any
+         * <tt>Content</tt>.
+         */
+        private static final IndexReference[] NO_INDEXES
+                = new IndexReference[0];
+
+        /**
+         * Updates {@link #indexes} atomically.
+         */
+        private static final AtomicReferenceFieldUpdater<
+                    ChannelCommon, IndexReference[]>
+                INDEXES = AtomicReferenceFieldUpdater.newUpdater(
+                        ChannelCommon.class, IndexReference[].class,
+                        "indexes");
+
         /**
          * The name of the "channel-bundle-id" attribute.
          */
@@ -1624,6 +2214,19 @@ public class ColibriConferenceIQ
 
         private IceUdpTransportPacketExtension transport;
 
+        /**
+         * Whether this instance has been {@link #freeze() frozen}.
+         */
+        private volatile boolean frozen;
+
+        /**
+         * The indexes of the <tt>Content</tt>s which include this instance,
+         * notified when its ID or its endpoint changes. They are referenced
+         * weakly so that a content which is dropped without removing this
+         * instance is not kept alive by it.
+         */
+        private volatile IndexReference[] indexes = NO_INDEXES;
+
         /**
          * Initializes this class with given XML <tt>elementName</tt>.
          *
@@ -1741,6 +2344,7 @@ public class ColibriConferenceIQ
          * @param channelBundleId the value to set.
          */
         public void setChannelBundleId(String channelBundleId) {
+            checkNotFrozen();
             this.channelBundleId = channelBundleId;
         }
 
@@ -1752,7 +2356,11 @@ public class ColibriConferenceIQ
          * participant associated with this <tt>Channel</tt>
          */
         public void setEndpoint(String endpoint) {
-            this.endpoint = endpoint;
+            checkNotFrozen();
+            if (!Objects.equals(this.endpoint, endpoint)) {
+                this.endpoint = endpoint;
+                keyChanged();
+            }
         }
 
         /**
@@ -1761,6 +2369,7 @@ public class ColibriConferenceIQ
          * @param type the value to set.
          */
         public void setType(String type) {
+            checkNotFrozen();
             this.type = type;
         }
 
@@ -1775,6 +2384,7 @@ public class ColibriConferenceIQ
          * negative
          */
         public void setExpire(int expire) {
+            checkNotFrozen();
             if ((expire != EXPIRE_NOT_SPECIFIED) && (expire < 0)) {
                 throw new IllegalArgumentException("expire");
             }
@@ -1788,7 +2398,148 @@ public class ColibriConferenceIQ
          * @param id the ID of the <tt>channel</tt> represented by this instance
          */
         public void setID(String id) {
-            this.id = id;
+            checkNotFrozen();
+            if (!Objects.equals(this.id, id)) {
+                this.id = id;
+                keyChanged();
+            }
+        }
+
+        /**
+         * Records that this instance is in a specific <tt>ChannelIndex</tt>,
+         * which is to be notified when its ID or its endpoint changes.
+         */
+        void attach(ChannelIndex<?> index) {
+            IndexReference[] indexes;
+            IndexReference[] newIndexes;
+
+            do {
+                indexes = this.indexes;
+                newIndexes = without(indexes, index);
+                newIndexes
+                        = Arrays.copyOf(newIndexes, newIndexes.length + 1);
+                newIndexes[newIndexes.length - 1] = new IndexReference(index);
+            } while (!INDEXES.compareAndSet(this, indexes, newIndexes));
+        }
+
+        /**
+         * Undoes {@link #attach(ChannelIndex)} for a specific
+         * <tt>ChannelIndex</tt>.
+         */
+        void detach(ChannelIndex<?> index) {
+            IndexReference[] indexes;
+            IndexReference[] newIndexes;
+
+            do {
+                indexes = this.indexes;
+                newIndexes = without(indexes, index);
+                if (newIndexes == indexes) {
+                    return;
+                }
+            } while (!INDEXES.compareAndSet(this, indexes, newIndexes));
+        }
+
+        /**
+         * Returns some index references without those to a specific
+         * <tt>ChannelIndex</tt> and those whose index has been collected, or
+         * the same array if there are no such references.
+         */
+        private static IndexReference[] without(
+                IndexReference[] indexes,
+                ChannelIndex<?> index) {
+            IndexReference[] result = null;
+            int size = 0;
+
+            for (int i = 0; i < indexes.length; i++) {
+                ChannelIndex<?> referent = indexes[i].get();
+
+                if (referent == null || referent == index) {
+                    if (result == null) {
+                        result = Arrays.copyOf(indexes, indexes.length);
+                        size = i;
+                    }
+                } else if (result != null) {
+                    result[size++] = indexes[i];
+                }
+            }
+            return (result == null) ? indexes : Arrays.copyOf(result, size);
+        }
+
+        /**
+         * Notifies the indexes which include this instance that its ID or its
+         * endpoint has changed.
+         */
+        private void keyChanged() {
+            for (IndexReference reference : indexes) {
+                ChannelIndex<?> index = reference.get();
+
+                if (index != null) {
+                    index.keyChanged();
+                }
+            }
+        }
+
+        /**
+         * Makes this instance and its transport immutable. Modifying it
+         * afterwards throws an <tt>IllegalStateException</tt>. Called when a
+         * <tt>conference</tt> IQ which includes this instance is
+         * {@link ColibriConferenceIQ#freeze() frozen}.
+         */
+        public void freeze() {
+            if (frozen) {
+                return;
+            }
+            if (transport != null) {
+                transport.freeze();
+            }
+            frozen = true;
+        }
+
+        /**
+         * Returns whether this instance has been {@link #freeze() frozen}.
+         *
+         * @return <tt>true</tt> if this instance is immutable.
+         */
+        public boolean isFrozen() {
+            return frozen;
+        }
+
+        /**
+         * Throws an <tt>IllegalStateException</tt> if this instance has been
+         * {@link #freeze() frozen}.
+         */
+        protected void checkNotFrozen() {
+            if (frozen) {
+                throw new IllegalStateException(
+                        "Cannot modify a frozen <" + elementName + "/>");
+            }
+        }
+
+        /**
+         * Copies the attributes and the transport of this instance into a
+         * specific new instance. A frozen transport is shared and a mutable
+         * one is copied.
+         */
+        void copyTo(ChannelCommon copy) {
+            copy.channelBundleId = channelBundleId;
+            copy.endpoint = endpoint;
+            copy.type = type;
+            copy.expire = expire;
+            copy.id = id;
+            copy.initiator = initiator;
+            if (transport != null) {
+                copy.transport = share(transport);
+            }
+        }
+
+        /**
+         * Returns a specific extension if it is frozen and a deep copy of it
+         * otherwise.
+         */
+        static <T extends AbstractPacketExtension> T share(T ext) {
+            return ext.isFrozen()
+                    ? ext
+                    : AbstractPacketExtension.deepClone(ext);
         }
 
         /**
@@ -1803,10 +2554,12 @@ public class ColibriConferenceIQ
          * is to be unspecified
          */
         public void setInitiator(Boolean initiator) {
+            checkNotFrozen();
             this.initiator = initiator;
         }
 
         public void setTransport(IceUdpTransportPacketExtension transport) {
+            checkNotFrozen();
             this.transport = transport;
         }
 
@@ -1843,7 +2596,7 @@ public class ColibriConferenceIQ
                 }
 
                 if (hasTransport) {
-                    xml.append(transport.toXML());
+                    transport.writeTo(xml);
                 }
 
                 xml.closeElement(elementName);
@@ -1853,6 +2606,18 @@ public class ColibriConferenceIQ
 
             return xml;
         }
+
+        /**
+         * A weak reference to a <tt>ChannelIndex</tt> which includes a
+         * <tt>ChannelCommon</tt>.
+         */
+        private static final class IndexReference
+                extends WeakReference<ChannelIndex<?>> {
+
+            IndexReference(ChannelIndex<?> index) {
+                super(index);
+            }
+        }
     }
 
     /**
@@ -1878,7 +2643,7 @@ public class ColibriConferenceIQ
          * The list of {@link Channel}s included into this <tt>content</tt> of a
          * <tt>conference</tt> IQ.
          */
-        private final List<Channel> channels = new LinkedList<Channel>();
+        private final ChannelIndex<Channel> channels = new ChannelIndex<>();
 
         /**
          * The name of the <tt>content</tt> represented by this instance.
@@ -1889,8 +2654,8 @@ public class ColibriConferenceIQ
          * The list of {@link SctpConnection}s included into this
          * <tt>content</tt> of a <tt>conference</tt> IQ.
          */
-        private final List<SctpConnection> sctpConnections
-                = new LinkedList<SctpConnection>();
+        private final ChannelIndex<SctpConnection> sctpConnections
+                = new ChannelIndex<>();
 
         /**
          * Initializes a new <tt>Content</tt> instance without a name and
@@ -1922,7 +2687,7 @@ public class ColibriConferenceIQ
         public boolean addChannel(Channel channel) {
             Objects.requireNonNull(channel, "channel");
 
-            return channels.contains(channel) ? false : channels.add(channel);
+            return channels.add(channel);
         }
 
         /**
@@ -1954,7 +2719,7 @@ public class ColibriConferenceIQ
         public boolean addSctpConnection(SctpConnection conn) {
             Objects.requireNonNull(conn, "conn");
 
-            return !sctpConnections.contains(conn) && sctpConnections.add(conn);
+            return sctpConnections.add(conn);
         }
 
         /**
@@ -1969,7 +2734,7 @@ public class ColibriConferenceIQ
          * <tt>Content</tt>
          */
         public Channel getChannel(int channelIndex) {
-            return getChannels().get(channelIndex);
+            return channels.get(channelIndex);
         }
 
         /**
@@ -1983,12 +2748,9 @@ public class ColibriConferenceIQ
          * such a <tt>Channel</tt> exists; otherwise, <tt>null</tt>
          */
         public Channel getChannel(String channelID) {
-            for (Channel channel : getChannels()) {
-                if (channelID.equals(channel.getID())) {
-                    return channel;
-                }
-            }
-            return null;
+            Objects.requireNonNull(channelID, "channelID");
+
+            return channels.get(channelID);
         }
 
         /**
@@ -1999,12 +2761,30 @@ public class ColibriConferenceIQ
          * <tt>null</tt> if no such connection is contained in this IQ.
          */
         public SctpConnection getSctpConnection(String connectionID) {
-            for (SctpConnection conn : getSctpConnections()) {
-                if (connectionID.equals(conn.getID())) {
-                    return conn;
-                }
-            }
-            return null;
+            Objects.requireNonNull(connectionID, "connectionID");
+
+            return sctpConnections.get(connectionID);
+        }
+
+        /**
+         * Gets the <tt>Channel</tt>s and <tt>SctpConnection</tt>s included
+         * into this <tt>Content</tt> which belong to a specific endpoint.
+         *
+         * @param endpoint the identifier of the endpoint.
+         * @return the list of the <tt>Channel</tt>s (in the order in which they
+         * were added) followed by the <tt>SctpConnection</tt>s of the specified
+         * <tt>endpoint</tt>. Empty if the endpoint has none.
+         */
+        public List<ChannelCommon> getChannelsByEndpoint(String endpoint) {
+            List<Channel> channels = this.channels.getByEndpoint(endpoint);
+            List<SctpConnection> connections
+                    = sctpConnections.getByEndpoint(endpoint);
+            List<ChannelCommon> result
+                    = new ArrayList<>(channels.size() + connections.size());
+
+            result.addAll(channels);
+            result.addAll(connections);
+            return result;
         }
 
         /**
@@ -2026,7 +2806,7 @@ public class ColibriConferenceIQ
          * included into/associated with this <tt>Content</tt>
          */
         public List<Channel> getChannels() {
-            return Collections.unmodifiableList(channels);
+            return channels.list();
         }
 
         /**
@@ -2038,6 +2818,25 @@ public class ColibriConferenceIQ
             return name;
         }
 
+        /**
+         * Returns the index of the SSRCs of the conference which includes this
+         * <tt>Content</tt> or <tt>null</tt>.
+         */
+        SSRCIndex getSSRCIndex() {
+            return channels.getSSRCIndex();
+        }
+
+        /**
+         * Sets the index of the SSRCs of the conference which includes this
+         * <tt>Content</tt>. SCTP connections do not have SSRCs, so only the
+         * channels are indexed.
+         *
+         * @param ssrcIndex the <tt>SSRCIndex</tt> or <tt>null</tt>
+         */
+        void setSSRCIndex(SSRCIndex ssrcIndex) {
+            channels.setSSRCIndex(ssrcIndex);
+        }
+
         /**
          * Gets a list of the <tt>SctpConnection</tt>s included into/associated
          * with this <tt>Content</tt>.
@@ -2046,7 +2845,7 @@ public class ColibriConferenceIQ
          * included into/associated with this <tt>Content</tt>
          */
         public List<SctpConnection> getSctpConnections() {
-            return Collections.unmodifiableList(sctpConnections);
+            return sctpConnections.list();
         }
 
         /**
@@ -2071,10 +2870,29 @@ public class ColibriConferenceIQ
          */
         public void setName(String name) {
             Objects.requireNonNull(name, "name");
+            if (channels.isFrozen()) {
+                throw new IllegalStateException(
+                        "Cannot modify a frozen <" + ELEMENT_NAME + "/>");
+            }
 
             this.name = name;
         }
 
+        /**
+         * Makes this <tt>Content</tt> immutable. Called when the
+         * <tt>conference</tt> IQ which includes it is frozen.
+         */
+        void freeze() {
+            channels.freeze();
+            sctpConnections.freeze();
+            for (Channel channel : channels.list()) {
+                channel.freeze();
+            }
+            for (SctpConnection connection : sctpConnections.list()) {
+                connection.freeze();
+            }
+        }
+
         /**
          * Appends the XML <tt>String</tt> representation of this
          * <tt>Content</tt> to a specific <tt>XmlStringBuilder </tt>.
@@ -2161,6 +2979,11 @@ public class ColibriConferenceIQ
          */
         private String statsId;
 
+        /**
+         * Whether this <tt>Endpoint</tt> has been {@link #freeze() frozen}.
+         */
+        private volatile boolean frozen;
+
         /**
          * Initializes a new <tt>Endpoint</tt> with the given ID and display
          * name.
@@ -2208,6 +3031,7 @@ public class ColibriConferenceIQ
          * @param displayName the display name to set.
          */
         public void setDisplayName(String displayName) {
+            checkNotFrozen();
             this.displayName = displayName;
         }
 
@@ -2217,6 +3041,7 @@ public class ColibriConferenceIQ
          * @param id the ID to set.
          */
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -2226,9 +3051,44 @@ public class ColibriConferenceIQ
          * @param statsId the stats ID to set.
          */
         public void setStatsId(String statsId) {
+            checkNotFrozen();
             this.statsId = statsId;
         }
 
+        /**
+         * Returns a mutable copy of this <tt>Endpoint</tt>.
+         *
+         * @return a mutable copy of this <tt>Endpoint</tt>.
+         */
+        public Endpoint copy() {
+            return new Endpoint(id, statsId, displayName);
+        }
+
+        /**
+         * Makes this <tt>Endpoint</tt> immutable. Modifying it afterwards
+         * throws an <tt>IllegalStateException</tt>.
+         */
+        public void freeze() {
+            frozen = true;
+        }
+
+        /**
+         * Returns whether this <tt>Endpoint</tt> has been
+         * {@link #freeze() frozen}.
+         *
+         * @return <tt>true</tt> if this <tt>Endpoint</tt> is immutable.
+         */
+        public boolean isFrozen() {
+            return frozen;
+        }
+
+        private void checkNotFrozen() {
+            if (frozen) {
+                throw new IllegalStateException(
+                        "Cannot modify a frozen <" + ELEMENT_NAME + "/>");
+            }
+        }
+
         /**
          * Appends the XML <tt>String</tt> representation of this
          * <tt>Endpoint</tt> to <tt>xml</tt>.
@@ -2536,7 +3396,22 @@ public class ColibriConferenceIQ
          * represented by this instance
          */
         public void setPort(int port) {
+            checkNotFrozen();
             this.port = port;
         }
+
+        /**
+         * Returns a mutable copy of this <tt>SctpConnection</tt> which is not
+         * included into any content.
+         *
+         * @return a mutable copy of this <tt>SctpConnection</tt>.
+         */
+        public SctpConnection copy() {
+            SctpConnection copy = new SctpConnection();
+
+            copyTo(copy);
+            copy.port = port;
+            return copy;
+        }
     }
 }
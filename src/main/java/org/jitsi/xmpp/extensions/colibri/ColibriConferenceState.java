@@ -0,0 +1,182 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * A thread-safe holder of the state of a conference on a Jitsi Videobridge,
+ * such as the one kept by {@link ColibriAnalyser} and {@link ColibriBuilder}.
+ * <p>
+ * The state is a {@link ColibriConferenceIQ} which is replaced as a whole
+ * whenever it changes. {@link #get()} returns the current version, which is
+ * {@link ColibriConferenceIQ#freeze() frozen} and never changes, so any
+ * number of threads can read a consistent point-in-time snapshot of the
+ * conference without taking a lock. {@link #update(Consumer)} applies a
+ * change to a copy of the current version and installs the copy with a
+ * compare-and-set; if another update has been installed in the meantime,
+ * the change is applied again to a copy of the newer version. For example:
+ * <pre>
+ * state.update(
+ *     conference -&gt; new ColibriAnalyser(conference)
+ *         .processChannelAllocResp(response));
+ * </pre>
+ * Every version freezes its channels, channel bundles and endpoints along
+ * with itself. The state never freezes instances which it did not create:
+ * the ones which are passed to the constructor or which an update adds
+ * (e.g. the channels of <tt>response</tt> above) are copied first, so they
+ * remain modifiable and later changes to them do not affect the state. The
+ * versions share the frozen instances and only have their own contents, so
+ * an update takes time linear in the number of channels but only copies
+ * the ones which it adds. An update which needs to modify a channel
+ * replaces it with a copy instead:
+ * <pre>
+ * state.update(conference -&gt; {
+ *     ColibriConferenceIQ.Content video = conference.getContent("video");
+ *     ColibriConferenceIQ.Channel channel = video.getChannel(id);
+ *     ColibriConferenceIQ.Channel copy = channel.copy();
+ *
+ *     copy.setLastN(lastN);
+ *     video.removeChannel(channel);
+ *     video.addChannel(copy);
+ * });
+ * </pre>
+ */
+public final class ColibriConferenceState {
+
+    /**
+     * The current version of the state. Always frozen.
+     */
+    private final AtomicReference<ColibriConferenceIQ> current;
+
+    /**
+     * Initializes a new state of a conference which has not been allocated
+     * yet.
+     */
+    public ColibriConferenceState() {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+
+        conference.freeze();
+        current = new AtomicReference<>(conference);
+    }
+
+    /**
+     * Initializes a new state from a specific conference. The conference and
+     * its channels, channel bundles and endpoints are copied, so they remain
+     * modifiable and later changes to them do not affect the state.
+     *
+     * @param conference the conference to initialize the state with.
+     */
+    public ColibriConferenceState(ColibriConferenceIQ conference) {
+        Objects.requireNonNull(conference, "conference");
+
+        ColibriConferenceIQ copy = copy(conference);
+
+        copy.freeze();
+        current = new AtomicReference<>(copy);
+    }
+
+    /**
+     * Returns the current version of the state of the conference. The
+     * returned IQ is frozen and is not affected by later updates.
+     *
+     * @return the current snapshot of the state.
+     */
+    public ColibriConferenceIQ get() {
+        return current.get();
+    }
+
+    /**
+     * Atomically applies a change to the state of the conference. The
+     * change is applied to a modifiable copy of the current version, which
+     * then replaces it. The change may be applied more than once if other
+     * threads update the state concurrently, so it must not have side
+     * effects other than on the copy. The channels, channel bundles and
+     * endpoints which it adds are copied before the new version is frozen,
+     * so they remain modifiable and later changes to them do not affect the
+     * state. If the change throws, the state is left as it was.
+     *
+     * @param change the change to apply.
+     * @return the new version of the state.
+     */
+    public ColibriConferenceIQ update(Consumer<ColibriConferenceIQ> change) {
+        Objects.requireNonNull(change, "change");
+
+        ColibriConferenceIQ oldState;
+        ColibriConferenceIQ newState;
+
+        do {
+            oldState = current.get();
+
+            ColibriConferenceIQ changed = copy(oldState);
+
+            change.accept(changed);
+            newState = copy(changed);
+            newState.freeze();
+        } while (!current.compareAndSet(oldState, newState));
+
+        return newState;
+    }
+
+    /**
+     * Returns a modifiable copy of a specific conference which shares its
+     * frozen channels, channel bundles and endpoints and has copies of the
+     * modifiable ones.
+     */
+    private static ColibriConferenceIQ copy(ColibriConferenceIQ conference) {
+        ColibriConferenceIQ copy = new ColibriConferenceIQ();
+
+        copy.setType(conference.getType());
+        copy.setFrom(conference.getFrom());
+        copy.setTo(conference.getTo());
+        copy.setID(conference.getID());
+        copy.setGID(conference.getGID());
+        copy.setName(conference.getName());
+        copy.setRecording(conference.getRecording());
+        copy.setRTCPTerminationStrategy(
+                conference.getRTCPTerminationStrategy());
+        copy.setGracefulShutdown(conference.isGracefulShutdown());
+        for (ColibriConferenceIQ.Content content : conference.getContents()) {
+            String name = content.getName();
+            ColibriConferenceIQ.Content contentCopy
+                    = (name == null)
+                        ? new ColibriConferenceIQ.Content()
+                        : new ColibriConferenceIQ.Content(name);
+
+            for (ColibriConferenceIQ.Channel channel : content.getChannels()) {
+                contentCopy.addChannel(
+                        channel.isFrozen() ? channel : channel.copy());
+            }
+            for (ColibriConferenceIQ.SctpConnection connection
+                    : content.getSctpConnections()) {
+                contentCopy.addSctpConnection(
+                        connection.isFrozen() ? connection : connection.copy());
+            }
+            copy.addContent(contentCopy);
+        }
+        for (ColibriConferenceIQ.ChannelBundle bundle
+                : conference.getChannelBundles()) {
+            copy.addChannelBundle(bundle.isFrozen() ? bundle : bundle.copy());
+        }
+        for (ColibriConferenceIQ.Endpoint endpoint
+                : conference.getEndpoints()) {
+            copy.addEndpoint(endpoint.isFrozen() ? endpoint : endpoint.copy());
+        }
+        return copy;
+    }
+}
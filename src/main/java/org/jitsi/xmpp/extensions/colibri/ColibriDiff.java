@@ -0,0 +1,551 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.xmpp.extensions.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import java.util.*;
+
+/**
+ * Computes the <tt>conference</tt> IQ which updates a Jitsi Videobridge from
+ * one state of a conference to another. Only what differs is included: the
+ * channels, SCTP connections, channel bundles and endpoints which have been
+ * added or changed, and within a changed channel only the attributes and the
+ * lists of sources, source groups, payload types and header extensions and
+ * the transport which have changed. Channels which are no longer in the
+ * desired state are expired. The size of the update therefore depends on
+ * the size of the change rather than on the size of the conference.
+ * <p>
+ * Subtrees are compared cheaply: channels and extensions which are the same
+ * instance in both states (as with {@link ColibriConferenceState}, whose
+ * versions share their channels) are skipped without looking at them, and
+ * extensions are compared by their XML. Frozen and caching extensions (such
+ * as the children of the channels of a {@link ColibriConferenceState})
+ * render their XML once and return the same <tt>String</tt>, which computes
+ * its hash code once as well, so two of them are compared by hash code before
+ * their XML is compared character by character. Other extensions are
+ * rendered on every comparison and their XML is compared directly.
+ * <p>
+ * As with {@link ColibriBuilder}, the lists of sources, source groups,
+ * payload types and header extensions of a channel are sent as a whole when
+ * any of their elements has changed. The update shares extensions with the
+ * desired state.
+ * <p>
+ * COLIBRI can clear the sources and the source groups of a channel (with an
+ * empty source and an empty group) but it cannot unset anything else: an
+ * attribute or a transport which is left out, and an empty list of payload
+ * types or header extensions, leave the value on the bridge as it is. Such
+ * removals are therefore not part of the update, and the bridge keeps the
+ * previous value. Likewise, channel bundles and endpoints cannot be expired
+ * and are only added or updated; the bridge drops them along with their
+ * channels.
+ */
+public final class ColibriDiff {
+
+    /**
+     * Prevents the initialization of new <tt>ColibriDiff</tt> instances.
+     */
+    private ColibriDiff() {
+    }
+
+    /**
+     * Returns the request which updates a conference from a specific state to
+     * another.
+     *
+     * @param previous the state of the conference known to the bridge.
+     * @param desired the desired state of the conference.
+     * @return a <tt>conference</tt> IQ of type <tt>set</tt> which contains the
+     * differences between <tt>previous</tt> and <tt>desired</tt>, or
+     * <tt>null</tt> if there are none which COLIBRI can express (see the
+     * class documentation for the removals which it cannot).
+     */
+    public static ColibriConferenceIQ createUpdate(
+            ColibriConferenceIQ previous,
+            ColibriConferenceIQ desired) {
+        Objects.requireNonNull(previous, "previous");
+        Objects.requireNonNull(desired, "desired");
+
+        ColibriConferenceIQ request = new ColibriConferenceIQ();
+        boolean changed = false;
+
+        request.setType(IQ.Type.set);
+        request.setTo(desired.getTo());
+        request.setID(desired.getID());
+        request.setGID(desired.getGID());
+        request.setName(desired.getName());
+
+        for (ColibriConferenceIQ.Content content : desired.getContents()) {
+            changed |= diffContent(
+                    previous.getContent(content.getName()), content, request);
+        }
+        for (ColibriConferenceIQ.Content content : previous.getContents()) {
+            if (content.getName() != null
+                    && desired.getContent(content.getName()) == null) {
+                changed |= diffContent(
+                        content,
+                        new ColibriConferenceIQ.Content(content.getName()),
+                        request);
+            }
+        }
+
+        for (ColibriConferenceIQ.ChannelBundle bundle
+                : desired.getChannelBundles()) {
+            ColibriConferenceIQ.ChannelBundle previousBundle
+                    = previous.getChannelBundle(bundle.getId());
+
+            if (previousBundle == null
+                    || !sameXML(
+                            previousBundle.getTransport(),
+                            bundle.getTransport())) {
+                request.addChannelBundle(bundle);
+                changed = true;
+            }
+        }
+
+        for (ColibriConferenceIQ.Endpoint endpoint : desired.getEndpoints()) {
+            ColibriConferenceIQ.Endpoint previousEndpoint
+                    = previous.getEndpoint(endpoint.getId());
+
+            if (previousEndpoint == null
+                    || (previousEndpoint != endpoint
+                        && (!Objects.equals(
+                                previousEndpoint.getStatsId(),
+                                endpoint.getStatsId())
+                            || !Objects.equals(
+                                previousEndpoint.getDisplayName(),
+                                endpoint.getDisplayName())))) {
+                request.addEndpoint(endpoint);
+                changed = true;
+            }
+        }
+
+        return changed ? request : null;
+    }
+
+    /**
+     * Adds the differences between two versions of a content to a request.
+     *
+     * @param previous the previous version or <tt>null</tt>.
+     * @param desired the desired version.
+     * @param request the request to add the differences to.
+     * @return <tt>true</tt> if there are any differences.
+     */
+    private static boolean diffContent(
+            ColibriConferenceIQ.Content previous,
+            ColibriConferenceIQ.Content desired,
+            ColibriConferenceIQ request) {
+        if (previous == desired) {
+            return false;
+        }
+
+        ColibriConferenceIQ.Content requestContent = null;
+
+        for (ColibriConferenceIQ.Channel channel : desired.getChannels()) {
+            ColibriConferenceIQ.Channel previousChannel
+                    = (previous == null || channel.getID() == null)
+                        ? null
+                        : previous.getChannel(channel.getID());
+
+            if (previousChannel == channel) {
+                continue;
+            }
+
+            ColibriConferenceIQ.Channel requestChannel
+                    = diffChannel(previousChannel, channel);
+
+            if (requestChannel != null) {
+                if (requestContent == null) {
+                    requestContent
+                            = request.getOrCreateContent(desired.getName());
+                }
+                requestContent.addChannel(requestChannel);
+            }
+        }
+        for (ColibriConferenceIQ.SctpConnection connection
+                : desired.getSctpConnections()) {
+            ColibriConferenceIQ.SctpConnection previousConnection
+                    = (previous == null || connection.getID() == null)
+                        ? null
+                        : previous.getSctpConnection(connection.getID());
+
+            if (previousConnection == connection) {
+                continue;
+            }
+
+            ColibriConferenceIQ.SctpConnection requestConnection
+                    = diffSctpConnection(previousConnection, connection);
+
+            if (requestConnection != null) {
+                if (requestContent == null) {
+                    requestContent
+                            = request.getOrCreateContent(desired.getName());
+                }
+                requestContent.addSctpConnection(requestConnection);
+            }
+        }
+
+        // Expire what is no longer desired.
+        if (previous != null) {
+            for (ColibriConferenceIQ.Channel channel : previous.getChannels()) {
+                String id = channel.getID();
+
+                if (id != null && desired.getChannel(id) == null) {
+                    ColibriConferenceIQ.Channel requestChannel
+                            = channel instanceof ColibriConferenceIQ.OctoChannel
+                                ? new ColibriConferenceIQ.OctoChannel()
+                                : new ColibriConferenceIQ.Channel();
+
+                    requestChannel.setID(id);
+                    requestChannel.setExpire(0);
+                    if (requestContent == null) {
+                        requestContent
+                                = request.getOrCreateContent(desired.getName());
+                    }
+                    requestContent.addChannel(requestChannel);
+                }
+            }
+            for (ColibriConferenceIQ.SctpConnection connection
+                    : previous.getSctpConnections()) {
+                String id = connection.getID();
+
+                if (id != null && desired.getSctpConnection(id) == null) {
+                    ColibriConferenceIQ.SctpConnection requestConnection
+                            = new ColibriConferenceIQ.SctpConnection();
+
+                    requestConnection.setID(id);
+                    requestConnection.setEndpoint(connection.getEndpoint());
+                    requestConnection.setExpire(0);
+                    if (requestContent == null) {
+                        requestContent
+                                = request.getOrCreateContent(desired.getName());
+                    }
+                    requestContent.addSctpConnection(requestConnection);
+                }
+            }
+        }
+
+        return requestContent != null;
+    }
+
+    /**
+     * Returns a channel which describes the differences between two versions
+     * of a channel, or <tt>null</tt> if there are none. A channel which is
+     * new is described in full.
+     */
+    private static ColibriConferenceIQ.Channel diffChannel(
+            ColibriConferenceIQ.Channel previous,
+            ColibriConferenceIQ.Channel desired) {
+        boolean octo = desired instanceof ColibriConferenceIQ.OctoChannel;
+        ColibriConferenceIQ.Channel blank
+                = octo
+                    ? new ColibriConferenceIQ.OctoChannel()
+                    : new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel request
+                = octo
+                    ? new ColibriConferenceIQ.OctoChannel()
+                    : new ColibriConferenceIQ.Channel();
+
+        if (previous == null
+                || octo
+                    != previous instanceof ColibriConferenceIQ.OctoChannel) {
+            previous = blank;
+        }
+
+        boolean changed = diffCommon(previous, desired, request);
+
+        if (!desired.getDirection().equals(previous.getDirection())) {
+            request.setDirection(desired.getDirection());
+            changed = true;
+        }
+        if (isSet(desired.getLastN(), previous.getLastN())) {
+            request.setLastN(desired.getLastN());
+            changed = true;
+        }
+        if (isSet(desired.getSimulcastMode(), previous.getSimulcastMode())) {
+            request.setSimulcastMode(desired.getSimulcastMode());
+            changed = true;
+        }
+        if (isSet(desired.getPacketDelay(), previous.getPacketDelay())) {
+            request.setPacketDelay(desired.getPacketDelay());
+            changed = true;
+        }
+        if (isSet(
+                desired.getReceivingSimulcastLayer(),
+                previous.getReceivingSimulcastLayer())) {
+            request.setReceivingSimulcastLayer(
+                    desired.getReceivingSimulcastLayer());
+            changed = true;
+        }
+        if (isSet(
+                desired.getRTPLevelRelayType(),
+                previous.getRTPLevelRelayType())) {
+            request.setRTPLevelRelayType(desired.getRTPLevelRelayType());
+            changed = true;
+        }
+
+        List<PayloadTypePacketExtension> payloadTypes
+                = desired.getPayloadTypes();
+
+        // An empty list cannot be expressed (see the class documentation).
+        if (!payloadTypes.isEmpty()
+                && !sameXML(previous.getPayloadTypes(), payloadTypes)) {
+            for (PayloadTypePacketExtension payloadType : payloadTypes) {
+                request.addPayloadType(payloadType);
+            }
+            changed = true;
+        }
+
+        Collection<RTPHdrExtPacketExtension> rtpHeaderExtensions
+                = desired.getRtpHeaderExtensions();
+
+        if (!rtpHeaderExtensions.isEmpty()
+                && !sameXML(
+                        previous.getRtpHeaderExtensions(),
+                        rtpHeaderExtensions)) {
+            for (RTPHdrExtPacketExtension ext : rtpHeaderExtensions) {
+                request.addRtpHeaderExtension(ext);
+            }
+            changed = true;
+        }
+
+        List<SourcePacketExtension> sources = desired.getSources();
+
+        if (!sameXML(previous.getSources(), sources)) {
+            for (SourcePacketExtension source : sources) {
+                request.addSource(source);
+            }
+            if (sources.isEmpty()) {
+                // An empty source removes all sources, as in ColibriBuilder.
+                SourcePacketExtension emptySource
+                        = new SourcePacketExtension();
+
+                emptySource.setSSRC(-1L);
+                request.addSource(emptySource);
+            }
+            changed = true;
+        }
+
+        List<SourceGroupPacketExtension> sourceGroups
+                = desired.getSourceGroups();
+        List<SourceGroupPacketExtension> previousSourceGroups
+                = previous.getSourceGroups();
+
+        if (!sameXML(
+                (previousSourceGroups == null)
+                    ? Collections.emptyList()
+                    : previousSourceGroups,
+                (sourceGroups == null)
+                    ? Collections.emptyList()
+                    : sourceGroups)) {
+            if (sourceGroups == null || sourceGroups.isEmpty()) {
+                // An empty group removes all groups, as in ColibriBuilder.
+                request.addSourceGroup(
+                        SourceGroupPacketExtension.createSimulcastGroup());
+            } else {
+                for (SourceGroupPacketExtension sourceGroup : sourceGroups) {
+                    request.addSourceGroup(sourceGroup);
+                }
+            }
+            changed = true;
+        }
+
+        if (octo) {
+            List<String> relays
+                    = ((ColibriConferenceIQ.OctoChannel) desired).getRelays();
+
+            if (!relays.equals(
+                    ((ColibriConferenceIQ.OctoChannel) previous).getRelays())) {
+                ((ColibriConferenceIQ.OctoChannel) request).setRelays(relays);
+                changed = true;
+            }
+        }
+
+        return changed ? request : null;
+    }
+
+    /**
+     * Returns an SCTP connection which describes the differences between two
+     * versions of an SCTP connection, or <tt>null</tt> if there are none.
+     */
+    private static ColibriConferenceIQ.SctpConnection diffSctpConnection(
+            ColibriConferenceIQ.SctpConnection previous,
+            ColibriConferenceIQ.SctpConnection desired) {
+        ColibriConferenceIQ.SctpConnection request
+                = new ColibriConferenceIQ.SctpConnection();
+
+        if (previous == null) {
+            previous = new ColibriConferenceIQ.SctpConnection();
+        }
+
+        boolean changed = diffCommon(previous, desired, request);
+
+        if (desired.getPort() != previous.getPort()) {
+            request.setPort(desired.getPort());
+            changed = true;
+        }
+        if (changed) {
+            // The bridge looks SCTP connections up by endpoint.
+            request.setEndpoint(desired.getEndpoint());
+        }
+        return changed ? request : null;
+    }
+
+    /**
+     * Copies the attributes and the transport which two versions of a
+     * channel or SCTP connection have in common into a request, if they
+     * differ, and its ID.
+     *
+     * @return <tt>true</tt> if any of them differ.
+     */
+    private static boolean diffCommon(
+            ColibriConferenceIQ.ChannelCommon previous,
+            ColibriConferenceIQ.ChannelCommon desired,
+            ColibriConferenceIQ.ChannelCommon request) {
+        boolean changed = false;
+
+        request.setID(desired.getID());
+        if (desired.getID() == null) {
+            // A channel without an ID has to be allocated.
+            changed = true;
+        }
+        if (isSet(desired.getEndpoint(), previous.getEndpoint())) {
+            request.setEndpoint(desired.getEndpoint());
+            changed = true;
+        }
+        if (desired.getExpire()
+                    != ColibriConferenceIQ.ChannelCommon.EXPIRE_NOT_SPECIFIED
+                && desired.getExpire() != previous.getExpire()) {
+            request.setExpire(desired.getExpire());
+            changed = true;
+        }
+        if (isSet(desired.isInitiator(), previous.isInitiator())) {
+            request.setInitiator(desired.isInitiator());
+            changed = true;
+        }
+        if (isSet(
+                desired.getChannelBundleId(), previous.getChannelBundleId())) {
+            request.setChannelBundleId(desired.getChannelBundleId());
+            changed = true;
+        }
+        if (isSet(desired.getType(), previous.getType())) {
+            request.setType(desired.getType());
+            changed = true;
+        }
+        if (desired.getTransport() != null
+                && !sameXML(previous.getTransport(), desired.getTransport())) {
+            request.setTransport(desired.getTransport());
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Determines whether an attribute has a desired value which differs from
+     * the previous one. An attribute which is no longer set cannot be unset
+     * (see the class documentation), so it does not count.
+     */
+    private static boolean isSet(Object desired, Object previous) {
+        return desired != null && !desired.equals(previous);
+    }
+
+    /**
+     * Determines whether two extensions have the same XML representation.
+     */
+    private static boolean sameXML(ExtensionElement a, ExtensionElement b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+
+        String xmlA = a.toXML().toString();
+        String xmlB = b.toXML().toString();
+
+        // The hash code of a cached XML String is computed once for all
+        // comparisons, whereas that of a freshly rendered one would only be
+        // extra work.
+        if (cachesXML(a)
+                && cachesXML(b)
+                && xmlA.hashCode() != xmlB.hashCode()) {
+            return false;
+        }
+        return xmlA.equals(xmlB);
+    }
+
+    /**
+     * Determines whether a specific extension renders its XML once and then
+     * returns the same <tt>String</tt>.
+     */
+    private static boolean cachesXML(ExtensionElement e) {
+        if (!(e instanceof AbstractPacketExtension)) {
+            return false;
+        }
+
+        AbstractPacketExtension ape = (AbstractPacketExtension) e;
+
+        return ape.isFrozen() || ape.isXMLCachingEnabled();
+    }
+
+    /**
+     * Determines whether two collections of extensions have the same XML
+     * representations, regardless of their order.
+     */
+    private static boolean sameXML(
+            Collection<? extends ExtensionElement> a,
+            Collection<? extends ExtensionElement> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+
+        // Usually the order has not changed either.
+        Iterator<? extends ExtensionElement> itB = b.iterator();
+        boolean sameOrder = true;
+
+        for (ExtensionElement elementA : a) {
+            if (!sameXML(elementA, itB.next())) {
+                sameOrder = false;
+                break;
+            }
+        }
+        if (sameOrder) {
+            return true;
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (ExtensionElement element : a) {
+            counts.merge(element.toXML().toString(), 1, Integer::sum);
+        }
+        for (ExtensionElement element : b) {
+            String xml = element.toXML().toString();
+            Integer count = counts.get(xml);
+
+            if (count == null) {
+                return false;
+            }
+            if (count == 1) {
+                counts.remove(xml);
+            } else {
+                counts.put(xml, count - 1);
+            }
+        }
+        return counts.isEmpty();
+    }
+}
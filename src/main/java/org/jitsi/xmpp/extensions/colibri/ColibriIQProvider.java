@@ -26,6 +26,9 @@ import org.jivesoftware.smack.provider.*;
 import org.jxmpp.jid.parts.Localpart;
 import org.xmlpull.v1.*;
 
+import java.util.*;
+import java.util.function.*;
+
 /**
  * Implements an <tt>org.jivesoftware.smack.provider.IQProvider</tt> for the
  * Jitsi Videobridge extension <tt>ColibriConferenceIQ</tt>.
@@ -42,36 +45,40 @@ public class ColibriIQProvider
     private final static Logger logger
             = Logger.getLogger(ColibriIQProvider.class);
 
+    /**
+     * The providers of the extensions that we have encountered so far.
+     */
+    private final ExtensionProviderCache extensionProviders
+            = new ExtensionProviderCache();
+
     /**
      * Initializes a new <tt>ColibriIQProvider</tt> instance.
      */
     public ColibriIQProvider() {
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 PayloadTypePacketExtension.ELEMENT_NAME,
                 ColibriConferenceIQ.NAMESPACE,
-                new DefaultPacketExtensionProvider<>(
-                        PayloadTypePacketExtension.class));
-        ProviderManager.addExtensionProvider(
+                new PayloadTypePacketExtensionProvider());
+        ExtensionProviderCache.addExtensionProvider(
                 RtcpFbPacketExtension.ELEMENT_NAME,
                 RtcpFbPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        RtcpFbPacketExtension.class));
-        ProviderManager.addExtensionProvider(
+                        RtcpFbPacketExtension::new));
+        ExtensionProviderCache.addExtensionProvider(
                 RTPHdrExtPacketExtension.ELEMENT_NAME,
                 ColibriConferenceIQ.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        RTPHdrExtPacketExtension.class));
-        ProviderManager.addExtensionProvider(
+                        RTPHdrExtPacketExtension::new));
+        ExtensionProviderCache.addExtensionProvider(
                 SourcePacketExtension.ELEMENT_NAME,
                 SourcePacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<>(
-                        SourcePacketExtension.class));
-        ProviderManager.addExtensionProvider(
+                new SourcePacketExtensionProvider());
+        ExtensionProviderCache.addExtensionProvider(
                 SourceGroupPacketExtension.ELEMENT_NAME,
                 SourceGroupPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        SourceGroupPacketExtension.class));
-        ProviderManager.addExtensionProvider(
+                        SourceGroupPacketExtension::new));
+        ExtensionProviderCache.addExtensionProvider(
                 SourceRidGroupPacketExtension.ELEMENT_NAME,
                 SourceRidGroupPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
@@ -79,13 +86,13 @@ public class ColibriIQProvider
 
         ExtensionElementProvider parameterProvider
                 = new DefaultPacketExtensionProvider<>(
-                        ParameterPacketExtension.class);
+                        ParameterPacketExtension::new);
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ParameterPacketExtension.ELEMENT_NAME,
                 ColibriConferenceIQ.NAMESPACE,
                 parameterProvider);
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ParameterPacketExtension.ELEMENT_NAME,
                 SourcePacketExtension.NAMESPACE,
                 parameterProvider);
@@ -103,7 +110,7 @@ public class ColibriIQProvider
                 = new DefaultPacketExtensionProvider<>(
                         ColibriConferenceIQ.GracefulShutdown.class);
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ColibriConferenceIQ.GracefulShutdown.ELEMENT_NAME,
                 ColibriConferenceIQ.GracefulShutdown.NAMESPACE,
                 shutdownProvider);
@@ -119,26 +126,26 @@ public class ColibriIQProvider
                 = new DefaultPacketExtensionProvider<>(
                         ColibriStatsExtension.class);
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ColibriStatsExtension.ELEMENT_NAME,
                 ColibriStatsExtension.NAMESPACE,
                 statsProvider);
         // ColibriStatsExtension.Stat
         ExtensionElementProvider statProvider
                 = new DefaultPacketExtensionProvider<>(
-                        ColibriStatsExtension.Stat.class);
+                        ColibriStatsExtension.Stat::new);
 
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ColibriStatsExtension.Stat.ELEMENT_NAME,
                 ColibriStatsExtension.NAMESPACE,
                 statProvider);
 
         // ssrc-info
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 SSRCInfoPacketExtension.ELEMENT_NAME,
                 SSRCInfoPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        SSRCInfoPacketExtension.class));
+                        SSRCInfoPacketExtension::new));
     }
 
     private void addChildExtension(
@@ -211,9 +218,7 @@ public class ColibriIQProvider
             String namespace)
             throws Exception {
         ExtensionElementProvider extensionProvider
-                = ProviderManager.getExtensionProvider(
-                        name,
-                        namespace);
+                = extensionProviders.get(name, namespace);
         ExtensionElement extension;
 
         if (extensionProvider == null) {
@@ -229,6 +234,191 @@ public class ColibriIQProvider
         return extension;
     }
 
+    /**
+     * The handlers of the elements inside a <tt>conference</tt> element,
+     * keyed by element name. Elements without a handler (or without a start
+     * handler) are parsed as child extensions of the open channel, SCTP
+     * connection or channel-bundle, if any, and are ignored otherwise.
+     */
+    private static final Map<String, ElementHandler> elementHandlers
+            = new HashMap<>();
+
+    /**
+     * The child extensions of channels, SCTP connections and channel-bundles
+     * which are parsed with a registered provider, keyed by element name.
+     */
+    private static final Map<String, ChildElement> childElements
+            = new HashMap<>();
+
+    /**
+     * The handlers of the attributes of a <tt>channel</tt> element, keyed by
+     * attribute name. A new attribute is supported by adding its handler in
+     * the static initializer. Handlers are only invoked for attributes
+     * without a namespace and with a non-empty value.
+     */
+    private static final Map<String,
+                BiConsumer<ColibriConferenceIQ.Channel, String>>
+            channelAttributeHandlers = new HashMap<>();
+
+    static {
+        elementHandlers.put(
+                ColibriConferenceIQ.Channel.ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startChannel,
+                        ConferenceParser::endChannel));
+        elementHandlers.put(
+                ColibriConferenceIQ.ChannelBundle.ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startChannelBundle,
+                        ConferenceParser::endChannelBundle));
+        elementHandlers.put(
+                ColibriConferenceIQ.RTCPTerminationStrategy.ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startRTCPTerminationStrategy,
+                        ConferenceParser::endRTCPTerminationStrategy));
+        elementHandlers.put(
+                ColibriConferenceIQ.OctoChannel.RELAY_ELEMENT_NAME,
+                new ElementHandler(ConferenceParser::startRelay, null));
+        elementHandlers.put(
+                ColibriConferenceIQ.Channel.SSRC_ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startSSRC,
+                        ConferenceParser::endSSRC));
+        elementHandlers.put(
+                ColibriConferenceIQ.Content.ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startContent,
+                        ConferenceParser::endContent));
+        elementHandlers.put(
+                ColibriConferenceIQ.Recording.ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startRecording,
+                        ConferenceParser::endRecording));
+        elementHandlers.put(
+                ColibriConferenceIQ.SctpConnection.ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startSctpConnection,
+                        ConferenceParser::endSctpConnection));
+        elementHandlers.put(
+                ColibriConferenceIQ.Endpoint.ELEMENT_NAME,
+                new ElementHandler(
+                        ConferenceParser::startEndpoint,
+                        ConferenceParser::endEndpoint));
+        elementHandlers.put(
+                ColibriConferenceIQ.GracefulShutdown.ELEMENT_NAME,
+                new ElementHandler(
+                        null,
+                        ConferenceParser::endGracefulShutdown));
+
+        addChildElement(
+                IceUdpTransportPacketExtension.ELEMENT_NAME,
+                IceUdpTransportPacketExtension.NAMESPACE,
+                IceUdpTransportPacketExtension.NAMESPACE);
+        addChildElement(
+                RawUdpTransportPacketExtension.ELEMENT_NAME,
+                RawUdpTransportPacketExtension.NAMESPACE,
+                RawUdpTransportPacketExtension.NAMESPACE);
+        /*
+         * The channel element of the Jitsi Videobridge protocol reuses the
+         * payload-type and rtp-hdrext elements defined in XEP-0167: Jingle
+         * RTP Sessions.
+         */
+        addChildElement(
+                PayloadTypePacketExtension.ELEMENT_NAME,
+                null,
+                ColibriConferenceIQ.NAMESPACE);
+        addChildElement(
+                RtcpFbPacketExtension.ELEMENT_NAME,
+                RtcpFbPacketExtension.NAMESPACE,
+                ColibriConferenceIQ.NAMESPACE);
+        addChildElement(
+                RTPHdrExtPacketExtension.ELEMENT_NAME,
+                null,
+                ColibriConferenceIQ.NAMESPACE);
+        addChildElement(
+                SourcePacketExtension.ELEMENT_NAME,
+                SourcePacketExtension.NAMESPACE,
+                SourcePacketExtension.NAMESPACE);
+        addChildElement(
+                SourceGroupPacketExtension.ELEMENT_NAME,
+                SourceGroupPacketExtension.NAMESPACE,
+                SourceGroupPacketExtension.NAMESPACE);
+        addChildElement(
+                SourceRidGroupPacketExtension.ELEMENT_NAME,
+                SourceRidGroupPacketExtension.NAMESPACE,
+                SourceRidGroupPacketExtension.NAMESPACE);
+
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.DIRECTION_ATTR_NAME,
+                (channel, value) -> channel.setDirection(
+                        StringCanonicalizer.canonicalizeValue(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.ENDPOINT_ATTR_NAME,
+                ColibriConferenceIQ.Channel::setEndpoint);
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.ChannelCommon.CHANNEL_BUNDLE_ID_ATTR_NAME,
+                ColibriConferenceIQ.Channel::setChannelBundleId);
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.EXPIRE_ATTR_NAME,
+                (channel, value) -> channel.setExpire(Integer.parseInt(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.PACKET_DELAY_ATTR_NAME,
+                (channel, value) -> channel.setPacketDelay(
+                        Integer.parseInt(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.HOST_ATTR_NAME,
+                ColibriConferenceIQ.Channel::setHost);
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.ID_ATTR_NAME,
+                ColibriConferenceIQ.Channel::setID);
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.INITIATOR_ATTR_NAME,
+                (channel, value) -> channel.setInitiator(
+                        Boolean.valueOf(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.LAST_N_ATTR_NAME,
+                (channel, value) -> channel.setLastN(Integer.parseInt(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.SIMULCAST_MODE_ATTR_NAME,
+                (channel, value) -> channel.setSimulcastMode(
+                        SimulcastMode.fromString(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.RECEIVING_SIMULCAST_LAYER,
+                (channel, value) -> channel.setReceivingSimulcastLayer(
+                        Integer.parseInt(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.RTCP_PORT_ATTR_NAME,
+                (channel, value) -> channel.setRTCPPort(
+                        Integer.parseInt(value)));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.RTP_LEVEL_RELAY_TYPE_ATTR_NAME,
+                (channel, value) -> channel.setRTPLevelRelayType(value));
+        channelAttributeHandlers.put(
+                ColibriConferenceIQ.Channel.RTP_PORT_ATTR_NAME,
+                (channel, value) -> channel.setRTPPort(
+                        Integer.parseInt(value)));
+    }
+
+    /**
+     * Registers a child extension of channels, SCTP connections and
+     * channel-bundles.
+     *
+     * @param name the name of the element.
+     * @param namespace the namespace which the element must have, or
+     * <tt>null</tt> to accept the element in any namespace.
+     * @param providerNamespace the namespace of the provider which parses the
+     * element.
+     */
+    private static void addChildElement(
+            String name,
+            String namespace,
+            String providerNamespace) {
+        childElements.put(
+                name,
+                new ChildElement(
+                        namespace, providerNamespace, childElements.get(name)));
+    }
+
     /**
      * Parses an IQ sub-document and creates an
      * <tt>org.jivesoftware.smack.packet.IQ</tt> instance.
@@ -238,8 +428,6 @@ public class ColibriIQProvider
      * @return a new <tt>IQ</tt> instance parsed from the specified IQ
      * sub-document
      */
-    @SuppressWarnings("deprecation") // Compatibility with legacy Jitsi and
-    // Jitsi Videobridge
     public IQ parse(XmlPullParser parser, int depth)
             throws Exception {
         String namespace = parser.getNamespace();
@@ -247,524 +435,7 @@ public class ColibriIQProvider
 
         if (ColibriConferenceIQ.ELEMENT_NAME.equals(parser.getName())
                 && ColibriConferenceIQ.NAMESPACE.equals(namespace)) {
-            ColibriConferenceIQ conference = new ColibriConferenceIQ();
-            String conferenceID = parser
-                    .getAttributeValue("", ColibriConferenceIQ.ID_ATTR_NAME);
-
-            if ((conferenceID != null) && (conferenceID.length() != 0)) {
-                conference.setID(conferenceID);
-            }
-
-            String conferenceGID = parser
-                    .getAttributeValue("", ColibriConferenceIQ.GID_ATTR_NAME);
-
-            if ((conferenceGID != null) && (conferenceGID.length() != 0)) {
-                conference.setGID(conferenceGID);
-            }
-
-            String conferenceName = parser
-                    .getAttributeValue("", ColibriConferenceIQ.NAME_ATTR_NAME);
-
-            if (StringUtils.isNotEmpty(conferenceName)) {
-                conference.setName(Localpart.from(conferenceName));
-            }
-
-            boolean done = false;
-            ColibriConferenceIQ.Channel channel = null;
-            ColibriConferenceIQ.RTCPTerminationStrategy rtcpTerminationStrategy
-                    = null;
-            ColibriConferenceIQ.SctpConnection sctpConnection = null;
-            ColibriConferenceIQ.ChannelBundle bundle = null;
-            ColibriConferenceIQ.Content content = null;
-            ColibriConferenceIQ.Recording recording = null;
-            ColibriConferenceIQ.Endpoint conferenceEndpoint = null;
-            StringBuilder ssrc = null;
-
-            while (!done) {
-                switch (parser.next()) {
-                    case XmlPullParser.END_TAG: {
-                        String name = parser.getName();
-
-                        if (ColibriConferenceIQ.ELEMENT_NAME.equals(name)) {
-                            done = true;
-                        } else if (ColibriConferenceIQ.Channel.ELEMENT_NAME.equals(
-                                name)) {
-                            content.addChannel(channel);
-                            channel = null;
-                        } else if (ColibriConferenceIQ.SctpConnection.ELEMENT_NAME
-                                .equals(name)) {
-                            if (sctpConnection != null) {
-                                content.addSctpConnection(sctpConnection);
-                            }
-
-                            sctpConnection = null;
-                        } else if (ColibriConferenceIQ.ChannelBundle.ELEMENT_NAME
-                                .equals(name)) {
-                            if (bundle != null) {
-                                if (conference.addChannelBundle(bundle) != null) {
-                                    logger.warn(
-                                            "Replacing a channel-bundle with the same"
-                                            + "ID (not a valid Colibri packet).");
-                                }
-
-                                bundle = null;
-                            }
-                        } else if (ColibriConferenceIQ.Endpoint.ELEMENT_NAME
-                                .equals(name)) {
-                            if (conference.addEndpoint(conferenceEndpoint) != null) {
-                                logger.warn(
-                                        "Replacing an endpoint element with the same"
-                                        + "ID (not a valid Colibri packet).");
-                            }
-                            conferenceEndpoint = null;
-                        } else if (ColibriConferenceIQ.Channel.SSRC_ELEMENT_NAME
-                                .equals(name)) {
-                            String s = ssrc.toString().trim();
-
-                            if (s.length() != 0) {
-                                int i;
-
-                                /*
-                             * Legacy versions of Jitsi and Jitsi Videobridge
-                             * may send a synchronization source (SSRC)
-                             * identifier as a negative integer.
-                                 */
-                                if (s.startsWith("-")) {
-                                    i = Integer.parseInt(s);
-                                } else {
-                                    i = (int) Long.parseLong(s);
-                                }
-                                channel.addSSRC(i);
-                            }
-                            ssrc = null;
-                        } else if (ColibriConferenceIQ.Content.ELEMENT_NAME.equals(
-                                name)) {
-                            conference.addContent(content);
-                            content = null;
-                        } else if (ColibriConferenceIQ.RTCPTerminationStrategy.ELEMENT_NAME.equals(name)) {
-                            conference.setRTCPTerminationStrategy(
-                                    rtcpTerminationStrategy);
-                            rtcpTerminationStrategy = null;
-                        } else if (ColibriConferenceIQ.Recording.ELEMENT_NAME.equals(
-                                name)) {
-                            conference.setRecording(recording);
-                            recording = null;
-                        } else if (ColibriConferenceIQ.GracefulShutdown.ELEMENT_NAME
-                                .equals(name)) {
-                            conference.setGracefulShutdown(true);
-                        }
-                        break;
-                    }
-
-                    case XmlPullParser.START_TAG: {
-                        String name = parser.getName();
-
-                        if (ColibriConferenceIQ.Channel.ELEMENT_NAME.equals(name)) {
-                            String type
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.TYPE_ATTR_NAME);
-
-                            if (ColibriConferenceIQ.OctoChannel.TYPE.equals(type)) {
-                                channel = new ColibriConferenceIQ.OctoChannel();
-                            } else {
-                                channel = new ColibriConferenceIQ.Channel();
-                            }
-
-                            // direction
-                            String direction
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.DIRECTION_ATTR_NAME);
-
-                            if ((direction != null) && (direction.length() != 0)) {
-                                channel.setDirection(direction);
-                            }
-
-                            // endpoint
-                            String endpoint
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.ENDPOINT_ATTR_NAME);
-
-                            if (StringUtils.isNotEmpty(endpoint)) {
-                                channel.setEndpoint(endpoint);
-                            }
-
-                            String channelBundleId
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.ChannelCommon.CHANNEL_BUNDLE_ID_ATTR_NAME);
-                            if (StringUtils.isNotEmpty(channelBundleId)) {
-                                channel.setChannelBundleId(channelBundleId);
-                            }
-
-                            // expire
-                            String expire
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.EXPIRE_ATTR_NAME);
-
-                            if ((expire != null) && (expire.length() != 0)) {
-                                channel.setExpire(Integer.parseInt(expire));
-                            }
-
-                            String packetDelay
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.PACKET_DELAY_ATTR_NAME);
-                            if (StringUtils.isNotEmpty(packetDelay)) {
-                                channel.setPacketDelay(
-                                        Integer.parseInt(packetDelay));
-                            }
-
-                            // host
-                            String host
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.HOST_ATTR_NAME);
-
-                            if ((host != null) && (host.length() != 0)) {
-                                channel.setHost(host);
-                            }
-
-                            // id
-                            String channelID
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.ID_ATTR_NAME);
-
-                            if ((channelID != null) && (channelID.length() != 0)) {
-                                channel.setID(channelID);
-                            }
-
-                            // initiator
-                            String initiator
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.INITIATOR_ATTR_NAME);
-
-                            if ((initiator != null) && (initiator.length() != 0)) {
-                                channel.setInitiator(Boolean.valueOf(initiator));
-                            }
-
-                            // lastN
-                            String lastN
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.LAST_N_ATTR_NAME);
-
-                            if ((lastN != null) && (lastN.length() != 0)) {
-                                channel.setLastN(Integer.parseInt(lastN));
-                            }
-
-                            // simulcastMode
-                            String simulcastMode
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.SIMULCAST_MODE_ATTR_NAME);
-
-                            if (StringUtils.isNotEmpty(simulcastMode)) {
-                                channel.setSimulcastMode(
-                                        SimulcastMode.fromString(simulcastMode));
-                            }
-
-                            // receiving simulcast layer
-                            String receivingSimulcastLayer
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.RECEIVING_SIMULCAST_LAYER);
-
-                            if ((receivingSimulcastLayer != null)
-                                    && (receivingSimulcastLayer.length() != 0)) {
-                                channel.setReceivingSimulcastLayer(
-                                        Integer.parseInt(receivingSimulcastLayer));
-                            }
-
-                            // rtcpPort
-                            String rtcpPort
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.RTCP_PORT_ATTR_NAME);
-
-                            if ((rtcpPort != null) && (rtcpPort.length() != 0)) {
-                                channel.setRTCPPort(Integer.parseInt(rtcpPort));
-                            }
-
-                            // rtpLevelRelayType
-                            String rtpLevelRelayType
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.RTP_LEVEL_RELAY_TYPE_ATTR_NAME);
-
-                            if ((rtpLevelRelayType != null)
-                                    && (rtpLevelRelayType.length() != 0)) {
-                                channel.setRTPLevelRelayType(rtpLevelRelayType);
-                            }
-
-                            // rtpPort
-                            String rtpPort
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Channel.RTP_PORT_ATTR_NAME);
-
-                            if ((rtpPort != null) && (rtpPort.length() != 0)) {
-                                channel.setRTPPort(Integer.parseInt(rtpPort));
-                            }
-                        } else if (ColibriConferenceIQ.ChannelBundle.ELEMENT_NAME.equals(name)) {
-                            String bundleId
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.ChannelBundle.ID_ATTR_NAME);
-
-                            if (StringUtils.isNotEmpty(bundleId)) {
-                                bundle = new ColibriConferenceIQ.ChannelBundle(bundleId);
-                            }
-                        } else if (ColibriConferenceIQ.RTCPTerminationStrategy.ELEMENT_NAME.equals(name)) {
-                            rtcpTerminationStrategy
-                                    = new ColibriConferenceIQ.RTCPTerminationStrategy();
-
-                            // name
-                            String strategyName
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.RTCPTerminationStrategy.NAME_ATTR_NAME);
-
-                            if ((strategyName != null)
-                                    && (strategyName.length() != 0)) {
-                                rtcpTerminationStrategy.setName(strategyName);
-                            }
-
-                        } else if (ColibriConferenceIQ.OctoChannel.RELAY_ELEMENT_NAME.equals(name)) {
-                            String id
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.OctoChannel.RELAY_ID_ATTR_NAME);
-
-                            if (id != null
-                                    && channel instanceof ColibriConferenceIQ.OctoChannel) {
-                                ((ColibriConferenceIQ.OctoChannel) channel)
-                                        .addRelay(id);
-                            }
-                        } else if (ColibriConferenceIQ.Channel.SSRC_ELEMENT_NAME
-                                .equals(name)) {
-                            ssrc = new StringBuilder();
-                        } else if (ColibriConferenceIQ.Content.ELEMENT_NAME.equals(
-                                name)) {
-                            content = new ColibriConferenceIQ.Content();
-
-                            String contentName
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Content.NAME_ATTR_NAME);
-
-                            if ((contentName != null)
-                                    && (contentName.length() != 0)) {
-                                content.setName(contentName);
-                            }
-                        } else if (ColibriConferenceIQ.Recording.ELEMENT_NAME.equals(
-                                name)) {
-                            String stateStr
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Recording.STATE_ATTR_NAME);
-                            String token
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Recording.TOKEN_ATTR_NAME);
-
-                            recording
-                                    = new ColibriConferenceIQ.Recording(
-                                            stateStr,
-                                            token);
-                        } else if (ColibriConferenceIQ.SctpConnection.ELEMENT_NAME
-                                .equals(name)) {
-                            // Endpoint
-                            String endpoint
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.SctpConnection.ENDPOINT_ATTR_NAME);
-
-                            // id
-                            String connID
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.ChannelCommon.ID_ATTR_NAME);
-
-                            if (StringUtils.isEmpty(connID)
-                                    && StringUtils.isEmpty(endpoint)) {
-                                sctpConnection = null;
-                                continue;
-                            }
-
-                            sctpConnection
-                                    = new ColibriConferenceIQ.SctpConnection();
-
-                            if (StringUtils.isNotEmpty(connID)) {
-                                sctpConnection.setID(connID);
-                            }
-
-                            if (StringUtils.isNotEmpty(endpoint)) {
-                                sctpConnection.setEndpoint(endpoint);
-                            }
-
-                            // port
-                            String port
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.SctpConnection.PORT_ATTR_NAME);
-                            if (StringUtils.isNotEmpty(port)) {
-                                sctpConnection.setPort(Integer.parseInt(port));
-                            }
-
-                            String channelBundleId
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.ChannelCommon.CHANNEL_BUNDLE_ID_ATTR_NAME);
-                            if (StringUtils.isNotEmpty(channelBundleId)) {
-                                sctpConnection.setChannelBundleId(channelBundleId);
-                            }
-
-                            // initiator
-                            String initiator
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.SctpConnection.INITIATOR_ATTR_NAME);
-
-                            if (StringUtils.isNotEmpty(initiator)) {
-                                sctpConnection.setInitiator(
-                                        Boolean.valueOf(initiator));
-                            }
-
-                            // expire
-                            String expire
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.SctpConnection.EXPIRE_ATTR_NAME);
-
-                            if (StringUtils.isNotEmpty(expire)) {
-                                sctpConnection.setExpire(Integer.parseInt(expire));
-                            }
-                        } else if (ColibriConferenceIQ.Endpoint.ELEMENT_NAME
-                                .equals(name)) {
-                            String id
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Endpoint.ID_ATTR_NAME);
-
-                            String displayName
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Endpoint.DISPLAYNAME_ATTR_NAME);
-
-                            String statsId
-                                    = parser.getAttributeValue(
-                                            "",
-                                            ColibriConferenceIQ.Endpoint.STATS_ID_ATTR_NAME);
-
-                            if (StringUtils.isNotEmpty(id)) {
-                                conferenceEndpoint
-                                        = new ColibriConferenceIQ.Endpoint(
-                                                id, statsId, displayName);
-                            }
-                        } else if (channel != null
-                                || sctpConnection != null
-                                || bundle != null) {
-                            String peName = null;
-                            String peNamespace = null;
-
-                            if (IceUdpTransportPacketExtension.ELEMENT_NAME
-                                    .equals(name)
-                                    && IceUdpTransportPacketExtension.NAMESPACE
-                                            .equals(parser.getNamespace())) {
-                                peName = name;
-                                peNamespace
-                                        = IceUdpTransportPacketExtension.NAMESPACE;
-                            } else if (PayloadTypePacketExtension.ELEMENT_NAME.equals(
-                                    name)) {
-                                /*
-                             * The channel element of the Jitsi Videobridge
-                             * protocol reuses the payload-type element defined
-                             * in XEP-0167: Jingle RTP Sessions.
-                                 */
-                                peName = name;
-                                peNamespace = namespace;
-                            } else if (RtcpFbPacketExtension.ELEMENT_NAME.equals(
-                                    name)
-                                    && RtcpFbPacketExtension.NAMESPACE
-                                            .equals(parser.getNamespace())) {
-                                /*
-                             * The channel element of the Jitsi Videobridge
-                             * protocol reuses the payload-type element defined
-                             * in XEP-0167: Jingle RTP Sessions.
-                                 */
-                                peName = name;
-                                peNamespace = namespace;
-                            } else if (RTPHdrExtPacketExtension.ELEMENT_NAME.equals(
-                                    name)) {
-                                /*
-                             * The channel element of the Jitsi Videobridge
-                             * protocol reuses the rtp-hdrext element defined
-                             * in XEP-0167: Jingle RTP Sessions.
-                                 */
-                                peName = name;
-                                peNamespace = namespace;
-                            } else if (RawUdpTransportPacketExtension.ELEMENT_NAME
-                                    .equals(name)
-                                    && RawUdpTransportPacketExtension.NAMESPACE
-                                            .equals(parser.getNamespace())) {
-                                peName = name;
-                                peNamespace
-                                        = RawUdpTransportPacketExtension.NAMESPACE;
-                            } else if (SourcePacketExtension.ELEMENT_NAME.equals(name)
-                                    && SourcePacketExtension.NAMESPACE.equals(
-                                            parser.getNamespace())) {
-                                peName = name;
-                                peNamespace = SourcePacketExtension.NAMESPACE;
-                            } else if (SourceGroupPacketExtension.ELEMENT_NAME
-                                    .equals(name)
-                                    && SourceGroupPacketExtension.NAMESPACE
-                                            .equals(parser.getNamespace())) {
-                                peName = name;
-                                peNamespace = SourceGroupPacketExtension.NAMESPACE;
-                            } else if (SourceRidGroupPacketExtension.ELEMENT_NAME
-                                    .equals(name)
-                                    && SourceRidGroupPacketExtension.NAMESPACE
-                                            .equals(parser.getNamespace())) {
-                                peName = name;
-                                peNamespace = SourceRidGroupPacketExtension.NAMESPACE;
-                            }
-                            if (peName == null) {
-                                throwAway(parser, name);
-                            } else {
-                                ExtensionElement extension
-                                        = parseExtension(parser, peName, peNamespace);
-
-                                if (extension != null) {
-                                    if (channel != null) {
-                                        addChildExtension(channel, extension);
-                                    } else if (sctpConnection != null) {
-                                        addChildExtension(sctpConnection,
-                                                extension);
-                                    } else {
-                                        addChildExtension(bundle, extension);
-                                    }
-                                }
-                            }
-                        }
-                        break;
-                    }
-
-                    case XmlPullParser.TEXT: {
-                        if (ssrc != null) {
-                            ssrc.append(parser.getText());
-                        }
-                        break;
-                    }
-                }
-            }
-
-            iq = conference;
+            iq = new ConferenceParser(parser).parse();
         } else if (ShutdownIQ.NAMESPACE.equals(namespace)
                 && ShutdownIQ.isValidElementName(parser.getName())) {
             String rootElement = parser.getName();
@@ -807,7 +478,8 @@ public class ColibriIQProvider
                                     = parser.getAttributeValue(
                                             "",
                                             ColibriStatsExtension.Stat.NAME_ATTR_NAME);
-                            stat.setName(statName);
+                            stat.setName(
+                                    StringCanonicalizer.canonicalize(statName));
 
                             String statValue
                                     = parser.getAttributeValue(
@@ -857,4 +529,491 @@ public class ColibriIQProvider
         while ((XmlPullParser.END_TAG != parser.next())
                 || !name.equals(parser.getName()));
     }
+
+    /**
+     * Handles a start or an end tag of an element inside a
+     * <tt>conference</tt> element.
+     */
+    @FunctionalInterface
+    private interface TagHandler {
+        /**
+         * Handles the tag at which the parser of a specific conference
+         * currently is.
+         *
+         * @param conferenceParser the parser of the conference.
+         * @throws Exception if an error occurs while parsing.
+         */
+        void handle(ConferenceParser conferenceParser)
+                throws Exception;
+    }
+
+    /**
+     * The handlers of the start and end tags of an element inside a
+     * <tt>conference</tt> element.
+     */
+    private static final class ElementHandler {
+        /**
+         * The handler of the start tag, or <tt>null</tt>.
+         */
+        final TagHandler start;
+
+        /**
+         * The handler of the end tag, or <tt>null</tt>.
+         */
+        final TagHandler end;
+
+        ElementHandler(TagHandler start, TagHandler end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Describes a child extension of channels, SCTP connections and
+     * channel-bundles.
+     */
+    private static final class ChildElement {
+        /**
+         * The namespace which the element must have, or <tt>null</tt> if any
+         * namespace is accepted.
+         */
+        final String namespace;
+
+        /**
+         * The namespace of the provider which parses the element.
+         */
+        final String providerNamespace;
+
+        /**
+         * The next child extension with the same element name, or
+         * <tt>null</tt>.
+         */
+        final ChildElement next;
+
+        ChildElement(
+                String namespace,
+                String providerNamespace,
+                ChildElement next) {
+            this.namespace = namespace;
+            this.providerNamespace = providerNamespace;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Parses a single <tt>conference</tt> element and holds the elements
+     * which are open at the current position of the parser.
+     */
+    private final class ConferenceParser {
+        /**
+         * The parser positioned inside the <tt>conference</tt> element.
+         */
+        private final XmlPullParser parser;
+
+        /**
+         * The conference being parsed.
+         */
+        private final ColibriConferenceIQ conference
+                = new ColibriConferenceIQ();
+
+        private ColibriConferenceIQ.Content content;
+
+        private ColibriConferenceIQ.Channel channel;
+
+        private ColibriConferenceIQ.SctpConnection sctpConnection;
+
+        private ColibriConferenceIQ.ChannelBundle bundle;
+
+        private ColibriConferenceIQ.RTCPTerminationStrategy
+                rtcpTerminationStrategy;
+
+        private ColibriConferenceIQ.Recording recording;
+
+        private ColibriConferenceIQ.Endpoint conferenceEndpoint;
+
+        /**
+         * The text of the open <tt>ssrc</tt> element, or <tt>null</tt>.
+         */
+        private StringBuilder ssrc;
+
+        /**
+         * Initializes a new <tt>ConferenceParser</tt> for the
+         * <tt>conference</tt> element at the start tag of which a specific
+         * parser currently is.
+         */
+        ConferenceParser(XmlPullParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Parses the <tt>conference</tt> element up to and including its end
+         * tag.
+         *
+         * @return the parsed conference.
+         */
+        ColibriConferenceIQ parse()
+                throws Exception {
+            String conferenceID = parser
+                    .getAttributeValue("", ColibriConferenceIQ.ID_ATTR_NAME);
+
+            if ((conferenceID != null) && (conferenceID.length() != 0)) {
+                conference.setID(conferenceID);
+            }
+
+            String conferenceGID = parser
+                    .getAttributeValue("", ColibriConferenceIQ.GID_ATTR_NAME);
+
+            if ((conferenceGID != null) && (conferenceGID.length() != 0)) {
+                conference.setGID(conferenceGID);
+            }
+
+            String conferenceName = parser
+                    .getAttributeValue("", ColibriConferenceIQ.NAME_ATTR_NAME);
+
+            if (StringUtils.isNotEmpty(conferenceName)) {
+                conference.setName(Localpart.from(conferenceName));
+            }
+
+            while (true) {
+                switch (parser.next()) {
+                    case XmlPullParser.START_TAG: {
+                        ElementHandler handler
+                                = elementHandlers.get(parser.getName());
+
+                        if (handler != null && handler.start != null) {
+                            handler.start.handle(this);
+                        } else if (channel != null
+                                || sctpConnection != null
+                                || bundle != null) {
+                            parseChildExtension();
+                        }
+                        break;
+                    }
+
+                    case XmlPullParser.END_TAG: {
+                        String name = parser.getName();
+
+                        if (ColibriConferenceIQ.ELEMENT_NAME.equals(name)) {
+                            return conference;
+                        }
+
+                        ElementHandler handler = elementHandlers.get(name);
+
+                        if (handler != null && handler.end != null) {
+                            handler.end.handle(this);
+                        }
+                        break;
+                    }
+
+                    case XmlPullParser.TEXT: {
+                        if (ssrc != null) {
+                            ssrc.append(parser.getText());
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Parses an element inside a channel, an SCTP connection or a
+         * channel-bundle and adds it to the innermost of them if it is one
+         * of the {@link #childElements}, or throws it away otherwise.
+         */
+        private void parseChildExtension()
+                throws Exception {
+            String name = parser.getName();
+            String namespace = parser.getNamespace();
+            ChildElement childElement = childElements.get(name);
+
+            while (childElement != null
+                    && childElement.namespace != null
+                    && !childElement.namespace.equals(namespace)) {
+                childElement = childElement.next;
+            }
+            if (childElement == null) {
+                throwAway(parser, name);
+                return;
+            }
+
+            ExtensionElement extension
+                    = parseExtension(
+                            parser, name, childElement.providerNamespace);
+
+            if (extension != null) {
+                if (channel != null) {
+                    addChildExtension(channel, extension);
+                } else if (sctpConnection != null) {
+                    addChildExtension(sctpConnection, extension);
+                } else {
+                    addChildExtension(bundle, extension);
+                }
+            }
+        }
+
+        void startChannel() {
+            String type
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.Channel.TYPE_ATTR_NAME);
+
+            if (ColibriConferenceIQ.OctoChannel.TYPE.equals(type)) {
+                channel = new ColibriConferenceIQ.OctoChannel();
+            } else {
+                channel = new ColibriConferenceIQ.Channel();
+            }
+
+            for (int i = 0, count = parser.getAttributeCount();
+                    i < count;
+                    i++) {
+                String value = parser.getAttributeValue(i);
+
+                if (StringUtils.isEmpty(value)
+                        || StringUtils.isNotEmpty(
+                                parser.getAttributeNamespace(i))) {
+                    continue;
+                }
+
+                BiConsumer<ColibriConferenceIQ.Channel, String> handler
+                        = channelAttributeHandlers.get(
+                                parser.getAttributeName(i));
+
+                if (handler != null) {
+                    handler.accept(channel, value);
+                }
+            }
+        }
+
+        void endChannel() {
+            content.addChannel(channel);
+            channel = null;
+        }
+
+        void startChannelBundle() {
+            String bundleId
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.ChannelBundle.ID_ATTR_NAME);
+
+            if (StringUtils.isNotEmpty(bundleId)) {
+                bundle = new ColibriConferenceIQ.ChannelBundle(bundleId);
+            }
+        }
+
+        void endChannelBundle() {
+            if (bundle != null) {
+                if (conference.addChannelBundle(bundle) != null) {
+                    logger.warn(
+                            "Replacing a channel-bundle with the same"
+                            + "ID (not a valid Colibri packet).");
+                }
+
+                bundle = null;
+            }
+        }
+
+        void startRTCPTerminationStrategy() {
+            rtcpTerminationStrategy
+                    = new ColibriConferenceIQ.RTCPTerminationStrategy();
+
+            String strategyName
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.RTCPTerminationStrategy
+                                    .NAME_ATTR_NAME);
+
+            if ((strategyName != null) && (strategyName.length() != 0)) {
+                rtcpTerminationStrategy.setName(
+                        StringCanonicalizer.canonicalize(strategyName));
+            }
+        }
+
+        void endRTCPTerminationStrategy() {
+            conference.setRTCPTerminationStrategy(rtcpTerminationStrategy);
+            rtcpTerminationStrategy = null;
+        }
+
+        void startRelay() {
+            String id
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.OctoChannel.RELAY_ID_ATTR_NAME);
+
+            if (id != null
+                    && channel instanceof ColibriConferenceIQ.OctoChannel) {
+                ((ColibriConferenceIQ.OctoChannel) channel).addRelay(id);
+            }
+        }
+
+        void startSSRC() {
+            ssrc = new StringBuilder();
+        }
+
+        @SuppressWarnings("deprecation") // Compatibility with legacy Jitsi
+        // and Jitsi Videobridge
+        void endSSRC() {
+            String s = ssrc.toString().trim();
+
+            if (s.length() != 0) {
+                int i;
+
+                /*
+                 * Legacy versions of Jitsi and Jitsi Videobridge may send a
+                 * synchronization source (SSRC) identifier as a negative
+                 * integer.
+                 */
+                if (s.startsWith("-")) {
+                    i = Integer.parseInt(s);
+                } else {
+                    i = (int) Long.parseLong(s);
+                }
+                channel.addSSRC(i);
+            }
+            ssrc = null;
+        }
+
+        void startContent() {
+            content = new ColibriConferenceIQ.Content();
+
+            String contentName
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.Content.NAME_ATTR_NAME);
+
+            if ((contentName != null) && (contentName.length() != 0)) {
+                content.setName(
+                        StringCanonicalizer.canonicalizeValue(contentName));
+            }
+        }
+
+        void endContent() {
+            conference.addContent(content);
+            content = null;
+        }
+
+        void startRecording() {
+            String stateStr
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.Recording.STATE_ATTR_NAME);
+            String token
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.Recording.TOKEN_ATTR_NAME);
+
+            recording = new ColibriConferenceIQ.Recording(stateStr, token);
+        }
+
+        void endRecording() {
+            conference.setRecording(recording);
+            recording = null;
+        }
+
+        void startSctpConnection() {
+            String endpoint
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.SctpConnection
+                                    .ENDPOINT_ATTR_NAME);
+            String connID
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.ChannelCommon.ID_ATTR_NAME);
+
+            if (StringUtils.isEmpty(connID)
+                    && StringUtils.isEmpty(endpoint)) {
+                sctpConnection = null;
+                return;
+            }
+
+            sctpConnection = new ColibriConferenceIQ.SctpConnection();
+
+            if (StringUtils.isNotEmpty(connID)) {
+                sctpConnection.setID(connID);
+            }
+
+            if (StringUtils.isNotEmpty(endpoint)) {
+                sctpConnection.setEndpoint(endpoint);
+            }
+
+            String port
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.SctpConnection.PORT_ATTR_NAME);
+            if (StringUtils.isNotEmpty(port)) {
+                sctpConnection.setPort(Integer.parseInt(port));
+            }
+
+            String channelBundleId
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.ChannelCommon
+                                    .CHANNEL_BUNDLE_ID_ATTR_NAME);
+            if (StringUtils.isNotEmpty(channelBundleId)) {
+                sctpConnection.setChannelBundleId(channelBundleId);
+            }
+
+            String initiator
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.SctpConnection
+                                    .INITIATOR_ATTR_NAME);
+
+            if (StringUtils.isNotEmpty(initiator)) {
+                sctpConnection.setInitiator(Boolean.valueOf(initiator));
+            }
+
+            String expire
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.SctpConnection
+                                    .EXPIRE_ATTR_NAME);
+
+            if (StringUtils.isNotEmpty(expire)) {
+                sctpConnection.setExpire(Integer.parseInt(expire));
+            }
+        }
+
+        void endSctpConnection() {
+            if (sctpConnection != null) {
+                content.addSctpConnection(sctpConnection);
+            }
+
+            sctpConnection = null;
+        }
+
+        void startEndpoint() {
+            String id
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.Endpoint.ID_ATTR_NAME);
+            String displayName
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.Endpoint.DISPLAYNAME_ATTR_NAME);
+            String statsId
+                    = parser.getAttributeValue(
+                            "",
+                            ColibriConferenceIQ.Endpoint.STATS_ID_ATTR_NAME);
+
+            if (StringUtils.isNotEmpty(id)) {
+                conferenceEndpoint
+                        = new ColibriConferenceIQ.Endpoint(
+                                id, statsId, displayName);
+            }
+        }
+
+        void endEndpoint() {
+            if (conference.addEndpoint(conferenceEndpoint) != null) {
+                logger.warn(
+                        "Replacing an endpoint element with the same"
+                        + "ID (not a valid Colibri packet).");
+            }
+            conferenceEndpoint = null;
+        }
+
+        void endGracefulShutdown() {
+            conference.setGracefulShutdown(true);
+        }
+    }
 }
@@ -0,0 +1,545 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.jitsi.utils.logging.*;
+
+import org.jxmpp.jid.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Batches the requests which a focus makes to Jitsi Videobridges through
+ * {@link ColibriBuilder}. Instead of building and sending a
+ * <tt>conference</tt> IQ for every participant operation, the operations are
+ * accumulated per bridge and conference and sent together when
+ * {@link #flush(Jid, ColibriConferenceIQ)} is called, when the number of
+ * pending operations for a bridge and conference reaches a threshold or when
+ * the oldest pending operation has waited for a maximum delay.
+ * <p>
+ * Operations on the same channel are merged before they are sent:
+ * <ul>
+ * <li>
+ * The lists of sources and source groups passed to
+ * {@link #addSourceInfo(Jid, ColibriConferenceIQ, Map, ColibriConferenceIQ)}
+ * and
+ * {@link #addSourceGroupsInfo(Jid, ColibriConferenceIQ, Map, ColibriConferenceIQ)}
+ * are the complete lists of the channel, as with <tt>ColibriBuilder</tt>, so
+ * only the latest list of a channel is sent. A source which is added and
+ * removed again before the batch is flushed never reaches the bridge.
+ * </li>
+ * <li>
+ * Only the latest transport of a channel bundle is sent.
+ * </li>
+ * </ul>
+ * Channel allocations are not merged. <tt>ColibriBuilder</tt> cannot mix
+ * allocations with updates in one request, so a flush sends at most two
+ * requests to a bridge: one which allocates channels and one which updates
+ * them.
+ * <p>
+ * Instances are thread-safe. Requests are built from the conference state
+ * when the batch is flushed, possibly on a thread of the executor, and the
+ * requests of a bridge and conference are sent in the order they are built.
+ */
+public class ColibriRequestBatcher {
+
+    /**
+     * The logger used by this class.
+     */
+    private static final Logger logger
+            = Logger.getLogger(ColibriRequestBatcher.class);
+
+    /**
+     * The pending batches by bridge and conference.
+     */
+    private final Map<BatchKey, Batch> batches = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the <tt>ColibriBuilder</tt> which builds the requests of a
+     * specific conference state.
+     */
+    private final Function<ColibriConferenceIQ, ColibriBuilder> builderFactory;
+
+    /**
+     * The executor which flushes batches when they have waited for
+     * {@link #maxDelayMs}.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The maximum time in milliseconds an operation waits before its batch is
+     * flushed.
+     */
+    private final long maxDelayMs;
+
+    /**
+     * The number of pending (merged) operations which triggers a flush.
+     */
+    private final int maxOperations;
+
+    /**
+     * Sends the requests built from the batches.
+     */
+    private final Consumer<ColibriConferenceIQ> sender;
+
+    /**
+     * Initializes a new <tt>ColibriRequestBatcher</tt>.
+     *
+     * @param builderFactory creates the <tt>ColibriBuilder</tt> for a specific
+     * conference state, e.g. <tt>ColibriBuilder::new</tt> or a function which
+     * also configures the options of the channels to be allocated.
+     * @param sender sends a request to the bridge it is addressed to.
+     * @param executor the executor which flushes batches after
+     * <tt>maxDelayMs</tt>.
+     * @param maxOperations the number of pending operations for a bridge and
+     * conference which triggers a flush.
+     * @param maxDelayMs the maximum time in milliseconds an operation waits
+     * before it is sent.
+     */
+    public ColibriRequestBatcher(
+            Function<ColibriConferenceIQ, ColibriBuilder> builderFactory,
+            Consumer<ColibriConferenceIQ> sender,
+            ScheduledExecutorService executor,
+            int maxOperations,
+            long maxDelayMs) {
+        this.builderFactory
+                = Objects.requireNonNull(builderFactory, "builderFactory");
+        this.sender = Objects.requireNonNull(sender, "sender");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        if (maxOperations < 1) {
+            throw new IllegalArgumentException(
+                    "maxOperations: " + maxOperations);
+        }
+        if (maxDelayMs < 0) {
+            throw new IllegalArgumentException("maxDelayMs: " + maxDelayMs);
+        }
+        this.maxOperations = maxOperations;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Queues a channel allocation. See
+     * {@link ColibriBuilder#addAllocateChannelsReq(boolean, String, String,
+     * boolean, List, Map, Map, List)}.
+     *
+     * @param videobridge the bridge on which to allocate the channels.
+     * @param conferenceState the state of the conference on the bridge.
+     */
+    public void addAllocateChannelsReq(
+            Jid videobridge,
+            ColibriConferenceIQ conferenceState,
+            boolean useBundle,
+            String endpointId,
+            String statsId,
+            boolean peerIsInitiator,
+            List<ContentPacketExtension> contents,
+            Map<String, List<SourcePacketExtension>> sourceMap,
+            Map<String, List<SourceGroupPacketExtension>> sourceGroupMap,
+            List<String> octoRelayIds) {
+        Objects.requireNonNull(contents, "contents");
+
+        List<ContentPacketExtension> contentsCopy = new ArrayList<>(contents);
+
+        enqueue(
+                videobridge,
+                conferenceState,
+                batch -> batch.allocations.add(
+                        builder -> builder.addAllocateChannelsReq(
+                                useBundle,
+                                endpointId,
+                                statsId,
+                                peerIsInitiator,
+                                contentsCopy,
+                                sourceMap,
+                                sourceGroupMap,
+                                octoRelayIds)));
+    }
+
+    /**
+     * Queues a source update of the channels of a participant, replacing any
+     * source update of the same channels which has not been sent yet. See
+     * {@link ColibriBuilder#addSourceInfo(Map, ColibriConferenceIQ)}.
+     *
+     * @param videobridge the bridge of the channels.
+     * @param conferenceState the state of the conference on the bridge.
+     * @param sourceMap the complete lists of sources by content name.
+     * @param localChannelsInfo the channels of the participant.
+     */
+    public void addSourceInfo(
+            Jid videobridge,
+            ColibriConferenceIQ conferenceState,
+            Map<String, List<SourcePacketExtension>> sourceMap,
+            ColibriConferenceIQ localChannelsInfo) {
+        Objects.requireNonNull(sourceMap, "sourceMap");
+        Objects.requireNonNull(localChannelsInfo, "localChannelsInfo");
+
+        enqueue(
+                videobridge,
+                conferenceState,
+                batch -> putChannelUpdates(
+                        batch.sources, sourceMap, localChannelsInfo));
+    }
+
+    /**
+     * Queues a source group update of the channels of a participant,
+     * replacing any source group update of the same channels which has not
+     * been sent yet. See
+     * {@link ColibriBuilder#addSourceGroupsInfo(Map, ColibriConferenceIQ)}.
+     *
+     * @param videobridge the bridge of the channels.
+     * @param conferenceState the state of the conference on the bridge.
+     * @param sourceGroupMap the complete lists of source groups by content
+     * name.
+     * @param localChannelsInfo the channels of the participant.
+     */
+    public void addSourceGroupsInfo(
+            Jid videobridge,
+            ColibriConferenceIQ conferenceState,
+            Map<String, List<SourceGroupPacketExtension>> sourceGroupMap,
+            ColibriConferenceIQ localChannelsInfo) {
+        Objects.requireNonNull(sourceGroupMap, "sourceGroupMap");
+        Objects.requireNonNull(localChannelsInfo, "localChannelsInfo");
+
+        enqueue(
+                videobridge,
+                conferenceState,
+                batch -> putChannelUpdates(
+                        batch.sourceGroups, sourceGroupMap, localChannelsInfo));
+    }
+
+    /**
+     * Queues a transport update of a channel bundle, replacing any transport
+     * update of the same bundle which has not been sent yet. See
+     * {@link ColibriBuilder#addBundleTransportUpdateReq(
+     * IceUdpTransportPacketExtension, String)}.
+     *
+     * @param videobridge the bridge of the channel bundle.
+     * @param conferenceState the state of the conference on the bridge.
+     * @param transport the new transport of the bundle.
+     * @param channelBundleId the ID of the bundle.
+     */
+    public void addBundleTransportUpdateReq(
+            Jid videobridge,
+            ColibriConferenceIQ conferenceState,
+            IceUdpTransportPacketExtension transport,
+            String channelBundleId) {
+        Objects.requireNonNull(transport, "transport");
+
+        enqueue(
+                videobridge,
+                conferenceState,
+                batch -> batch.bundleTransports.put(
+                        channelBundleId, transport));
+    }
+
+    /**
+     * Sends the pending operations for a specific bridge and conference.
+     *
+     * @param videobridge the bridge.
+     * @param conferenceState the state of the conference on the bridge.
+     */
+    public void flush(Jid videobridge, ColibriConferenceIQ conferenceState) {
+        Batch batch = batches.get(new BatchKey(videobridge, conferenceState));
+
+        if (batch != null) {
+            batch.flush();
+        }
+    }
+
+    /**
+     * Sends the pending operations for a specific bridge and conference and
+     * forgets about them, e.g. when the conference has ended. Operations
+     * queued afterwards start a new batch.
+     *
+     * @param videobridge the bridge.
+     * @param conferenceState the state of the conference on the bridge.
+     */
+    public void remove(Jid videobridge, ColibriConferenceIQ conferenceState) {
+        Batch batch
+                = batches.remove(new BatchKey(videobridge, conferenceState));
+
+        if (batch != null) {
+            batch.flush();
+        }
+    }
+
+    /**
+     * Sends the pending operations for all bridges and conferences.
+     */
+    public void flushAll() {
+        for (Batch batch : batches.values()) {
+            batch.flush();
+        }
+    }
+
+    /**
+     * Adds an operation to the batch of a specific bridge and conference and
+     * flushes the batch if it has become large enough.
+     */
+    private void enqueue(
+            Jid videobridge,
+            ColibriConferenceIQ conferenceState,
+            Consumer<Batch> operation) {
+        Objects.requireNonNull(videobridge, "videobridge");
+        Objects.requireNonNull(conferenceState, "conferenceState");
+
+        BatchKey key = new BatchKey(videobridge, conferenceState);
+        Batch batch = batches.computeIfAbsent(key, Batch::new);
+        boolean full;
+
+        synchronized (batch) {
+            operation.accept(batch);
+
+            int size = batch.size();
+
+            full = size >= maxOperations;
+            if (!full && batch.timeout == null) {
+                batch.timeout
+                        = executor.schedule(
+                                batch::timeout, maxDelayMs,
+                                TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            batch.flush();
+        }
+    }
+
+    /**
+     * Records the latest update of the first channel of each content of a
+     * participant.
+     */
+    private static <T> void putChannelUpdates(
+            Map<List<String>, ChannelUpdate<T>> updates,
+            Map<String, T> updatesByContent,
+            ColibriConferenceIQ localChannelsInfo) {
+        for (Map.Entry<String, T> e : updatesByContent.entrySet()) {
+            String contentName = e.getKey();
+            ColibriConferenceIQ.Content content
+                    = localChannelsInfo.getContent(contentName);
+
+            if (content == null || content.getChannelCount() == 0) {
+                // ColibriBuilder would ignore it as well.
+                continue;
+            }
+
+            // ColibriBuilder updates the first channel of the content.
+            String channelId = content.getChannel(0).getID();
+
+            updates.put(
+                    Arrays.asList(contentName, channelId),
+                    new ChannelUpdate<>(
+                            contentName, e.getValue(), localChannelsInfo));
+        }
+    }
+
+    /**
+     * Identifies the batch of a bridge and a conference. Conference states are
+     * compared by identity.
+     */
+    private static final class BatchKey {
+        private final Jid videobridge;
+
+        private final ColibriConferenceIQ conferenceState;
+
+        BatchKey(Jid videobridge, ColibriConferenceIQ conferenceState) {
+            this.videobridge = videobridge;
+            this.conferenceState = conferenceState;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BatchKey)) {
+                return false;
+            }
+
+            BatchKey other = (BatchKey) o;
+
+            return conferenceState == other.conferenceState
+                    && videobridge.equals(other.videobridge);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * videobridge.hashCode()
+                    + System.identityHashCode(conferenceState);
+        }
+    }
+
+    /**
+     * The latest update of the sources or source groups of a channel.
+     */
+    private static final class ChannelUpdate<T> {
+        private final String contentName;
+
+        private final T value;
+
+        private final ColibriConferenceIQ localChannelsInfo;
+
+        ChannelUpdate(
+                String contentName,
+                T value,
+                ColibriConferenceIQ localChannelsInfo) {
+            this.contentName = contentName;
+            this.value = value;
+            this.localChannelsInfo = localChannelsInfo;
+        }
+    }
+
+    /**
+     * The pending operations for a bridge and conference. Operations are
+     * added while holding the monitor of the batch; flushes are serialized
+     * by {@link #flushLock} so that requests are sent in order.
+     */
+    private final class Batch {
+        private final BatchKey key;
+
+        private final Object flushLock = new Object();
+
+        private List<Predicate<ColibriBuilder>> allocations
+                = new ArrayList<>();
+
+        private Map<List<String>, ChannelUpdate<List<SourcePacketExtension>>>
+                sources = new LinkedHashMap<>();
+
+        private Map<List<String>,
+                    ChannelUpdate<List<SourceGroupPacketExtension>>>
+                sourceGroups = new LinkedHashMap<>();
+
+        private Map<String, IceUdpTransportPacketExtension> bundleTransports
+                = new LinkedHashMap<>();
+
+        /**
+         * The scheduled flush of this batch or <tt>null</tt>.
+         */
+        private ScheduledFuture<?> timeout;
+
+        Batch(BatchKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Returns the number of pending operations. Must be called while
+         * holding the monitor of this batch.
+         */
+        int size() {
+            return allocations.size()
+                    + sources.size()
+                    + sourceGroups.size()
+                    + bundleTransports.size();
+        }
+
+        /**
+         * Builds and sends the requests for the pending operations.
+         */
+        void flush() {
+            synchronized (flushLock) {
+                List<Predicate<ColibriBuilder>> allocations;
+                Map<List<String>, ChannelUpdate<List<SourcePacketExtension>>>
+                        sources;
+                Map<List<String>,
+                            ChannelUpdate<List<SourceGroupPacketExtension>>>
+                        sourceGroups;
+                Map<String, IceUdpTransportPacketExtension> bundleTransports;
+
+                synchronized (this) {
+                    if (timeout != null) {
+                        timeout.cancel(false);
+                        timeout = null;
+                    }
+                    if (size() == 0) {
+                        return;
+                    }
+                    allocations = this.allocations;
+                    sources = this.sources;
+                    sourceGroups = this.sourceGroups;
+                    bundleTransports = this.bundleTransports;
+                    this.allocations = new ArrayList<>();
+                    this.sources = new LinkedHashMap<>();
+                    this.sourceGroups = new LinkedHashMap<>();
+                    this.bundleTransports = new LinkedHashMap<>();
+                }
+
+                ColibriBuilder builder
+                        = builderFactory.apply(key.conferenceState);
+                boolean send = false;
+
+                for (Predicate<ColibriBuilder> allocation : allocations) {
+                    send |= allocation.test(builder);
+                }
+                if (send) {
+                    send(builder);
+                    builder.reset();
+                    send = false;
+                }
+
+                for (ChannelUpdate<List<SourcePacketExtension>> update
+                        : sources.values()) {
+                    send |= builder.addSourceInfo(
+                            Collections.singletonMap(
+                                    update.contentName, update.value),
+                            update.localChannelsInfo);
+                }
+                for (ChannelUpdate<List<SourceGroupPacketExtension>> update
+                        : sourceGroups.values()) {
+                    send |= builder.addSourceGroupsInfo(
+                            Collections.singletonMap(
+                                    update.contentName, update.value),
+                            update.localChannelsInfo);
+                }
+                for (Map.Entry<String, IceUdpTransportPacketExtension> e
+                        : bundleTransports.entrySet()) {
+                    send |= builder.addBundleTransportUpdateReq(
+                            e.getValue(), e.getKey());
+                }
+                if (send) {
+                    send(builder);
+                }
+            }
+        }
+
+        /**
+         * Flushes this batch when its oldest operation has waited long
+         * enough.
+         */
+        void timeout() {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                logger.error(
+                        "Failed to send a batched request to "
+                            + key.videobridge,
+                        e);
+            }
+        }
+
+        private void send(ColibriBuilder builder) {
+            ColibriConferenceIQ request = builder.getRequest(key.videobridge);
+
+            if (request != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(
+                            "Sending a batched " + builder.getRequestType()
+                                + " request to " + key.videobridge);
+                }
+                sender.accept(request);
+            }
+        }
+    }
+}
@@ -0,0 +1,641 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Aggregates the stats of many bridges by region (the
+ * {@link ColibriStatsExtension#REGION} stat), by Octo relay (the
+ * {@link ColibriStatsExtension#RELAY_ID} stat) and for the whole fleet.
+ * Three kinds of aggregates are kept:
+ * <ul>
+ * <li>sums, e.g. of {@link ColibriStatsExtension#PARTICIPANTS};</li>
+ * <li>maximums, e.g. of {@link ColibriStatsExtension#LARGEST_CONFERENCE};
+ * </li>
+ * <li>histograms, i.e. element-wise sums of stats whose value is an array of
+ * counts like <tt>[0,3,5]</tt>, e.g.
+ * {@link ColibriStatsExtension#CONFERENCE_SIZES}.</li>
+ * </ul>
+ * <p>
+ * The aggregates are maintained incrementally. When the stats of a bridge
+ * are updated, the values that it contributed before are subtracted and the
+ * new ones added, so reading the aggregates never walks the stats of the
+ * bridges. Sums and histogram buckets are <tt>LongAdder</tt>s, so updates
+ * from many threads do not contend. Maximums are kept as counted sets of
+ * values. Values are accumulated in thousandths so that decimal stats can be
+ * subtracted exactly.
+ * <p>
+ * Updates only share a lock with each other, while {@link #getSnapshot()}
+ * briefly takes it exclusively, so a snapshot always reflects a set of
+ * complete updates. Snapshots are cached until the next update.
+ */
+public final class ColibriStatsAggregator {
+
+    /**
+     * The stats which are summed by default.
+     */
+    public static final List<String> DEFAULT_SUM_STATS
+            = Collections.unmodifiableList(Arrays.asList(
+                    ColibriStatsExtension.PARTICIPANTS,
+                    ColibriStatsExtension.CONFERENCES,
+                    ColibriStatsExtension.BITRATE_DOWNLOAD,
+                    ColibriStatsExtension.BITRATE_UPLOAD,
+                    ColibriStatsExtension.PACKET_RATE_DOWNLOAD,
+                    ColibriStatsExtension.PACKET_RATE_UPLOAD,
+                    ColibriStatsExtension.ENDPOINTS_SENDING_AUDIO,
+                    ColibriStatsExtension.ENDPOINTS_SENDING_VIDEO,
+                    ColibriStatsExtension.OCTO_CONFERENCES,
+                    ColibriStatsExtension.OCTO_ENDPOINTS,
+                    ColibriStatsExtension.VIDEO_STREAMS));
+
+    /**
+     * The stats whose maximum is kept by default.
+     */
+    public static final List<String> DEFAULT_MAX_STATS
+            = Collections.unmodifiableList(Arrays.asList(
+                    ColibriStatsExtension.LARGEST_CONFERENCE,
+                    ColibriStatsExtension.CPU_USAGE));
+
+    /**
+     * The histogram stats which are merged by default.
+     */
+    public static final List<String> DEFAULT_HISTOGRAM_STATS
+            = Collections.unmodifiableList(Arrays.asList(
+                    ColibriStatsExtension.CONFERENCE_SIZES,
+                    ColibriStatsExtension.CONFERENCES_BY_AUDIO_SENDERS,
+                    ColibriStatsExtension.CONFERENCES_BY_VIDEO_SENDERS));
+
+    /**
+     * The maximum number of buckets of a histogram. The counts of the
+     * buckets beyond it are added to the last bucket.
+     */
+    static final int MAX_HISTOGRAM_BUCKETS = 64;
+
+    /**
+     * The number of units in which values are accumulated per unit of a
+     * stat.
+     */
+    private static final double SCALE = 1000;
+
+    /**
+     * The summed stats.
+     */
+    private final String[] sumStats;
+
+    /**
+     * The stats whose maximum is kept.
+     */
+    private final String[] maxStats;
+
+    /**
+     * The merged histogram stats.
+     */
+    private final String[] histogramStats;
+
+    /**
+     * The last contribution of each bridge, by bridge ID.
+     */
+    private final Map<String, Contribution> bridges
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The aggregates of the whole fleet.
+     */
+    private final Group fleet;
+
+    /**
+     * The aggregates of each region.
+     */
+    private final Map<String, Group> regions = new ConcurrentHashMap<>();
+
+    /**
+     * The aggregates of each Octo relay.
+     */
+    private final Map<String, Group> relays = new ConcurrentHashMap<>();
+
+    /**
+     * Shared by updates and held exclusively while taking a snapshot.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The number of updates so far.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * The last snapshot, or <tt>null</tt>.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Initializes a new <tt>ColibriStatsAggregator</tt> with the default
+     * stats.
+     */
+    public ColibriStatsAggregator() {
+        this(DEFAULT_SUM_STATS, DEFAULT_MAX_STATS, DEFAULT_HISTOGRAM_STATS);
+    }
+
+    /**
+     * Initializes a new <tt>ColibriStatsAggregator</tt>.
+     *
+     * @param sumStats the names of the stats to sum.
+     * @param maxStats the names of the stats whose maximum to keep.
+     * @param histogramStats the names of the histogram stats to merge.
+     */
+    public ColibriStatsAggregator(
+            Collection<String> sumStats,
+            Collection<String> maxStats,
+            Collection<String> histogramStats) {
+        this.sumStats = sumStats.toArray(new String[0]);
+        this.maxStats = maxStats.toArray(new String[0]);
+        this.histogramStats = histogramStats.toArray(new String[0]);
+        fleet = new Group();
+    }
+
+    /**
+     * Replaces the stats of a bridge.
+     *
+     * @param bridgeId the ID of the bridge.
+     * @param stats the current stats of the bridge. Only read during the
+     * call.
+     */
+    public void update(String bridgeId, ColibriStatsExtension stats) {
+        Contribution contribution = new Contribution(stats);
+
+        lock.readLock().lock();
+        try {
+            Contribution old = bridges.put(bridgeId, contribution);
+
+            // Concurrent updates of the same bridge each subtract what the
+            // update they replaced added, so every contribution is
+            // subtracted exactly once.
+            if (old != null) {
+                old.apply(-1);
+            }
+            contribution.apply(1);
+            version.incrementAndGet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the stats of a bridge, e.g. because it went offline.
+     *
+     * @param bridgeId the ID of the bridge.
+     * @return <tt>true</tt> if the bridge had stats.
+     */
+    public boolean remove(String bridgeId) {
+        lock.readLock().lock();
+        try {
+            Contribution old = bridges.remove(bridgeId);
+
+            if (old == null) {
+                return false;
+            }
+            old.apply(-1);
+            version.incrementAndGet();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a consistent snapshot of the aggregates.
+     *
+     * @return the aggregates of all complete updates so far.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = this.snapshot;
+
+        if (snapshot != null && snapshot.version == version.get()) {
+            return snapshot;
+        }
+
+        lock.writeLock().lock();
+        try {
+            long version = this.version.get();
+
+            snapshot = this.snapshot;
+            if (snapshot == null || snapshot.version != version) {
+                snapshot
+                        = new Snapshot(
+                                version,
+                                fleet.aggregate(),
+                                aggregate(regions),
+                                aggregate(relays));
+                this.snapshot = snapshot;
+            }
+            return snapshot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Aggregates a map of groups, dropping those without bridges. Called
+     * with the lock held exclusively.
+     */
+    private Map<String, Aggregate> aggregate(Map<String, Group> groups) {
+        Map<String, Aggregate> aggregates = new HashMap<>();
+
+        for (Iterator<Map.Entry<String, Group>> i
+                    = groups.entrySet().iterator();
+                i.hasNext();) {
+            Map.Entry<String, Group> group = i.next();
+            Aggregate aggregate = group.getValue().aggregate();
+
+            if (aggregate.getBridgeCount() == 0) {
+                i.remove();
+            } else {
+                aggregates.put(group.getKey(), aggregate);
+            }
+        }
+        return Collections.unmodifiableMap(aggregates);
+    }
+
+    /**
+     * Parses a histogram like <tt>[0,3,5]</tt>.
+     *
+     * @return the counts, or <tt>null</tt> if the value is not a histogram.
+     */
+    static long[] parseHistogram(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        long[] counts = new long[MAX_HISTOGRAM_BUCKETS];
+        int buckets = 0;
+        long count = 0;
+        boolean digits = false;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                count = count * 10 + (c - '0');
+                digits = true;
+            } else if (c == ',' || c == ']') {
+                if (digits) {
+                    counts[Math.min(buckets, MAX_HISTOGRAM_BUCKETS - 1)]
+                            += count;
+                    buckets++;
+                }
+                count = 0;
+                digits = false;
+            } else if (c != '[' && c != ' ') {
+                return null;
+            }
+        }
+        return Arrays.copyOf(counts, Math.min(buckets, MAX_HISTOGRAM_BUCKETS));
+    }
+
+    /**
+     * The accumulators of the bridges of a region, of an Octo relay or of the
+     * whole fleet.
+     */
+    private final class Group {
+        /**
+         * The number of bridges.
+         */
+        final LongAdder bridgeCount = new LongAdder();
+
+        /**
+         * The sums of {@link #sumStats}, in thousandths.
+         */
+        final LongAdder[] sums = newAdders(sumStats.length);
+
+        /**
+         * For each of {@link #maxStats}, the number of bridges which report
+         * each value (in thousandths). Values whose count has dropped to zero
+         * are removed when taking a snapshot.
+         */
+        final ConcurrentSkipListMap<Long, LongAdder>[] maxValues;
+
+        /**
+         * The buckets of {@link #histogramStats}.
+         */
+        final LongAdder[][] histograms
+                = new LongAdder[histogramStats.length][];
+
+        @SuppressWarnings("unchecked")
+        Group() {
+            maxValues = new ConcurrentSkipListMap[maxStats.length];
+            for (int i = 0; i < maxValues.length; i++) {
+                maxValues[i] = new ConcurrentSkipListMap<>();
+            }
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = newAdders(MAX_HISTOGRAM_BUCKETS);
+            }
+        }
+
+        /**
+         * Reads the accumulators. Called with the lock held exclusively.
+         */
+        Aggregate aggregate() {
+            double[] sums = new double[this.sums.length];
+            double[] maxs = new double[maxValues.length];
+            long[][] histograms = new long[this.histograms.length][];
+
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] = this.sums[i].sum() / SCALE;
+            }
+            for (int i = 0; i < maxs.length; i++) {
+                maxs[i] = Double.NaN;
+                maxValues[i].values().removeIf(count -> count.sum() == 0);
+
+                Map.Entry<Long, LongAdder> max = maxValues[i].lastEntry();
+
+                if (max != null) {
+                    maxs[i] = max.getKey() / SCALE;
+                }
+            }
+            for (int i = 0; i < histograms.length; i++) {
+                LongAdder[] buckets = this.histograms[i];
+                int length = buckets.length;
+
+                while (length > 0 && buckets[length - 1].sum() == 0) {
+                    length--;
+                }
+                histograms[i] = new long[length];
+                for (int j = 0; j < length; j++) {
+                    histograms[i][j] = buckets[j].sum();
+                }
+            }
+            return new Aggregate(
+                    bridgeCount.sum(), sums, maxs, histograms);
+        }
+    }
+
+    /**
+     * Creates an array of new <tt>LongAdder</tt>s.
+     */
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * The values which the stats of a bridge contribute to the aggregates,
+     * read once when the stats are received.
+     */
+    private final class Contribution {
+        /**
+         * The region of the bridge or <tt>null</tt>.
+         */
+        final String region;
+
+        /**
+         * The Octo relay ID of the bridge or <tt>null</tt>.
+         */
+        final String relayId;
+
+        /**
+         * The values of {@link #sumStats} in thousandths, or zero.
+         */
+        final long[] sums;
+
+        /**
+         * The values of {@link #maxStats} in thousandths, or <tt>null</tt>
+         * for stats which the bridge does not report.
+         */
+        final Long[] maxs;
+
+        /**
+         * The buckets of {@link #histogramStats}, or <tt>null</tt>.
+         */
+        final long[][] histograms;
+
+        Contribution(ColibriStatsExtension stats) {
+            region = stats.getValueAsString(ColibriStatsExtension.REGION);
+            relayId = stats.getValueAsString(ColibriStatsExtension.RELAY_ID);
+            sums = new long[sumStats.length];
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] = scaled(stats, sumStats[i]);
+            }
+            maxs = new Long[maxStats.length];
+            for (int i = 0; i < maxs.length; i++) {
+                if (stats.isNumber(maxStats[i])) {
+                    maxs[i] = scaled(stats, maxStats[i]);
+                }
+            }
+            histograms = new long[histogramStats.length][];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i]
+                        = parseHistogram(
+                                stats.getValueAsString(histogramStats[i]));
+            }
+        }
+
+        /**
+         * Returns the value of a stat in thousandths, or zero if it is not a
+         * number.
+         */
+        private long scaled(ColibriStatsExtension stats, String name) {
+            return Math.round(stats.getDouble(name, 0) * SCALE);
+        }
+
+        /**
+         * Adds this contribution to, or subtracts it from, the groups of the
+         * bridge. Called with the lock held shared.
+         *
+         * @param sign <tt>1</tt> to add or <tt>-1</tt> to subtract.
+         */
+        void apply(int sign) {
+            apply(fleet, sign);
+            if (region != null) {
+                apply(regions.computeIfAbsent(region, r -> new Group()), sign);
+            }
+            if (relayId != null) {
+                apply(relays.computeIfAbsent(relayId, r -> new Group()), sign);
+            }
+        }
+
+        private void apply(Group group, int sign) {
+            group.bridgeCount.add(sign);
+            for (int i = 0; i < sums.length; i++) {
+                if (sums[i] != 0) {
+                    group.sums[i].add(sign * sums[i]);
+                }
+            }
+            for (int i = 0; i < maxs.length; i++) {
+                if (maxs[i] != null) {
+                    group.maxValues[i]
+                            .computeIfAbsent(maxs[i], v -> new LongAdder())
+                            .add(sign);
+                }
+            }
+            for (int i = 0; i < histograms.length; i++) {
+                long[] buckets = histograms[i];
+
+                if (buckets != null) {
+                    for (int j = 0; j < buckets.length; j++) {
+                        if (buckets[j] != 0) {
+                            group.histograms[i][j].add(sign * buckets[j]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The aggregates of the bridges of a region, of an Octo relay or of the
+     * whole fleet at the time of a {@link Snapshot}.
+     */
+    public final class Aggregate {
+        private final long bridgeCount;
+
+        private final double[] sums;
+
+        private final double[] maxs;
+
+        private final long[][] histograms;
+
+        private Aggregate(
+                long bridgeCount,
+                double[] sums,
+                double[] maxs,
+                long[][] histograms) {
+            this.bridgeCount = bridgeCount;
+            this.sums = sums;
+            this.maxs = maxs;
+            this.histograms = histograms;
+        }
+
+        /**
+         * Gets the number of bridges.
+         *
+         * @return the number of bridges whose stats are aggregated.
+         */
+        public long getBridgeCount() {
+            return bridgeCount;
+        }
+
+        /**
+         * Gets the sum of a stat over the bridges.
+         *
+         * @param name the name of the stat.
+         * @return the sum, or <tt>NaN</tt> if the stat is not summed.
+         */
+        public double getSum(String name) {
+            int i = indexOf(sumStats, name);
+
+            return i < 0 ? Double.NaN : sums[i];
+        }
+
+        /**
+         * Gets the maximum of a stat over the bridges.
+         *
+         * @param name the name of the stat.
+         * @return the maximum, or <tt>NaN</tt> if the stat is not
+         * maximized or no bridge reports it.
+         */
+        public double getMax(String name) {
+            int i = indexOf(maxStats, name);
+
+            return i < 0 ? Double.NaN : maxs[i];
+        }
+
+        /**
+         * Gets the element-wise sum of a histogram stat over the bridges.
+         *
+         * @param name the name of the stat.
+         * @return a copy of the merged histogram without trailing empty
+         * buckets, or <tt>null</tt> if the stat is not merged.
+         */
+        public long[] getHistogram(String name) {
+            int i = indexOf(histogramStats, name);
+
+            return i < 0 ? null : histograms[i].clone();
+        }
+
+        private int indexOf(String[] names, String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A consistent snapshot of the aggregates of a
+     * <tt>ColibriStatsAggregator</tt>. Bridges which do not report a region
+     * or a relay ID are only included in the aggregates of the fleet.
+     */
+    public static final class Snapshot {
+        /**
+         * The number of updates of the aggregator included in this snapshot.
+         */
+        private final long version;
+
+        private final Aggregate fleet;
+
+        private final Map<String, Aggregate> regions;
+
+        private final Map<String, Aggregate> relays;
+
+        private Snapshot(
+                long version,
+                Aggregate fleet,
+                Map<String, Aggregate> regions,
+                Map<String, Aggregate> relays) {
+            this.version = version;
+            this.fleet = fleet;
+            this.regions = regions;
+            this.relays = relays;
+        }
+
+        /**
+         * Gets the aggregates of all bridges.
+         *
+         * @return the aggregates of the fleet.
+         */
+        public Aggregate getFleet() {
+            return fleet;
+        }
+
+        /**
+         * Gets the aggregates of each region.
+         *
+         * @return an unmodifiable map of the aggregates by region.
+         */
+        public Map<String, Aggregate> getRegions() {
+            return regions;
+        }
+
+        /**
+         * Gets the aggregates of each Octo relay.
+         *
+         * @return an unmodifiable map of the aggregates by relay ID.
+         */
+        public Map<String, Aggregate> getRelays() {
+            return relays;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * Turns the stats of a bridge into a stream of reports in which most reports
+ * are deltas. A delta report has only the stats whose value differs from a
+ * baseline report. Every report carries a sequence number. A delta also
+ * carries the sequence number of its baseline, which is the last full
+ * snapshot unless the receiver has acknowledged a later report with
+ * {@link #acknowledge(long)}. Because deltas are relative to a baseline and
+ * not to the previous report, a receiver which misses a report can still
+ * reconstruct the next one.
+ * <p>
+ * A full snapshot is sent every <tt>fullSnapshotInterval</tt> reports so that
+ * receivers which join late (e.g. new members of a brewery MUC) catch up. One
+ * is also sent when a stat disappears, when every stat has changed, and after
+ * {@link #requestFullSnapshot()}. Receivers rebuild the stats with a
+ * {@link ColibriStatsReconstructor}.
+ *
+ * @see ColibriStatsExtension#SEQ_ATTR_NAME
+ * @see ColibriStatsExtension#BASE_ATTR_NAME
+ */
+public final class ColibriStatsDeltaEncoder {
+
+    /**
+     * The maximum number of sent reports which are remembered so that they
+     * can become the baseline when they are acknowledged.
+     */
+    private static final int MAX_UNACKNOWLEDGED = 16;
+
+    /**
+     * The number of reports from one full snapshot to the next.
+     */
+    private final int fullSnapshotInterval;
+
+    /**
+     * The stats of the recently sent reports which may still be
+     * acknowledged, by sequence number.
+     */
+    private final LinkedHashMap<Long, Map<String, String>> unacknowledged
+            = new LinkedHashMap<Long, Map<String, String>>() {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Long, Map<String, String>> eldest) {
+                    return size() > MAX_UNACKNOWLEDGED;
+                }
+            };
+
+    /**
+     * The sequence number of the last report.
+     */
+    private long seq = -1;
+
+    /**
+     * The sequence number of the baseline report.
+     */
+    private long baseSeq = -1;
+
+    /**
+     * The values of the stats of the baseline report by name, or
+     * <tt>null</tt> before the first report.
+     */
+    private Map<String, String> baseline;
+
+    /**
+     * The number of delta reports since the last full snapshot.
+     */
+    private int deltas;
+
+    /**
+     * Whether the next report is to be a full snapshot.
+     */
+    private boolean fullSnapshotRequested;
+
+    /**
+     * Initializes a new <tt>ColibriStatsDeltaEncoder</tt>.
+     *
+     * @param fullSnapshotInterval the number of reports from one full
+     * snapshot to the next, e.g. <tt>1</tt> to send only full snapshots.
+     */
+    public ColibriStatsDeltaEncoder(int fullSnapshotInterval) {
+        if (fullSnapshotInterval < 1) {
+            throw new IllegalArgumentException(
+                    "fullSnapshotInterval: " + fullSnapshotInterval);
+        }
+        this.fullSnapshotInterval = fullSnapshotInterval;
+    }
+
+    /**
+     * Creates the next report of a bridge.
+     *
+     * @param stats the current stats of the bridge. Not modified.
+     * @return a new extension with either all stats or only those which
+     * changed since the baseline, and with a sequence number.
+     */
+    public synchronized ColibriStatsExtension encode(
+            ColibriStatsExtension stats) {
+        Map<String, String> values = valuesOf(stats);
+        ColibriStatsExtension report = new ColibriStatsExtension();
+
+        report.setSequenceNumber(++seq);
+
+        List<String> changed = null;
+
+        if (baseline != null
+                && !fullSnapshotRequested
+                && deltas + 1 < fullSnapshotInterval
+                && values.keySet().containsAll(baseline.keySet())) {
+            changed = new ArrayList<>();
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                if (!value.getValue().equals(baseline.get(value.getKey()))) {
+                    changed.add(value.getKey());
+                }
+            }
+            if (changed.size() == values.size()) {
+                changed = null;
+            }
+        }
+
+        if (changed == null) {
+            values.forEach(report::addStat);
+            baseline = values;
+            baseSeq = seq;
+            deltas = 0;
+            fullSnapshotRequested = false;
+        } else {
+            for (String name : changed) {
+                report.addStat(name, values.get(name));
+            }
+            report.setBaseSequenceNumber(baseSeq);
+            deltas++;
+        }
+        unacknowledged.put(seq, values);
+        return report;
+    }
+
+    /**
+     * Notifies this encoder that a specific report has been received, so
+     * that the following deltas can be relative to it. Acknowledging a report
+     * older than the baseline or one which is no longer remembered has no
+     * effect.
+     *
+     * @param seq the sequence number of the received report.
+     */
+    public synchronized void acknowledge(long seq) {
+        Map<String, String> values = unacknowledged.get(seq);
+
+        if (values != null && seq > baseSeq) {
+            baseline = values;
+            baseSeq = seq;
+            unacknowledged.keySet().removeIf(s -> s <= seq);
+        }
+    }
+
+    /**
+     * Makes the next report a full snapshot, e.g. because a receiver has just
+     * joined.
+     */
+    public synchronized void requestFullSnapshot() {
+        fullSnapshotRequested = true;
+    }
+
+    /**
+     * Returns the text of the values of the stats of an extension by name,
+     * in document order. Stats without a name or a value are left out, as
+     * they are not serialized.
+     */
+    private static Map<String, String> valuesOf(ColibriStatsExtension stats) {
+        Map<String, String> values = new LinkedHashMap<>();
+
+        for (ColibriStatsExtension.Stat stat
+                : stats.getChildExtensionsOfTypeView(
+                        ColibriStatsExtension.Stat.class)) {
+            String name = stat.getName();
+            String value
+                    = stat.getAttributeAsString(
+                            ColibriStatsExtension.Stat.VALUE_ATTR_NAME);
+
+            if (name != null && value != null) {
+                values.putIfAbsent(name, value);
+            }
+        }
+        return values;
+    }
+}
@@ -51,6 +51,19 @@ public class ColibriStatsExtension
     public static final String NAMESPACE
             = "http://jitsi.org/protocol/colibri";
 
+    /**
+     * The XML name of the attribute which carries the sequence number of a
+     * stats report.
+     */
+    public static final String SEQ_ATTR_NAME = "seq";
+
+    /**
+     * The XML name of the attribute of a delta stats report which carries the
+     * sequence number of the report that it is relative to. Reports without
+     * it are full snapshots.
+     */
+    public static final String BASE_ATTR_NAME = "base";
+
     /**
      * The name of the bit rate statistic for download.
      */
@@ -474,6 +487,12 @@ public class ColibriStatsExtension
         return destination;
     }
 
+    /**
+     * The index of the stats of this extension by name, or <tt>null</tt> if
+     * they have not been indexed yet.
+     */
+    private volatile StatIndex statIndex;
+
     /**
      * Constructs new <tt>ColibriStatsExtension</tt>
      */
@@ -501,18 +520,72 @@ public class ColibriStatsExtension
         addStat(new Stat(name, value));
     }
 
+    /**
+     * Gets the sequence number of this stats report.
+     *
+     * @return the sequence number or <tt>-1</tt> if this report does not have
+     * one.
+     */
+    public long getSequenceNumber() {
+        return getAttributeAsLong(SEQ_ATTR_NAME);
+    }
+
+    /**
+     * Sets the sequence number of this stats report.
+     *
+     * @param seq the sequence number or <tt>-1</tt> to remove it.
+     */
+    public void setSequenceNumber(long seq) {
+        if (seq < 0) {
+            removeAttribute(SEQ_ATTR_NAME);
+        } else {
+            setAttribute(SEQ_ATTR_NAME, seq);
+        }
+    }
+
+    /**
+     * Gets the sequence number of the report that this delta report is
+     * relative to.
+     *
+     * @return the sequence number of the base report or <tt>-1</tt> if this
+     * report is a full snapshot.
+     */
+    public long getBaseSequenceNumber() {
+        return getAttributeAsLong(BASE_ATTR_NAME);
+    }
+
+    /**
+     * Sets the sequence number of the report that this report is relative
+     * to, which makes it a delta report with only the stats that changed
+     * since then.
+     *
+     * @param base the sequence number of the base report or <tt>-1</tt> to
+     * make this report a full snapshot.
+     */
+    public void setBaseSequenceNumber(long base) {
+        if (base < 0) {
+            removeAttribute(BASE_ATTR_NAME);
+        } else {
+            setAttribute(BASE_ATTR_NAME, base);
+        }
+    }
+
+    /**
+     * Checks whether this report is a delta report.
+     *
+     * @return <tt>true</tt> if this report only has the stats which changed
+     * since a base report, or <tt>false</tt> if it is a full snapshot.
+     */
+    public boolean isDelta() {
+        return getAttribute(BASE_ATTR_NAME) != null;
+    }
+
     /**
      * @return the first {@link Stat}, if any, with a specific name.
      * @param name the name of the stat to match.
      */
     public Stat getStat(String name) {
-        for (Stat stat : getChildExtensionsOfType(Stat.class)) {
-            if (stat.getName().equals(name)) {
-                return stat;
-            }
-        }
-
-        return null;
+        return getStatIndex(name).getStat(name);
     }
 
     /**
@@ -558,9 +631,172 @@ public class ColibriStatsExtension
         return getInt(getValue(name));
     }
 
-    @Override
-    public List<? extends ExtensionElement> getChildExtensions() {
-        return Collections.unmodifiableList(super.getChildExtensions());
+    /**
+     * Gets the value of the stat with a specific name as a <tt>long</tt>.
+     * Decimal values are truncated. Unlike {@link #getValueAsInt(String)},
+     * this neither allocates nor parses the value once the stats of this
+     * extension have been indexed, which happens on the first lookup after
+     * they change.
+     *
+     * @param name the name of the stat.
+     * @return the value of the stat with the given <tt>name</tt> or
+     * <tt>-1</tt> if there is no such stat or its value is not a number.
+     */
+    public long getLong(String name) {
+        return getLong(name, -1);
+    }
+
+    /**
+     * Gets the value of the stat with a specific name as a <tt>long</tt>.
+     * Decimal values are truncated.
+     *
+     * @param name the name of the stat.
+     * @param defaultValue the value to return if there is no stat with the
+     * given <tt>name</tt> or its value is not a number.
+     * @return the value of the stat with the given <tt>name</tt> or
+     * <tt>defaultValue</tt>.
+     */
+    public long getLong(String name, long defaultValue) {
+        return getStatIndex(name).getLong(name, defaultValue);
+    }
+
+    /**
+     * Gets the value of the stat with a specific name as a <tt>double</tt>.
+     *
+     * @param name the name of the stat.
+     * @return the value of the stat with the given <tt>name</tt> or
+     * <tt>NaN</tt> if there is no such stat or its value is not a number.
+     */
+    public double getDouble(String name) {
+        return getDouble(name, Double.NaN);
+    }
+
+    /**
+     * Gets the value of the stat with a specific name as a <tt>double</tt>.
+     *
+     * @param name the name of the stat.
+     * @param defaultValue the value to return if there is no stat with the
+     * given <tt>name</tt> or its value is not a number.
+     * @return the value of the stat with the given <tt>name</tt> or
+     * <tt>defaultValue</tt>.
+     */
+    public double getDouble(String name, double defaultValue) {
+        return getStatIndex(name).getDouble(name, defaultValue);
+    }
+
+    /**
+     * Checks whether there is a stat with a specific name and a numeric value.
+     *
+     * @param name the name of the stat.
+     * @return <tt>true</tt> if {@link #getLong(String)} and
+     * {@link #getDouble(String)} return the value of a stat with the given
+     * <tt>name</tt> rather than their default value.
+     */
+    public boolean isNumber(String name) {
+        return getStatIndex(name).isNumber(name);
+    }
+
+    /**
+     * Passes each stat with a value to a visitor, in document order and with
+     * its value in typed form. Only the first of several stats with the same
+     * name is visited.
+     *
+     * @param visitor the visitor.
+     */
+    public void forEach(StatVisitor visitor) {
+        StatIndex statIndex = getStatIndex();
+
+        if (!isFrozen() && !statIndex.isCurrent()) {
+            statIndex = index(getModificationCount());
+        }
+        statIndex.forEach(visitor);
+    }
+
+    /**
+     * Returns the index of the current stats of this extension for a lookup
+     * of a specific name. A stat which is also included in another extension
+     * reports its changes only to the one it was added to last, so the stat
+     * which is found is checked too unless this extension is frozen.
+     */
+    private StatIndex getStatIndex(String name) {
+        StatIndex statIndex = getStatIndex();
+
+        if (!isFrozen() && !statIndex.isCurrent(name)) {
+            statIndex = index(getModificationCount());
+        }
+        return statIndex;
+    }
+
+    /**
+     * Returns the index of the current stats of this extension, indexing them
+     * if this extension has changed since they were last indexed.
+     */
+    private StatIndex getStatIndex() {
+        StatIndex statIndex = this.statIndex;
+        int modificationCount = getModificationCount();
+
+        if (statIndex == null
+                || statIndex.modificationCount != modificationCount) {
+            statIndex = index(modificationCount);
+        }
+        return statIndex;
+    }
+
+    /**
+     * Indexes the current stats of this extension.
+     *
+     * @param modificationCount the modification count of this extension
+     * before its stats are read.
+     */
+    private StatIndex index(int modificationCount) {
+        List<Stat> stats = getChildExtensionsOfTypeView(Stat.class);
+
+        // If this extension is modified while it is being indexed, the stamp
+        // will not match and the stats will be indexed again.
+        StatIndex statIndex
+                = stats.isEmpty()
+                    ? StatIndex.EMPTY
+                    : StatIndex.of(modificationCount, stats);
+
+        if (statIndex != StatIndex.EMPTY) {
+            this.statIndex = statIndex;
+        }
+        return statIndex;
+    }
+
+    /**
+     * Receives the stats of a {@link ColibriStatsExtension} from
+     * {@link ColibriStatsExtension#forEach(StatVisitor)}. Each stat is passed
+     * to exactly one of the methods, depending on its value. The methods do
+     * nothing by default.
+     */
+    public interface StatVisitor {
+        /**
+         * Visits a stat whose value is an integer.
+         *
+         * @param name the name of the stat.
+         * @param value the value of the stat.
+         */
+        default void visitLong(String name, long value) {
+        }
+
+        /**
+         * Visits a stat whose value is a decimal number.
+         *
+         * @param name the name of the stat.
+         * @param value the value of the stat.
+         */
+        default void visitDouble(String name, double value) {
+        }
+
+        /**
+         * Visits a stat whose value is not a number.
+         *
+         * @param name the name of the stat.
+         * @param value the XML text of the value of the stat.
+         */
+        default void visitString(String name, String value) {
+        }
     }
 
     public static class Stat
@@ -607,6 +843,14 @@ public class ColibriStatsExtension
             return ELEMENT_NAME;
         }
 
+        /**
+         * Returns the modification count of this stat, which changes with
+         * its name and value regardless of the extensions which include it.
+         */
+        int getStamp() {
+            return getModificationCount();
+        }
+
         /**
          * @return the name
          */
@@ -0,0 +1,408 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * Keeps the last few stats reports of one bridge (or other source) in a ring
+ * buffer and derives rates, moving averages and percentiles from them. Each
+ * numeric stat is stored in a column of <tt>double</tt>s which is created
+ * when the stat is first seen, so a report costs no allocation once all of
+ * its stats have columns, and the queries never allocate.
+ * <p>
+ * Counters like {@link ColibriStatsExtension#TOTAL_BYTES_RECEIVED} are read
+ * with {@link #getRate(String, long)} and
+ * {@link #getRateEwma(String, long)}, which treat a decrease of a counter as
+ * a restart of the bridge. Gauges like {@link ColibriStatsExtension#CPU_USAGE}
+ * are read with {@link #getEwma(String, long)} and
+ * {@link #getPercentile(String, long, double)}. Queries return <tt>NaN</tt>
+ * if there are not enough samples.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class ColibriStatsHistory {
+
+    /**
+     * The maximum number of samples.
+     */
+    private final int capacity;
+
+    /**
+     * The times of the samples in milliseconds, by row.
+     */
+    private final long[] timestamps;
+
+    /**
+     * The columns of the numeric stats by name. A column holds the value of
+     * its stat in each row, or <tt>NaN</tt> if the stat was missing from the
+     * sample.
+     */
+    private final Map<String, double[]> columns = new HashMap<>();
+
+    /**
+     * A copy of values used by {@link #getPercentile(String, long, double)}.
+     */
+    private final double[] scratch;
+
+    /**
+     * Stores the values of a report in {@link #row}.
+     */
+    private final ColibriStatsExtension.StatVisitor recorder
+            = new ColibriStatsExtension.StatVisitor() {
+                @Override
+                public void visitLong(String name, long value) {
+                    column(name)[row] = value;
+                }
+
+                @Override
+                public void visitDouble(String name, double value) {
+                    column(name)[row] = value;
+                }
+            };
+
+    /**
+     * The row of the newest sample.
+     */
+    private int row = -1;
+
+    /**
+     * The number of samples.
+     */
+    private int size;
+
+    /**
+     * Initializes a new <tt>ColibriStatsHistory</tt>.
+     *
+     * @param capacity the maximum number of samples. Older samples are
+     * overwritten.
+     */
+    public ColibriStatsHistory(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+        scratch = new double[capacity];
+    }
+
+    /**
+     * Adds a sample.
+     *
+     * @param stats the stats reported by the source. Only the stats with a
+     * numeric value are kept.
+     * @param timestamp the time of the report in milliseconds. Must not be
+     * earlier than that of the previous report.
+     * @throws IllegalArgumentException if <tt>timestamp</tt> is earlier than
+     * the time of the newest sample.
+     */
+    public synchronized void record(
+            ColibriStatsExtension stats,
+            long timestamp) {
+        if (size > 0 && timestamp < timestamps[row]) {
+            throw new IllegalArgumentException(
+                    "timestamp " + timestamp + " is before "
+                        + timestamps[row]);
+        }
+
+        row = (row + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+        timestamps[row] = timestamp;
+        for (double[] column : columns.values()) {
+            column[row] = Double.NaN;
+        }
+        stats.forEach(recorder);
+    }
+
+    /**
+     * Gets the number of samples.
+     *
+     * @return the number of samples, at most the capacity.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the newest value of a stat.
+     *
+     * @param name the name of the stat.
+     * @return the value of the stat in the newest sample, or <tt>NaN</tt>.
+     */
+    public synchronized double getLatest(String name) {
+        double[] column = columns.get(name);
+
+        return column == null || size == 0 ? Double.NaN : column[row];
+    }
+
+    /**
+     * Gets the average rate per second at which a counter increased over a
+     * window of time ending with the newest sample.
+     *
+     * @param name the name of the counter.
+     * @param window the length of the window in milliseconds.
+     * @return the rate per second, or <tt>NaN</tt> if the counter has fewer
+     * than two samples in the window or they span no time.
+     */
+    public synchronized double getRate(String name, long window) {
+        double[] column = columns.get(name);
+
+        if (column == null || size < 2) {
+            return Double.NaN;
+        }
+
+        long end = timestamps[row];
+        double increase = 0;
+        double newer = Double.NaN;
+        long newestTime = 0;
+        long oldestTime = 0;
+
+        for (int i = 0; i < size; i++) {
+            int r = rowAt(i);
+
+            if (timestamps[r] < end - window) {
+                break;
+            }
+
+            double value = column[r];
+
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (Double.isNaN(newer)) {
+                newestTime = timestamps[r];
+            } else {
+                increase += increase(newer, value);
+            }
+            newer = value;
+            oldestTime = timestamps[r];
+        }
+
+        long span = newestTime - oldestTime;
+
+        return span <= 0 ? Double.NaN : increase * 1000 / span;
+    }
+
+    /**
+     * Gets the exponentially weighted moving average of the rate per second
+     * at which a counter increased between consecutive samples.
+     *
+     * @param name the name of the counter.
+     * @param halfLife the time in milliseconds after which the weight of a
+     * rate is halved.
+     * @return the average rate per second, or <tt>NaN</tt> if the counter
+     * has fewer than two samples.
+     */
+    public synchronized double getRateEwma(String name, long halfLife) {
+        double[] column = columns.get(name);
+
+        if (column == null) {
+            return Double.NaN;
+        }
+
+        double average = Double.NaN;
+        double older = Double.NaN;
+        long olderTime = 0;
+
+        for (int i = size - 1; i >= 0; i--) {
+            int r = rowAt(i);
+            double value = column[r];
+
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (!Double.isNaN(older) && timestamps[r] > olderTime) {
+                long interval = timestamps[r] - olderTime;
+                double rate = increase(value, older) * 1000 / interval;
+
+                average
+                        = Double.isNaN(average)
+                            ? rate
+                            : average
+                                + (rate - average)
+                                    * weight(interval, halfLife);
+            }
+            older = value;
+            olderTime = timestamps[r];
+        }
+        return average;
+    }
+
+    /**
+     * Gets the exponentially weighted moving average of the values of a stat.
+     *
+     * @param name the name of the stat.
+     * @param halfLife the time in milliseconds after which the weight of a
+     * value is halved.
+     * @return the average, or <tt>NaN</tt> if the stat has no samples.
+     */
+    public synchronized double getEwma(String name, long halfLife) {
+        double[] column = columns.get(name);
+
+        if (column == null) {
+            return Double.NaN;
+        }
+
+        double average = Double.NaN;
+        long olderTime = 0;
+
+        for (int i = size - 1; i >= 0; i--) {
+            int r = rowAt(i);
+            double value = column[r];
+
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            average
+                    = Double.isNaN(average)
+                        ? value
+                        : average
+                            + (value - average)
+                                * weight(timestamps[r] - olderTime, halfLife);
+            olderTime = timestamps[r];
+        }
+        return average;
+    }
+
+    /**
+     * Gets a percentile of the values of a stat over a window of time ending
+     * with the newest sample, using the nearest-rank method.
+     *
+     * @param name the name of the stat.
+     * @param window the length of the window in milliseconds.
+     * @param percentile the percentile, from <tt>0</tt> (the minimum) to
+     * <tt>100</tt> (the maximum).
+     * @return the value, or <tt>NaN</tt> if the stat has no samples in the
+     * window.
+     */
+    public synchronized double getPercentile(
+            String name,
+            long window,
+            double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile: " + percentile);
+        }
+
+        double[] column = columns.get(name);
+
+        if (column == null || size == 0) {
+            return Double.NaN;
+        }
+
+        long end = timestamps[row];
+        int n = 0;
+
+        for (int i = 0; i < size; i++) {
+            int r = rowAt(i);
+
+            if (timestamps[r] < end - window) {
+                break;
+            }
+            if (!Double.isNaN(column[r])) {
+                scratch[n++] = column[r];
+            }
+        }
+        if (n == 0) {
+            return Double.NaN;
+        }
+
+        int rank = (int) Math.ceil(percentile / 100 * n);
+
+        return select(scratch, n, Math.max(rank, 1) - 1);
+    }
+
+    /**
+     * Returns the row of the sample which is a specific number of samples
+     * older than the newest one.
+     */
+    private int rowAt(int age) {
+        return (row - age + capacity) % capacity;
+    }
+
+    /**
+     * Returns the column of a stat, creating it if necessary.
+     */
+    private double[] column(String name) {
+        double[] column = columns.get(name);
+
+        if (column == null) {
+            column = new double[capacity];
+            Arrays.fill(column, Double.NaN);
+            columns.put(name, column);
+        }
+        return column;
+    }
+
+    /**
+     * Returns the increase of a counter from an older to a newer value. A
+     * decrease means that the counter was reset, so it increased from zero.
+     */
+    private static double increase(double newer, double older) {
+        return newer >= older ? newer - older : newer;
+    }
+
+    /**
+     * Returns the weight of a new value in an exponentially weighted moving
+     * average, given the time since the previous value.
+     */
+    private static double weight(long interval, long halfLife) {
+        return halfLife <= 0
+                ? 1
+                : 1 - Math.pow(0.5, (double) interval / halfLife);
+    }
+
+    /**
+     * Returns the <tt>k</tt>-th smallest of the first <tt>n</tt> values of an
+     * array, reordering them.
+     */
+    private static double select(double[] values, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = values[i];
+
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+}
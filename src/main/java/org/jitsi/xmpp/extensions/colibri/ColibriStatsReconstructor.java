@@ -0,0 +1,154 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * Rebuilds the current stats of a bridge from the reports created by a
+ * {@link ColibriStatsDeltaEncoder}. A delta report is merged into the
+ * reconstructed stats of its baseline report, so the stats of the last few
+ * reports are remembered. Reports without a sequence number are treated as
+ * full snapshots, so the stats of bridges which do not use delta reports are
+ * handled as well.
+ * <p>
+ * The reconstructed stats are {@link ColibriStatsExtension#freeze() frozen}
+ * and share the stats which did not change with the previous ones.
+ */
+public final class ColibriStatsReconstructor {
+
+    /**
+     * The default number of reconstructed reports which are remembered as
+     * potential baselines. It matches the number of reports that a
+     * {@link ColibriStatsDeltaEncoder} accepts acknowledgements for.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 16;
+
+    /**
+     * The reconstructed stats of the recent reports by sequence number.
+     */
+    private final LinkedHashMap<Long, ColibriStatsExtension> history;
+
+    /**
+     * The reconstructed stats of the last report, or <tt>null</tt>.
+     */
+    private ColibriStatsExtension current;
+
+    /**
+     * Initializes a new <tt>ColibriStatsReconstructor</tt> which remembers
+     * {@link #DEFAULT_HISTORY_SIZE} reports.
+     */
+    public ColibriStatsReconstructor() {
+        this(DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * Initializes a new <tt>ColibriStatsReconstructor</tt>.
+     *
+     * @param historySize the number of reconstructed reports which are
+     * remembered as potential baselines.
+     */
+    public ColibriStatsReconstructor(int historySize) {
+        if (historySize < 1) {
+            throw new IllegalArgumentException("historySize: " + historySize);
+        }
+        history = new LinkedHashMap<Long, ColibriStatsExtension>() {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, ColibriStatsExtension> eldest) {
+                return size() > historySize;
+            }
+        };
+    }
+
+    /**
+     * Merges a report into the current stats.
+     * <p>
+     * Deltas which are not newer than the current stats are ignored, and the
+     * current stats are returned. A full snapshot is always accepted, so
+     * that the sequence numbers of a restarted bridge can start over.
+     *
+     * @param report the received report. Not modified.
+     * @return the current stats, or <tt>null</tt> if the report is a delta
+     * whose baseline is not known (e.g. a report sent before this
+     * reconstructor was created); the current stats are then unchanged until
+     * the next full snapshot.
+     */
+    public synchronized ColibriStatsExtension apply(
+            ColibriStatsExtension report) {
+        long seq = report.getSequenceNumber();
+        ColibriStatsExtension base = null;
+
+        if (report.isDelta()) {
+            if (current != null && seq <= current.getSequenceNumber()) {
+                return current;
+            }
+            base = history.get(report.getBaseSequenceNumber());
+            if (base == null) {
+                return null;
+            }
+        } else if (current != null && seq <= current.getSequenceNumber()) {
+            history.clear();
+        }
+
+        Map<String, ColibriStatsExtension.Stat> stats = new LinkedHashMap<>();
+
+        if (base != null) {
+            for (ColibriStatsExtension.Stat stat
+                    : base.getChildExtensionsOfTypeView(
+                            ColibriStatsExtension.Stat.class)) {
+                stats.put(stat.getName(), stat);
+            }
+        }
+
+        Set<String> names = new HashSet<>();
+
+        for (ColibriStatsExtension.Stat stat
+                : report.getChildExtensionsOfTypeView(
+                        ColibriStatsExtension.Stat.class)) {
+            String name = stat.getName();
+
+            // As with getStat(), the first of several stats with the same name
+            // wins.
+            if (name != null && names.add(name)) {
+                stats.put(name, ColibriStatsExtension.Stat.clone(stat));
+            }
+        }
+
+        ColibriStatsExtension reconstructed = new ColibriStatsExtension();
+
+        stats.values().forEach(reconstructed::addStat);
+        reconstructed.setSequenceNumber(seq);
+        reconstructed.freeze();
+        current = reconstructed;
+        if (seq >= 0) {
+            history.put(seq, reconstructed);
+        } else {
+            history.clear();
+        }
+        return reconstructed;
+    }
+
+    /**
+     * Gets the current stats.
+     *
+     * @return the reconstructed stats of the last accepted report, or
+     * <tt>null</tt> if no report has been accepted.
+     */
+    public synchronized ColibriStatsExtension getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Maps the SSRCs of the channels of a {@link ColibriConferenceIQ} back to the
+ * channels (and thus the endpoints) which own them. The index is created by
+ * {@link ColibriConferenceIQ#enableSSRCIndex()} and is maintained
+ * incrementally: a {@link ColibriConferenceIQ.Channel} updates it whenever
+ * its SSRCs or the SSRCs of its sources change and when it is added to or
+ * removed from a content of the conference.
+ * <p>
+ * Lookups take constant time and do not block. An update does not trust the
+ * change which triggered it: while it holds the entry of the SSRC, it checks
+ * whether the channel still has the SSRC and is still attached to this index.
+ * Since a channel modifies its SSRCs before it updates the index, the last
+ * update of an SSRC always sees the latest state of the channel, so the index
+ * is consistent with the channels even if they are modified concurrently and
+ * without any lock on the channels.
+ * <p>
+ * More than one channel may have the same SSRC, e.g. an Octo channel relays
+ * the SSRCs of the endpoints of another bridge. All of them are kept, in the
+ * order in which they have acquired it.
+ * <p>
+ * SSRCs are unsigned 32-bit values; the <tt>int</tt> SSRCs of a channel are
+ * indexed as such.
+ */
+public final class SSRCIndex {
+
+    /**
+     * The channels which own SSRCs, by SSRC. The arrays are never empty and
+     * are never modified once they are in the map.
+     */
+    private final ConcurrentMap<Long, ColibriConferenceIQ.Channel[]> owners
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a new index. Package-private because an index is only
+     * useful when it is attached to a conference.
+     */
+    SSRCIndex() {
+    }
+
+    /**
+     * Returns the channel which has owned a specific SSRC longest or
+     * <tt>null</tt>.
+     *
+     * @param ssrc the SSRC.
+     */
+    public ColibriConferenceIQ.Channel getChannel(long ssrc) {
+        ColibriConferenceIQ.Channel[] channels
+                = owners.get(ssrc & 0xffffffffL);
+
+        return (channels == null) ? null : channels[0];
+    }
+
+    /**
+     * Returns the channels which own a specific SSRC in the order in which
+     * they have acquired it, or an empty list.
+     *
+     * @param ssrc the SSRC.
+     */
+    public List<ColibriConferenceIQ.Channel> getChannels(long ssrc) {
+        ColibriConferenceIQ.Channel[] channels
+                = owners.get(ssrc & 0xffffffffL);
+
+        return (channels == null)
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(Arrays.asList(channels));
+    }
+
+    /**
+     * Returns the identifier of the endpoint of the channel which has owned a
+     * specific SSRC longest, or <tt>null</tt> if the SSRC is not owned by any
+     * channel or the channel does not have an endpoint.
+     *
+     * @param ssrc the SSRC.
+     */
+    public String getEndpoint(long ssrc) {
+        ColibriConferenceIQ.Channel channel = getChannel(ssrc);
+
+        return (channel == null) ? null : channel.getEndpoint();
+    }
+
+    /**
+     * Returns the number of SSRCs in this index.
+     */
+    public int size() {
+        return owners.size();
+    }
+
+    /**
+     * Brings the entry of a specific SSRC up to date with a specific channel:
+     * records that the channel owns the SSRC if it has it and is attached to
+     * this index, and that it does not otherwise.
+     */
+    void update(long ssrc, ColibriConferenceIQ.Channel channel) {
+        owners.compute(ssrc & 0xffffffffL, (key, channels) -> {
+            boolean owns
+                    = channel.isAttachedTo(this) && channel.hasSSRC(key);
+            int i = (channels == null) ? -1 : indexOf(channels, channel);
+
+            if (owns == (i != -1)) {
+                return channels;
+            }
+            if (owns) {
+                if (channels == null) {
+                    return new ColibriConferenceIQ.Channel[] { channel };
+                }
+
+                ColibriConferenceIQ.Channel[] newChannels
+                        = Arrays.copyOf(channels, channels.length + 1);
+
+                newChannels[channels.length] = channel;
+                return newChannels;
+            }
+            if (channels.length == 1) {
+                return null;
+            }
+
+            ColibriConferenceIQ.Channel[] newChannels
+                    = new ColibriConferenceIQ.Channel[channels.length - 1];
+
+            System.arraycopy(channels, 0, newChannels, 0, i);
+            System.arraycopy(
+                    channels, i + 1,
+                    newChannels, i,
+                    newChannels.length - i);
+            return newChannels;
+        });
+    }
+
+    /**
+     * Returns the position of a specific channel in an array or <tt>-1</tt>.
+     */
+    private static int indexOf(
+            ColibriConferenceIQ.Channel[] channels,
+            ColibriConferenceIQ.Channel channel) {
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] == channel) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Attaches a specific channel to this index and adds all its SSRCs.
+     */
+    void addChannel(ColibriConferenceIQ.Channel channel) {
+        // The channel is attached first, so an SSRC which it acquires
+        // concurrently is either in the snapshot below or updates this index
+        // itself.
+        channel.attach(this);
+        channel.forEachSSRC(ssrc -> update(ssrc, channel));
+    }
+
+    /**
+     * Detaches a specific channel from this index and removes all its SSRCs,
+     * unless the channel is still attached to this index through another
+     * content.
+     */
+    void removeChannel(ColibriConferenceIQ.Channel channel) {
+        if (channel.detach(this)) {
+            channel.forEachSSRC(ssrc -> update(ssrc, channel));
+        }
+    }
+}
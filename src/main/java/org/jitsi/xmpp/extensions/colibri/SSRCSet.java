@@ -0,0 +1,357 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * A set of (RTP) SSRCs kept as primitive <tt>int</tt>s in an open addressing
+ * hash table, so that adding, removing and looking up an SSRC takes constant
+ * time regardless of the number of SSRCs in the set.
+ * <p>
+ * Lookups and modifications access the hash table while holding the monitor
+ * of the set. Iteration and serialization do not access the hash table. They
+ * are given a snapshot of the set as an array sorted in ascending (unsigned)
+ * order, which is built on the first {@link #snapshot()} after a
+ * modification and then shared without locking until the next
+ * modification. Modifications and lookups therefore never sort, and bulk
+ * modifications pay for a single snapshot regardless of the number of SSRCs
+ * they add or remove.
+ */
+public final class SSRCSet {
+
+    /**
+     * The snapshot of a set without any SSRCs.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The initial capacity of {@link #table}. A power of two.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * The SSRCs of this set other than <tt>0</tt>, with <tt>0</tt> marking
+     * the empty slots. Allocated when the first SSRC is added and kept at
+     * most half full.
+     */
+    private int[] table;
+
+    /**
+     * Whether the SSRC <tt>0</tt>, which cannot be stored in {@link #table},
+     * is in this set.
+     */
+    private boolean containsZero;
+
+    /**
+     * The number of SSRCs in this set. Only written while holding the monitor
+     * of this set.
+     */
+    private volatile int size;
+
+    /**
+     * The SSRCs of this set in ascending unsigned order, or <tt>null</tt> if
+     * this set has been modified since the snapshot was last built.
+     */
+    private volatile int[] snapshot = EMPTY;
+
+    /**
+     * Returns the index of the slot of {@link #table} in which the search for
+     * a specific SSRC starts.
+     */
+    private static int slot(int ssrc, int[] table) {
+        int h = ssrc * 0x9E3779B9;
+
+        return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    /**
+     * Adds a specific SSRC to this set.
+     *
+     * @param ssrc the SSRC to add.
+     * @return <tt>true</tt> if this set did not already contain <tt>ssrc</tt>.
+     */
+    public synchronized boolean add(int ssrc) {
+        boolean added = doAdd(ssrc);
+
+        if (added) {
+            snapshot = null;
+        }
+        return added;
+    }
+
+    /**
+     * Adds specific SSRCs to this set.
+     *
+     * @param ssrcs the SSRCs to add.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public synchronized boolean addAll(int[] ssrcs) {
+        boolean changed = false;
+
+        for (int ssrc : ssrcs) {
+            changed |= doAdd(ssrc);
+        }
+        if (changed) {
+            snapshot = null;
+        }
+        return changed;
+    }
+
+    /**
+     * Removes a specific SSRC from this set.
+     *
+     * @param ssrc the SSRC to remove.
+     * @return <tt>true</tt> if this set contained <tt>ssrc</tt>.
+     */
+    public synchronized boolean remove(int ssrc) {
+        boolean removed = doRemove(ssrc);
+
+        if (removed) {
+            snapshot = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Removes specific SSRCs from this set.
+     *
+     * @param ssrcs the SSRCs to remove.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public synchronized boolean removeAll(int[] ssrcs) {
+        boolean changed = false;
+
+        for (int ssrc : ssrcs) {
+            changed |= doRemove(ssrc);
+        }
+        if (changed) {
+            snapshot = null;
+        }
+        return changed;
+    }
+
+    /**
+     * Replaces the contents of this set with specific SSRCs. Duplicates are
+     * ignored.
+     *
+     * @param ssrcs the SSRCs to set or <tt>null</tt> to clear this set.
+     * @return the SSRCs which this set contained before the call, in
+     * ascending unsigned order. Lets callers which track the SSRCs of the
+     * set elsewhere see exactly which ones have been replaced.
+     */
+    public synchronized int[] set(int[] ssrcs) {
+        int[] oldSSRCs = snapshot();
+
+        table = null;
+        containsZero = false;
+        size = 0;
+        if (ssrcs != null) {
+            for (int ssrc : ssrcs) {
+                doAdd(ssrc);
+            }
+        }
+        snapshot = null;
+        return oldSSRCs;
+    }
+
+    /**
+     * Determines whether this set contains a specific SSRC.
+     *
+     * @param ssrc the SSRC to look for.
+     * @return <tt>true</tt> if this set contains <tt>ssrc</tt>.
+     */
+    public synchronized boolean contains(int ssrc) {
+        if (ssrc == 0) {
+            return containsZero;
+        }
+        if (table == null) {
+            return false;
+        }
+
+        int mask = table.length - 1;
+
+        for (int i = slot(ssrc, table); ; i = (i + 1) & mask) {
+            int slot = table[i];
+
+            if (slot == ssrc) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of SSRCs in this set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the SSRCs of this set in ascending unsigned order. The returned
+     * array is shared by all readers until this set is modified and must not
+     * be modified.
+     *
+     * @return the SSRCs of this set.
+     */
+    public int[] snapshot() {
+        int[] snapshot = this.snapshot;
+
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = this.snapshot;
+                if (snapshot == null) {
+                    snapshot = buildSnapshot();
+                    this.snapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Builds a sorted array of the SSRCs of this set. Must be called while
+     * holding the monitor of this set.
+     */
+    private int[] buildSnapshot() {
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        int[] snapshot = new int[size];
+        int i = 0;
+
+        // Sort in unsigned order by flipping the sign bit around the sort.
+        if (containsZero) {
+            snapshot[i++] = Integer.MIN_VALUE;
+        }
+        if (table != null) {
+            for (int ssrc : table) {
+                if (ssrc != 0) {
+                    snapshot[i++] = ssrc ^ Integer.MIN_VALUE;
+                }
+            }
+        }
+        Arrays.sort(snapshot);
+        for (i = 0; i < snapshot.length; i++) {
+            snapshot[i] ^= Integer.MIN_VALUE;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Adds a specific SSRC to {@link #table} without invalidating the
+     * snapshot.
+     */
+    private boolean doAdd(int ssrc) {
+        if (ssrc == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        if (table == null) {
+            table = new int[INITIAL_CAPACITY];
+        }
+
+        int mask = table.length - 1;
+
+        for (int i = slot(ssrc, table); ; i = (i + 1) & mask) {
+            int slot = table[i];
+
+            if (slot == ssrc) {
+                return false;
+            }
+            if (slot == 0) {
+                table[i] = ssrc;
+                break;
+            }
+        }
+        size++;
+        if (2 * size > table.length) {
+            resize(2 * table.length);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a specific SSRC from {@link #table} without invalidating the
+     * snapshot.
+     */
+    private boolean doRemove(int ssrc) {
+        if (ssrc == 0) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        if (table == null) {
+            return false;
+        }
+
+        int mask = table.length - 1;
+        int i = slot(ssrc, table);
+
+        while (table[i] != ssrc) {
+            if (table[i] == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        // Shift back the entries of the probe sequence that follows the
+        // removed entry so that no tombstones are needed.
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = slot(table[j], table);
+
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * Rehashes {@link #table} into a new table with a specific capacity.
+     */
+    private void resize(int capacity) {
+        int[] oldTable = table;
+        int[] newTable = new int[capacity];
+        int mask = capacity - 1;
+
+        for (int ssrc : oldTable) {
+            if (ssrc != 0) {
+                int i = slot(ssrc, newTable);
+
+                while (newTable[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                newTable[i] = ssrc;
+            }
+        }
+        table = newTable;
+    }
+}
@@ -17,12 +17,9 @@ package org.jitsi.xmpp.extensions.colibri;
 
 import java.util.*;
 
-import org.jitsi.utils.logging.*;
 import org.jitsi.xmpp.extensions.*;
 import org.jitsi.xmpp.extensions.jingle.*;
 
-import org.jivesoftware.smack.packet.*;
-
 /**
  * Implements <tt>AbstractPacketExtension</tt> for the <tt>source</tt> element
  * defined by <a href="http://hancke.name/jabber/jingle-sources">
@@ -34,9 +31,6 @@ import org.jivesoftware.smack.packet.*;
 public class SourcePacketExtension
         extends AbstractPacketExtension {
 
-    private final static Logger logger
-            = Logger.getLogger(SourcePacketExtension.class);
-
     /**
      * The XML name of the <tt>setup</tt> element defined by Source-Specific
      * Media Attributes in Jingle.
@@ -110,9 +104,7 @@ public class SourcePacketExtension
      * @return the synchronization source (SSRC) ID of this source
      */
     public long getSSRC() {
-        String s = getAttributeAsString(SSRC_ATTR_NAME);
-
-        return (s == null) ? -1 : Long.parseLong(s);
+        return getAttributeAsLong(SSRC_ATTR_NAME);
     }
 
     /**
@@ -124,7 +116,7 @@ public class SourcePacketExtension
         if (ssrc == -1) {
             removeAttribute(SSRC_ATTR_NAME);
         } else {
-            setAttribute(SSRC_ATTR_NAME, Long.toString(0xffffffffL & ssrc));
+            setAttribute(SSRC_ATTR_NAME, 0xffffffffL & ssrc);
         }
     }
 
@@ -190,20 +182,7 @@ public class SourcePacketExtension
      * Returns deep copy of this <tt>SourcePacketExtension</tt>.
      */
     public SourcePacketExtension copy() {
-        SourcePacketExtension copy
-                = AbstractPacketExtension.clone(this);
-
-        for (ExtensionElement ppe : getChildExtensions()) {
-            if (ppe instanceof AbstractPacketExtension) {
-                copy.addChildExtension(
-                        AbstractPacketExtension.clone(
-                                (AbstractPacketExtension) ppe));
-            } else {
-                logger.error("Failed to clone " + ppe);
-            }
-        }
-
-        return copy;
+        return AbstractPacketExtension.deepClone(this);
     }
 
     public String toString() {
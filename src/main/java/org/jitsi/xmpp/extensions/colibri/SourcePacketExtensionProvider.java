@@ -0,0 +1,48 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.xmpp.extensions.*;
+
+/**
+ * Parses <tt>source</tt> elements into {@link SourcePacketExtension}s, storing
+ * the SSRC in its typed form while parsing.
+ */
+public class SourcePacketExtensionProvider
+        extends DefaultPacketExtensionProvider<SourcePacketExtension> {
+
+    /**
+     * Initializes a new <tt>SourcePacketExtensionProvider</tt>.
+     */
+    public SourcePacketExtensionProvider() {
+        super(SourcePacketExtension::new);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void parseAttribute(
+            SourcePacketExtension source,
+            String name,
+            String value) {
+        if (SourcePacketExtension.SSRC_ATTR_NAME.equals(name)) {
+            setNumberAttribute(source, name, value);
+        } else {
+            super.parseAttribute(source, name, value);
+        }
+    }
+}
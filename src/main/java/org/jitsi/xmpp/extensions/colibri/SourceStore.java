@@ -0,0 +1,251 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+
+/**
+ * The sources and source groups of a {@link ColibriConferenceIQ.Channel},
+ * kept in insertion order and indexed by their identifiers so that adding,
+ * removing and looking them up takes constant time.
+ * <p>
+ * A source is identified by its SSRC or, if it does not have one, by its RID.
+ * A source group is identified by its element name, its semantics and the
+ * identifiers of its member sources. Sources and groups without any of these
+ * are only equal to themselves. The identifiers are taken when a source or a
+ * group is added, so they must not be changed while it is in the store.
+ * <p>
+ * Instances are not thread-safe; the channel guards them with its monitor.
+ * The only exception is the set of the SSRCs of the sources returned by
+ * {@link #getSSRCs()}, which the {@link SSRCIndex} reads without it.
+ */
+final class SourceStore {
+
+    /**
+     * The sources of the channel by their identifiers.
+     */
+    private final Map<Object, SourcePacketExtension> sources
+            = new LinkedHashMap<>();
+
+    /**
+     * The source groups of the channel by their identifiers, or <tt>null</tt>
+     * if no source group has ever been added.
+     */
+    private Map<Object, SourceGroupPacketExtension> sourceGroups;
+
+    /**
+     * The (32-bit) SSRCs of the sources.
+     */
+    private final SSRCSet ssrcs = new SSRCSet();
+
+    /**
+     * Returns the key under which a specific source is indexed: its SSRC as
+     * a <tt>Long</tt>, its RID as a <tt>String</tt> or the source itself.
+     */
+    private static Object key(SourcePacketExtension source) {
+        if (source.hasSSRC()) {
+            long ssrc = getSSRC(source);
+
+            // An invalid SSRC can only be equal to itself.
+            return (ssrc == -1) ? source : (Object) ssrc;
+        }
+
+        String rid = source.getRid();
+
+        return (rid == null) ? source : rid;
+    }
+
+    /**
+     * Returns the SSRC of a specific source or <tt>-1</tt> if it does not
+     * have a valid one.
+     */
+    static long getSSRC(SourcePacketExtension source) {
+        if (source.hasSSRC()) {
+            try {
+                return source.getSSRC();
+            } catch (NumberFormatException nfe) {
+                // Fall through.
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the key under which a specific source group is indexed.
+     */
+    private static Object key(SourceGroupPacketExtension sourceGroup) {
+        String semantics = sourceGroup.getSemantics();
+        List<SourcePacketExtension> members
+                = sourceGroup.getChildExtensionsOfTypeView(
+                        SourcePacketExtension.class);
+
+        if (semantics == null && members.isEmpty()) {
+            return sourceGroup;
+        }
+
+        List<Object> key = new ArrayList<>(members.size() + 2);
+
+        key.add(sourceGroup.getElementName());
+        key.add(semantics);
+        for (SourcePacketExtension member : members) {
+            key.add(key(member));
+        }
+        return key;
+    }
+
+    /**
+     * Adds a source unless a source with the same identifier has already been
+     * added.
+     *
+     * @return <tt>true</tt> if the source was added.
+     */
+    boolean addSource(SourcePacketExtension source) {
+        Object key = key(source);
+
+        if (sources.putIfAbsent(key, source) != null) {
+            return false;
+        }
+        if (key instanceof Long) {
+            ssrcs.add(((Long) key).intValue());
+        }
+        return true;
+    }
+
+    /**
+     * Removes the source with the same identifier as a specific source.
+     *
+     * @return <tt>true</tt> if a source was removed.
+     */
+    boolean removeSource(SourcePacketExtension source) {
+        Object key = key(source);
+
+        if (sources.remove(key) == null) {
+            return false;
+        }
+        if (key instanceof Long) {
+            ssrcs.remove(((Long) key).intValue());
+        }
+        return true;
+    }
+
+    /**
+     * Replaces all sources with specific ones. Later duplicates are ignored.
+     *
+     * @return the SSRCs of the replaced sources.
+     */
+    int[] replaceSources(Collection<SourcePacketExtension> sources) {
+        this.sources.clear();
+
+        int[] oldSSRCs = ssrcs.set(null);
+
+        for (SourcePacketExtension source : sources) {
+            addSource(source);
+        }
+        return oldSSRCs;
+    }
+
+    /**
+     * Returns the source with a specific SSRC or <tt>null</tt>.
+     */
+    SourcePacketExtension getSource(long ssrc) {
+        return sources.get(ssrc);
+    }
+
+    /**
+     * Returns the source with a specific RID (and without an SSRC) or
+     * <tt>null</tt>.
+     */
+    SourcePacketExtension getSourceByRid(String rid) {
+        return sources.get(rid);
+    }
+
+    /**
+     * Returns a copy of the list of sources in the order they were added.
+     */
+    List<SourcePacketExtension> getSources() {
+        return new ArrayList<>(sources.values());
+    }
+
+    /**
+     * Returns the SSRCs of the sources. The set is thread-safe and may be
+     * read without the monitor of the channel.
+     */
+    SSRCSet getSSRCs() {
+        return ssrcs;
+    }
+
+    /**
+     * Returns <tt>true</tt> if there are any sources.
+     */
+    boolean hasSources() {
+        return !sources.isEmpty();
+    }
+
+    /**
+     * Adds a source group unless an equal one has already been added.
+     *
+     * @return <tt>true</tt> if the source group was added.
+     */
+    boolean addSourceGroup(SourceGroupPacketExtension sourceGroup) {
+        if (sourceGroups == null) {
+            sourceGroups = new LinkedHashMap<>();
+        }
+        return sourceGroups.putIfAbsent(key(sourceGroup), sourceGroup) == null;
+    }
+
+    /**
+     * Removes the source group equal to a specific source group.
+     *
+     * @return <tt>true</tt> if a source group was removed.
+     */
+    boolean removeSourceGroup(SourceGroupPacketExtension sourceGroup) {
+        return sourceGroups != null
+                && sourceGroups.remove(key(sourceGroup)) != null;
+    }
+
+    /**
+     * Replaces all source groups with specific ones. Later duplicates are
+     * ignored.
+     */
+    void replaceSourceGroups(
+            Collection<SourceGroupPacketExtension> sourceGroups) {
+        if (this.sourceGroups != null) {
+            this.sourceGroups.clear();
+        }
+        for (SourceGroupPacketExtension sourceGroup : sourceGroups) {
+            addSourceGroup(sourceGroup);
+        }
+    }
+
+    /**
+     * Returns a copy of the list of source groups in the order they were
+     * added, or <tt>null</tt> if no source group has ever been added.
+     */
+    List<SourceGroupPacketExtension> getSourceGroups() {
+        return (sourceGroups == null)
+                ? null
+                : new ArrayList<>(sourceGroups.values());
+    }
+
+    /**
+     * Returns <tt>true</tt> if there are any source groups.
+     */
+    boolean hasSourceGroups() {
+        return sourceGroups != null && !sourceGroups.isEmpty();
+    }
+}
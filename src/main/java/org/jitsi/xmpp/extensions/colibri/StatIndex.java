@@ -0,0 +1,396 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * An immutable index of the stats of a {@link ColibriStatsExtension} by name,
+ * with the value of each stat parsed once into a typed slot. Lookups hash the
+ * name into an open-addressing table and neither allocate nor parse, which
+ * matters to consumers that read dozens of stats from every report of every
+ * bridge.
+ * <p>
+ * When several stats have the same name only the first one is indexed, as
+ * with {@link ColibriStatsExtension#getStat(String)}.
+ * <p>
+ * A stat reports its changes only to the last extension it was added to, so
+ * the index also records the modification count of every indexed stat.
+ * {@link #isCurrent(String)} compares the one of a single stat in constant
+ * time before it is looked up, and {@link #isCurrent()} compares all of them
+ * before they are visited. A stat which another extension renames to a name
+ * which is looked up is not noticed, so, as with the XML caching of
+ * <tt>AbstractPacketExtension</tt>, a stat should have a single parent.
+ */
+final class StatIndex {
+
+    /**
+     * The index of a {@link ColibriStatsExtension} without any stats.
+     */
+    static final StatIndex EMPTY
+            = new StatIndex(
+                    -1, new ColibriStatsExtension.Stat[0], new int[0],
+                    new int[1]);
+
+    /**
+     * The kind of a stat without a value.
+     */
+    private static final byte NONE = 0;
+
+    /**
+     * The kind of a stat whose value is an integer.
+     */
+    private static final byte LONG = 1;
+
+    /**
+     * The kind of a stat whose value is a decimal number.
+     */
+    private static final byte DOUBLE = 2;
+
+    /**
+     * The kind of a stat whose value is not a number.
+     */
+    private static final byte STRING = 3;
+
+    /**
+     * Creates the index of some stats.
+     *
+     * @param modificationCount the modification count of the extension when
+     * the stats were read from it.
+     * @param stats the stats in document order.
+     */
+    static StatIndex of(
+            int modificationCount,
+            List<ColibriStatsExtension.Stat> stats) {
+        int capacity = Integer.highestOneBit(Math.max(stats.size(), 1)) << 2;
+        int[] table = new int[capacity];
+        ColibriStatsExtension.Stat[] indexed
+                = new ColibriStatsExtension.Stat[stats.size()];
+        int[] stamps = new int[stats.size()];
+        int size = 0;
+
+        for (ColibriStatsExtension.Stat stat : stats) {
+            // The stamp is taken before the stat is read so that a change
+            // made while it is being read will not match.
+            int stamp = stat.getStamp();
+            String name = stat.getName();
+
+            if (name != null
+                    && find(table, indexed, name) < 0) {
+                indexed[size] = stat;
+                stamps[size] = stamp;
+                table[slot(table, indexed, name)] = ++size;
+            }
+        }
+        return new StatIndex(
+                modificationCount,
+                Arrays.copyOf(indexed, size),
+                Arrays.copyOf(stamps, size),
+                table);
+    }
+
+    /**
+     * Returns the position in a table of the entry for a specific name or of
+     * the empty entry where it belongs.
+     */
+    private static int slot(
+            int[] table,
+            ColibriStatsExtension.Stat[] stats,
+            String name) {
+        int mask = table.length - 1;
+        int i = name.hashCode() & mask;
+
+        while (table[i] != 0) {
+            String indexedName = stats[table[i] - 1].getName();
+
+            if (indexedName == name || indexedName.equals(name)) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position in an array of stats of the stat with a specific
+     * name, or <tt>-1</tt>.
+     */
+    private static int find(
+            int[] table,
+            ColibriStatsExtension.Stat[] stats,
+            String name) {
+        return table[slot(table, stats, name)] - 1;
+    }
+
+    /**
+     * The modification count of the {@link ColibriStatsExtension} when its
+     * stats were indexed.
+     */
+    final int modificationCount;
+
+    /**
+     * The indexed stats in document order.
+     */
+    private final ColibriStatsExtension.Stat[] stats;
+
+    /**
+     * The {@link ColibriStatsExtension.Stat#getStamp() stamps} of
+     * {@link #stats} when they were indexed.
+     */
+    private final int[] stamps;
+
+    /**
+     * The open-addressing hash table of the names of {@link #stats}. Holds
+     * the position in <tt>stats</tt> plus one, or zero for empty entries.
+     */
+    private final int[] table;
+
+    /**
+     * The names of {@link #stats}, captured so that renaming a stat cannot
+     * corrupt the table before the index is rebuilt.
+     */
+    private final String[] names;
+
+    /**
+     * The kinds of the values of {@link #stats}.
+     */
+    private final byte[] kinds;
+
+    /**
+     * The values of the stats whose kind is {@link #LONG}.
+     */
+    private final long[] longs;
+
+    /**
+     * The values of the stats whose kind is {@link #DOUBLE}.
+     */
+    private final double[] doubles;
+
+    /**
+     * The text of the values of {@link #stats}.
+     */
+    private final String[] texts;
+
+    private StatIndex(
+            int modificationCount,
+            ColibriStatsExtension.Stat[] stats,
+            int[] stamps,
+            int[] table) {
+        this.modificationCount = modificationCount;
+        this.stats = stats;
+        this.stamps = stamps;
+        this.table = table;
+        names = new String[stats.length];
+        kinds = new byte[stats.length];
+        longs = new long[stats.length];
+        doubles = new double[stats.length];
+        texts = new String[stats.length];
+        for (int i = 0; i < stats.length; i++) {
+            String text
+                    = stats[i].getAttributeAsString(
+                            ColibriStatsExtension.Stat.VALUE_ATTR_NAME);
+
+            names[i] = stats[i].getName();
+            texts[i] = text;
+            if (text == null) {
+                kinds[i] = NONE;
+            } else if (isLong(text)) {
+                kinds[i] = LONG;
+                longs[i] = Long.parseLong(text);
+            } else if (isDecimal(text)) {
+                kinds[i] = DOUBLE;
+                doubles[i] = Double.parseDouble(text);
+            } else {
+                kinds[i] = STRING;
+            }
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if a string is an optionally signed decimal
+     * integer which fits in a <tt>long</tt>.
+     */
+    private static boolean isLong(String s) {
+        int start = s.startsWith("-") ? 1 : 0;
+        int length = s.length() - start;
+
+        if (length < 1 || length > 19) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        if (length < 19) {
+            return true;
+        }
+        try {
+            Long.parseLong(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if a string is a number in the notation of
+     * <tt>Double.toString()</tt>, e.g. <tt>0.25</tt> or <tt>1.0E-4</tt>.
+     */
+    private static boolean isDecimal(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+
+        char first = s.charAt(0);
+
+        if ((first < '0' || first > '9') && first != '-' && first != '.') {
+            // Rules out "NaN", "Infinity", hexadecimal notation and text.
+            return false;
+        }
+        try {
+            Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if the stat with a specific name (if any) has not
+     * changed since it was indexed, including through another extension
+     * which it was added to later and which alone is notified of its changes.
+     */
+    boolean isCurrent(String name) {
+        int i = indexOf(name);
+
+        return i < 0 || stats[i].getStamp() == stamps[i];
+    }
+
+    /**
+     * Returns <tt>true</tt> if none of the indexed stats has changed since it
+     * was indexed.
+     */
+    boolean isCurrent() {
+        for (int i = 0; i < stats.length; i++) {
+            if (stats[i].getStamp() != stamps[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the position of the stat with a specific name or <tt>-1</tt>.
+     */
+    private int indexOf(String name) {
+        if (name == null || stats.length == 0) {
+            return -1;
+        }
+
+        int mask = table.length - 1;
+        int i = name.hashCode() & mask;
+        int entry;
+
+        while ((entry = table[i]) != 0) {
+            String indexedName = names[entry - 1];
+
+            if (indexedName == name || indexedName.equals(name)) {
+                return entry - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first stat with a specific name or <tt>null</tt>.
+     */
+    ColibriStatsExtension.Stat getStat(String name) {
+        int i = indexOf(name);
+
+        return i < 0 ? null : stats[i];
+    }
+
+    /**
+     * Returns the value of a stat as a <tt>long</tt>, truncating decimal
+     * numbers, or <tt>defaultValue</tt> if there is no such stat or its
+     * value is not a number.
+     */
+    long getLong(String name, long defaultValue) {
+        int i = indexOf(name);
+
+        if (i >= 0) {
+            switch (kinds[i]) {
+                case LONG:
+                    return longs[i];
+                case DOUBLE:
+                    return (long) doubles[i];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns the value of a stat as a <tt>double</tt>, or
+     * <tt>defaultValue</tt> if there is no such stat or its value is not a
+     * number.
+     */
+    double getDouble(String name, double defaultValue) {
+        int i = indexOf(name);
+
+        if (i >= 0) {
+            switch (kinds[i]) {
+                case LONG:
+                    return longs[i];
+                case DOUBLE:
+                    return doubles[i];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns whether there is a stat with a specific name and a numeric
+     * value.
+     */
+    boolean isNumber(String name) {
+        int i = indexOf(name);
+
+        return i >= 0 && (kinds[i] == LONG || kinds[i] == DOUBLE);
+    }
+
+    /**
+     * Passes the indexed stats with a value to a visitor in document order.
+     */
+    void forEach(ColibriStatsExtension.StatVisitor visitor) {
+        for (int i = 0; i < stats.length; i++) {
+            switch (kinds[i]) {
+                case LONG:
+                    visitor.visitLong(names[i], longs[i]);
+                    break;
+                case DOUBLE:
+                    visitor.visitDouble(names[i], doubles[i]);
+                    break;
+                case STRING:
+                    visitor.visitString(names[i], texts[i]);
+                    break;
+            }
+        }
+    }
+}
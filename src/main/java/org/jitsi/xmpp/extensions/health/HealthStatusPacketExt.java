@@ -17,8 +17,8 @@ package org.jitsi.xmpp.extensions.health;
 
 import org.jitsi.xmpp.extensions.AbstractPacketExtension;
 import org.jitsi.xmpp.extensions.DefaultPacketExtensionProvider;
+import org.jitsi.xmpp.extensions.ExtensionProviderCache;
 import org.apache.commons.lang3.StringUtils;
-import org.jivesoftware.smack.provider.ProviderManager;
 
 /**
  * A generic extension for a component to represent its current health. NOTE:
@@ -52,7 +52,7 @@ public class HealthStatusPacketExt
     }
 
     static public void registerExtensionProvider() {
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ELEMENT_NAME,
                 NAMESPACE,
                 new DefaultPacketExtensionProvider<>(HealthStatusPacketExt.class)
@@ -17,8 +17,8 @@ package org.jitsi.xmpp.extensions.jibri;
 
 import org.jitsi.xmpp.extensions.AbstractPacketExtension;
 import org.jitsi.xmpp.extensions.DefaultPacketExtensionProvider;
+import org.jitsi.xmpp.extensions.ExtensionProviderCache;
 import org.apache.commons.lang3.StringUtils;
-import org.jivesoftware.smack.provider.ProviderManager;
 
 /**
  * Status extension included in MUC presence by Jibri to indicate it's status.
@@ -52,7 +52,7 @@ public class JibriBusyStatusPacketExt
     }
 
     static public void registerExtensionProvider() {
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ELEMENT_NAME,
                 NAMESPACE,
                 new DefaultPacketExtensionProvider<>(JibriBusyStatusPacketExt.class)
@@ -48,7 +48,7 @@ public class JibriStatusPacketExt
     }
 
     static public void registerExtensionProvider() {
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ELEMENT_NAME,
                 NAMESPACE,
                 new DefaultPacketExtensionProvider<>(JibriStatusPacketExt.class)
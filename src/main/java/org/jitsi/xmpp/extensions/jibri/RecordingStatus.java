@@ -171,7 +171,7 @@ public class RecordingStatus
             errorPe.setError(error);
         } else {
             // Remove error PE
-            getChildExtensions().remove(getErrorPE());
+            removeChildExtension(getErrorPE());
         }
     }
 
@@ -358,7 +358,7 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      * @return this candidates' type as per ICE's RFC 5245.
      */
     public CandidateType getType() {
-        return CandidateType.valueOf(getAttributeAsString(TYPE_ATTR_NAME));
+        return getAttributeAsEnum(TYPE_ATTR_NAME, CandidateType.class);
     }
 
     /**
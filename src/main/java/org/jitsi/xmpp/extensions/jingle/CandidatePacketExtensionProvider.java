@@ -0,0 +1,60 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.jingle;
+
+import org.jitsi.xmpp.extensions.*;
+
+/**
+ * Parses <tt>candidate</tt> elements into {@link CandidatePacketExtension}s.
+ * Unlike a generic {@link DefaultPacketExtensionProvider}, it stores the
+ * numeric attributes and the candidate type in their typed form while parsing.
+ */
+public class CandidatePacketExtensionProvider
+        extends DefaultPacketExtensionProvider<CandidatePacketExtension> {
+
+    /**
+     * Initializes a new <tt>CandidatePacketExtensionProvider</tt>.
+     */
+    public CandidatePacketExtensionProvider() {
+        super(CandidatePacketExtension::new);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void parseAttribute(
+            CandidatePacketExtension candidate,
+            String name,
+            String value) {
+        switch (name) {
+            case CandidatePacketExtension.COMPONENT_ATTR_NAME:
+            case CandidatePacketExtension.GENERATION_ATTR_NAME:
+            case CandidatePacketExtension.NETWORK_ATTR_NAME:
+            case CandidatePacketExtension.PORT_ATTR_NAME:
+            case CandidatePacketExtension.PRIORITY_ATTR_NAME:
+            case CandidatePacketExtension.REL_PORT_ATTR_NAME:
+                setNumberAttribute(candidate, name, value);
+                break;
+            case CandidatePacketExtension.TYPE_ATTR_NAME:
+                setEnumAttribute(candidate, name, value, CandidateType.class);
+                break;
+            default:
+                super.parseAttribute(candidate, name, value);
+                break;
+        }
+    }
+}
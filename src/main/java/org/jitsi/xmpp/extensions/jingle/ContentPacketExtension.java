@@ -148,7 +148,7 @@ public class ContentPacketExtension extends AbstractPacketExtension {
      * @return the value of this content's creator argument.
      */
     public CreatorEnum getCreator() {
-        return CreatorEnum.valueOf(getAttributeAsString(CREATOR_ATTR_NAME));
+        return getAttributeAsEnum(CREATOR_ATTR_NAME, CreatorEnum.class);
     }
 
     /**
@@ -246,11 +246,7 @@ public class ContentPacketExtension extends AbstractPacketExtension {
      * will be generating content in this session.
      */
     public SendersEnum getSenders() {
-        Object attributeVal = getAttribute(SENDERS_ATTR_NAME);
-
-        return attributeVal == null
-                ? null
-                : SendersEnum.valueOf(attributeVal.toString());
+        return getAttributeAsEnum(SENDERS_ATTR_NAME, SendersEnum.class);
     }
 
     /**
@@ -265,6 +261,6 @@ public class ContentPacketExtension extends AbstractPacketExtension {
         if (senders == null) {
             senders = SendersEnum.both;
         }
-        setAttribute(SENDERS_ATTR_NAME, senders.toString());
+        setAttribute(SENDERS_ATTR_NAME, senders);
     }
 }
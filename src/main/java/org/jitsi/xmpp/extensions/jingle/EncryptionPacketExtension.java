@@ -65,6 +65,7 @@ public class EncryptionPacketExtension
      * @param crypto the new <tt>crypto</tt> element to add.
      */
     public void addCrypto(CryptoPacketExtension crypto) {
+        checkNotFrozen();
         if (!cryptoList.contains(crypto)) {
             cryptoList.add(crypto);
         }
@@ -78,7 +79,9 @@ public class EncryptionPacketExtension
      * we have registered with this encryption element so far.
      */
     public List<CryptoPacketExtension> getCryptoList() {
-        return cryptoList;
+        return isFrozen()
+                ? Collections.unmodifiableList(cryptoList)
+                : cryptoList;
     }
 
     /**
@@ -108,19 +111,6 @@ public class EncryptionPacketExtension
         return Boolean.valueOf(required) || "1".equals(required);
     }
 
-    /**
-     * Returns a list containing all <tt>crypto</tt> sub-elements.
-     *
-     * @return a {@link List} containing all our <tt>crypto</tt> sub-elements.
-     */
-    @Override
-    public List<? extends ExtensionElement> getChildExtensions() {
-        List<ExtensionElement> ret = new ArrayList<ExtensionElement>();
-
-        ret.addAll(super.getChildExtensions());
-        return ret;
-    }
-
     /**
      * Adds the specified <tt>childExtension</tt> to the list of extensions
      * registered with this packet.
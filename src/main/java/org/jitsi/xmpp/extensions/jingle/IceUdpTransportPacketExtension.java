@@ -149,6 +149,17 @@ public class IceUdpTransportPacketExtension
         return childExtensions;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The candidates can only be changed through the methods of this class,
+     * all of which report their changes.
+     */
+    @Override
+    protected boolean tracksChildExtensionChanges() {
+        return true;
+    }
+
     /**
      * Adds <tt>candidate</tt> to the list of {@link CandidatePacketExtension}s
      * registered with this transport.
@@ -157,9 +168,11 @@ public class IceUdpTransportPacketExtension
      * transport element.
      */
     public void addCandidate(CandidatePacketExtension candidate) {
+        checkNotFrozen();
         synchronized (candidateList) {
             candidateList.add(candidate);
         }
+        invalidateXML();
     }
 
     /**
@@ -172,9 +185,17 @@ public class IceUdpTransportPacketExtension
      * registered with this transport contained the specified <tt>candidate</tt>
      */
     public boolean removeCandidate(CandidatePacketExtension candidate) {
+        checkNotFrozen();
+
+        boolean removed;
+
         synchronized (candidateList) {
-            return candidateList.remove(candidate);
+            removed = candidateList.remove(candidate);
         }
+        if (removed) {
+            invalidateXML();
+        }
+        return removed;
     }
 
     /**
@@ -185,6 +206,11 @@ public class IceUdpTransportPacketExtension
      * registered with this transport.
      */
     public List<CandidatePacketExtension> getCandidateList() {
+        if (isFrozen()) {
+            // The list no longer changes, so it needs neither a lock nor a
+            // copy.
+            return Collections.unmodifiableList(candidateList);
+        }
         synchronized (candidateList) {
             return new ArrayList<>(candidateList);
         }
@@ -197,7 +223,9 @@ public class IceUdpTransportPacketExtension
      * in-use candidate for this session.
      */
     public void setRemoteCandidate(RemoteCandidatePacketExtension candidate) {
+        checkNotFrozen();
         this.remoteCandidate = candidate;
+        invalidateXML();
     }
 
     /**
@@ -19,6 +19,8 @@ import java.math.*;
 import java.security.*;
 import java.util.*;
 
+import org.jitsi.xmpp.extensions.*;
+
 import org.jivesoftware.smack.packet.*;
 import org.jxmpp.jid.Jid;
 
@@ -146,19 +148,19 @@ public class JingleIQ extends IQ {
             //FIXME use extensions list of IQ
             //content
             for (ContentPacketExtension cpe : contentList) {
-                bldr.append(cpe.toXML());
+                cpe.writeTo(bldr);
             }
 
             //reason
             if (reason != null) {
-                bldr.append(reason.toXML());
+                AbstractPacketExtension.writeExtension(bldr, reason);
             }
 
             //session-info
             //XXX: this is RTP specific so we should probably handle it in a
             //subclass
             if (sessionInfo != null) {
-                bldr.append(sessionInfo.toXML());
+                sessionInfo.writeTo(bldr);
             }
         }
 
@@ -40,172 +40,169 @@ public class JingleIQProvider extends IQProvider<JingleIQ> {
      */
     public JingleIQProvider() {
         //<description/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 RtpDescriptionPacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<RtpDescriptionPacketExtension>(
                         RtpDescriptionPacketExtension.class));
 
         //<payload-type/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 PayloadTypePacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<PayloadTypePacketExtension>(
-                        PayloadTypePacketExtension.class));
+                new PayloadTypePacketExtensionProvider());
 
         //<parameter/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ParameterPacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<ParameterPacketExtension>(ParameterPacketExtension.class));
+                new DefaultPacketExtensionProvider<ParameterPacketExtension>(ParameterPacketExtension::new));
 
         //<rtp-hdrext/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 RTPHdrExtPacketExtension.ELEMENT_NAME,
                 RTPHdrExtPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<RTPHdrExtPacketExtension>(RTPHdrExtPacketExtension.class));
+                new DefaultPacketExtensionProvider<RTPHdrExtPacketExtension>(RTPHdrExtPacketExtension::new));
 
         // <sctpmap/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 SctpMapExtension.ELEMENT_NAME,
                 SctpMapExtension.NAMESPACE,
                 new SctpMapExtensionProvider());
 
         //<encryption/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 EncryptionPacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<EncryptionPacketExtension>(EncryptionPacketExtension.class));
 
         //<zrtp-hash/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ZrtpHashPacketExtension.ELEMENT_NAME,
                 ZrtpHashPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<ZrtpHashPacketExtension>(ZrtpHashPacketExtension.class));
 
         //<crypto/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 CryptoPacketExtension.ELEMENT_NAME,
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<CryptoPacketExtension>(CryptoPacketExtension.class));
 
         // <bundle/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 BundlePacketExtension.ELEMENT_NAME,
                 BundlePacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<BundlePacketExtension>(BundlePacketExtension.class));
 
         // <group/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 GroupPacketExtension.ELEMENT_NAME,
                 GroupPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<GroupPacketExtension>(GroupPacketExtension.class));
 
         //ice-udp transport
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 IceUdpTransportPacketExtension.ELEMENT_NAME,
                 IceUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<IceUdpTransportPacketExtension>(
                         IceUdpTransportPacketExtension.class));
 
         //<raw-udp/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 RawUdpTransportPacketExtension.ELEMENT_NAME,
                 RawUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<RawUdpTransportPacketExtension>(
                         RawUdpTransportPacketExtension.class));
 
         //ice-udp <candidate/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 CandidatePacketExtension.ELEMENT_NAME,
                 IceUdpTransportPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<CandidatePacketExtension>(
-                        CandidatePacketExtension.class));
+                new CandidatePacketExtensionProvider());
 
         //raw-udp <candidate/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 CandidatePacketExtension.ELEMENT_NAME,
                 RawUdpTransportPacketExtension.NAMESPACE,
-                new DefaultPacketExtensionProvider<CandidatePacketExtension>(
-                        CandidatePacketExtension.class));
+                new CandidatePacketExtensionProvider());
 
         //ice-udp <remote-candidate/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 RemoteCandidatePacketExtension.ELEMENT_NAME,
                 IceUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<RemoteCandidatePacketExtension>(
                         RemoteCandidatePacketExtension.class));
 
         //inputevt <inputevt/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 InputEvtPacketExtension.ELEMENT_NAME,
                 InputEvtPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<InputEvtPacketExtension>(
                         InputEvtPacketExtension.class));
 
         //coin <conference-info/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 CoinPacketExtension.ELEMENT_NAME,
                 CoinPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<CoinPacketExtension>(
                         CoinPacketExtension.class));
 
         // DTLS-SRTP
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 DtlsFingerprintPacketExtension.ELEMENT_NAME,
                 DtlsFingerprintPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<DtlsFingerprintPacketExtension>(
-                        DtlsFingerprintPacketExtension.class));
+                        DtlsFingerprintPacketExtension::new));
 
         /*
          * XEP-0251: Jingle Session Transfer <transfer/> and <transferred>
          * providers
          */
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 TransferPacketExtension.ELEMENT_NAME,
                 TransferPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<TransferPacketExtension>(
                         TransferPacketExtension.class));
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 TransferredPacketExtension.ELEMENT_NAME,
                 TransferredPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<TransferredPacketExtension>(
                         TransferredPacketExtension.class));
 
         //conference description <callid/> provider
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 CallIdExtension.ELEMENT_NAME,
                 ConferenceDescriptionExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<CallIdExtension>(
                         CallIdExtension.class));
 
         //rtcp-fb
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 RtcpFbPacketExtension.ELEMENT_NAME,
                 RtcpFbPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<RtcpFbPacketExtension>(
-                        RtcpFbPacketExtension.class));
+                        RtcpFbPacketExtension::new));
 
         //rtcp-mux
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 RtcpmuxPacketExtension.ELEMENT_NAME,
                 IceUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<RtcpmuxPacketExtension>(
                         RtcpmuxPacketExtension.class));
 
         //web-socket
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 WebSocketPacketExtension.ELEMENT_NAME,
                 WebSocketPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
                         WebSocketPacketExtension.class));
 
         //ssrcInfo
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 SSRCInfoPacketExtension.ELEMENT_NAME,
                 SSRCInfoPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<SSRCInfoPacketExtension>(
-                        SSRCInfoPacketExtension.class));
+                        SSRCInfoPacketExtension::new));
     }
 
     /**
@@ -246,7 +243,7 @@ public class JingleIQProvider extends IQProvider<JingleIQ> {
         // Sub-elements providers
         DefaultPacketExtensionProvider<ContentPacketExtension> contentProvider
                 = new DefaultPacketExtensionProvider<ContentPacketExtension>(
-                        ContentPacketExtension.class);
+                        ContentPacketExtension::new);
         ReasonProvider reasonProvider = new ReasonProvider();
         DefaultPacketExtensionProvider<TransferPacketExtension> transferProvider
                 = new DefaultPacketExtensionProvider<TransferPacketExtension>(
@@ -301,8 +298,10 @@ public class JingleIQProvider extends IQProvider<JingleIQ> {
                     //<mute/>
                     if (type == SessionInfoType.mute
                             || type == SessionInfoType.unmute) {
-                        String name = parser.getAttributeValue("",
-                                MuteSessionInfoPacketExtension.NAME_ATTR_VALUE);
+                        String name = StringCanonicalizer.canonicalizeValue(
+                                parser.getAttributeValue("",
+                                        MuteSessionInfoPacketExtension
+                                                .NAME_ATTR_VALUE));
 
                         jingleIQ.setSessionInfo(
                                 new MuteSessionInfoPacketExtension(
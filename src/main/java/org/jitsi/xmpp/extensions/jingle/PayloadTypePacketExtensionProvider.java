@@ -0,0 +1,56 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.jingle;
+
+import org.jitsi.xmpp.extensions.*;
+
+/**
+ * Parses <tt>payload-type</tt> elements into
+ * {@link PayloadTypePacketExtension}s, storing the numeric attributes in their
+ * typed form while parsing.
+ */
+public class PayloadTypePacketExtensionProvider
+        extends DefaultPacketExtensionProvider<PayloadTypePacketExtension> {
+
+    /**
+     * Initializes a new <tt>PayloadTypePacketExtensionProvider</tt>.
+     */
+    public PayloadTypePacketExtensionProvider() {
+        super(PayloadTypePacketExtension::new);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void parseAttribute(
+            PayloadTypePacketExtension payloadType,
+            String name,
+            String value) {
+        switch (name) {
+            case PayloadTypePacketExtension.CHANNELS_ATTR_NAME:
+            case PayloadTypePacketExtension.CLOCKRATE_ATTR_NAME:
+            case PayloadTypePacketExtension.ID_ATTR_NAME:
+            case PayloadTypePacketExtension.MAXPTIME_ATTR_NAME:
+            case PayloadTypePacketExtension.PTIME_ATTR_NAME:
+                setNumberAttribute(payloadType, name, value);
+                break;
+            default:
+                super.parseAttribute(payloadType, name, value);
+                break;
+        }
+    }
+}
@@ -176,7 +176,8 @@ public class RTPHdrExtPacketExtension
         paramExt.setValue(attributes);
 
         // The rtp-hdrext extension can only contain a single "parameter" child
-        getChildExtensions().clear();
+        getChildExtensionsOfType(ExtensionElement.class)
+                .forEach(this::removeChildExtension);
         addChildExtension(paramExt);
     }
 
@@ -15,12 +15,8 @@
  */
 package org.jitsi.xmpp.extensions.jingle;
 
-import java.util.*;
-
 import org.jitsi.xmpp.extensions.*;
 
-import org.jivesoftware.smack.packet.*;
-
 /**
  * An {@link AbstractPacketExtension} implementation for transport elements.
  *
@@ -46,15 +42,4 @@ public class RawUdpTransportPacketExtension
     public RawUdpTransportPacketExtension() {
         super(NAMESPACE, ELEMENT_NAME);
     }
-
-    /**
-     * Returns this element's child (local or remote) candidate elements.
-     *
-     * @return this element's child (local or remote) candidate elements.
-     */
-    @Override
-    public List<? extends ExtensionElement> getChildExtensions() {
-        // TODO Auto-generated method stub
-        return super.getChildExtensions();
-    }
 }
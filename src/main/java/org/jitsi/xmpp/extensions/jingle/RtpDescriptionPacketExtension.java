@@ -53,7 +53,7 @@ public class RtpDescriptionPacketExtension
      * The list of payload types that this description element contains.
      */
     private final List<PayloadTypePacketExtension> payloadTypes
-            = new ArrayList<>();
+            = new TrackedList<>();
 
     /**
      * An optional encryption element that contains encryption parameters for
@@ -71,12 +71,8 @@ public class RtpDescriptionPacketExtension
      * A <tt>List</tt> of the optional <tt>extmap</tt> elements that allow
      * negotiating RTP extension headers as per RFC 5282.
      */
-    private List<RTPHdrExtPacketExtension> extmapList = new ArrayList<>();
-
-    /**
-     * The combined list of all child elements that this extension contains.
-     */
-    private List<ExtensionElement> children;
+    private final List<RTPHdrExtPacketExtension> extmapList
+            = new TrackedList<>();
 
     /**
      * Creates a new <tt>RtpDescriptionPacketExtension</tt>.
@@ -153,10 +149,13 @@ public class RtpDescriptionPacketExtension
      * registered with this description so far.
      *
      * @return a <b>reference</b> to the list of payload types that we have
-     * registered with this description so far.
+     * registered with this description so far (which cannot be modified if
+     * this description is frozen).
      */
     public List<PayloadTypePacketExtension> getPayloadTypes() {
-        return payloadTypes;
+        return isFrozen()
+                ? Collections.unmodifiableList(payloadTypes)
+                : payloadTypes;
     }
 
     /**
@@ -167,11 +166,7 @@ public class RtpDescriptionPacketExtension
      */
     @Override
     public List<? extends ExtensionElement> getChildExtensions() {
-        if (children == null) {
-            children = new ArrayList<ExtensionElement>();
-        } else {
-            children.clear();
-        }
+        List<ExtensionElement> children = new ArrayList<>();
 
         //payload types
         children.addAll(payloadTypes);
@@ -196,6 +191,18 @@ public class RtpDescriptionPacketExtension
         return children;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The lists of payload types and <tt>extmap</tt> elements report their
+     * changes, including those made through the references returned by
+     * {@link #getPayloadTypes()} and {@link #getExtmapList()}.
+     */
+    @Override
+    protected boolean tracksChildExtensionChanges() {
+        return true;
+    }
+
     /**
      * Casts <tt>childExtension</tt> to one of the extensions allowed here and
      * sets the corresponding field.
@@ -225,7 +232,9 @@ public class RtpDescriptionPacketExtension
      * add to this packet.
      */
     public void setEncryption(EncryptionPacketExtension encryption) {
+        checkNotFrozen();
         this.encryption = encryption;
+        invalidateXML();
     }
 
     /**
@@ -247,7 +256,9 @@ public class RtpDescriptionPacketExtension
      * add to this packet.
      */
     public void setBandwidth(BandwidthPacketExtension bandwidth) {
+        checkNotFrozen();
         this.bandwidth = bandwidth;
+        invalidateXML();
     }
 
     /**
@@ -280,6 +291,63 @@ public class RtpDescriptionPacketExtension
      * allow negotiating RTP extension headers as per RFC 5282.
      */
     public List<RTPHdrExtPacketExtension> getExtmapList() {
-        return extmapList;
+        return isFrozen()
+                ? Collections.unmodifiableList(extmapList)
+                : extmapList;
+    }
+
+    /**
+     * A list of child extensions kept by this description which rejects
+     * modifications once this description is frozen and reports them through
+     * {@link #invalidateXML()}.
+     *
+     * @param <E> the type of the elements.
+     */
+    private class TrackedList<E>
+            extends AbstractList<E>
+            implements RandomAccess {
+        /**
+         * The elements of this list.
+         */
+        private final List<E> elements = new ArrayList<>();
+
+        @Override
+        public E get(int index) {
+            return elements.get(index);
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public E set(int index, E element) {
+            checkNotFrozen();
+
+            E oldElement = elements.set(index, element);
+
+            invalidateXML();
+            return oldElement;
+        }
+
+        @Override
+        public void add(int index, E element) {
+            checkNotFrozen();
+            elements.add(index, element);
+            modCount++;
+            invalidateXML();
+        }
+
+        @Override
+        public E remove(int index) {
+            checkNotFrozen();
+
+            E oldElement = elements.remove(index);
+
+            modCount++;
+            invalidateXML();
+            return oldElement;
+        }
     }
 }
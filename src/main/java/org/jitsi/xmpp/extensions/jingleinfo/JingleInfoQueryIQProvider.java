@@ -46,7 +46,7 @@ public class JingleInfoQueryIQProvider
      * application to register the <tt>JingleInfoQueryIQProvider</tt> itself.
      */
     public JingleInfoQueryIQProvider() {
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 ServerPacketExtension.ELEMENT_NAME,
                 ServerPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<ServerPacketExtension>(ServerPacketExtension.class));
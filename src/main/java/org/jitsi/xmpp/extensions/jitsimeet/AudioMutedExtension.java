@@ -42,6 +42,8 @@ public class AudioMutedExtension
      */
     public AudioMutedExtension() {
         super(NAMESPACE, ELEMENT_NAME);
+
+        setXMLCachingEnabled(true);
     }
 
     /**
@@ -68,6 +68,8 @@ public class ComponentVersionsExtension
      */
     public ComponentVersionsExtension() {
         super(NAMESPACE, ELEMENT_NAME);
+
+        setXMLCachingEnabled(true);
     }
 
     /**
@@ -81,6 +81,8 @@ public class ConferenceProperties
      */
     public ConferenceProperties() {
         super(NAMESPACE, ELEMENT_NAME);
+
+        setXMLCachingEnabled(true);
     }
 
     /**
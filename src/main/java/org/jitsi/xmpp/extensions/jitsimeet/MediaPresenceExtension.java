@@ -54,14 +54,14 @@ public class MediaPresenceExtension
      */
     public static void registerExtensions() {
         // <media>
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 MediaPresenceExtension.ELEMENT_NAME,
                 MediaPresenceExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<MediaPresenceExtension>(
                         MediaPresenceExtension.class));
 
         // <source>
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 MediaPresenceExtension.Source.ELEMENT_NAME,
                 MediaPresenceExtension.Source.NAMESPACE,
                 new DefaultPacketExtensionProvider<Source>(
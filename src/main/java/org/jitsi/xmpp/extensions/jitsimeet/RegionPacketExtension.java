@@ -40,6 +40,8 @@ public class RegionPacketExtension
      */
     public RegionPacketExtension() {
         super(NAMESPACE, ELEMENT_NAME);
+
+        setXMLCachingEnabled(true);
     }
 
     /**
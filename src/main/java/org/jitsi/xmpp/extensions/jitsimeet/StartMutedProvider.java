@@ -15,6 +15,7 @@
  */
 package org.jitsi.xmpp.extensions.jitsimeet;
 
+import org.jitsi.xmpp.extensions.*;
 import org.jivesoftware.smack.provider.*;
 import org.xmlpull.v1.*;
 
@@ -30,7 +31,7 @@ public class StartMutedProvider
      * Registers this extension provider into the <tt>ProviderManager</tt>.
      */
     public static void registerStartMutedProvider() {
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 StartMutedPacketExtension.ELEMENT_NAME,
                 StartMutedPacketExtension.NAMESPACE,
                 new StartMutedProvider());
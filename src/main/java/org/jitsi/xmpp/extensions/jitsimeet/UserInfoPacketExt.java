@@ -49,6 +49,8 @@ public class UserInfoPacketExt
      */
     public UserInfoPacketExt() {
         super(NAMESPACE, ELEMENT_NAME);
+
+        setXMLCachingEnabled(true);
     }
 
     /**
@@ -41,6 +41,8 @@ public class VideoMutedExtension
      */
     public VideoMutedExtension() {
         super(NAMESPACE, ELEMENT_NAME);
+
+        setXMLCachingEnabled(true);
     }
 
     /**
@@ -76,7 +76,7 @@ public class EndExtension
      */
     public void setReason(ReasonExtension newReason) {
         if (this.reason != null) {
-            getChildExtensions().remove(this.reason);
+            removeChildExtension(this.reason);
         }
 
         this.reason = newReason;
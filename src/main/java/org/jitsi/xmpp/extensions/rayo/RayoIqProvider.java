@@ -61,13 +61,13 @@ public class RayoIqProvider
                 this);
 
         // <end> presence extension
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 EndExtension.ELEMENT_NAME,
                 NAMESPACE,
                 new DefaultPacketExtensionProvider<>(EndExtension.class));
 
         // <header> extension
-        ProviderManager.addExtensionProvider(
+        ExtensionProviderCache.addExtensionProvider(
                 HeaderExtension.ELEMENT_NAME,
                 NAMESPACE,
                 new DefaultPacketExtensionProvider<>(HeaderExtension.class));
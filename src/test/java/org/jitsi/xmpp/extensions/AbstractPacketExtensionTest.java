@@ -0,0 +1,636 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import junit.framework.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.util.*;
+
+import org.jitsi.xmpp.extensions.colibri.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.jitsi.xmpp.extensions.jitsimeet.*;
+
+/**
+ * Tests {@link AbstractPacketExtension}.
+ */
+public class AbstractPacketExtensionTest
+        extends TestCase {
+
+    /**
+     * Tests that typed attribute values are exposed through the String-based
+     * API exactly as they were when they were stored as strings.
+     */
+    public void testTypedAttributes() {
+        CandidatePacketExtension candidate = new CandidatePacketExtension();
+
+        candidate.setPort(10000);
+        candidate.setPriority(2130706431);
+        candidate.setType(CandidateType.srflx);
+
+        assertEquals(10000, candidate.getPort());
+        assertEquals("10000", candidate.getAttribute("port"));
+        assertEquals("10000", candidate.getAttributeAsString("port"));
+        assertEquals(2130706431, candidate.getPriority());
+        assertEquals(CandidateType.srflx, candidate.getType());
+        assertEquals("srflx", candidate.getAttribute("type"));
+
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(-1L << 1);
+        assertEquals(0xfffffffeL, source.getSSRC());
+        assertEquals("4294967294", source.getAttributeAsString("ssrc"));
+    }
+
+    /**
+     * Tests that a value parsed from text is only parsed once and that its
+     * original text is kept.
+     */
+    public void testParseOnce() {
+        PayloadTypePacketExtension payloadType
+                = new PayloadTypePacketExtension();
+
+        payloadType.setAttribute("id", "0100");
+        payloadType.setAttribute("clockrate", "90000");
+
+        assertEquals(100, payloadType.getID());
+        assertTrue(
+                payloadType.attributes.get("id")
+                        instanceof TypedAttributeValue);
+        assertEquals(100, payloadType.getID());
+        assertEquals("0100", payloadType.getAttribute("id"));
+        assertEquals(90000, payloadType.getClockrate());
+        assertEquals(90000L, payloadType.getAttributeAsLong("clockrate"));
+
+        payloadType.setAttribute("id", "not a number");
+        try {
+            payloadType.getID();
+            fail("Expected a NumberFormatException");
+        } catch (NumberFormatException expected) {
+        }
+
+        ContentPacketExtension content = new ContentPacketExtension();
+
+        content.setAttribute(
+                ContentPacketExtension.SENDERS_ATTR_NAME,
+                "recvonly");
+        try {
+            content.getSenders();
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        content.setSenders(ContentPacketExtension.SendersEnum.initiator);
+        assertEquals(
+                ContentPacketExtension.SendersEnum.initiator,
+                content.getSenders());
+    }
+
+    /**
+     * Tests that cloning keeps typed attributes and their order.
+     */
+    public void testCloneAttributes() {
+        CandidatePacketExtension candidate = new CandidatePacketExtension();
+
+        candidate.setIP("10.0.0.1");
+        candidate.setPort(10000);
+        candidate.setComponent(1);
+
+        CandidatePacketExtension clone
+                = AbstractPacketExtension.clone(candidate);
+
+        assertEquals(candidate.getAttributeNames(), clone.getAttributeNames());
+        assertEquals(10000, clone.getPort());
+        clone.setPort(10001);
+        assertEquals(10000, candidate.getPort());
+    }
+
+    /**
+     * Tests that streaming an extension tree produces the same XML as
+     * {@link AbstractPacketExtension#toXML()}, including for children which
+     * override <tt>toXML()</tt>.
+     */
+    public void testWriteTo()
+            throws Exception {
+        ContentPacketExtension content = new ContentPacketExtension(
+                ContentPacketExtension.CreatorEnum.initiator, "audio");
+        RtpDescriptionPacketExtension description
+                = new RtpDescriptionPacketExtension();
+        PayloadTypePacketExtension payloadType
+                = new PayloadTypePacketExtension();
+
+        payloadType.setId(111);
+        payloadType.setName("opus");
+        payloadType.setClockrate(48000);
+        payloadType.addParameter(
+                new ParameterPacketExtension("useinbandfec", "1"));
+        description.addPayloadType(payloadType);
+        content.addChildExtension(description);
+
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        stats.addStat("conferences", 3);
+        content.addChildExtension(stats);
+
+        XmlStringBuilder xml = new XmlStringBuilder();
+
+        content.writeTo(xml);
+        assertEquals(content.toXML(), xml.toString());
+
+        StringBuilder out = new StringBuilder();
+
+        content.writeTo(out);
+        assertEquals(content.toXML(), out.toString());
+    }
+
+    /**
+     * Tests that cached XML is reused until the extension or one of its
+     * descendants is modified.
+     */
+    public void testXMLCaching() {
+        ConferenceProperties properties = new ConferenceProperties();
+
+        properties.put(ConferenceProperties.KEY_OCTO_ENABLED, "false");
+
+        String xml = properties.toXML();
+
+        assertTrue(properties.isXMLCachingEnabled());
+        assertSame(xml, properties.toXML());
+
+        ConferenceProperties.ConferenceProperty property
+                = properties.getProperties().get(0);
+
+        property.setAttribute(
+                ConferenceProperties.ConferenceProperty.VALUE_ATTR_NAME,
+                "true");
+        assertNotSame(xml, properties.toXML());
+        assertTrue(properties.toXML().contains("true"));
+
+        properties.removeChildExtension(property);
+        assertFalse(properties.toXML().contains("property"));
+
+        // The removed child no longer invalidates its former parent.
+        xml = properties.toXML();
+        property.setAttribute(
+                ConferenceProperties.ConferenceProperty.VALUE_ATTR_NAME,
+                "false");
+        assertSame(xml, properties.toXML());
+
+        properties.setXMLCachingEnabled(false);
+        assertNotSame(properties.toXML(), properties.toXML());
+
+        try {
+            new IceUdpTransportPacketExtension().setXMLCachingEnabled(true);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * Tests that typed lookups of child extensions stay consistent with the
+     * child extensions as they are added and removed.
+     */
+    public void testChildExtensionsOfType() {
+        ContentPacketExtension content = new ContentPacketExtension();
+        RtpDescriptionPacketExtension description
+                = new RtpDescriptionPacketExtension();
+        IceUdpTransportPacketExtension transport
+                = new IceUdpTransportPacketExtension();
+        RawUdpTransportPacketExtension rawUdpTransport
+                = new RawUdpTransportPacketExtension();
+
+        content.addChildExtension(transport);
+        assertNull(JingleUtils.getRtpDescription(content));
+
+        List<IceUdpTransportPacketExtension> transports
+                = content.getChildExtensionsOfTypeView(
+                        IceUdpTransportPacketExtension.class);
+
+        assertEquals(Collections.singletonList(transport), transports);
+        assertSame(
+                transports,
+                content.getChildExtensionsOfTypeView(
+                        IceUdpTransportPacketExtension.class));
+
+        content.addChildExtension(description);
+        content.addChildExtension(rawUdpTransport);
+        assertSame(description, JingleUtils.getRtpDescription(content));
+        // RawUdpTransportPacketExtension extends IceUdpTransportPacketExtension
+        assertEquals(
+                Arrays.asList(transport, rawUdpTransport),
+                content.getChildExtensionsOfType(
+                        IceUdpTransportPacketExtension.class));
+        // Views are snapshots.
+        assertEquals(1, transports.size());
+
+        content.removeChildExtension(transport);
+        assertEquals(
+                Collections.singletonList(rawUdpTransport),
+                content.getChildExtensionsOfTypeView(
+                        IceUdpTransportPacketExtension.class));
+        assertEquals(
+                Arrays.asList(description, rawUdpTransport),
+                content.getChildExtensions());
+
+        // Subclasses which override getChildExtensions() are looked up
+        // through it.
+        CandidatePacketExtension candidate = new CandidatePacketExtension();
+
+        transport.addChildExtension(candidate);
+        assertSame(
+                candidate,
+                transport.getFirstChildOfType(CandidatePacketExtension.class));
+    }
+
+    /**
+     * Tests that the list returned by <tt>getChildExtensions()</tt> can be
+     * modified and that its modifications are tracked like those made
+     * through the methods of the extension.
+     */
+    public void testModifyChildExtensions() {
+        ConferenceProperties properties = new ConferenceProperties();
+
+        properties.put("a", "1");
+        properties.put("b", "2");
+        properties.put("c", "3");
+
+        String xml = properties.toXML();
+        List<? extends ExtensionElement> children
+                = properties.getChildExtensions();
+        ExtensionElement a = children.get(0);
+        ExtensionElement b = children.get(1);
+        ExtensionElement c = children.get(2);
+
+        assertSame(b, children.remove(1));
+        assertEquals(Arrays.asList(a, c), children);
+        assertEquals(Arrays.asList(a, c), properties.getChildExtensions());
+        assertFalse(properties.toXML().equals(xml));
+        assertFalse(properties.toXML().contains("\"b\""));
+
+        // The list is a snapshot: a child added to the extension is not in
+        // it, but positions in it still refer to the same children.
+        ConferenceProperties.ConferenceProperty d
+                = new ConferenceProperties.ConferenceProperty("d", "4");
+
+        properties.addChildExtension(d);
+        assertEquals(2, children.size());
+        for (Iterator<? extends ExtensionElement> it = children.iterator();
+                it.hasNext();) {
+            if (it.next() == a) {
+                it.remove();
+            }
+        }
+        assertEquals(Arrays.asList(c, d), children);
+        assertEquals(Arrays.asList(c, d), properties.getChildExtensions());
+        assertEquals(
+                Arrays.asList(c, d),
+                properties.getChildExtensionsOfTypeView(
+                        ConferenceProperties.ConferenceProperty.class));
+
+        // A removed child no longer invalidates its former parent.
+        xml = properties.toXML();
+        ((AbstractPacketExtension) a).setAttribute("value", "5");
+        assertSame(xml, properties.toXML());
+
+        properties.getChildExtensions().clear();
+        assertTrue(properties.getChildExtensions().isEmpty());
+        assertFalse(properties.toXML().contains("property"));
+
+        properties.freeze();
+        try {
+            properties.getChildExtensions().clear();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * Tests that lookups by type are indexed for the subclasses which
+     * override <tt>getChildExtensions()</tt> and track its changes.
+     */
+    public void testTrackedChildExtensionsOfType() {
+        IceUdpTransportPacketExtension transport
+                = new IceUdpTransportPacketExtension();
+        CandidatePacketExtension candidate = new CandidatePacketExtension();
+
+        transport.addCandidate(candidate);
+
+        List<CandidatePacketExtension> candidates
+                = transport.getChildExtensionsOfTypeView(
+                        CandidatePacketExtension.class);
+
+        assertEquals(Collections.singletonList(candidate), candidates);
+        assertSame(
+                candidates,
+                transport.getChildExtensionsOfTypeView(
+                        CandidatePacketExtension.class));
+
+        transport.removeCandidate(candidate);
+        assertTrue(
+                transport.getChildExtensionsOfTypeView(
+                        CandidatePacketExtension.class).isEmpty());
+
+        RtpDescriptionPacketExtension description
+                = new RtpDescriptionPacketExtension();
+        PayloadTypePacketExtension opus = new PayloadTypePacketExtension();
+
+        description.addPayloadType(opus);
+        assertSame(
+                opus,
+                description.getFirstChildOfType(
+                        PayloadTypePacketExtension.class));
+
+        // Changes made through the reference to the list are tracked too.
+        description.getPayloadTypes().clear();
+        assertNull(
+                description.getFirstChildOfType(
+                        PayloadTypePacketExtension.class));
+        assertFalse(description.toXML().contains("payload-type"));
+    }
+
+    /**
+     * Adds, removes, looks up and serializes child extensions from many
+     * threads at once and verifies that readers never fail and that no
+     * modification is lost.
+     */
+    public void testConcurrentChildExtensions()
+            throws Exception {
+        final int writers = 4;
+        final int readers = 4;
+        final int childrenPerWriter = 500;
+        AbstractPacketExtension parent
+                = new AbstractPacketExtension(null, "parent") { };
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writersDone = new CountDownLatch(writers);
+
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+
+                    List<ParameterPacketExtension> added = new ArrayList<>();
+
+                    for (int i = 0; i < childrenPerWriter; i++) {
+                        ParameterPacketExtension child
+                                = new ParameterPacketExtension(
+                                        writer + "-" + i, "v");
+
+                        parent.addChildExtension(child);
+                        added.add(child);
+                        if (i % 2 == 1) {
+                            assertTrue(
+                                    parent.removeChildExtension(
+                                            added.get(i - 1)));
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    writersDone.countDown();
+                }
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    while (writing.get()) {
+                        List<? extends ExtensionElement> all
+                                = parent.getChildExtensions();
+                        int size = all.size();
+                        int count = 0;
+
+                        for (ExtensionElement child : all) {
+                            assertNotNull(child);
+                            count++;
+                        }
+                        assertEquals(size, count);
+
+                        for (ParameterPacketExtension child
+                                : parent.getChildExtensionsOfTypeView(
+                                        ParameterPacketExtension.class)) {
+                            assertNotNull(child.getName());
+                        }
+
+                        String xml = parent.toXML();
+
+                        assertTrue(
+                                xml,
+                                xml.endsWith("</parent>")
+                                    || xml.endsWith("/>"));
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        start.countDown();
+        writersDone.await(60, TimeUnit.SECONDS);
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join(60000);
+        }
+
+        if (!failures.isEmpty()) {
+            AssertionFailedError error
+                    = new AssertionFailedError(failures.size() + " failures");
+
+            error.initCause(failures.get(0));
+            throw error;
+        }
+
+        // Exactly the odd children of every writer remain.
+        List<? extends ExtensionElement> all = parent.getChildExtensions();
+        Set<String> names = new HashSet<>();
+
+        assertEquals(writers * childrenPerWriter / 2, all.size());
+        for (ExtensionElement child : all) {
+            String name = ((ParameterPacketExtension) child).getName();
+
+            assertTrue(name, Integer.parseInt(name.split("-")[1]) % 2 == 1);
+            names.add(name);
+        }
+        assertEquals(all.size(), names.size());
+        assertEquals(
+                all,
+                parent.getChildExtensionsOfTypeView(
+                        ParameterPacketExtension.class));
+    }
+
+    /**
+     * Tests that a deep copy reproduces the whole tree, including children
+     * kept by subclasses, and is independent of the original.
+     */
+    public void testDeepClone() {
+        IceUdpTransportPacketExtension transport
+                = new IceUdpTransportPacketExtension();
+
+        transport.setUfrag("ufrag");
+        for (int i = 0; i < 3; i++) {
+            CandidatePacketExtension candidate
+                    = new CandidatePacketExtension();
+
+            candidate.setIP("10.0.0." + i);
+            candidate.setPort(10000 + i);
+            transport.addCandidate(candidate);
+        }
+        transport.addChildExtension(new RtcpmuxPacketExtension());
+
+        DtlsFingerprintPacketExtension fingerprint
+                = new DtlsFingerprintPacketExtension();
+
+        fingerprint.setHash("sha-256");
+        fingerprint.setFingerprint("AB:CD");
+        transport.addChildExtension(fingerprint);
+
+        IceUdpTransportPacketExtension copy
+                = AbstractPacketExtension.deepClone(transport);
+
+        assertEquals(transport.toXML(), copy.toXML());
+        assertEquals(3, copy.getCandidateList().size());
+        assertNotSame(
+                transport.getCandidateList().get(0),
+                copy.getCandidateList().get(0));
+
+        copy.getCandidateList().get(0).setPort(20000);
+        copy.getFirstChildOfType(DtlsFingerprintPacketExtension.class)
+                .setFingerprint("EF:01");
+        assertEquals(10000, transport.getCandidateList().get(0).getPort());
+        assertEquals("AB:CD", fingerprint.getFingerprint());
+
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(1);
+        source.addParameter(new ParameterPacketExtension("msid", "a b"));
+
+        SourcePacketExtension sourceCopy = source.copy();
+
+        assertEquals(source.toXML(), sourceCopy.toXML());
+        assertNotSame(
+                source.getParameters().get(0),
+                sourceCopy.getParameters().get(0));
+    }
+
+    /**
+     * Tests that a frozen tree rejects modifications, caches its XML and is
+     * shared rather than copied.
+     */
+    public void testFreeze() {
+        RtpDescriptionPacketExtension description
+                = new RtpDescriptionPacketExtension();
+        PayloadTypePacketExtension opus = new PayloadTypePacketExtension();
+
+        opus.setId(111);
+        opus.setName("opus");
+        opus.addParameter(new ParameterPacketExtension("minptime", "10"));
+        description.addPayloadType(opus);
+        description.setMedia("audio");
+
+        String xml = description.toXML();
+
+        description.freeze();
+        assertTrue(description.isFrozen());
+        assertTrue(opus.isFrozen());
+        assertTrue(opus.getParameters().get(0).isFrozen());
+        assertEquals(xml, description.toXML());
+        assertSame(description.toXML(), description.toXML());
+
+        try {
+            opus.setClockrate(48000);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            description.addPayloadType(new PayloadTypePacketExtension());
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            description.getPayloadTypes().clear();
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        // Frozen subtrees are shared by deep copies of their ancestors.
+        ContentPacketExtension content = new ContentPacketExtension();
+
+        content.addChildExtension(description);
+
+        ContentPacketExtension copy
+                = AbstractPacketExtension.deepClone(content);
+
+        assertNotSame(content, copy);
+        assertSame(description, JingleUtils.getRtpDescription(copy));
+
+        // A copy of a frozen extension itself can be modified.
+        RtpDescriptionPacketExtension descriptionCopy
+                = AbstractPacketExtension.deepClone(description);
+
+        assertNotSame(description, descriptionCopy);
+        assertFalse(descriptionCopy.isFrozen());
+        assertSame(opus, descriptionCopy.getPayloadTypes().get(0));
+        descriptionCopy.setMedia("video");
+        descriptionCopy.addPayloadType(new PayloadTypePacketExtension());
+        assertEquals("audio", description.getMedia());
+        assertEquals(1, description.getPayloadTypes().size());
+
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(1);
+        source.freeze();
+
+        SourcePacketExtension sourceCopy = source.copy();
+
+        sourceCopy.setSSRC(2);
+        assertEquals(1, source.getSSRC());
+
+        // A plain clone is a mutable copy of the attributes.
+        PayloadTypePacketExtension opusClone
+                = AbstractPacketExtension.clone(opus);
+
+        assertFalse(opusClone.isFrozen());
+        opusClone.setClockrate(48000);
+        assertEquals(-1, opus.getClockrate());
+
+        // A COLIBRI channel shares a frozen payload type which already uses
+        // the COLIBRI namespace and copies it otherwise.
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+
+        channel.addPayloadType(opus);
+        assertNotSame(opus, channel.getPayloadTypes().get(0));
+        assertEquals(PayloadTypePacketExtension.NAMESPACE, opus.getNamespace());
+
+        PayloadTypePacketExtension colibriOpus
+                = PayloadTypePacketExtension.clone(opus);
+
+        colibriOpus.setNamespace(null);
+        colibriOpus.getParameters().forEach(p -> p.setNamespace(null));
+        colibriOpus.freeze();
+        channel = new ColibriConferenceIQ.Channel();
+        channel.addPayloadType(colibriOpus);
+        assertSame(colibriOpus, channel.getPayloadTypes().get(0));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ * Tests {@link AttributeMap}.
+ */
+public class AttributeMapTest
+        extends TestCase {
+
+    /**
+     * The attributes of a typical ICE candidate.
+     */
+    private static final String[][] CANDIDATE_ATTRIBUTES = {
+            { "component", "1" },
+            { "foundation", "1" },
+            { "generation", "0" },
+            { "id", "6f5a2c0a1b2c3d4e" },
+            { "network", "0" },
+            { "priority", "2130706431" },
+            { "protocol", "udp" },
+            { "type", "host" },
+            { "ip", "10.0.0.1" },
+            { "port", "10000" }
+    };
+
+    /**
+     * Tests that insertion order is preserved across replacements and
+     * removals, like with a <tt>LinkedHashMap</tt>.
+     */
+    public void testInsertionOrder() {
+        Map<String, Object> map = new AttributeMap();
+        Map<String, Object> expected = new LinkedHashMap<>();
+
+        for (Map<String, Object> m : Arrays.asList(map, expected)) {
+            m.put("name", "opus");
+            m.put("id", "111");
+            m.put("clockrate", "48000");
+            m.put("id", "112");
+            m.put("channels", "2");
+            m.remove("name");
+            m.put("name", "red");
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(
+                new ArrayList<>(expected.keySet()),
+                new ArrayList<>(map.keySet()));
+        assertEquals(
+                new ArrayList<>(expected.values()),
+                new ArrayList<>(map.values()));
+        assertEquals(expected, map);
+        assertEquals("112", map.get("id"));
+        assertNull(map.remove("unknown"));
+    }
+
+    /**
+     * Tests that iteration works on a snapshot and tolerates concurrent
+     * modification of the map.
+     */
+    public void testSnapshotIteration() {
+        Map<String, Object> map = new AttributeMap();
+
+        map.put("a", "1");
+        map.put("b", "2");
+
+        Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator();
+
+        map.put("c", "3");
+        map.remove("a");
+
+        assertEquals("a", it.next().getKey());
+        assertEquals("b", it.next().getKey());
+        assertFalse(it.hasNext());
+
+        it.remove();
+        assertEquals(Collections.singleton("c"), map.keySet());
+    }
+
+    /**
+     * Tests that the attributes of an extension are serialized in insertion
+     * order.
+     */
+    public void testSerializationOrder() {
+        AbstractPacketExtension ext
+                = new AbstractPacketExtension(null, "candidate") { };
+
+        ext.setAttribute("b", "2");
+        ext.setAttribute("a", "1");
+        ext.setAttribute("c", "3");
+        ext.setAttribute("a", "4");
+        ext.removeAttribute("b");
+
+        assertEquals(Arrays.asList("a", "c"), ext.getAttributeNames());
+        assertEquals(4, ext.getAttributeAsInt("a"));
+        assertEquals(-1, ext.getAttributeAsInt("b"));
+    }
+
+    /**
+     * Tests that the attributes of a typical candidate are stored under
+     * interned names, and that a map sharing them is not affected by later
+     * changes to either map.
+     */
+    public void testCandidateAttributes() {
+        AttributeMap map = new AttributeMap();
+        Map<String, Object> expected = new LinkedHashMap<>();
+
+        for (String[] attribute : CANDIDATE_ATTRIBUTES) {
+            // A name read from the wire is not the interned constant.
+            map.put(new String(attribute[0]), attribute[1]);
+            expected.put(attribute[0], attribute[1]);
+        }
+
+        assertEquals(expected, map);
+
+        Iterator<String> names = map.keySet().iterator();
+
+        for (String[] attribute : CANDIDATE_ATTRIBUTES) {
+            assertSame(attribute[0], names.next());
+        }
+
+        AttributeMap copy = new AttributeMap();
+
+        copy.share(map);
+        copy.put("port", "10001");
+        map.remove("ip");
+
+        assertEquals("10000", map.get("port"));
+        assertEquals("10.0.0.1", copy.get("ip"));
+        assertEquals(CANDIDATE_ATTRIBUTES.length, copy.size());
+        assertEquals(CANDIDATE_ATTRIBUTES.length - 1, map.size());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import junit.framework.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
+
+/**
+ * Tests {@link ExtensionProviderCache}.
+ */
+public class ExtensionProviderCacheTest
+        extends TestCase {
+
+    private static final String NAMESPACE
+            = "urn:test:extension-provider-cache";
+
+    /**
+     * Returns a new provider which is only compared by identity.
+     */
+    @SuppressWarnings("unchecked")
+    private static ExtensionElementProvider<ExtensionElement> provider() {
+        ExtensionElementProvider<?> provider
+                = new DefaultPacketExtensionProvider<AbstractPacketExtension>(
+                        () -> null);
+
+        return (ExtensionElementProvider<ExtensionElement>) provider;
+    }
+
+    /**
+     * Checks that registrations made directly with {@link ProviderManager}
+     * are picked up by a cache which has already been used.
+     */
+    public void testDirectRegistrations() {
+        ExtensionProviderCache cache = new ExtensionProviderCache();
+        ExtensionElementProvider<ExtensionElement> own = provider();
+        ExtensionElementProvider<ExtensionElement> direct = provider();
+        ExtensionElementProvider<ExtensionElement> replacement = provider();
+
+        try {
+            ExtensionProviderCache.addExtensionProvider("own", NAMESPACE, own);
+            ProviderManager.addExtensionProvider("direct", NAMESPACE, direct);
+            assertSame(own, cache.get("own", NAMESPACE));
+            assertSame(direct, cache.get("direct", NAMESPACE));
+
+            // A provider which is registered directly is never cached.
+            ProviderManager.addExtensionProvider(
+                    "direct", NAMESPACE, replacement);
+            assertSame(replacement, cache.get("direct", NAMESPACE));
+            ProviderManager.removeExtensionProvider("direct", NAMESPACE);
+            assertNull(cache.get("direct", NAMESPACE));
+
+            // Nor is one which replaces a provider of this library directly.
+            ProviderManager.addExtensionProvider("own", NAMESPACE, direct);
+            ExtensionProviderCache.invalidateAll();
+            assertSame(direct, cache.get("own", NAMESPACE));
+            ProviderManager.addExtensionProvider(
+                    "own", NAMESPACE, replacement);
+            assertSame(replacement, cache.get("own", NAMESPACE));
+
+            // The wrappers update the caches.
+            ExtensionProviderCache.addExtensionProvider("own", NAMESPACE, own);
+            assertSame(own, cache.get("own", NAMESPACE));
+            ExtensionProviderCache.removeExtensionProvider("own", NAMESPACE);
+            assertNull(cache.get("own", NAMESPACE));
+        } finally {
+            ProviderManager.removeExtensionProvider("own", NAMESPACE);
+            ProviderManager.removeExtensionProvider("direct", NAMESPACE);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests {@link BridgeLoadIndex}.
+ */
+public class BridgeLoadIndexTest
+        extends TestCase {
+
+    /**
+     * Creates the stats of a bridge.
+     */
+    private static ColibriStatsExtension stats(
+            String region,
+            int participants,
+            double cpuUsage,
+            boolean shuttingDown) {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        if (region != null) {
+            stats.addStat(ColibriStatsExtension.REGION, region);
+        }
+        stats.addStat(ColibriStatsExtension.PARTICIPANTS, participants);
+        stats.addStat(ColibriStatsExtension.CPU_USAGE, cpuUsage);
+        if (shuttingDown) {
+            stats.addStat(ColibriStatsExtension.SHUTDOWN_IN_PROGRESS, true);
+        }
+        return stats;
+    }
+
+    /**
+     * Tests the selection of bridges as their loads change.
+     */
+    public void testSelection() {
+        BridgeLoadIndex index = new BridgeLoadIndex();
+
+        assertNull(index.getBest());
+        assertNull(index.getBest("eu"));
+
+        index.update("a", stats("eu", 10, 0, false));
+        index.update("b", stats("eu", 5, 0, false));
+        index.update("c", stats("us", 1, 0, false));
+        index.update("d", stats(null, 0, 0, false));
+
+        assertEquals("d", index.getBest());
+        assertEquals("b", index.getBest("eu"));
+        assertEquals("c", index.getBest("us"));
+        assertNull(index.getBest("ap"));
+        assertEquals(Arrays.asList("b", "a"), index.getBridges("eu"));
+        assertEquals(5d, index.getScore("b"));
+
+        // b gets busier than a.
+        index.update("b", stats("eu", 20, 0, false));
+        assertEquals(Arrays.asList("a", "b"), index.getBridges("eu"));
+
+        // b moves to another region.
+        index.update("b", stats("us", 0, 0, false));
+        assertEquals(Arrays.asList("a"), index.getBridges("eu"));
+        assertEquals("b", index.getBest("us"));
+
+        // Ties are broken by bridge ID.
+        index.update("a", stats("us", 0, 0, false));
+        assertEquals(Arrays.asList("a", "b", "c"), index.getBridges("us"));
+        assertEquals("a", index.getBest());
+
+        assertTrue(index.remove("a"));
+        assertFalse(index.remove("a"));
+        assertEquals("b", index.getBest());
+        assertTrue(Double.isNaN(index.getScore("a")));
+    }
+
+    /**
+     * Tests that bridges in graceful shutdown are not selected.
+     */
+    public void testShutdown() {
+        BridgeLoadIndex index = new BridgeLoadIndex();
+
+        index.update("a", stats("eu", 10, 0, false));
+        index.update("b", stats("eu", 5, 0, false));
+        index.update("b", stats("eu", 0, 0, true));
+
+        assertTrue(index.isShuttingDown("b"));
+        assertEquals("a", index.getBest("eu"));
+        assertEquals("a", index.getBest());
+
+        index.update("a", stats("eu", 10, 0, true));
+        assertNull(index.getBest("eu"));
+        assertNull(index.getBest());
+
+        // Removing a bridge which is shutting down.
+        assertTrue(index.remove("a"));
+        assertFalse(index.isShuttingDown("a"));
+
+        // Shutdown was cancelled.
+        index.update("b", stats("eu", 5, 0, false));
+        assertEquals("b", index.getBest("eu"));
+    }
+
+    /**
+     * Tests a custom load score.
+     */
+    public void testCustomScore() {
+        BridgeLoadIndex index
+                = new BridgeLoadIndex(
+                        stats -> stats.getDouble(
+                                ColibriStatsExtension.CPU_USAGE));
+
+        index.update("a", stats("eu", 1, 0.8, false));
+        index.update("b", stats("eu", 50, 0.2, false));
+        // A bridge without the stat scores NaN and comes last.
+        index.update("c", new ColibriStatsExtension());
+        index.update("d", stats("eu", 0, Double.NaN, false));
+
+        assertEquals(Arrays.asList("b", "a", "d"), index.getBridges("eu"));
+        assertEquals("b", index.getBest());
+    }
+
+    /**
+     * Tests that concurrent updates leave each bridge in the index exactly
+     * once, with its last score.
+     */
+    public void testConcurrentUpdates()
+            throws Exception {
+        BridgeLoadIndex index = new BridgeLoadIndex();
+        int threads = 4;
+        int bridges = 16;
+        int updates = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+
+                for (int i = 0; i < updates; i++) {
+                    int bridge = random.nextInt(bridges);
+
+                    index.update(
+                            "jvb" + bridge,
+                            stats(
+                                    bridge % 2 == 0 ? "eu" : "us",
+                                    random.nextInt(100),
+                                    0,
+                                    false));
+                    assertNotNull(index.getBest());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        List<String> eu = index.getBridges("eu");
+        List<String> us = index.getBridges("us");
+
+        assertEquals(bridges / 2, eu.size());
+        assertEquals(bridges / 2, us.size());
+        assertEquals(bridges / 2, new HashSet<>(eu).size());
+        for (List<String> region : Arrays.asList(eu, us)) {
+            for (int i = 1; i < region.size(); i++) {
+                assertTrue(
+                        index.getScore(region.get(i - 1))
+                            <= index.getScore(region.get(i)));
+            }
+        }
+    }
+}
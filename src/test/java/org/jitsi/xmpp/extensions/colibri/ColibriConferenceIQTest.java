@@ -0,0 +1,331 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+
+/**
+ * Tests the indexes of {@link ColibriConferenceIQ}.
+ */
+public class ColibriConferenceIQTest
+        extends TestCase {
+
+    private static ColibriConferenceIQ.Channel channel(
+            String id,
+            String endpoint) {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+
+        channel.setID(id);
+        channel.setEndpoint(endpoint);
+        return channel;
+    }
+
+    public void testContentIndexes() {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Content audio
+                = conference.getOrCreateContent("audio");
+
+        assertSame(audio, conference.getOrCreateContent("audio"));
+        assertFalse(conference.addContent(audio));
+        audio.setName("video");
+        assertNull(conference.getContent("audio"));
+        assertSame(audio, conference.getContent("video"));
+
+        ColibriConferenceIQ.Channel c1 = channel("1", "a");
+        ColibriConferenceIQ.Channel c2 = channel("2", "a");
+        ColibriConferenceIQ.Channel c3 = channel(null, "b");
+        ColibriConferenceIQ.SctpConnection sctp
+                = new ColibriConferenceIQ.SctpConnection();
+
+        sctp.setID("s");
+        sctp.setEndpoint("a");
+        assertTrue(audio.addChannel(c1));
+        assertTrue(audio.addChannel(c2));
+        assertTrue(audio.addChannel(c3));
+        assertFalse(audio.addChannel(c1));
+        assertTrue(audio.addSctpConnection(sctp));
+
+        assertEquals(Arrays.asList(c1, c2, c3), audio.getChannels());
+        assertSame(c2, audio.getChannel("2"));
+        assertSame(c3, audio.getChannel(2));
+        assertSame(sctp, audio.getSctpConnection("s"));
+        assertEquals(
+                Arrays.asList(c1, c2, sctp),
+                audio.getChannelsByEndpoint("a"));
+
+        // Changes of the ID and the endpoint are tracked.
+        c3.setID("3");
+        c3.setEndpoint("a");
+        c1.setEndpoint(null);
+        assertSame(c3, audio.getChannel("3"));
+        assertEquals(
+                Arrays.asList(c2, c3, sctp),
+                audio.getChannelsByEndpoint("a"));
+        assertTrue(audio.getChannelsByEndpoint("b").isEmpty());
+
+        // The same instance may be included into more than one content.
+        ColibriConferenceIQ.Content copy = new ColibriConferenceIQ.Content("x");
+
+        assertTrue(copy.addChannel(c2));
+        c2.setID("4");
+        assertSame(c2, audio.getChannel("4"));
+        assertSame(c2, copy.getChannel("4"));
+        assertNull(audio.getChannel("2"));
+        c2.setEndpoint("d");
+        assertEquals(
+                Collections.singletonList(c2),
+                copy.getChannelsByEndpoint("d"));
+        assertEquals(
+                Arrays.asList(c3, sctp),
+                audio.getChannelsByEndpoint("a"));
+
+        // Duplicate IDs resolve to the first channel which has the ID.
+        ColibriConferenceIQ.Channel duplicate = channel("4", "c");
+
+        assertTrue(audio.addChannel(duplicate));
+        assertSame(c2, audio.getChannel("4"));
+        assertTrue(audio.removeChannel(c2));
+        assertFalse(audio.removeChannel(c2));
+        assertSame(duplicate, audio.getChannel("4"));
+        assertSame(c2, copy.getChannel("4"));
+
+        // A removed channel no longer notifies the content.
+        c2.setID("5");
+        assertSame(c2, copy.getChannel("5"));
+        assertNull(audio.getChannel("5"));
+        assertSame(duplicate, audio.getChannel("4"));
+    }
+
+    public void testFreezeAndCopy() {
+        ColibriConferenceIQ.OctoChannel channel
+                = new ColibriConferenceIQ.OctoChannel();
+        PayloadTypePacketExtension payloadType
+                = new PayloadTypePacketExtension();
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        channel.setID("1");
+        channel.setLastN(2);
+        channel.addRelay("relay");
+        payloadType.setId(100);
+        channel.addPayloadType(payloadType);
+        source.setSSRC(3);
+        channel.addSource(source);
+        channel.addSSRC(4);
+
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+
+        conference.getOrCreateContent("video").addChannel(channel);
+        conference.freeze();
+        assertTrue(channel.isFrozen());
+        assertTrue(payloadType.isFrozen());
+        assertTrue(source.isFrozen());
+        try {
+            channel.addRelay("other");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            channel.getRelays().add("other");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        // A copy is mutable and shares the frozen children.
+        ColibriConferenceIQ.OctoChannel copy = channel.copy();
+
+        assertFalse(copy.isFrozen());
+        assertEquals("1", copy.getID());
+        assertEquals(Integer.valueOf(2), copy.getLastN());
+        assertEquals(channel.getRelays(), copy.getRelays());
+        assertSame(payloadType, copy.getPayloadTypes().get(0));
+        assertSame(source, copy.getSource(3));
+        assertTrue(Arrays.equals(new int[] { 4 }, copy.getSSRCs()));
+        copy.setLastN(3);
+        copy.addRelay("other");
+        copy.removeSource(source);
+        assertEquals(Integer.valueOf(2), channel.getLastN());
+        assertEquals(1, channel.getRelays().size());
+        assertSame(source, channel.getSource(3));
+    }
+
+    public void testSSRCIndex() {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Content audio
+                = conference.getOrCreateContent("audio");
+        ColibriConferenceIQ.Channel a = channel("1", "a");
+        ColibriConferenceIQ.Channel b = channel("2", "b");
+
+        a.addSSRC(1);
+        audio.addChannel(a);
+        assertNull(conference.getSSRCIndex());
+
+        SSRCIndex index = conference.enableSSRCIndex();
+
+        assertSame(index, conference.getSSRCIndex());
+        assertSame(a, index.getChannel(1));
+        assertEquals("a", index.getEndpoint(1));
+
+        // SSRCs and sources added after the channel has been included.
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(0xfffffffeL);
+        b.addSource(source);
+        audio.addChannel(b);
+        b.addSSRC(-1);
+        assertSame(b, index.getChannel(0xfffffffeL));
+        assertSame(b, index.getChannel(0xffffffffL));
+        assertSame(b, index.getChannel(-1));
+
+        // An SSRC which one channel has as an SSRC and another as a source.
+        a.addSSRC(0xfffffffe);
+        assertEquals(Arrays.asList(b, a), index.getChannels(0xfffffffeL));
+        b.removeSource(source);
+        assertSame(a, index.getChannel(0xfffffffeL));
+        a.removeSSRC(0xfffffffe);
+        assertNull(index.getChannel(0xfffffffeL));
+
+        a.setSSRCs(new int[] { 2, 3 });
+        assertNull(index.getChannel(1));
+        assertSame(a, index.getChannel(3));
+
+        // The endpoint is that of the owner at the time of the lookup.
+        a.setEndpoint("c");
+        assertEquals("c", index.getEndpoint(3));
+
+        audio.removeChannel(a);
+        assertNull(index.getChannel(2));
+        assertEquals(1, index.size());
+
+        // A new content is indexed, a removed one is not.
+        ColibriConferenceIQ.Content video
+                = conference.getOrCreateContent("video");
+
+        video.addChannel(a);
+        assertSame(a, index.getChannel(2));
+
+        // A channel in two contents stays indexed until it leaves both.
+        audio.addChannel(a);
+        conference.removeContent(video);
+        assertSame(a, index.getChannel(2));
+        audio.removeChannel(a);
+        assertNull(index.getChannel(2));
+        a.addSSRC(4);
+        assertNull(index.getChannel(4));
+    }
+
+    public void testSSRCIndexSharedSSRCs() {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Content video
+                = conference.getOrCreateContent("video");
+        SSRCIndex index = conference.enableSSRCIndex();
+        ColibriConferenceIQ.Channel local = channel("1", "a");
+        ColibriConferenceIQ.OctoChannel octo
+                = new ColibriConferenceIQ.OctoChannel();
+
+        video.addChannel(local);
+        video.addChannel(octo);
+        local.addSSRC(1);
+        octo.addSSRC(1);
+        octo.addSSRC(2);
+        assertSame(local, index.getChannel(1));
+        assertEquals(Arrays.asList(local, octo), index.getChannels(1));
+
+        // The SSRC stays indexed for as long as any channel has it.
+        local.removeSSRC(1);
+        assertSame(octo, index.getChannel(1));
+        local.addSSRC(1);
+        assertEquals(Arrays.asList(octo, local), index.getChannels(1));
+        video.removeChannel(octo);
+        assertEquals(Collections.singletonList(local), index.getChannels(1));
+        assertTrue(index.getChannels(2).isEmpty());
+
+        // setSSRCs() and replaceSources() update every replaced SSRC.
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(3);
+        local.replaceSources(
+                Collections.singletonList(source),
+                Collections.emptyList());
+        local.setSSRCs(new int[] { 3, 4 });
+        assertNull(index.getChannel(1));
+        assertSame(local, index.getChannel(3));
+        local.replaceSources(
+                Collections.emptyList(),
+                Collections.emptyList());
+        assertSame(local, index.getChannel(3));
+        local.setSSRCs(null);
+        assertEquals(0, index.size());
+    }
+
+    public void testSSRCIndexConcurrentUpdates()
+            throws Exception {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Content video
+                = conference.getOrCreateContent("video");
+        SSRCIndex index = conference.enableSSRCIndex();
+        int threadCount = 4;
+        int ssrcCount = 10000;
+        ColibriConferenceIQ.Channel[] channels
+                = new ColibriConferenceIQ.Channel[threadCount];
+        Thread[] threads = new Thread[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+            ColibriConferenceIQ.Channel channel
+                    = channel(Integer.toString(i), "e" + i);
+            int first = i * ssrcCount;
+
+            channels[i] = channel;
+            video.addChannel(channel);
+            threads[i] = new Thread(() -> {
+                for (int ssrc = first; ssrc < first + ssrcCount; ssrc++) {
+                    channel.addSSRC(ssrc);
+                    if (ssrc % 2 == 0) {
+                        SourcePacketExtension source
+                                = new SourcePacketExtension();
+
+                        source.setSSRC(ssrc);
+                        channel.addSource(source);
+                        channel.removeSSRC(ssrc);
+                    } else if (ssrc % 3 == 0) {
+                        channel.removeSSRC(ssrc);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int size = 0;
+
+        for (ColibriConferenceIQ.Channel channel : channels) {
+            for (int ssrc : channel.getSSRCs()) {
+                assertSame(channel, index.getChannel(ssrc));
+                size++;
+            }
+            for (SourcePacketExtension source : channel.getSources()) {
+                assertSame(channel, index.getChannel(source.getSSRC()));
+                size++;
+            }
+        }
+        assertEquals(size, index.size());
+    }
+}
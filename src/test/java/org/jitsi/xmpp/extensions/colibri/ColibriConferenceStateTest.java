@@ -0,0 +1,235 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Tests {@link ColibriConferenceState}.
+ */
+public class ColibriConferenceStateTest
+        extends TestCase {
+
+    private static ColibriConferenceIQ.Channel channel(String id) {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+
+        channel.setID(id);
+        channel.setEndpoint("endpoint-" + id);
+        return channel;
+    }
+
+    public void testSnapshots() {
+        ColibriConferenceState state = new ColibriConferenceState();
+        ColibriConferenceIQ initial = state.get();
+
+        assertTrue(initial.isFrozen());
+
+        ColibriConferenceIQ.Channel a = channel("a");
+        ColibriConferenceIQ updated = state.update(conference -> {
+            conference.setID("conference");
+            conference.getOrCreateContent("audio").addChannel(a);
+        });
+
+        assertSame(updated, state.get());
+        assertTrue(updated.isFrozen());
+        assertNull(initial.getID());
+        assertTrue(initial.getContents().isEmpty());
+
+        // The state has a copy of the channel which the update added.
+        ColibriConferenceIQ.Channel frozenA
+                = updated.getContent("audio").getChannel("a");
+
+        assertNotSame(a, frozenA);
+        assertEquals("endpoint-a", frozenA.getEndpoint());
+        assertFalse(a.isFrozen());
+        a.setEndpoint("endpoint-c");
+        assertEquals("endpoint-a", frozenA.getEndpoint());
+
+        // Snapshots cannot be modified.
+        try {
+            updated.setID("other");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            updated.getContent("audio").removeChannel(frozenA);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        // Nor can the channels which they share with newer versions.
+        assertTrue(frozenA.isFrozen());
+        try {
+            frozenA.setEndpoint("endpoint-c");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            frozenA.addSSRC(1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        // A failed update leaves the state as it was.
+        try {
+            state.update(conference -> {
+                conference.getContent("audio").removeChannel(frozenA);
+                throw new IllegalStateException("conference.id");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(updated, state.get());
+
+        ColibriConferenceIQ.Channel b = channel("b");
+        ColibriConferenceIQ removed = state.update(conference -> {
+            ColibriConferenceIQ.Content audio
+                    = conference.getContent("audio");
+
+            audio.removeChannel(audio.getChannel("a"));
+            audio.addChannel(b);
+        });
+
+        ColibriConferenceIQ.Channel frozenB
+                = removed.getContent("audio").getChannel("b");
+
+        assertSame(frozenA, updated.getContent("audio").getChannel("a"));
+        assertNull(removed.getContent("audio").getChannel("a"));
+        assertNotSame(b, frozenB);
+        assertTrue(frozenB.isFrozen());
+        assertFalse(b.isFrozen());
+        assertEquals(
+                "endpoint-b",
+                removed.getContent("audio")
+                    .getChannelsByEndpoint("endpoint-b").get(0).getEndpoint());
+
+        // A channel is modified by replacing it with a copy.
+        ColibriConferenceIQ copied = state.update(conference -> {
+            ColibriConferenceIQ.Content audio
+                    = conference.getContent("audio");
+            ColibriConferenceIQ.Channel channel = audio.getChannel("b");
+            ColibriConferenceIQ.Channel copy = channel.copy();
+
+            copy.setEndpoint("endpoint-c");
+            audio.removeChannel(channel);
+            audio.addChannel(copy);
+        });
+        ColibriConferenceIQ.Channel copy
+                = copied.getContent("audio").getChannel("b");
+
+        assertNotSame(frozenB, copy);
+        assertTrue(copy.isFrozen());
+        assertEquals("endpoint-c", copy.getEndpoint());
+        assertEquals("endpoint-b", frozenB.getEndpoint());
+        assertEquals(
+                1,
+                removed.getContent("audio")
+                    .getChannelsByEndpoint("endpoint-b").size());
+        assertTrue(
+                copied.getContent("audio")
+                    .getChannelsByEndpoint("endpoint-b").isEmpty());
+
+        // Newer versions share the frozen channels.
+        ColibriConferenceIQ unchanged
+                = state.update(conference -> conference.setID("conference"));
+
+        assertSame(copy, unchanged.getContent("audio").getChannel("b"));
+    }
+
+    public void testInitialConference() {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Channel channel = channel("a");
+        ColibriConferenceIQ.Endpoint endpoint
+                = new ColibriConferenceIQ.Endpoint("endpoint-a", null, null);
+
+        conference.getOrCreateContent("audio").addChannel(channel);
+        conference.addEndpoint(endpoint);
+
+        ColibriConferenceState state = new ColibriConferenceState(conference);
+
+        // The conference of the caller remains modifiable.
+        assertFalse(conference.isFrozen());
+        assertFalse(channel.isFrozen());
+        assertFalse(endpoint.isFrozen());
+        channel.setEndpoint("endpoint-b");
+        endpoint.setDisplayName("display name");
+
+        ColibriConferenceIQ.Channel frozen
+                = state.get().getContent("audio").getChannel("a");
+
+        assertTrue(frozen.isFrozen());
+        assertEquals("endpoint-a", frozen.getEndpoint());
+        assertNull(state.get().getEndpoints().get(0).getDisplayName());
+    }
+
+    public void testConcurrentUpdates()
+            throws Exception {
+        ColibriConferenceState state = new ColibriConferenceState();
+        int writerCount = 2;
+        int updateCount = 200;
+        AtomicBoolean inconsistent = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread[] writers = new Thread[writerCount];
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                ColibriConferenceIQ snapshot = state.get();
+                ColibriConferenceIQ.Content audio
+                        = snapshot.getContent("audio");
+                ColibriConferenceIQ.Content video
+                        = snapshot.getContent("video");
+
+                // Every update adds a channel to both contents.
+                if ((audio == null) != (video == null)
+                        || (audio != null
+                            && audio.getChannels().size()
+                                != video.getChannels().size())) {
+                    inconsistent.set(true);
+                }
+            }
+        });
+
+        reader.start();
+        for (int i = 0; i < writerCount; i++) {
+            String prefix = Integer.toString(i);
+
+            writers[i] = new Thread(() -> {
+                for (int j = 0; j < updateCount; j++) {
+                    String id = prefix + "-" + j;
+
+                    state.update(conference -> {
+                        conference.getOrCreateContent("audio")
+                            .addChannel(channel(id));
+                        conference.getOrCreateContent("video")
+                            .addChannel(channel(id));
+                    });
+                }
+            });
+            writers[i].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        done.set(true);
+        reader.join();
+
+        assertFalse(inconsistent.get());
+        assertEquals(
+                writerCount * updateCount,
+                state.get().getContent("video").getChannels().size());
+    }
+}
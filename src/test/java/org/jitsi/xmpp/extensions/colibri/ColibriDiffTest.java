@@ -0,0 +1,216 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+
+import java.net.*;
+import java.util.*;
+
+/**
+ * Tests {@link ColibriDiff}.
+ */
+public class ColibriDiffTest
+        extends TestCase {
+
+    /**
+     * Creates a channel with an Opus payload type and a specific source.
+     */
+    private static ColibriConferenceIQ.Channel channel(String id, long ssrc) {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+        PayloadTypePacketExtension opus = new PayloadTypePacketExtension();
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        channel.setID(id);
+        channel.setEndpoint("endpoint-" + id);
+        opus.setId(111);
+        opus.setName("opus");
+        opus.setClockrate(48000);
+        channel.addPayloadType(opus);
+        source.setSSRC(ssrc);
+        channel.addSource(source);
+        return channel;
+    }
+
+    private static ColibriConferenceIQ conference(
+            ColibriConferenceIQ.Channel... channels) {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Content audio
+                = conference.getOrCreateContent("audio");
+
+        conference.setID("conference");
+        for (ColibriConferenceIQ.Channel channel : channels) {
+            audio.addChannel(channel);
+        }
+        return conference;
+    }
+
+    public void testNoDifferences() {
+        ColibriConferenceIQ.Channel a = channel("a", 1);
+
+        assertNull(ColibriDiff.createUpdate(conference(a), conference(a)));
+        // Equal but distinct channels.
+        assertNull(
+                ColibriDiff.createUpdate(
+                        conference(a, channel("b", 2)),
+                        conference(a, channel("b", 2))));
+    }
+
+    public void testOnlyChangesAreIncluded() {
+        List<ColibriConferenceIQ.Channel> previousChannels = new ArrayList<>();
+        List<ColibriConferenceIQ.Channel> desiredChannels = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            ColibriConferenceIQ.Channel channel
+                    = channel(Integer.toString(i), i + 1);
+
+            previousChannels.add(channel);
+            desiredChannels.add(channel);
+        }
+
+        // A source is added to one channel.
+        ColibriConferenceIQ.Channel changed = channel("42", 43);
+        SourcePacketExtension added = new SourcePacketExtension();
+
+        added.setSSRC(1000);
+        changed.addSource(added);
+        desiredChannels.set(42, changed);
+
+        ColibriConferenceIQ update
+                = ColibriDiff.createUpdate(
+                        conference(previousChannels.toArray(
+                                new ColibriConferenceIQ.Channel[0])),
+                        conference(desiredChannels.toArray(
+                                new ColibriConferenceIQ.Channel[0])));
+
+        assertNotNull(update);
+        assertEquals("conference", update.getID());
+        assertEquals(1, update.getContents().size());
+
+        ColibriConferenceIQ.Content audio = update.getContent("audio");
+
+        assertEquals(1, audio.getChannelCount());
+
+        ColibriConferenceIQ.Channel channel = audio.getChannel("42");
+
+        assertEquals(2, channel.getSources().size());
+        assertTrue(channel.getPayloadTypes().isEmpty());
+        assertNull(channel.getEndpoint());
+        assertNull(channel.getTransport());
+    }
+
+    public void testChannelChanges() {
+        ColibriConferenceIQ.Channel a = channel("a", 1);
+        ColibriConferenceIQ.Channel b = channel("b", 2);
+        ColibriConferenceIQ.Channel a2 = channel("a", 1);
+        ColibriConferenceIQ.Channel allocated = channel(null, 3);
+        PayloadTypePacketExtension vp8 = new PayloadTypePacketExtension();
+        IceUdpTransportPacketExtension transport
+                = new IceUdpTransportPacketExtension();
+
+        vp8.setId(100);
+        vp8.setName("VP8");
+        a2.addPayloadType(vp8);
+        a2.setLastN(5);
+        transport.setUfrag("ufrag");
+        a2.setTransport(transport);
+
+        ColibriConferenceIQ update
+                = ColibriDiff.createUpdate(
+                        conference(a, b), conference(a2, allocated));
+        ColibriConferenceIQ.Content audio = update.getContent("audio");
+
+        assertEquals(3, audio.getChannelCount());
+
+        // Changed attributes, payload types and transport.
+        ColibriConferenceIQ.Channel channelA = audio.getChannel("a");
+
+        assertEquals(2, channelA.getPayloadTypes().size());
+        assertEquals(Integer.valueOf(5), channelA.getLastN());
+        assertEquals("ufrag", channelA.getTransport().getUfrag());
+        assertTrue(channelA.getSources().isEmpty());
+
+        // A new channel is described in full.
+        ColibriConferenceIQ.Channel channelAllocated = audio.getChannel(1);
+
+        assertNull(channelAllocated.getID());
+        assertEquals(1, channelAllocated.getPayloadTypes().size());
+        assertEquals(1, channelAllocated.getSources().size());
+
+        // A channel which is no longer desired is expired.
+        ColibriConferenceIQ.Channel channelB = audio.getChannel("b");
+
+        assertEquals(0, channelB.getExpire());
+        assertTrue(channelB.getSources().isEmpty());
+
+        // Removing all sources sends the empty source.
+        ColibriConferenceIQ.Channel noSources = channel("a", 1);
+
+        noSources.removeSource(noSources.getSources().get(0));
+        update = ColibriDiff.createUpdate(conference(a), conference(noSources));
+        assertEquals(
+                -1L,
+                update.getContent("audio").getChannel("a").getSources().get(0)
+                    .getSSRC());
+    }
+
+    public void testRemovalsAreNotExpressed() {
+        ColibriConferenceIQ.Channel a = channel("a", 1);
+        IceUdpTransportPacketExtension transport
+                = new IceUdpTransportPacketExtension();
+        RTPHdrExtPacketExtension ext = new RTPHdrExtPacketExtension();
+
+        transport.setUfrag("ufrag");
+        a.setTransport(transport);
+        a.setLastN(5);
+        ext.setID("1");
+        ext.setURI(URI.create("urn:ietf:params:rtp-hdrext:ssrc-audio-level"));
+        a.addRtpHeaderExtension(ext);
+
+        ColibriConferenceIQ previous = conference(a);
+        ColibriConferenceIQ.ChannelBundle bundle
+                = new ColibriConferenceIQ.ChannelBundle("bundle");
+
+        previous.addChannelBundle(bundle);
+        previous.addEndpoint(
+                new ColibriConferenceIQ.Endpoint("endpoint-a", null, null));
+
+        // COLIBRI cannot unset the transport, an attribute or the payload
+        // types and header extensions of a channel, nor expire channel
+        // bundles and endpoints, so there is nothing to send.
+        ColibriConferenceIQ.Channel cleared = channel("a", 1);
+
+        cleared.removePayloadType(cleared.getPayloadTypes().get(0));
+        assertNull(ColibriDiff.createUpdate(previous, conference(cleared)));
+
+        // The removals are left out of an update which has other changes.
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(2);
+        cleared.addSource(source);
+
+        ColibriConferenceIQ.Channel channel
+                = ColibriDiff.createUpdate(previous, conference(cleared))
+                    .getContent("audio").getChannel("a");
+
+        assertEquals(2, channel.getSources().size());
+        assertTrue(channel.getPayloadTypes().isEmpty());
+        assertTrue(channel.getRtpHeaderExtensions().isEmpty());
+        assertNull(channel.getTransport());
+        assertNull(channel.getLastN());
+    }
+}
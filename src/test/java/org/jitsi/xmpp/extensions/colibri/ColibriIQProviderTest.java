@@ -18,15 +18,18 @@
 package org.jitsi.xmpp.extensions.colibri;
 
 import junit.framework.TestCase;
-import org.jivesoftware.smack.packet.IQ;
 import org.jxmpp.jid.impl.*;
 import org.xmlpull.mxp1.MXParser;
 import org.xmlpull.v1.XmlPullParser;
 
+import org.jitsi.xmpp.extensions.*;
+import org.jitsi.xmpp.extensions.jingle.*;
 import org.jitsi.xmpp.extensions.jitsimeet.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
 
 import java.io.StringReader;
-import java.util.List;
+import java.util.*;
 
 public class ColibriIQProviderTest extends TestCase {
 
@@ -187,4 +190,350 @@ public class ColibriIQProviderTest extends TestCase {
                         "test@conference.brian2.jitsi.net/66e3ea10"),
                 ssrcInfo.getOwner());
     }
+
+    /**
+     * Parses a conference with 500 participants and checks that the strings
+     * which repeat across participants (namespaces, directions, codec names,
+     * group semantics, etc.) are retained only once, which at least halves
+     * the heap retained by the strings compared to retaining every parsed
+     * occurrence.
+     */
+    public void testCanonicalizedStrings()
+            throws Exception {
+        int participants = 500;
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<conference xmlns='http://jitsi.org/protocol/colibri'")
+            .append(" id='cce6f2fe74002273'>");
+        for (String media : new String[] { "audio", "video" }) {
+            xml.append("<content name='").append(media).append("'>");
+            for (int i = 0; i < participants; i++) {
+                String endpoint = Integer.toHexString(0x10000000 + i);
+                long ssrc = 1000000L + 10 * i;
+
+                xml.append("<channel id='").append(media).append(endpoint)
+                    .append("' endpoint='").append(endpoint)
+                    .append("' channel-bundle-id='").append(endpoint)
+                    .append("' direction='sendrecv'>");
+                if ("audio".equals(media)) {
+                    xml.append("<payload-type id='111' name='opus'")
+                        .append(" clockrate='48000' channels='2'>")
+                        .append("<parameter name='minptime' value='10'/>")
+                        .append("<parameter name='useinbandfec' value='1'/>")
+                        .append("</payload-type>");
+                } else {
+                    xml.append("<payload-type id='100' name='VP8'")
+                        .append(" clockrate='90000'>")
+                        .append("<rtcp-fb xmlns='urn:xmpp:jingle:apps:rtp:")
+                        .append("rtcp-fb:0' type='nack' subtype='pli'/>")
+                        .append("</payload-type>");
+                }
+                for (int j = 0; j < 3; j++) {
+                    xml.append("<source xmlns='urn:xmpp:jingle:apps:rtp:")
+                        .append("ssma:0' ssrc='").append(ssrc + j).append("'>")
+                        .append("<parameter name='cname' value='")
+                        .append("5311ad66-bc71-7d4e-").append(endpoint)
+                        .append("'/>")
+                        .append("</source>");
+                }
+                xml.append("<ssrc-group xmlns='urn:xmpp:jingle:apps:rtp:")
+                    .append("ssma:0' semantics='SIM'>");
+                for (int j = 0; j < 3; j++) {
+                    xml.append("<source ssrc='").append(ssrc + j)
+                        .append("'/>");
+                }
+                xml.append("</ssrc-group></channel>");
+            }
+            xml.append("</content>");
+        }
+        xml.append("</conference>");
+
+        xmlPullParser.setInput(new StringReader(xml.toString()));
+        assertEquals(XmlPullParser.START_TAG, xmlPullParser.next());
+
+        ColibriConferenceIQ conference
+                = (ColibriConferenceIQ) colibriIQProvider.parse(
+                        xmlPullParser, 0);
+        List<String> strings = new ArrayList<>();
+
+        for (ColibriConferenceIQ.Content content : conference.getContents()) {
+            assertEquals(participants, content.getChannels().size());
+            strings.add(content.getName());
+            for (ColibriConferenceIQ.Channel channel : content.getChannels()) {
+                strings.add(channel.getDirection());
+                collectStrings(channel.getPayloadTypes(), strings);
+                collectStrings(channel.getSources(), strings);
+                collectStrings(channel.getSourceGroups(), strings);
+            }
+        }
+
+        Set<String> retained
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+        long allBytes = 0;
+        long retainedBytes = 0;
+
+        for (String string : strings) {
+            allBytes += sizeOf(string);
+            if (retained.add(string)) {
+                retainedBytes += sizeOf(string);
+            }
+        }
+
+        // The vocabulary shared by all participants is retained once (or a
+        // few times, if other strings happened to evict it from the table).
+        for (String value : new String[] {
+                "sendrecv", "opus", "SIM", "cname", "video",
+                SourcePacketExtension.NAMESPACE }) {
+            Set<String> instances
+                    = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            for (String string : strings) {
+                if (value.equals(string)) {
+                    instances.add(string);
+                }
+            }
+            assertTrue(value, instances.size() < 10);
+        }
+        assertTrue(retainedBytes < allBytes / 2);
+    }
+
+    /**
+     * An allocation request for a conference with a few participants, as
+     * sent by a focus which uses channel-bundles.
+     */
+    private static String allocateXml(int participants) {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<conference xmlns='http://jitsi.org/protocol/colibri'")
+            .append(" id='cce6f2fe74002273' gid='ff62ef' name='test'>");
+        for (String media : new String[] { "audio", "video", "data" }) {
+            xml.append("<content name='").append(media).append("'>");
+            for (int i = 0; i < participants; i++) {
+                String endpoint = Integer.toHexString(0x10000000 + i);
+
+                if ("data".equals(media)) {
+                    xml.append("<sctpconnection endpoint='").append(endpoint)
+                        .append("' port='5000' initiator='true'")
+                        .append(" channel-bundle-id='").append(endpoint)
+                        .append("' expire='60'/>");
+                    continue;
+                }
+                xml.append("<channel endpoint='").append(endpoint)
+                    .append("' channel-bundle-id='").append(endpoint)
+                    .append("' initiator='true' expire='60'")
+                    .append(" direction='sendrecv' last-n='20'")
+                    .append(" rtp-level-relay-type='translator'>");
+                if ("audio".equals(media)) {
+                    xml.append("<payload-type id='111' name='opus'")
+                        .append(" clockrate='48000' channels='1'>")
+                        .append("<parameter name='minptime' value='10'/>")
+                        .append("<parameter name='useinbandfec' value='1'/>")
+                        .append("</payload-type>")
+                        .append("<payload-type id='126'")
+                        .append(" name='telephone-event' clockrate='8000'/>")
+                        .append("<rtp-hdrext id='1'")
+                        .append(" uri='urn:ietf:params:rtp-hdrext:ssrc-audio")
+                        .append("-level'/>");
+                } else {
+                    xml.append("<payload-type id='100' name='VP8'")
+                        .append(" clockrate='90000'>")
+                        .append("<rtcp-fb xmlns='urn:xmpp:jingle:apps:rtp:")
+                        .append("rtcp-fb:0' type='nack' subtype='pli'/>")
+                        .append("<rtcp-fb xmlns='urn:xmpp:jingle:apps:rtp:")
+                        .append("rtcp-fb:0' type='goog-remb'/>")
+                        .append("</payload-type>")
+                        .append("<rtp-hdrext id='3' uri='http://www.webrtc")
+                        .append(".org/experiments/rtp-hdrext/abs-send-time'/>");
+                }
+                xml.append("</channel>");
+            }
+            xml.append("</content>");
+        }
+        for (int i = 0; i < participants; i++) {
+            String endpoint = Integer.toHexString(0x10000000 + i);
+
+            xml.append("<channel-bundle id='").append(endpoint).append("'>")
+                .append("<transport xmlns='urn:xmpp:jingle:transports:")
+                .append("ice-udp:1' ufrag='117916df'")
+                .append(" pwd='15929b4d44ae40fbcc6d51b6e4a468aa'>")
+                .append("<rtcp-mux/>")
+                .append("<fingerprint xmlns='urn:xmpp:jingle:apps:dtls:0'")
+                .append(" hash='sha-256' setup='actpass'>")
+                .append("44:AF:49:E3:3B:E0:0D:A2:FA:AB:F4:93:EC:5D:32:39")
+                .append("</fingerprint>")
+                .append("<candidate component='1' foundation='1'")
+                .append(" generation='0' id='1' ip='10.0.0.1' network='0'")
+                .append(" port='10000' priority='2130706431'")
+                .append(" protocol='udp' type='host'/>")
+                .append("</transport>")
+                .append("</channel-bundle>")
+                .append("<endpoint id='").append(endpoint)
+                .append("' displayname='Participant ").append(i)
+                .append("' stats-id='Stats").append(i).append("'/>");
+        }
+        xml.append("</conference>");
+        return xml.toString();
+    }
+
+    /**
+     * A request which updates the sources of the video channels of a
+     * conference with a few participants and expires one of them.
+     */
+    private static String updateXml(int participants) {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<conference xmlns='http://jitsi.org/protocol/colibri'")
+            .append(" id='cce6f2fe74002273'>")
+            .append("<content name='video'>");
+        for (int i = 0; i < participants; i++) {
+            String endpoint = Integer.toHexString(0x10000000 + i);
+            long ssrc = 1000000L + 10 * i;
+
+            xml.append("<channel id='video").append(endpoint)
+                .append("' endpoint='").append(endpoint).append("'");
+            if (i == 0) {
+                xml.append(" expire='0'/>");
+                continue;
+            }
+            xml.append(">");
+            for (int j = 0; j < 3; j++) {
+                xml.append("<source xmlns='urn:xmpp:jingle:apps:rtp:")
+                    .append("ssma:0' ssrc='").append(ssrc + j).append("'>")
+                    .append("<parameter name='cname' value='")
+                    .append("5311ad66-bc71-7d4e-").append(endpoint)
+                    .append("'/>")
+                    .append("<parameter name='msid' value='")
+                    .append(endpoint).append(" video'/>")
+                    .append("</source>");
+            }
+            xml.append("<ssrc-group xmlns='urn:xmpp:jingle:apps:rtp:")
+                .append("ssma:0' semantics='SIM'>");
+            for (int j = 0; j < 3; j++) {
+                xml.append("<source ssrc='").append(ssrc + j).append("'/>");
+            }
+            xml.append("</ssrc-group>")
+                .append("<ssrc>").append(ssrc + 9).append("</ssrc>")
+                .append("</channel>");
+        }
+        xml.append("</content>")
+            .append("<content name='audio'>")
+            .append("<channel id='octo' type='octo'>")
+            .append("<relay id='relay1'/><relay id='relay2'/>")
+            .append("</channel>")
+            .append("</content>")
+            .append("<rtcp-termination-strategy name='basic'/>")
+            .append("<recording state='on' token='t0k3n'/>")
+            .append("<graceful-shutdown xmlns='http://jitsi.org/protocol/")
+            .append("colibri'/>")
+            .append("</conference>");
+        return xml.toString();
+    }
+
+    /**
+     * Parses a <tt>conference</tt> element with a specific provider.
+     */
+    private IQ parse(IQProvider<?> provider, String xml)
+            throws Exception {
+        xmlPullParser.setInput(new StringReader(xml));
+        assertEquals(XmlPullParser.START_TAG, xmlPullParser.next());
+        return provider.parse(xmlPullParser, 0);
+    }
+
+    /**
+     * Checks that the table-driven parsing of allocate and update requests
+     * produces the same conferences as the original parsing of
+     * {@link LegacyColibriIQProvider}.
+     */
+    public void testSameAsLegacyProvider()
+            throws Exception {
+        LegacyColibriIQProvider legacyProvider = new LegacyColibriIQProvider();
+        Map<String, String> fixtures = new LinkedHashMap<>();
+
+        fixtures.put("allocate", allocateXml(10));
+        fixtures.put("update", updateXml(10));
+        fixtures.put("testXml", testXml.substring(testXml.indexOf("<conf"),
+                testXml.indexOf("</iq>")));
+
+        for (Map.Entry<String, String> fixture : fixtures.entrySet()) {
+            String xml = fixture.getValue();
+            ColibriConferenceIQ conference
+                    = (ColibriConferenceIQ) parse(colibriIQProvider, xml);
+            ColibriConferenceIQ legacyConference
+                    = (ColibriConferenceIQ) parse(legacyProvider, xml);
+
+            assertEquals(
+                    fixture.getKey(),
+                    legacyConference.toXML().toString(),
+                    conference.toXML().toString());
+        }
+
+        ColibriConferenceIQ update
+                = (ColibriConferenceIQ) parse(
+                        colibriIQProvider, fixtures.get("update"));
+
+        assertTrue(update.isGracefulShutdown());
+        assertEquals("basic", update.getRTCPTerminationStrategy().getName());
+        assertEquals(
+                Arrays.asList("relay1", "relay2"),
+                ((ColibriConferenceIQ.OctoChannel)
+                        update.getContent("audio").getChannel("octo"))
+                    .getRelays());
+    }
+
+    /**
+     * Checks that the attributes of a channel which have no handler are
+     * ignored.
+     */
+    public void testUnknownChannelAttribute()
+            throws Exception {
+        String xml
+                = "<conference xmlns='http://jitsi.org/protocol/colibri'>"
+                    + "<content name='video'>"
+                    + "<channel id='a' x-max-bitrate='2500' last-n='3'/>"
+                    + "</content>"
+                    + "</conference>";
+        ColibriConferenceIQ conference
+                = (ColibriConferenceIQ) parse(colibriIQProvider, xml);
+
+        assertEquals(
+                Integer.valueOf(3),
+                conference.getContent("video").getChannel("a").getLastN());
+        assertEquals(
+                parse(new LegacyColibriIQProvider(), xml).toXML().toString(),
+                conference.toXML().toString());
+    }
+
+    /**
+     * Adds the namespaces and attribute values of some extensions and of
+     * their descendants to a list.
+     */
+    private static void collectStrings(
+            List<? extends ExtensionElement> extensions,
+            List<String> strings) {
+        for (ExtensionElement extension : extensions) {
+            if (!(extension instanceof AbstractPacketExtension)) {
+                continue;
+            }
+
+            AbstractPacketExtension ape = (AbstractPacketExtension) extension;
+
+            if (ape.getNamespace() != null) {
+                strings.add(ape.getNamespace());
+            }
+            // The names are left out because the attribute storage interns
+            // them anyway.
+            for (String name : ape.getAttributeNames()) {
+                strings.add(ape.getAttributeAsString(name));
+            }
+            collectStrings(ape.getChildExtensions(), strings);
+        }
+    }
+
+    /**
+     * Estimates the heap occupied by a Latin-1 <tt>String</tt> on a 64-bit
+     * JVM with compressed oops.
+     */
+    private static long sizeOf(String s) {
+        return 24 + ((16 + s.length() + 7) & ~7);
+    }
 }
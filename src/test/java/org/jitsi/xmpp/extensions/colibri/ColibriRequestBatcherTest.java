@@ -0,0 +1,222 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.jxmpp.jid.*;
+import org.jxmpp.jid.impl.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests {@link ColibriRequestBatcher}.
+ */
+public class ColibriRequestBatcherTest
+        extends TestCase {
+
+    private final List<ColibriConferenceIQ> sent = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+
+    private Jid bridge;
+
+    @Override
+    protected void setUp()
+            throws Exception {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        bridge = JidCreate.from("jvb.example.com");
+    }
+
+    @Override
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ColibriRequestBatcher batcher(int maxOperations, long maxDelayMs) {
+        return new ColibriRequestBatcher(
+                ColibriBuilder::new,
+                request -> {
+                    synchronized (sent) {
+                        sent.add(request);
+                        sent.notifyAll();
+                    }
+                },
+                executor,
+                maxOperations,
+                maxDelayMs);
+    }
+
+    private static ColibriConferenceIQ participant(String endpoint) {
+        ColibriConferenceIQ participant = new ColibriConferenceIQ();
+
+        for (String contentName : new String[] { "audio", "video" }) {
+            ColibriConferenceIQ.Channel channel
+                    = new ColibriConferenceIQ.Channel();
+
+            channel.setID(endpoint + "-" + contentName);
+            channel.setEndpoint(endpoint);
+            participant.getOrCreateContent(contentName).addChannel(channel);
+        }
+        return participant;
+    }
+
+    private static SourcePacketExtension source(long ssrc) {
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(ssrc);
+        return source;
+    }
+
+    private static List<Long> ssrcs(ColibriConferenceIQ.Channel channel) {
+        List<Long> ssrcs = new ArrayList<>();
+
+        for (SourcePacketExtension source : channel.getSources()) {
+            ssrcs.add(source.getSSRC());
+        }
+        return ssrcs;
+    }
+
+    private static ColibriConferenceIQ allocatedConference() {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+
+        conference.setID("conference");
+        return conference;
+    }
+
+    public void testMergesUpdatesOfTheSameChannel() {
+        ColibriRequestBatcher batcher = batcher(100, 3600000);
+        ColibriConferenceIQ conference = allocatedConference();
+        ColibriConferenceIQ a = participant("a");
+        ColibriConferenceIQ b = participant("b");
+
+        batcher.addSourceInfo(
+                bridge, conference,
+                Collections.singletonMap(
+                        "audio", Arrays.asList(source(1), source(2))),
+                a);
+        batcher.addSourceInfo(
+                bridge, conference,
+                Collections.singletonMap("audio", Arrays.asList(source(3))),
+                b);
+        // Removes source 2 of a before anything has been sent.
+        batcher.addSourceInfo(
+                bridge, conference,
+                Collections.singletonMap("audio", Arrays.asList(source(1))),
+                a);
+
+        IceUdpTransportPacketExtension oldTransport
+                = new IceUdpTransportPacketExtension();
+        IceUdpTransportPacketExtension newTransport
+                = new IceUdpTransportPacketExtension();
+
+        oldTransport.setUfrag("old");
+        newTransport.setUfrag("new");
+        batcher.addBundleTransportUpdateReq(
+                bridge, conference, oldTransport, "a");
+        batcher.addBundleTransportUpdateReq(
+                bridge, conference, newTransport, "a");
+        assertTrue(sent.isEmpty());
+
+        batcher.flush(bridge, conference);
+        assertEquals(1, sent.size());
+
+        ColibriConferenceIQ request = sent.get(0);
+        ColibriConferenceIQ.Content audio = request.getContent("audio");
+
+        assertSame(bridge, request.getTo());
+        assertEquals("conference", request.getID());
+        assertEquals(2, audio.getChannelCount());
+        assertEquals(
+                Collections.singletonList(1L),
+                ssrcs(audio.getChannel("a-audio")));
+        assertEquals(
+                Collections.singletonList(3L),
+                ssrcs(audio.getChannel("b-audio")));
+        assertEquals(1, request.getChannelBundles().size());
+        assertEquals(
+                "new",
+                request.getChannelBundle("a").getTransport().getUfrag());
+
+        // Nothing is pending any more.
+        batcher.flushAll();
+        assertEquals(1, sent.size());
+    }
+
+    public void testBatchesAllocations() {
+        ColibriRequestBatcher batcher = batcher(100, 3600000);
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+
+        for (String endpoint : new String[] { "a", "b", "c" }) {
+            ContentPacketExtension content = new ContentPacketExtension();
+            RtpDescriptionPacketExtension description
+                    = new RtpDescriptionPacketExtension();
+
+            content.setName("audio");
+            description.setMedia("audio");
+            content.addChildExtension(description);
+            batcher.addAllocateChannelsReq(
+                    bridge, conference,
+                    true, endpoint, null, true,
+                    Collections.singletonList(content),
+                    null, null, null);
+        }
+        batcher.flushAll();
+
+        assertEquals(1, sent.size());
+        assertEquals(
+                3,
+                sent.get(0).getContent("audio").getChannelCount());
+        assertEquals(3, sent.get(0).getEndpoints().size());
+    }
+
+    public void testFlushesOnSize() {
+        ColibriRequestBatcher batcher = batcher(2, 3600000);
+        ColibriConferenceIQ conference = allocatedConference();
+
+        batcher.addSourceInfo(
+                bridge, conference,
+                Collections.singletonMap("video", Arrays.asList(source(1))),
+                participant("a"));
+        assertTrue(sent.isEmpty());
+        batcher.addSourceInfo(
+                bridge, conference,
+                Collections.singletonMap("video", Arrays.asList(source(2))),
+                participant("b"));
+        assertEquals(1, sent.size());
+        assertEquals(2, sent.get(0).getContent("video").getChannelCount());
+    }
+
+    public void testFlushesOnTimeout()
+            throws Exception {
+        ColibriRequestBatcher batcher = batcher(100, 10);
+        ColibriConferenceIQ conference = allocatedConference();
+
+        batcher.addSourceInfo(
+                bridge, conference,
+                Collections.singletonMap("video", Arrays.asList(source(1))),
+                participant("a"));
+        synchronized (sent) {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+                sent.wait(100);
+            }
+        }
+        assertEquals(1, sent.size());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests {@link ColibriStatsAggregator}.
+ */
+public class ColibriStatsAggregatorTest
+        extends TestCase {
+
+    /**
+     * Creates the stats of a bridge.
+     */
+    private static ColibriStatsExtension stats(
+            String region,
+            String relayId,
+            int participants,
+            int largestConference,
+            String conferenceSizes) {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        if (region != null) {
+            stats.addStat(ColibriStatsExtension.REGION, region);
+        }
+        if (relayId != null) {
+            stats.addStat(ColibriStatsExtension.RELAY_ID, relayId);
+        }
+        stats.addStat(ColibriStatsExtension.PARTICIPANTS, participants);
+        stats.addStat(ColibriStatsExtension.CONFERENCES, 2);
+        stats.addStat(ColibriStatsExtension.BITRATE_DOWNLOAD, "1.5");
+        stats.addStat(
+                ColibriStatsExtension.LARGEST_CONFERENCE, largestConference);
+        stats.addStat(ColibriStatsExtension.CONFERENCE_SIZES, conferenceSizes);
+        return stats;
+    }
+
+    /**
+     * Tests the aggregates of regions, relays and the fleet as bridges are
+     * updated and removed.
+     */
+    public void testGroups() {
+        ColibriStatsAggregator aggregator = new ColibriStatsAggregator();
+
+        aggregator.update("a", stats("eu", "relay-a", 10, 6, "[0,1,1]"));
+        aggregator.update("b", stats("eu", "relay-b", 5, 4, "[1,0,0,2]"));
+        aggregator.update("c", stats("us", null, 7, 9, "[0,0,1]"));
+
+        ColibriStatsAggregator.Snapshot snapshot = aggregator.getSnapshot();
+        ColibriStatsAggregator.Aggregate fleet = snapshot.getFleet();
+        ColibriStatsAggregator.Aggregate eu = snapshot.getRegions().get("eu");
+
+        assertSame(snapshot, aggregator.getSnapshot());
+        assertEquals(3, fleet.getBridgeCount());
+        assertEquals(
+                22.0, fleet.getSum(ColibriStatsExtension.PARTICIPANTS), 0);
+        assertEquals(
+                6.0, fleet.getSum(ColibriStatsExtension.CONFERENCES), 0);
+        assertEquals(
+                4.5, fleet.getSum(ColibriStatsExtension.BITRATE_DOWNLOAD), 0);
+        assertEquals(
+                9.0, fleet.getMax(ColibriStatsExtension.LARGEST_CONFERENCE), 0);
+        assertTrue(Arrays.equals(
+                new long[] { 1, 1, 2, 2 },
+                fleet.getHistogram(ColibriStatsExtension.CONFERENCE_SIZES)));
+        assertTrue(Double.isNaN(fleet.getSum(ColibriStatsExtension.VERSION)));
+
+        assertEquals(2, eu.getBridgeCount());
+        assertEquals(15.0, eu.getSum(ColibriStatsExtension.PARTICIPANTS), 0);
+        assertEquals(
+                6.0, eu.getMax(ColibriStatsExtension.LARGEST_CONFERENCE), 0);
+        assertEquals(
+                new HashSet<>(Arrays.asList("relay-a", "relay-b")),
+                snapshot.getRelays().keySet());
+
+        // Updating a bridge replaces its contribution, and removing the last
+        // bridge of a group removes the group.
+        aggregator.update("a", stats("us", "relay-a", 1, 2, "[1]"));
+        aggregator.remove("b");
+        snapshot = aggregator.getSnapshot();
+        fleet = snapshot.getFleet();
+
+        assertEquals(2, fleet.getBridgeCount());
+        assertEquals(
+                8.0, fleet.getSum(ColibriStatsExtension.PARTICIPANTS), 0);
+        assertEquals(
+                9.0, fleet.getMax(ColibriStatsExtension.LARGEST_CONFERENCE), 0);
+        assertTrue(Arrays.equals(
+                new long[] { 1, 0, 1 },
+                fleet.getHistogram(ColibriStatsExtension.CONFERENCE_SIZES)));
+        assertEquals(
+                Collections.singleton("us"), snapshot.getRegions().keySet());
+        assertEquals(
+                Collections.singleton("relay-a"),
+                snapshot.getRelays().keySet());
+
+        aggregator.remove("c");
+        assertEquals(
+                2.0,
+                aggregator.getSnapshot().getFleet()
+                    .getMax(ColibriStatsExtension.LARGEST_CONFERENCE),
+                0);
+        assertFalse(aggregator.remove("c"));
+    }
+
+    /**
+     * Updates many bridges from several threads while taking snapshots, and
+     * checks that every snapshot is consistent and that the final one matches
+     * the last stats of every bridge.
+     */
+    public void testConcurrentUpdates()
+            throws Exception {
+        ColibriStatsAggregator aggregator = new ColibriStatsAggregator();
+        int threads = 4;
+        int bridges = 200;
+        int updates = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        String[] regions = { "eu", "us", "ap" };
+        Map<String, Integer> lastConferences = new ConcurrentHashMap<>();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(thread);
+
+                    for (int i = 0; i < updates; i++) {
+                        // Each bridge is updated by a single thread, with
+                        // twice as many participants as conferences.
+                        int bridge
+                                = thread + threads * random.nextInt(
+                                        bridges / threads);
+                        int conferences = random.nextInt(50);
+                        ColibriStatsExtension stats
+                                = new ColibriStatsExtension();
+
+                        stats.addStat(
+                                ColibriStatsExtension.REGION,
+                                regions[bridge % regions.length]);
+                        stats.addStat(
+                                ColibriStatsExtension.CONFERENCES,
+                                conferences);
+                        stats.addStat(
+                                ColibriStatsExtension.PARTICIPANTS,
+                                2 * conferences);
+                        aggregator.update("bridge" + bridge, stats);
+                        lastConferences.put("bridge" + bridge, conferences);
+                    }
+                }));
+            }
+
+            while (futures.stream().anyMatch(f -> !f.isDone())) {
+                ColibriStatsAggregator.Aggregate fleet
+                        = aggregator.getSnapshot().getFleet();
+
+                assertEquals(
+                        2 * fleet.getSum(ColibriStatsExtension.CONFERENCES),
+                        fleet.getSum(ColibriStatsExtension.PARTICIPANTS),
+                        0);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        ColibriStatsAggregator.Snapshot snapshot = aggregator.getSnapshot();
+        long bridgeCount = 0;
+
+        for (ColibriStatsAggregator.Aggregate region
+                : snapshot.getRegions().values()) {
+            bridgeCount += region.getBridgeCount();
+        }
+        assertEquals(snapshot.getFleet().getBridgeCount(), bridgeCount);
+        assertEquals(lastConferences.size(), bridgeCount);
+        assertEquals(
+                lastConferences.values().stream().mapToInt(i -> i).sum(),
+                snapshot.getFleet().getSum(ColibriStatsExtension.CONFERENCES),
+                0);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+import org.jitsi.xmpp.extensions.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests {@link ColibriStatsDeltaEncoder} and
+ * {@link ColibriStatsReconstructor}.
+ */
+public class ColibriStatsDeltaEncoderTest
+        extends TestCase {
+
+    /**
+     * The number of stats in a report.
+     */
+    private static final int STATS = 60;
+
+    /**
+     * Creates the stats of a bridge at a specific point in time. Most of them
+     * never change, a few change with every report.
+     */
+    private static ColibriStatsExtension stats(int time) {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        stats.addStat(ColibriStatsExtension.REGION, "us-east-1");
+        stats.addStat(ColibriStatsExtension.VERSION, "2.1.183");
+        stats.addStat(ColibriStatsExtension.CONFERENCES, 10 + time / 10);
+        stats.addStat(ColibriStatsExtension.CPU_USAGE, "0." + (time % 10));
+        stats.addStat(ColibriStatsExtension.TOTAL_BYTES_SENT, 1000L * time);
+        for (int i = stats.getChildExtensions().size(); i < STATS; i++) {
+            stats.addStat("stat_" + i, i);
+        }
+        return stats;
+    }
+
+    /**
+     * Serializes a report and parses it back, as a receiver would.
+     */
+    private static ColibriStatsExtension transmit(
+            ColibriStatsExtension report)
+            throws Exception {
+        XmlPullParser parser = new MXParser();
+
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(report.toXML()));
+        parser.next();
+        return new DefaultPacketExtensionProvider<>(ColibriStatsExtension::new)
+                .parse(parser);
+    }
+
+    @Override
+    protected void setUp() {
+        // Registers the provider of the stat elements.
+        new ColibriIQProvider();
+    }
+
+    /**
+     * Reconstructs a stream of reports and reports the traffic saved.
+     */
+    public void testRoundTrip()
+            throws Exception {
+        ColibriStatsDeltaEncoder encoder = new ColibriStatsDeltaEncoder(10);
+        ColibriStatsReconstructor reconstructor
+                = new ColibriStatsReconstructor();
+        long fullBytes = 0;
+        long sentBytes = 0;
+        int fullSnapshots = 0;
+
+        for (int time = 0; time < 100; time++) {
+            ColibriStatsExtension stats = stats(time);
+            ColibriStatsExtension report = encoder.encode(stats);
+
+            assertEquals(time, report.getSequenceNumber());
+            if (!report.isDelta()) {
+                fullSnapshots++;
+            }
+            fullBytes += stats.toXML().length();
+            sentBytes += report.toXML().length();
+
+            ColibriStatsExtension current
+                    = reconstructor.apply(transmit(report));
+
+            assertNotNull(current);
+            assertTrue(current.isFrozen());
+            assertEquals(STATS, current.getChildExtensions().size());
+            for (ColibriStatsExtension.Stat stat
+                    : stats.getChildExtensionsOfType(
+                            ColibriStatsExtension.Stat.class)) {
+                assertEquals(
+                        stat.getName(),
+                        stat.getValue(),
+                        current.getValue(stat.getName()));
+            }
+        }
+        assertEquals(10, fullSnapshots);
+        assertTrue(
+                sentBytes + " bytes with deltas, " + fullBytes
+                    + " bytes with full snapshots",
+                sentBytes < fullBytes / 4);
+    }
+
+    /**
+     * Tests acknowledgements, lost reports and receivers which join late.
+     */
+    public void testBaselines()
+            throws Exception {
+        ColibriStatsDeltaEncoder encoder = new ColibriStatsDeltaEncoder(100);
+        ColibriStatsReconstructor reconstructor
+                = new ColibriStatsReconstructor();
+
+        assertFalse(reconstructor.apply(encoder.encode(stats(0))).isDelta());
+
+        // Deltas are relative to the last full snapshot, so a lost report
+        // does not prevent the reconstruction of the next one.
+        ColibriStatsExtension lost = encoder.encode(stats(1));
+        ColibriStatsExtension report = encoder.encode(stats(2));
+
+        assertTrue(lost.isDelta());
+        assertEquals(0, report.getBaseSequenceNumber());
+        assertEquals(
+                2000,
+                reconstructor.apply(report)
+                    .getLong(ColibriStatsExtension.TOTAL_BYTES_SENT));
+
+        // After an acknowledgement, deltas are relative to the acknowledged
+        // report and only carry what changed since then.
+        encoder.acknowledge(2);
+        report = encoder.encode(stats(3));
+        assertEquals(2, report.getBaseSequenceNumber());
+        assertNull(report.getStat(ColibriStatsExtension.CONFERENCES));
+        assertEquals(
+                10,
+                reconstructor.apply(report)
+                    .getLong(ColibriStatsExtension.CONFERENCES));
+
+        // A stale delta is ignored.
+        ColibriStatsExtension current
+                = reconstructor.apply(encoder.encode(stats(4)));
+
+        assertSame(current, reconstructor.apply(report));
+        assertEquals(4, reconstructor.getCurrent().getSequenceNumber());
+
+        // A receiver which joins late waits for a full snapshot.
+        ColibriStatsReconstructor late = new ColibriStatsReconstructor();
+
+        assertNull(late.apply(encoder.encode(stats(5))));
+        assertNull(late.getCurrent());
+        encoder.requestFullSnapshot();
+        report = encoder.encode(stats(6));
+        assertFalse(report.isDelta());
+        assertEquals(
+                6000,
+                late.apply(report)
+                    .getLong(ColibriStatsExtension.TOTAL_BYTES_SENT));
+
+        // A stat which disappears causes a full snapshot.
+        ColibriStatsExtension stats = stats(7);
+
+        stats.removeChildExtension(
+                stats.getStat(ColibriStatsExtension.VERSION));
+        report = encoder.encode(stats);
+        assertFalse(report.isDelta());
+        assertNull(
+                late.apply(report).getStat(ColibriStatsExtension.VERSION));
+    }
+}
@@ -19,6 +19,8 @@ package org.jitsi.xmpp.extensions.colibri;
 
 import junit.framework.*;
 
+import java.util.*;
+
 /**
  * @author Boris Grozev
  */
@@ -67,4 +69,118 @@ public class ColibriStatsExtensionTest
         assertEquals(clone.getValue("name"), "virtue");
         assertEquals(stats.getValue("name"), "value");
     }
+
+    /**
+     * Test the typed, indexed reads and that they follow modifications.
+     */
+    public void testTypedValues() {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        stats.addStat(ColibriStatsExtension.CONFERENCES, 12);
+        stats.addStat(ColibriStatsExtension.CPU_USAGE, "0.25");
+        stats.addStat(ColibriStatsExtension.REGION, "us-east-1");
+        stats.addStat(ColibriStatsExtension.TOTAL_BYTES_SENT, "8589934592");
+        stats.addStat(ColibriStatsExtension.CONFERENCES, 99);
+
+        String xml = stats.toXML();
+
+        assertEquals(12, stats.getLong(ColibriStatsExtension.CONFERENCES));
+        assertEquals(
+                8589934592L,
+                stats.getLong(ColibriStatsExtension.TOTAL_BYTES_SENT));
+        assertEquals(
+                0.25, stats.getDouble(ColibriStatsExtension.CPU_USAGE), 0);
+        assertEquals(0, stats.getLong(ColibriStatsExtension.CPU_USAGE));
+        assertEquals(-1, stats.getLong(ColibriStatsExtension.REGION));
+        assertEquals(7, stats.getLong("somethingelse", 7));
+        assertTrue(Double.isNaN(stats.getDouble("somethingelse")));
+        assertTrue(stats.isNumber(ColibriStatsExtension.CPU_USAGE));
+        assertFalse(stats.isNumber(ColibriStatsExtension.REGION));
+        assertEquals(
+                "us-east-1",
+                stats.getStat(ColibriStatsExtension.REGION).getValue());
+
+        List<String> visited = new ArrayList<>();
+
+        stats.forEach(new ColibriStatsExtension.StatVisitor() {
+            @Override
+            public void visitLong(String name, long value) {
+                visited.add(name + "=" + value);
+            }
+
+            @Override
+            public void visitDouble(String name, double value) {
+                visited.add(name + "~" + value);
+            }
+
+            @Override
+            public void visitString(String name, String value) {
+                visited.add(name + ":" + value);
+            }
+        });
+        assertEquals(
+                Arrays.asList(
+                        "conferences=12",
+                        "cpu_usage~0.25",
+                        "region:us-east-1",
+                        "total_bytes_sent=8589934592"),
+                visited);
+
+        // Reading the stats does not change their XML.
+        assertEquals(xml, stats.toXML());
+
+        stats.getStat(ColibriStatsExtension.CONFERENCES).setValue(13);
+        assertEquals(13, stats.getLong(ColibriStatsExtension.CONFERENCES));
+
+        stats.removeChildExtension(
+                stats.getStat(ColibriStatsExtension.CONFERENCES));
+        assertEquals(99, stats.getLong(ColibriStatsExtension.CONFERENCES));
+
+        stats.getStat(ColibriStatsExtension.REGION).setName("relay_id");
+        assertNull(stats.getStat(ColibriStatsExtension.REGION));
+        assertEquals("us-east-1", stats.getValue("relay_id"));
+    }
+
+    /**
+     * Tests that a stat which is found is indexed again when it changes
+     * after it has also been added to another extension.
+     */
+    public void testSharedStat() {
+        ColibriStatsExtension first = new ColibriStatsExtension();
+        ColibriStatsExtension second = new ColibriStatsExtension();
+        ColibriStatsExtension.Stat conferences
+                = new ColibriStatsExtension.Stat(
+                        ColibriStatsExtension.CONFERENCES, 12);
+        ColibriStatsExtension.Stat region
+                = new ColibriStatsExtension.Stat(
+                        ColibriStatsExtension.REGION, "us-east-1");
+
+        first.addStat(conferences);
+        first.addStat(region);
+        assertEquals(12, first.getLong(ColibriStatsExtension.CONFERENCES));
+        assertEquals(
+                "us-east-1",
+                first.getValue(ColibriStatsExtension.REGION));
+
+        second.addStat(conferences);
+        second.addStat(region);
+        conferences.setValue(13);
+        region.setName("relay_id");
+
+        assertEquals(13, first.getLong(ColibriStatsExtension.CONFERENCES));
+        assertEquals(13, second.getLong(ColibriStatsExtension.CONFERENCES));
+        assertNull(first.getStat(ColibriStatsExtension.REGION));
+        assertTrue(first.isNumber(ColibriStatsExtension.CONFERENCES));
+
+        List<String> visited = new ArrayList<>();
+
+        conferences.setValue(14);
+        first.forEach(new ColibriStatsExtension.StatVisitor() {
+            @Override
+            public void visitLong(String name, long value) {
+                visited.add(name + "=" + value);
+            }
+        });
+        assertEquals(Collections.singletonList("conferences=14"), visited);
+    }
 }
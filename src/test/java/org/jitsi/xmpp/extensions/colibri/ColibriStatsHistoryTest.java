@@ -0,0 +1,144 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.lang.management.*;
+
+/**
+ * Tests {@link ColibriStatsHistory}.
+ */
+public class ColibriStatsHistoryTest
+        extends TestCase {
+
+    /**
+     * Creates a report with a counter and a gauge.
+     */
+    private static ColibriStatsExtension stats(long bytes, double cpu) {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        stats.addStat(ColibriStatsExtension.TOTAL_BYTES_RECEIVED, bytes);
+        stats.addStat(ColibriStatsExtension.CPU_USAGE, Double.toString(cpu));
+        stats.addStat(ColibriStatsExtension.REGION, "eu");
+        return stats;
+    }
+
+    /**
+     * Tests rates of counters, including across a restart of the source.
+     */
+    public void testRate() {
+        ColibriStatsHistory history = new ColibriStatsHistory(5);
+        String bytes = ColibriStatsExtension.TOTAL_BYTES_RECEIVED;
+
+        assertTrue(Double.isNaN(history.getRate(bytes, 10000)));
+        history.record(stats(1000, 0.1), 0);
+        assertTrue(Double.isNaN(history.getRate(bytes, 10000)));
+
+        // 1000 bytes per second.
+        for (int i = 1; i < 8; i++) {
+            history.record(stats(1000 + 1000 * i, 0.1), 1000 * i);
+        }
+        assertEquals(5, history.size());
+        assertEquals(1000.0, history.getRate(bytes, 10000), 1e-9);
+        assertEquals(1000.0, history.getRate(bytes, 1000), 1e-9);
+        assertEquals(1000.0, history.getRateEwma(bytes, 2000), 1e-9);
+        assertEquals(8000.0, history.getLatest(bytes), 0);
+        assertTrue(Double.isNaN(history.getRate(bytes, 0)));
+        assertTrue(Double.isNaN(
+                history.getLatest(ColibriStatsExtension.REGION)));
+
+        // The source restarted and received 500 bytes since.
+        history.record(stats(500, 0.1), 8000);
+        assertEquals(500.0, history.getRate(bytes, 1000), 1e-9);
+        assertEquals((3000.0 + 500) / 4, history.getRate(bytes, 10000), 1e-9);
+
+        // A sample without the counter is skipped.
+        history.record(new ColibriStatsExtension(), 9000);
+        assertEquals(500.0, history.getRate(bytes, 2000), 1e-9);
+        assertTrue(Double.isNaN(history.getLatest(bytes)));
+
+        try {
+            history.record(stats(0, 0), 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Tests averages and percentiles of gauges.
+     */
+    public void testGauges() {
+        ColibriStatsHistory history = new ColibriStatsHistory(100);
+        String cpu = ColibriStatsExtension.CPU_USAGE;
+
+        for (int i = 0; i < 100; i++) {
+            history.record(stats(0, (i % 10) / 10.0), 1000 * i);
+        }
+        assertEquals(0.0, history.getPercentile(cpu, 100000, 0), 0);
+        assertEquals(0.4, history.getPercentile(cpu, 100000, 50), 0);
+        assertEquals(0.8, history.getPercentile(cpu, 100000, 90), 0);
+        assertEquals(0.9, history.getPercentile(cpu, 100000, 100), 0);
+        assertEquals(0.9, history.getPercentile(cpu, 0, 50), 0);
+        assertEquals(0.7, history.getPercentile(cpu, 2000, 0), 0);
+
+        // The average of a constant is that constant, and a short half-life
+        // follows the newest values.
+        for (int i = 100; i < 200; i++) {
+            history.record(stats(0, 0.5), 1000 * i);
+        }
+        assertEquals(0.5, history.getEwma(cpu, 10000), 1e-9);
+        history.record(stats(0, 0.9), 200000);
+        assertEquals(0.9, history.getEwma(cpu, 1), 1e-9);
+        assertTrue(history.getEwma(cpu, 10000) < 0.6);
+
+        // Queries do not allocate.
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads)
+                        .isThreadAllocatedMemoryEnabled()) {
+            com.sun.management.ThreadMXBean hotspot
+                    = (com.sun.management.ThreadMXBean) threads;
+            long thread = Thread.currentThread().getId();
+            double sum = 0;
+
+            // Warm up.
+            for (int i = 0; i < 1000; i++) {
+                sum += history.getPercentile(cpu, 50000, 95)
+                        + history.getEwma(cpu, 5000)
+                        + history.getRate(cpu, 50000);
+            }
+
+            long before = hotspot.getThreadAllocatedBytes(thread);
+
+            for (int i = 0; i < 1000; i++) {
+                sum += history.getPercentile(cpu, 50000, 95)
+                        + history.getEwma(cpu, 5000)
+                        + history.getRate(cpu, 50000);
+            }
+
+            long after = hotspot.getThreadAllocatedBytes(thread);
+
+            // Allow for the bookkeeping of the measurement itself, which is
+            // far less than one object per query.
+            assertTrue(sum > 0);
+            assertTrue(
+                    (after - before) + " bytes allocated by 3000 queries",
+                    after - before < 1000);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ * Tests {@link SSRCSet} against a <tt>TreeSet</tt> of the unsigned SSRCs.
+ */
+public class SSRCSetTest
+        extends TestCase {
+
+    public void testRandomOperations() {
+        Random random = new Random(7);
+        SSRCSet set = new SSRCSet();
+        TreeSet<Long> expected = new TreeSet<>();
+
+        for (int i = 0; i < 20000; i++) {
+            // A small range produces collisions, removals and re-additions,
+            // the extremes exercise 0 and the unsigned order.
+            int ssrc;
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    ssrc = 0;
+                    break;
+                case 1:
+                    ssrc = random.nextInt();
+                    break;
+                default:
+                    ssrc = random.nextInt(512) - 256;
+                    break;
+            }
+
+            long key = ssrc & 0xFFFFFFFFL;
+
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), set.remove(ssrc));
+            } else {
+                assertEquals(expected.add(key), set.add(ssrc));
+            }
+            // Lookups between modifications go to the hash table.
+            assertEquals(expected.contains(key), set.contains(ssrc));
+            assertEquals(expected.size(), set.size());
+            if (i % 97 == 0) {
+                assertSnapshot(expected, set);
+            }
+        }
+        assertSnapshot(expected, set);
+    }
+
+    public void testBulkOperations() {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+
+        assertTrue(channel.addSSRCs(new int[] { 3, -1, 1, 3 }));
+        assertFalse(channel.addSSRCs(new int[] { 1 }));
+        assertTrue(
+                Arrays.equals(new int[] { 1, 3, -1 }, channel.getSSRCs()));
+        assertTrue(channel.removeSSRCs(new int[] { 3, 4 }));
+        assertFalse(channel.removeSSRCs(new int[] { 3 }));
+        assertTrue(Arrays.equals(new int[] { 1, -1 }, channel.getSSRCs()));
+
+        channel.setSSRCs(new int[] { 5, 5 });
+        assertTrue(Arrays.equals(new int[] { 5 }, channel.getSSRCs()));
+        channel.setSSRCs(null);
+        assertSame(ColibriConferenceIQ.NO_SSRCS, channel.getSSRCs());
+    }
+
+    private static void assertSnapshot(TreeSet<Long> expected, SSRCSet set) {
+        int[] snapshot = set.snapshot();
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected.size(), snapshot.length);
+
+        int i = 0;
+
+        for (long key : expected) {
+            assertEquals((int) key, snapshot[i++]);
+            assertTrue(set.contains((int) key));
+        }
+        assertEquals(expected.contains(257L), set.contains(257));
+    }
+}
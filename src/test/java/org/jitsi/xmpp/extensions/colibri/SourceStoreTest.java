@@ -0,0 +1,97 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+
+/**
+ * Tests the sources and source groups of {@link ColibriConferenceIQ.Channel}.
+ */
+public class SourceStoreTest
+        extends TestCase {
+
+    private static SourcePacketExtension ssrcSource(long ssrc) {
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(ssrc);
+        return source;
+    }
+
+    private static SourcePacketExtension ridSource(String rid) {
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setRid(rid);
+        return source;
+    }
+
+    private static SourceGroupPacketExtension group(long... ssrcs) {
+        SourceGroupPacketExtension group
+                = SourceGroupPacketExtension.createSimulcastGroup();
+        List<SourcePacketExtension> sources = new ArrayList<>();
+
+        for (long ssrc : ssrcs) {
+            sources.add(ssrcSource(ssrc));
+        }
+        group.addSources(sources);
+        return group;
+    }
+
+    public void testSources() {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+        SourcePacketExtension s3 = ssrcSource(3);
+        SourcePacketExtension s1 = ssrcSource(1);
+        SourcePacketExtension r1 = ridSource("1");
+        SourcePacketExtension empty = new SourcePacketExtension();
+
+        assertTrue(channel.addSource(s3));
+        assertTrue(channel.addSource(s1));
+        assertTrue(channel.addSource(r1));
+        assertTrue(channel.addSource(empty));
+        assertFalse(channel.addSource(ssrcSource(3)));
+        assertFalse(channel.addSource(ridSource("1")));
+        assertTrue(channel.addSource(new SourcePacketExtension()));
+
+        assertEquals(5, channel.getSources().size());
+        assertSame(s3, channel.getSources().get(0));
+        assertSame(s1, channel.getSource(1));
+        assertSame(r1, channel.getSourceByRid("1"));
+        assertNull(channel.getSource(2));
+
+        assertTrue(channel.removeSource(ssrcSource(3)));
+        assertFalse(channel.removeSource(s3));
+        assertTrue(channel.removeSource(empty));
+        assertEquals(Arrays.asList(s1, r1), channel.getSources().subList(0, 2));
+
+        SourceGroupPacketExtension sim = group(1, 2, 3);
+
+        assertNull(channel.getSourceGroups());
+        assertTrue(channel.addSourceGroup(sim));
+        assertFalse(channel.addSourceGroup(group(1, 2, 3)));
+        assertTrue(channel.addSourceGroup(group(3, 2, 1)));
+        assertTrue(channel.removeSourceGroup(group(3, 2, 1)));
+        assertEquals(Collections.singletonList(sim), channel.getSourceGroups());
+
+        channel.replaceSources(
+                Arrays.asList(s3, ssrcSource(3), s1),
+                Collections.<SourceGroupPacketExtension>emptyList());
+        assertEquals(Arrays.asList(s3, s1), channel.getSources());
+        assertTrue(channel.getSourceGroups().isEmpty());
+    }
+}
@@ -19,8 +19,13 @@ package org.jitsi.xmpp.extensions.jingle;
 
 import junit.framework.*;
 
+import java.io.*;
 import java.util.*;
 
+import org.jitsi.xmpp.extensions.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
 /**
  * Tests {@link PayloadTypePacketExtension} as well as it's children (
  * {@link ParameterPacketExtension} and {@link RtcpFbPacketExtension}).
@@ -96,6 +101,68 @@ public class PayloadTypePacketExtensionTest
         assertEquals(p.getAttribute(TEST_ATTR_NAME), TEST_ATTR_VALUE);
     }
 
+    /**
+     * Tests that {@link PayloadTypePacketExtensionProvider} and
+     * {@link CandidatePacketExtensionProvider} produce extensions which
+     * serialize to exactly the same XML as those produced by the generic
+     * {@link DefaultPacketExtensionProvider}.
+     */
+    public void testProvidersMatchGenericProvider()
+            throws Exception {
+        // Registers the providers of the child elements.
+        new JingleIQProvider();
+
+        String payloadTypeXml
+                = "<payload-type xmlns='urn:xmpp:jingle:apps:rtp:1'"
+                    + " id='111' name='opus' clockrate='48000' channels='02'"
+                    + " maxptime='x'>"
+                + "<parameter name='minptime' value='10'/>"
+                + "</payload-type>";
+        PayloadTypePacketExtension payloadType
+                = parse(new PayloadTypePacketExtensionProvider(),
+                        payloadTypeXml);
+
+        assertEquals(
+                parse(new DefaultPacketExtensionProvider<>(
+                                PayloadTypePacketExtension.class),
+                        payloadTypeXml).toXML(),
+                payloadType.toXML());
+        assertEquals(111, payloadType.getID());
+        assertEquals(2, payloadType.getChannels());
+        assertEquals(1, payloadType.getParameters().size());
+
+        String candidateXml
+                = "<candidate xmlns='urn:xmpp:jingle:transports:ice-udp:1'"
+                    + " component='1' foundation='1' generation='0'"
+                    + " id='2d3b' ip='10.0.0.1' network='1' port='10000'"
+                    + " priority='2130706431' protocol='udp' type='host'/>";
+        CandidatePacketExtension candidate
+                = parse(new CandidatePacketExtensionProvider(), candidateXml);
+
+        assertEquals(
+                parse(new DefaultPacketExtensionProvider<>(
+                                CandidatePacketExtension.class),
+                        candidateXml).toXML(),
+                candidate.toXML());
+        assertEquals(10000, candidate.getPort());
+        assertEquals(CandidateType.host, candidate.getType());
+    }
+
+    /**
+     * Parses an element with a specific provider.
+     */
+    private static <T extends AbstractPacketExtension> T parse(
+            DefaultPacketExtensionProvider<T> provider,
+            String xml)
+            throws Exception {
+        XmlPullParser parser = new MXParser();
+
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(xml));
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        return provider.parse(parser);
+    }
+
     public void testSettersAndGetters() {
         PayloadTypePacketExtension p = new PayloadTypePacketExtension();
 